@@ -0,0 +1,81 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.BulkDsmrTelegramParser;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseOptions;
+import nl.basjes.dsmr.ScanDsmrTelegram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a batch of all recorded telegrams: one call per telegram versus a single bulk call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkParserBenchmark {
+
+    private List<String> telegrams;
+
+    private final BulkDsmrTelegramParser sequential = new BulkDsmrTelegramParser();
+    private final BulkDsmrTelegramParser parallel   =
+        new BulkDsmrTelegramParser(ParseOptions.all(), ForkJoinPool.commonPool(), 100);
+
+    @Setup
+    public void setup() {
+        telegrams = Telegrams.get(Telegrams.RECORDED);
+    }
+
+    @Benchmark
+    public List<DSMRTelegram> perTelegram() {
+        List<DSMRTelegram> result = new ArrayList<>(telegrams.size());
+        for (String telegram : telegrams) {
+            result.add(ScanDsmrTelegram.parse(telegram));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<DSMRTelegram> bulkSequential() {
+        return sequential.parseAll(telegrams);
+    }
+
+    @Benchmark
+    public List<DSMRTelegram> bulkParallel() {
+        return parallel.parseAll(telegrams);
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.CheckCRC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckCRCBenchmark {
+
+    @Param({Telegrams.RECORDED, Telegrams.DSMR42, Telegrams.DSMR50})
+    String input;
+
+    private String[] telegrams;
+    private byte[][] telegramBytes;
+    private int      index = 0;
+
+    @Setup
+    public void setup() {
+        telegrams = Telegrams.get(input).toArray(new String[0]);
+        telegramBytes = new byte[telegrams.length][];
+        for (int i = 0; i < telegrams.length; i++) {
+            telegramBytes[i] = telegrams[i].getBytes(UTF_8);
+        }
+    }
+
+    @Benchmark
+    public boolean crcIsValid() {
+        String telegram = telegrams[index];
+        index = (index + 1) % telegrams.length;
+        return CheckCRC.crcIsValid(telegram);
+    }
+
+    @Benchmark
+    public boolean crcIsValidBytes() {
+        byte[] telegram = telegramBytes[index];
+        index = (index + 1) % telegramBytes.length;
+        return CheckCRC.crcIsValid(telegram);
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DsmrTelegramParser;
+import nl.basjes.dsmr.DsmrTelegramParserFactory;
+import nl.basjes.dsmr.DsmrTelegramParserFactory.Engine;
+import nl.basjes.dsmr.ParallelDsmrFileParser;
+import nl.basjes.parse.ReadUTF8RecordStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing an entire capture file: one thread versus all cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileParserBenchmark {
+
+    // The recording is repeated to get a file of about 10 MiB.
+    private static final int REPEAT = 20;
+
+    @Param({"ANTLR", "SINGLE_PASS"})
+    Engine engine;
+
+    private Path               file;
+    private DsmrTelegramParser parser;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] recording = Telegrams.recording();
+        file = Files.createTempFile("dsmr-capture", ".txt");
+        try (OutputStream output = Files.newOutputStream(file)) {
+            for (int i = 0; i < REPEAT; i++) {
+                output.write(recording);
+            }
+        }
+        parser = DsmrTelegramParserFactory.create(engine);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int sequential() throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            ReadUTF8RecordStream reader = new ReadUTF8RecordStream(input, "\r\n![0-9A-F]{4}\r\n");
+            int valid = 0;
+            String record;
+            while ((record = reader.read()) != null) {
+                DSMRTelegram telegram = parser.parse(record);
+                if (telegram != null && telegram.isValid()) {
+                    valid++;
+                }
+            }
+            return valid;
+        }
+    }
+
+    @Benchmark
+    public int parallel() throws IOException {
+        int valid = 0;
+        for (DSMRTelegram telegram : ParallelDsmrFileParser.parse(file, parser, ForkJoinPool.commonPool())) {
+            if (telegram.isValid()) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.PrimitiveDSMRTelegram;
+import nl.basjes.dsmr.PrimitiveDsmrTelegramParser;
+import nl.basjes.dsmr.ScanDsmrTelegram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Run with "-prof gc" to see the difference in allocated bytes per telegram.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrimitiveParserBenchmark {
+
+    @Param({Telegrams.RECORDED, Telegrams.DSMR50})
+    String input;
+
+    private String[]                    telegrams;
+    private PrimitiveDsmrTelegramParser parser;
+    private PrimitiveDSMRTelegram       telegram;
+    private int                         index = 0;
+
+    @Setup
+    public void setup() {
+        List<String> all = Telegrams.get(input);
+        telegrams = all.toArray(new String[0]);
+        parser = new PrimitiveDsmrTelegramParser();
+        telegram = new PrimitiveDSMRTelegram();
+    }
+
+    private String next() {
+        String text = telegrams[index];
+        index = (index + 1) % telegrams.length;
+        return text;
+    }
+
+    @Benchmark
+    public DSMRTelegram scan() {
+        return ScanDsmrTelegram.parse(next());
+    }
+
+    @Benchmark
+    public boolean primitive() {
+        return parser.parse(next(), telegram);
+    }
+
+    @Benchmark
+    public DSMRTelegram primitiveToDSMRTelegram() {
+        parser.parse(next(), telegram);
+        return telegram.toDSMRTelegram();
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.ReadDsmrTelegramStream;
+import nl.basjes.parse.MappedRecordReader;
+import nl.basjes.parse.ReadUTF8RecordStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadUTF8RecordStreamBenchmark {
+
+    private static final String DSMR_RECORD_END = "\r\n![0-9A-F]{4}\r\n";
+
+    private byte[] recording;
+    private Path   recordingFile;
+
+    @Setup
+    public void setup() throws IOException {
+        recording = Telegrams.recording();
+        recordingFile = Files.createTempFile("dsmr-recording", ".txt");
+        Files.write(recordingFile, recording);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(recordingFile);
+    }
+
+    /**
+     * Splits the entire recording (about 560 telegrams) into records.
+     * @return The number of records.
+     */
+    @Benchmark
+    public int readAllRecords(Blackhole blackhole) throws IOException {
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(new ByteArrayInputStream(recording), DSMR_RECORD_END);
+        int records = 0;
+        String record;
+        while ((record = reader.read()) != null) {
+            blackhole.consume(record);
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * Splits the entire recording into records and checks the CRC of each one afterwards.
+     * @return The number of records with a valid CRC.
+     */
+    @Benchmark
+    public int readAllRecordsAndCheckCrc(Blackhole blackhole) throws IOException {
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(new ByteArrayInputStream(recording), DSMR_RECORD_END);
+        int valid = 0;
+        String record;
+        while ((record = reader.read()) != null) {
+            blackhole.consume(record);
+            if (CheckCRC.crcIsValid(record)) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Splits the entire recording into telegrams while calculating the CRC.
+     * @return The number of records with a valid CRC.
+     */
+    @Benchmark
+    public int readAllTelegramsWithStreamingCrc(Blackhole blackhole) throws IOException {
+        ReadDsmrTelegramStream reader = new ReadDsmrTelegramStream(new ByteArrayInputStream(recording));
+        int valid = 0;
+        String record;
+        while ((record = reader.read()) != null) {
+            blackhole.consume(record);
+            if (reader.lastCrcIsValid()) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Splits the recording from a file using the stream reader.
+     * @return The number of records with a valid CRC.
+     */
+    @Benchmark
+    public int readFileAndCheckCrc(Blackhole blackhole) throws IOException {
+        try (InputStream input = Files.newInputStream(recordingFile)) {
+            ReadUTF8RecordStream reader = new ReadUTF8RecordStream(input, DSMR_RECORD_END);
+            int valid = 0;
+            String record;
+            while ((record = reader.read()) != null) {
+                blackhole.consume(record);
+                if (CheckCRC.crcIsValid(record)) {
+                    valid++;
+                }
+            }
+            return valid;
+        }
+    }
+
+    /**
+     * Splits the recording from a memory mapped file without decoding it into Strings.
+     * @return The number of records with a valid CRC.
+     */
+    @Benchmark
+    public int readMappedFileAndCheckCrc(Blackhole blackhole) throws IOException {
+        try (MappedRecordReader reader = new MappedRecordReader(recordingFile, DSMR_RECORD_END)) {
+            int valid = 0;
+            ByteBuffer record;
+            while ((record = reader.next()) != null) {
+                blackhole.consume(record);
+                if (CheckCRC.crcIsValid(record)) {
+                    valid++;
+                }
+            }
+            return valid;
+        }
+    }
+
+}
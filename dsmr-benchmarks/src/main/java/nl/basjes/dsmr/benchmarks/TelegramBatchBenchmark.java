@@ -0,0 +1,94 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ScanDsmrTelegram;
+import nl.basjes.dsmr.TelegramBatch;
+import nl.basjes.dsmr.TelegramBatch.DoubleColumn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_POWER_RECEIVED;
+
+// The daily statistics of a single field over a day of telegrams (one every 10 seconds).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TelegramBatchBenchmark {
+
+    private static final int TELEGRAMS_PER_DAY = 8640;
+
+    private List<DSMRTelegram> telegrams;
+    private TelegramBatch      batch;
+
+    @Setup
+    public void setup() {
+        List<String> recorded = Telegrams.get(Telegrams.RECORDED);
+        telegrams = new ArrayList<>(TELEGRAMS_PER_DAY);
+        batch = new TelegramBatch(TELEGRAMS_PER_DAY);
+        for (int i = 0; telegrams.size() < TELEGRAMS_PER_DAY; i++) {
+            String telegram = recorded.get(i % recorded.size());
+            DSMRTelegram dsmrTelegram = ScanDsmrTelegram.parse(telegram);
+            if (dsmrTelegram.isValid()) {
+                telegrams.add(dsmrTelegram);
+                batch.add(telegram);
+            }
+        }
+    }
+
+    @Benchmark
+    public double[] objects() {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        int count = 0;
+        for (DSMRTelegram telegram : telegrams) {
+            Double value = telegram.getElectricityPowerReceived();
+            if (value != null) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+                count++;
+            }
+        }
+        return new double[]{min, max, sum / count};
+    }
+
+    @Benchmark
+    public double[] columns() {
+        DoubleColumn column = batch.getDoubles(ELECTRICITY_POWER_RECEIVED);
+        return new double[]{column.min(), column.max(), column.mean()};
+    }
+
+}
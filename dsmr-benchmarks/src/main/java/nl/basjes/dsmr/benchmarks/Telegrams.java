@@ -0,0 +1,101 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The inputs for the benchmarks: the test telegrams from the DSMR specifications and
+ * the telegrams recorded from a real meter (testfiles/ttyUSB0-raw.txt).
+ */
+public final class Telegrams {
+
+    private Telegrams() {
+        // Utility class
+    }
+
+    public static final String RECORDED = "RECORDED";
+    public static final String DSMR22   = "DSMR22";
+    public static final String DSMR30   = "DSMR30";
+    public static final String DSMR42   = "DSMR42";
+    public static final String DSMR50   = "DSMR50";
+
+    /**
+     * @param input One of the input names defined in this class.
+     * @return All the telegrams of that input.
+     */
+    public static List<String> get(String input) {
+        switch (input) {
+            case RECORDED: return recorded();
+            case DSMR22:   return Arrays.asList(withCRLF(readResource("testfiles/dsmr22.txt")));
+            case DSMR30:   return Arrays.asList(withCRLF(readResource("testfiles/dsmr30.txt")));
+            case DSMR42:   return Arrays.asList(withCRLF(readResource("testfiles/dsmr42.txt")));
+            case DSMR50:   return Arrays.asList(withCRLF(readResource("testfiles/dsmr50.txt")));
+            default:
+                throw new IllegalArgumentException("Unknown input \"" + input + "\"");
+        }
+    }
+
+    /**
+     * @return The full recording of the serial port as it would be read from the tty.
+     */
+    public static byte[] recording() {
+        return withCRLF(readResource("testfiles/ttyUSB0-raw.txt")).getBytes(UTF_8);
+    }
+
+    private static List<String> recorded() {
+        List<String> telegrams = new ArrayList<>();
+        for (String telegram : new String(recording(), UTF_8).split("(?<=\r\n![0-9A-F]{4}\r\n)")) {
+            // The recording starts halfway a telegram
+            if (telegram.startsWith("/")) {
+                telegrams.add(telegram);
+            }
+        }
+        return telegrams;
+    }
+
+    // The files are stored with '\n' but a meter always sends '\r\n' (which is also needed for the CRC).
+    private static String withCRLF(String value) {
+        return value.replace("\r\n", "\n").replace("\n", "\r\n");
+    }
+
+    private static String readResource(String name) {
+        try (InputStream inputStream = Telegrams.class.getClassLoader().getResourceAsStream(name)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Unable to find resource " + name);
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, bytesRead);
+            }
+            return new String(output.toByteArray(), UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.TimestampParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimestampParserBenchmark {
+
+    private static final Pattern TIMESTAMP = Pattern.compile("\\(([0-9]{12}[SW]?)\\)");
+
+    private final TimestampParser timestampParser = new TimestampParser();
+    private String[]              timestamps;
+    private int                   index = 0;
+
+    @Setup
+    public void setup() {
+        // All timestamps (telegram, power failures and gas) as they occur in the recorded telegrams.
+        List<String> all = new ArrayList<>();
+        for (String telegram : Telegrams.get(Telegrams.RECORDED)) {
+            Matcher matcher = TIMESTAMP.matcher(telegram);
+            while (matcher.find()) {
+                all.add(matcher.group(1));
+            }
+        }
+        timestamps = all.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public ZonedDateTime parse() {
+        String timestamp = timestamps[index];
+        index = (index + 1) % timestamps.length;
+        return timestampParser.parse(timestamp);
+    }
+
+    @Benchmark
+    public long parseEpochSecond() {
+        String timestamp = timestamps[index];
+        index = (index + 1) % timestamps.length;
+        return timestampParser.parseEpochSecond(timestamp);
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Parses many telegrams in a single call.
+ * The input is cut into slices and each slice is parsed with a single {@link PrimitiveDsmrTelegramParser}
+ * (so its buffers and caches are reused for all telegrams in the slice) which gives the same result as the
+ * {@link ScanDsmrTelegram}. With an executor all slices (except the last one, which is parsed by the calling thread)
+ * are parsed in parallel.
+ * The result always has one entry for each input telegram in the same order (null for a null or empty input).
+ * <p>
+ * An instance is thread safe.
+ */
+public final class BulkDsmrTelegramParser {
+
+    public static final int DEFAULT_SLICE_SIZE = 1000;
+
+    private final ParseOptions options;
+    private final Executor     executor;
+    private final int          sliceSize;
+
+    /**
+     * All fields, parsed in the calling thread.
+     */
+    public BulkDsmrTelegramParser() {
+        this(ParseOptions.all(), null);
+    }
+
+    /**
+     * @param options  Which fields are needed.
+     * @param executor Where the slices are parsed (null means all in the calling thread).
+     */
+    public BulkDsmrTelegramParser(ParseOptions options, Executor executor) {
+        this(options, executor, DEFAULT_SLICE_SIZE);
+    }
+
+    /**
+     * @param options   Which fields are needed.
+     * @param executor  Where the slices are parsed (null means all in the calling thread).
+     * @param sliceSize The number of telegrams that are parsed in a single task.
+     */
+    public BulkDsmrTelegramParser(ParseOptions options, Executor executor, int sliceSize) {
+        if (sliceSize <= 0) {
+            throw new IllegalArgumentException("The slice size must be positive (was " + sliceSize + ")");
+        }
+        this.options   = options;
+        this.executor  = executor;
+        this.sliceSize = sliceSize;
+    }
+
+    /**
+     * @param telegrams The full texts of the telegrams.
+     * @return The parsed telegrams in the same order as the input.
+     */
+    public List<DSMRTelegram> parseAll(List<? extends CharSequence> telegrams) {
+        if (telegrams.size() <= sliceSize) {
+            return Arrays.asList(parseSlice(telegrams.toArray(new CharSequence[0])));
+        }
+        return parseAll(telegrams.iterator());
+    }
+
+    /**
+     * The slices are handed to the executor while iterating so parsing starts before the end of the input is reached.
+     * @param telegrams The full texts of the telegrams.
+     * @return The parsed telegrams in the same order as the input.
+     */
+    public List<DSMRTelegram> parseAll(Iterator<? extends CharSequence> telegrams) {
+        List<CompletableFuture<DSMRTelegram[]>> slices = new ArrayList<>();
+        int total = 0;
+        while (telegrams.hasNext()) {
+            CharSequence[] slice = nextSlice(telegrams);
+            total += slice.length;
+            if (executor == null || !telegrams.hasNext()) {
+                slices.add(CompletableFuture.completedFuture(parseSlice(slice)));
+            } else {
+                slices.add(CompletableFuture.supplyAsync(() -> parseSlice(slice), executor));
+            }
+        }
+
+        List<DSMRTelegram> result = new ArrayList<>(total);
+        for (CompletableFuture<DSMRTelegram[]> slice : slices) {
+            try {
+                result.addAll(Arrays.asList(slice.join()));
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    private CharSequence[] nextSlice(Iterator<? extends CharSequence> telegrams) {
+        List<CharSequence> slice = new ArrayList<>(sliceSize);
+        while (slice.size() < sliceSize && telegrams.hasNext()) {
+            slice.add(telegrams.next());
+        }
+        return slice.toArray(new CharSequence[0]);
+    }
+
+    private DSMRTelegram[] parseSlice(CharSequence[] telegrams) {
+        PrimitiveDsmrTelegramParser parser = new PrimitiveDsmrTelegramParser(options);
+        PrimitiveDSMRTelegram       values = new PrimitiveDSMRTelegram();
+        DSMRTelegram[] result = new DSMRTelegram[telegrams.length];
+        for (int i = 0; i < telegrams.length; i++) {
+            parser.parse(telegrams[i] == null ? null : telegrams[i].toString(), values);
+            result[i] = values.toDSMRTelegram();
+        }
+        return result;
+    }
+
+}
@@ -18,8 +18,7 @@
 
 package nl.basjes.dsmr;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -62,74 +61,260 @@ public final class CheckCRC {
         0x8201, 0x42C0, 0x4380, 0x8341, 0x4100, 0x81C1, 0x8081, 0x4040,
     };
 
-    private static final Pattern EXTRACT_PATTERN = Pattern.compile("(^/[^!]+!)([0-9A-Fa-f]{4})", Pattern.MULTILINE);
+    // A telegram starts with a '/' at the start of a line and runs up to and including the first '!'
+    // which must be followed by the 4 hex digits of the CRC (as in the regex "(^/[^!]+!)([0-9A-Fa-f]{4})").
+    // Everything is done by scanning the input: no regex, no copying and no String.format.
 
-    private static int calculatedCrc(byte[] telegramBytes) {
+    private static boolean isLineTerminator(char c) {
+        // The line terminators as used by the '^' in a Java MULTILINE regex
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    static int hexValue(int c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    // The CRC after the '!' as a number, -1 if it is not 4 hex digits.
+    private static int crcAfter(CharSequence input, int bang) {
+        if (bang + 5 > input.length()) {
+            return -1;
+        }
+        int crc = 0;
+        for (int i = bang + 1; i <= bang + 4; i++) {
+            int digit = hexValue(input.charAt(i));
+            if (digit == -1) {
+                return -1;
+            }
+            crc = (crc << 4) | digit;
+        }
+        return crc;
+    }
+
+    // Returns the position of the '/' that starts the telegram or -1 if there is no (complete) telegram.
+    private static int findTelegramStart(String input) {
+        int slash = input.indexOf('/');
+        while (slash != -1) {
+            if (slash == 0 || isLineTerminator(input.charAt(slash - 1))) {
+                int bang = input.indexOf('!', slash + 1);
+                if (bang == -1) {
+                    return -1;
+                }
+                if (bang > slash + 1 && crcAfter(input, bang) != -1) {
+                    return slash;
+                }
+                // Any other '/' before this '!' would end at the same '!'.
+                slash = input.indexOf('/', bang + 1);
+            } else {
+                slash = input.indexOf('/', slash + 1);
+            }
+        }
+        return -1;
+    }
+
+    static int updateCrc(int crc, int b) {
+        return (crc >>> 8) ^ CRC_TABLE[(crc ^ b) & 0xff];
+    }
+
+    private static int calculatedCrc(byte[] telegramBytes, int offset, int length) {
+        int crc = 0x0000;
+        for (int i = offset; i < offset + length; i++) {
+            crc = updateCrc(crc, telegramBytes[i]);
+        }
+        return crc;
+    }
+
+    private static int calculatedCrc(ByteBuffer telegramBytes, int start, int end) {
         int crc = 0x0000;
-        for (byte b : telegramBytes) {
-            crc = (crc >>> 8) ^ CRC_TABLE[(crc ^ b) & 0xff];
+        for (int i = start; i < end; i++) {
+            crc = updateCrc(crc, telegramBytes.get(i));
         }
+        return crc;
+    }
 
+    // The CRC over the UTF-8 encoded form of the characters, without creating the byte[] if it is all ASCII.
+    private static int calculatedCrc(String telegram, int start, int end) {
+        int crc = 0x0000;
+        for (int i = start; i < end; i++) {
+            char c = telegram.charAt(i);
+            if (c >= 0x80) {
+                byte[] remainder = telegram.substring(i, end).getBytes(UTF_8);
+                for (byte b : remainder) {
+                    crc = updateCrc(crc, b);
+                }
+                return crc;
+            }
+            crc = updateCrc(crc, c);
+        }
         return crc;
     }
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static String toHex(int crc) {
+        return new String(new char[]{
+            HEX_DIGITS[(crc >> 12) & 0xF],
+            HEX_DIGITS[(crc >>  8) & 0xF],
+            HEX_DIGITS[(crc >>  4) & 0xF],
+            HEX_DIGITS[ crc        & 0xF],
+        });
+    }
+
     public static Integer calculatedCrc(String input) {
         if (input == null) {
             return null;
         }
-        Matcher matcher = EXTRACT_PATTERN.matcher(input);
-
-        if (!matcher.find()) {
+        int start = findTelegramStart(input);
+        if (start == -1) {
             return null;
         }
-
-        String telegram = matcher.group(1);
-        return calculatedCrc(telegram.getBytes(UTF_8));
+        return calculatedCrc(input, start, input.indexOf('!', start) + 1);
     }
 
     public static String extractCrcFromTelegram(String input) {
         if (input == null) {
             return null;
         }
-        Matcher matcher = EXTRACT_PATTERN.matcher(input);
-
-        if (!matcher.find()) {
+        int start = findTelegramStart(input);
+        if (start == -1) {
             return null;
         }
-
-        return matcher.group(2);
+        int bang = input.indexOf('!', start);
+        return input.substring(bang + 1, bang + 5);
     }
 
     public static String fixCrc(String input) {
         if (input == null) {
             return null;
         }
-        Matcher matcher = EXTRACT_PATTERN.matcher(input);
-
-        if (!matcher.find()) {
+        int start = findTelegramStart(input);
+        if (start == -1) {
             return input;
         }
-
-        String telegram = matcher.group(1);
-
-        String actualCrc = String.format("%04X", calculatedCrc(telegram.getBytes(UTF_8)));
-        return telegram + actualCrc + "\r\n";
+        int end = input.indexOf('!', start) + 1;
+        return input.substring(start, end) + toHex(calculatedCrc(input, start, end)) + "\r\n";
     }
 
     public static boolean crcIsValid(String input) {
         if (input == null) {
             return false;
         }
-        Matcher matcher = EXTRACT_PATTERN.matcher(input);
+        int start = findTelegramStart(input);
+        if (start == -1) {
+            return false;
+        }
+        int bang = input.indexOf('!', start);
+        return calculatedCrc(input, start, bang + 1) == crcAfter(input, bang);
+    }
 
-        if (!matcher.find()) {
+    /**
+     * Checks the CRC of the telegram in the bytes (UTF-8/ASCII) as they were received.
+     * Only '\r' and '\n' are considered to be the end of a line.
+     * @param input The bytes
+     * @param offset The first byte to look at
+     * @param length The number of bytes to look at
+     * @return true if a telegram was found and the CRC is valid.
+     */
+    public static boolean crcIsValid(byte[] input, int offset, int length) {
+        if (input == null) {
             return false;
         }
+        final int end = offset + length;
+        int lineStart = offset;
+        int i = offset;
+        while (i < end) {
+            byte b = input[i];
+            if (b == '/' && (i == lineStart)) {
+                // Find the first '!'
+                int bang = i + 1;
+                while (bang < end && input[bang] != '!') {
+                    bang++;
+                }
+                if (bang >= end) {
+                    return false;
+                }
+                if (bang > i + 1 && bang + 5 <= end) {
+                    int expectedCrc = 0;
+                    for (int h = bang + 1; h <= bang + 4 && expectedCrc != -1; h++) {
+                        int digit = hexValue(input[h]);
+                        expectedCrc = digit == -1 ? -1 : (expectedCrc << 4) | digit;
+                    }
+                    if (expectedCrc != -1) {
+                        return calculatedCrc(input, i, bang + 1 - i) == expectedCrc;
+                    }
+                }
+                // Any other '/' before this '!' would end at the same '!'.
+                i = bang + 1;
+                lineStart = -1;
+                continue;
+            }
+            if (b == '\n' || b == '\r') {
+                lineStart = i + 1;
+            }
+            i++;
+        }
+        return false;
+    }
 
-        String telegram = matcher.group(1);
-        String expectedCrc = matcher.group(2);
+    public static boolean crcIsValid(byte[] input) {
+        return input != null && crcIsValid(input, 0, input.length);
+    }
 
-        String actualCrc = String.format("%04X", calculatedCrc(telegram.getBytes(UTF_8)));
-        return expectedCrc.equalsIgnoreCase(actualCrc);
+    /**
+     * Checks the CRC of the telegram in the remaining bytes of the buffer (the position of the buffer is not changed).
+     * @param input The buffer
+     * @return true if a telegram was found and the CRC is valid.
+     */
+    public static boolean crcIsValid(ByteBuffer input) {
+        if (input == null) {
+            return false;
+        }
+        if (input.hasArray()) {
+            return crcIsValid(input.array(), input.arrayOffset() + input.position(), input.remaining());
+        }
+        // Direct and memory mapped buffers are scanned in place (absolute reads, no copy).
+        final int end = input.limit();
+        int lineStart = input.position();
+        int i = input.position();
+        while (i < end) {
+            byte b = input.get(i);
+            if (b == '/' && (i == lineStart)) {
+                // Find the first '!'
+                int bang = i + 1;
+                while (bang < end && input.get(bang) != '!') {
+                    bang++;
+                }
+                if (bang >= end) {
+                    return false;
+                }
+                if (bang > i + 1 && bang + 5 <= end) {
+                    int expectedCrc = 0;
+                    for (int h = bang + 1; h <= bang + 4 && expectedCrc != -1; h++) {
+                        int digit = hexValue(input.get(h));
+                        expectedCrc = digit == -1 ? -1 : (expectedCrc << 4) | digit;
+                    }
+                    if (expectedCrc != -1) {
+                        return calculatedCrc(input, i, bang + 1) == expectedCrc;
+                    }
+                }
+                // Any other '/' before this '!' would end at the same '!'.
+                i = bang + 1;
+                lineStart = -1;
+                continue;
+            }
+            if (b == '\n' || b == '\r') {
+                lineStart = i + 1;
+            }
+            i++;
+        }
+        return false;
     }
 }
@@ -0,0 +1,47 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+/**
+ * The DSMR CRC16 (polynomial 0xA001, initial value 0) calculated incrementally as the bytes come in.
+ */
+public final class Crc16 {
+
+    private int crc = 0x0000;
+
+    public Crc16 update(int b) {
+        crc = CheckCRC.updateCrc(crc, b);
+        return this;
+    }
+
+    public Crc16 update(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            crc = CheckCRC.updateCrc(crc, bytes[i]);
+        }
+        return this;
+    }
+
+    public int getValue() {
+        return crc;
+    }
+
+    public void reset() {
+        crc = 0x0000;
+    }
+
+}
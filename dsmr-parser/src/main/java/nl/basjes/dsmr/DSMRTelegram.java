@@ -124,4 +124,12 @@ public class DSMRTelegram {
     /** Slave e-meter device id               */ String        slaveEMeterEquipmentId;
     /** Slave e-meter measurement timestamp   */ ZonedDateTime slaveEMeterTimestamp;
     /** Slave e-meter consumption in kWh      */ Double        slaveEMeterkWh;
+
+    /**
+     * Makes sure all fields have their value before they are read directly (i.e. not via the getters).
+     * Only needed for a telegram that fills its fields lazily.
+     */
+    void decodeAll() {
+        // All fields are always filled
+    }
 }
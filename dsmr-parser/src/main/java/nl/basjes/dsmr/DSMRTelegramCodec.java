@@ -0,0 +1,417 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A compact binary form of a {@link DSMRTelegram}
+ * (for the recorded telegrams in the testfiles this is a bit less than a fifth of the size of the telegram text).
+ * <ul>
+ * <li>A version byte followed by a bitmap that tells which of the (nullable) fields are present.</li>
+ * <li>Counters are written as variable length integers.</li>
+ * <li>Measurements (kWh, kW, V, A, m3) are written as a variable length fixed point value in 0.001 units.
+ *     Values that cannot be represented exactly that way are written as a full double.</li>
+ * <li>Timestamps are written as epoch seconds and the time zone.</li>
+ * </ul>
+ * The order of the fields is part of the format: new fields must be added at the end
+ * (in a new version) so older data can still be read.
+ */
+public final class DSMRTelegramCodec {
+
+    private DSMRTelegramCodec() {
+        // Utility class
+    }
+
+    public static final int VERSION = 1;
+
+    private static final long SCALE = 1000;
+    // Larger values cannot be stored in the fixed point form without losing precision.
+    private static final double MAX_FIXED_POINT = 1L << 50;
+
+    private static final int ZONE_OFFSET = 0;
+    private static final int ZONE_REGION = 1;
+
+    /**
+     * @param telegram The telegram (may not be null)
+     * @return The binary form of the telegram.
+     */
+    public static byte[] encode(DSMRTelegram telegram) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            write(telegram, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            // Cannot happen on a ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param bytes The binary form of a telegram as created by {@link #encode(DSMRTelegram)}.
+     * @return The telegram
+     * @throws IOException If the bytes are not a (complete) encoded telegram.
+     */
+    public static DSMRTelegram decode(byte[] bytes) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    // ------------------------------------------
+
+    public static void write(DSMRTelegram telegram, DataOutput out) throws IOException {
+        telegram.decodeAll();
+        out.writeByte(VERSION);
+        out.writeByte((telegram.isValid ? 1 : 0) | (telegram.validCRC ? 2 : 0));
+
+        Object[] fields = fields(telegram);
+        long present = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                present |= 1L << i;
+            }
+        }
+        writeVarLong(out, present);
+
+        for (Object field : fields) {
+            if (field instanceof String) {
+                writeString(out, (String) field);
+            } else if (field instanceof ZonedDateTime) {
+                writeTimestamp(out, (ZonedDateTime) field);
+            } else if (field instanceof Long) {
+                writeVarLong(out, zigZag((Long) field));
+            } else if (field instanceof Double) {
+                writeMeasurement(out, (Double) field);
+            }
+        }
+
+        writeVarLong(out, telegram.powerFailureEventLog.size());
+        for (PowerFailureEvent event : telegram.powerFailureEventLog) {
+            writeOptionalTimestamp(out, event.startTime);
+            writeOptionalTimestamp(out, event.endTime);
+            if (event.duration == null) {
+                out.writeByte(0);
+            } else {
+                out.writeByte(1);
+                writeVarLong(out, zigZag(event.duration.getSeconds()));
+            }
+        }
+
+        writeVarLong(out, telegram.mBusEvents.size());
+        for (Map.Entry<Integer, MBusEvent> entry : telegram.mBusEvents.entrySet()) {
+            MBusEvent event = entry.getValue();
+            writeVarLong(out, zigZag(entry.getKey()));
+            out.writeByte(
+                (event.deviceType  == null ? 0 : 1)  |
+                (event.equipmentId == null ? 0 : 2)  |
+                (event.value       == null ? 0 : 4)  |
+                (event.unit        == null ? 0 : 8)  |
+                (event.timestamp   == null ? 0 : 16));
+            if (event.deviceType != null) {
+                writeVarLong(out, zigZag(event.deviceType));
+            }
+            if (event.equipmentId != null) {
+                writeString(out, event.equipmentId);
+            }
+            if (event.value != null) {
+                writeMeasurement(out, event.value);
+            }
+            if (event.unit != null) {
+                writeString(out, event.unit);
+            }
+            if (event.timestamp != null) {
+                writeTimestamp(out, event.timestamp);
+            }
+        }
+    }
+
+    // The order of these is the order in the binary format.
+    private static Object[] fields(DSMRTelegram t) {
+        return new Object[]{
+            t.rawIdent, t.equipmentBrandTag, t.ident, t.crc, t.p1Version, t.timestamp, t.equipmentId,
+            t.electricityTariffIndicator,
+            t.electricityReceivedLowTariff, t.electricityReceivedNormalTariff, t.electricityPowerReceived,
+            t.electricityReturnedLowTariff, t.electricityReturnedNormalTariff, t.electricityPowerReturned,
+            t.powerFailures, t.longPowerFailures, t.powerFailureEventLogSize,
+            t.voltageSagsPhaseL1,   t.voltageSagsPhaseL2,   t.voltageSagsPhaseL3,
+            t.voltageSwellsPhaseL1, t.voltageSwellsPhaseL2, t.voltageSwellsPhaseL3,
+            t.voltageL1,            t.voltageL2,            t.voltageL3,
+            t.currentL1,            t.currentL2,            t.currentL3,
+            t.powerReceivedL1,      t.powerReceivedL2,      t.powerReceivedL3,
+            t.powerReturnedL1,      t.powerReturnedL2,      t.powerReturnedL3,
+            t.messageCodes, t.message,
+            t.gasEquipmentId, t.gasTimestamp, t.gasM3,
+            t.slaveEMeterEquipmentId, t.slaveEMeterTimestamp, t.slaveEMeterkWh,
+        };
+    }
+
+    public static DSMRTelegram read(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported encoded DSMRTelegram version " + version);
+        }
+        DSMRTelegram t = new DSMRTelegram();
+        int flags = in.readUnsignedByte();
+        t.isValid  = (flags & 1) != 0;
+        t.validCRC = (flags & 2) != 0;
+
+        final long present = readVarLong(in);
+        // Reads the next field (in the same order as in fields(...)) if it is present.
+        FieldReader next = new FieldReader(in, present);
+
+        t.rawIdent                        = next.string();
+        t.equipmentBrandTag               = next.string();
+        t.ident                           = next.string();
+        t.crc                             = next.string();
+        t.p1Version                       = next.string();
+        t.timestamp                       = next.timestamp();
+        t.equipmentId                     = next.string();
+        t.electricityTariffIndicator      = next.counter();
+        t.electricityReceivedLowTariff    = next.measurement();
+        t.electricityReceivedNormalTariff = next.measurement();
+        t.electricityPowerReceived        = next.measurement();
+        t.electricityReturnedLowTariff    = next.measurement();
+        t.electricityReturnedNormalTariff = next.measurement();
+        t.electricityPowerReturned        = next.measurement();
+        t.powerFailures                   = next.counter();
+        t.longPowerFailures               = next.counter();
+        t.powerFailureEventLogSize        = next.counter();
+        t.voltageSagsPhaseL1              = next.counter();
+        t.voltageSagsPhaseL2              = next.counter();
+        t.voltageSagsPhaseL3              = next.counter();
+        t.voltageSwellsPhaseL1            = next.counter();
+        t.voltageSwellsPhaseL2            = next.counter();
+        t.voltageSwellsPhaseL3            = next.counter();
+        t.voltageL1                       = next.measurement();
+        t.voltageL2                       = next.measurement();
+        t.voltageL3                       = next.measurement();
+        t.currentL1                       = next.measurement();
+        t.currentL2                       = next.measurement();
+        t.currentL3                       = next.measurement();
+        t.powerReceivedL1                 = next.measurement();
+        t.powerReceivedL2                 = next.measurement();
+        t.powerReceivedL3                 = next.measurement();
+        t.powerReturnedL1                 = next.measurement();
+        t.powerReturnedL2                 = next.measurement();
+        t.powerReturnedL3                 = next.measurement();
+        t.messageCodes                    = next.string();
+        t.message                         = next.string();
+        t.gasEquipmentId                  = next.string();
+        t.gasTimestamp                    = next.timestamp();
+        t.gasM3                           = next.measurement();
+        t.slaveEMeterEquipmentId          = next.string();
+        t.slaveEMeterTimestamp            = next.timestamp();
+        t.slaveEMeterkWh                  = next.measurement();
+
+        long powerFailureEvents = readVarLong(in);
+        for (long i = 0; i < powerFailureEvents; i++) {
+            PowerFailureEvent event = new PowerFailureEvent();
+            event.startTime = readOptionalTimestamp(in);
+            event.endTime   = readOptionalTimestamp(in);
+            if (in.readUnsignedByte() != 0) {
+                event.duration = Duration.ofSeconds(unZigZag(readVarLong(in)));
+            }
+            t.powerFailureEventLog.add(event);
+        }
+
+        long mBusEvents = readVarLong(in);
+        for (long i = 0; i < mBusEvents; i++) {
+            int key = (int) unZigZag(readVarLong(in));
+            int eventFlags = in.readUnsignedByte();
+            MBusEvent event = new MBusEvent();
+            if ((eventFlags & 1) != 0) {
+                event.deviceType = (int) unZigZag(readVarLong(in));
+            }
+            if ((eventFlags & 2) != 0) {
+                event.equipmentId = readString(in);
+            }
+            if ((eventFlags & 4) != 0) {
+                event.value = readMeasurement(in);
+            }
+            if ((eventFlags & 8) != 0) {
+                event.unit = readString(in);
+            }
+            if ((eventFlags & 16) != 0) {
+                event.timestamp = readTimestamp(in);
+            }
+            t.mBusEvents.put(key, event);
+        }
+        return t;
+    }
+
+    private static final class FieldReader {
+        private final DataInput in;
+        private final long      present;
+        private int             field = 0;
+
+        FieldReader(DataInput in, long present) {
+            this.in = in;
+            this.present = present;
+        }
+
+        private boolean isPresent() {
+            return (present & (1L << field++)) != 0;
+        }
+
+        String string() throws IOException {
+            return isPresent() ? readString(in) : null;
+        }
+
+        ZonedDateTime timestamp() throws IOException {
+            return isPresent() ? readTimestamp(in) : null;
+        }
+
+        Long counter() throws IOException {
+            return isPresent() ? unZigZag(readVarLong(in)) : null;
+        }
+
+        Double measurement() throws IOException {
+            return isPresent() ? readMeasurement(in) : null;
+        }
+    }
+
+    // ------------------------------------------
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.writeByte((int) remaining);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        long length = readVarLong(in);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Write a single measurement in the form used in the telegram encoding.
+     * The lowest bit tells if it is a fixed point value (0) or if a full double follows (1).
+     */
+    public static void writeMeasurement(DataOutput out, double value) throws IOException {
+        if (Math.abs(value) < MAX_FIXED_POINT) {
+            long fixedPoint = Math.round(value * SCALE);
+            if (Double.doubleToLongBits(fixedPoint / (double) SCALE) == Double.doubleToLongBits(value)) {
+                writeVarLong(out, zigZag(fixedPoint) << 1);
+                return;
+            }
+        }
+        writeVarLong(out, 1);
+        out.writeDouble(value);
+    }
+
+    public static double readMeasurement(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if ((value & 1) != 0) {
+            return in.readDouble();
+        }
+        return unZigZag(value >>> 1) / (double) SCALE;
+    }
+
+    private static void writeTimestamp(DataOutput out, ZonedDateTime timestamp) throws IOException {
+        writeVarLong(out, zigZag(timestamp.toEpochSecond()));
+        ZoneId zone = timestamp.getZone();
+        if (zone instanceof ZoneOffset) {
+            out.writeByte(ZONE_OFFSET);
+            writeVarLong(out, zigZag(((ZoneOffset) zone).getTotalSeconds()));
+        } else {
+            out.writeByte(ZONE_REGION);
+            writeString(out, zone.getId());
+        }
+    }
+
+    private static ZonedDateTime readTimestamp(DataInput in) throws IOException {
+        Instant instant = Instant.ofEpochSecond(unZigZag(readVarLong(in)));
+        ZoneId zone;
+        int zoneType = in.readUnsignedByte();
+        switch (zoneType) {
+            case ZONE_OFFSET:
+                zone = ZoneOffset.ofTotalSeconds((int) unZigZag(readVarLong(in)));
+                break;
+            case ZONE_REGION:
+                zone = ZoneId.of(readString(in));
+                break;
+            default:
+                throw new IOException("Unknown time zone type " + zoneType);
+        }
+        return ZonedDateTime.ofInstant(instant, zone);
+    }
+
+    private static void writeOptionalTimestamp(DataOutput out, ZonedDateTime timestamp) throws IOException {
+        if (timestamp == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(1);
+            writeTimestamp(out, timestamp);
+        }
+    }
+
+    private static ZonedDateTime readOptionalTimestamp(DataInput in) throws IOException {
+        return in.readUnsignedByte() == 0 ? null : readTimestamp(in);
+    }
+
+}
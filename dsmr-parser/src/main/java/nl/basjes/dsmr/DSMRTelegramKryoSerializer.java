@@ -0,0 +1,64 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Kryo serializer for {@link DSMRTelegram} that uses the binary form of the {@link DSMRTelegramCodec}.
+ */
+public class DSMRTelegramKryoSerializer extends Serializer<DSMRTelegram> {
+
+    /**
+     * Register the DSMRTelegram (and the {@link LazyDSMRTelegram}) with this serializer.
+     * A LazyDSMRTelegram is written in exactly the same form and is read back as a normal DSMRTelegram.
+     * @param kryo The Kryo instance in which the classes must be registered
+     */
+    public static void configureKryo(Kryo kryo) {
+        DSMRTelegramKryoSerializer serializer = new DSMRTelegramKryoSerializer();
+        kryo.register(DSMRTelegram.class,     serializer);
+        kryo.register(LazyDSMRTelegram.class, serializer);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, DSMRTelegram telegram) {
+        try {
+            DSMRTelegramCodec.write(telegram, new DataOutputStream(output));
+        } catch (IOException e) {
+            throw new KryoException(e);
+        }
+    }
+
+    @Override
+    public DSMRTelegram read(Kryo kryo, Input input, Class<? extends DSMRTelegram> type) {
+        try {
+            return DSMRTelegramCodec.read(new DataInputStream(input));
+        } catch (IOException e) {
+            throw new KryoException(e);
+        }
+    }
+
+}
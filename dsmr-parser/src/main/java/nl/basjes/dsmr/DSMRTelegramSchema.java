@@ -0,0 +1,216 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * All fields of a {@link DSMRTelegram} (and of its power failure and MBus events) as static tables.
+ * A sink (NiFi attributes, InfluxDB points, ...) iterates over these tables instead of having its own
+ * hand written list of fields and it can prepare everything that depends only on the field (like the
+ * name it uses for it) once, using the index of the field in its table.
+ */
+// CHECKSTYLE.OFF: LineLength
+// CHECKSTYLE.OFF: ParenPad
+public final class DSMRTelegramSchema {
+
+    private DSMRTelegramSchema() {
+    }
+
+    public enum Type {
+        BOOLEAN,
+        STRING,
+        INTEGER,
+        LONG,
+        DOUBLE,
+        TIMESTAMP
+    }
+
+    /**
+     * A single field.
+     * @param <S> The class that has this field.
+     * @param <T> The (Java) type of the value.
+     */
+    public static final class Field<S, T> {
+        private final int                             index;
+        private final String                          name;
+        private final Type                            type;
+        private final DsmrField                       dsmrField;
+        private final Function<? super S, ? extends T> accessor;
+
+        private Field(int index, String name, Type type, DsmrField dsmrField, Function<? super S, ? extends T> accessor) {
+            this.index     = index;
+            this.name      = name;
+            this.type      = type;
+            this.dsmrField = dsmrField;
+            this.accessor  = accessor;
+        }
+
+        /** @return The position of this field in its table. */
+        public int getIndex() {
+            return index;
+        }
+
+        /** @return The name of this field (the same as the name of the getter without the 'get'/'is'). */
+        public String getName() {
+            return name;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /** @return The field in the telegram this value comes from, null if it is not a single field (i.e. derived or from an MBus device). */
+        public DsmrField getDsmrField() {
+            return dsmrField;
+        }
+
+        /** @return The value of this field, null if not present. */
+        public T get(S source) {
+            return accessor.apply(source);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class Builder<S> {
+        private final List<Field<S, ?>> fields = new ArrayList<>();
+
+        private <T> Builder<S> add(String name, Type type, DsmrField dsmrField, Function<? super S, ? extends T> accessor) {
+            fields.add(new Field<S, T>(fields.size(), name, type, dsmrField, accessor));
+            return this;
+        }
+
+        private Builder<S> bool(String name, DsmrField dsmrField, Function<? super S, Boolean> accessor) {
+            return add(name, Type.BOOLEAN, dsmrField, accessor);
+        }
+
+        private Builder<S> string(String name, DsmrField dsmrField, Function<? super S, String> accessor) {
+            return add(name, Type.STRING, dsmrField, accessor);
+        }
+
+        private Builder<S> integer(String name, DsmrField dsmrField, Function<? super S, Integer> accessor) {
+            return add(name, Type.INTEGER, dsmrField, accessor);
+        }
+
+        private Builder<S> number(String name, DsmrField dsmrField, Function<? super S, Long> accessor) {
+            return add(name, Type.LONG, dsmrField, accessor);
+        }
+
+        private Builder<S> measured(String name, DsmrField dsmrField, Function<? super S, Double> accessor) {
+            return add(name, Type.DOUBLE, dsmrField, accessor);
+        }
+
+        private Builder<S> timestamp(String name, DsmrField dsmrField, Function<? super S, ZonedDateTime> accessor) {
+            return add(name, Type.TIMESTAMP, dsmrField, accessor);
+        }
+
+        private List<Field<S, ?>> build() {
+            return Collections.unmodifiableList(fields);
+        }
+    }
+
+    /**
+     * The fields of the {@link DSMRTelegram} itself.
+     * The power failure event log and the MBus events are lists; only their sizes are in here,
+     * the fields of the events are in {@link #POWER_FAILURE_EVENT_FIELDS} and {@link #MBUS_EVENT_FIELDS}.
+     */
+    public static final List<Field<DSMRTelegram, ?>> TELEGRAM_FIELDS = new Builder<DSMRTelegram>()
+        .bool(     "valid",                           null,                                         DSMRTelegram::isValid)
+        .bool(     "validCRC",                        null,                                         DSMRTelegram::isValidCRC)
+        .string(   "rawIdent",                        null,                                         DSMRTelegram::getRawIdent)
+        .string(   "equipmentBrandTag",               null,                                         DSMRTelegram::getEquipmentBrandTag)
+        .string(   "ident",                           null,                                         DSMRTelegram::getIdent)
+        .string(   "crc",                             null,                                         DSMRTelegram::getCrc)
+
+        .string(   "p1Version",                       DsmrField.P1_VERSION,                         DSMRTelegram::getP1Version)
+        .timestamp("timestamp",                       DsmrField.TIMESTAMP,                          DSMRTelegram::getTimestamp)
+        .string(   "equipmentId",                     DsmrField.EQUIPMENT_ID,                       DSMRTelegram::getEquipmentId)
+
+        .number(   "electricityTariffIndicator",      DsmrField.ELECTRICITY_TARIFF_INDICATOR,       DSMRTelegram::getElectricityTariffIndicator)
+        .measured( "electricityReceivedLowTariff",    DsmrField.ELECTRICITY_RECEIVED_LOW_TARIFF,    DSMRTelegram::getElectricityReceivedLowTariff)
+        .measured( "electricityReceivedNormalTariff", DsmrField.ELECTRICITY_RECEIVED_NORMAL_TARIFF, DSMRTelegram::getElectricityReceivedNormalTariff)
+        .measured( "electricityReturnedLowTariff",    DsmrField.ELECTRICITY_RETURNED_LOW_TARIFF,    DSMRTelegram::getElectricityReturnedLowTariff)
+        .measured( "electricityReturnedNormalTariff", DsmrField.ELECTRICITY_RETURNED_NORMAL_TARIFF, DSMRTelegram::getElectricityReturnedNormalTariff)
+        .measured( "electricityPowerReceived",        DsmrField.ELECTRICITY_POWER_RECEIVED,         DSMRTelegram::getElectricityPowerReceived)
+        .measured( "electricityPowerReturned",        DsmrField.ELECTRICITY_POWER_RETURNED,         DSMRTelegram::getElectricityPowerReturned)
+
+        .number(   "powerFailures",                   DsmrField.POWER_FAILURES,                     DSMRTelegram::getPowerFailures)
+        .number(   "longPowerFailures",               DsmrField.LONG_POWER_FAILURES,                DSMRTelegram::getLongPowerFailures)
+        .number(   "powerFailureEventLogSize",        DsmrField.POWER_FAILURE_EVENT_LOG,            DSMRTelegram::getPowerFailureEventLogSize)
+
+        .number(   "voltageSagsPhaseL1",              DsmrField.VOLTAGE_SAGS_PHASE_L1,              DSMRTelegram::getVoltageSagsPhaseL1)
+        .number(   "voltageSagsPhaseL2",              DsmrField.VOLTAGE_SAGS_PHASE_L2,              DSMRTelegram::getVoltageSagsPhaseL2)
+        .number(   "voltageSagsPhaseL3",              DsmrField.VOLTAGE_SAGS_PHASE_L3,              DSMRTelegram::getVoltageSagsPhaseL3)
+        .number(   "voltageSwellsPhaseL1",            DsmrField.VOLTAGE_SWELLS_PHASE_L1,            DSMRTelegram::getVoltageSwellsPhaseL1)
+        .number(   "voltageSwellsPhaseL2",            DsmrField.VOLTAGE_SWELLS_PHASE_L2,            DSMRTelegram::getVoltageSwellsPhaseL2)
+        .number(   "voltageSwellsPhaseL3",            DsmrField.VOLTAGE_SWELLS_PHASE_L3,            DSMRTelegram::getVoltageSwellsPhaseL3)
+
+        .measured( "voltageL1",                       DsmrField.VOLTAGE_L1,                         DSMRTelegram::getVoltageL1)
+        .measured( "voltageL2",                       DsmrField.VOLTAGE_L2,                         DSMRTelegram::getVoltageL2)
+        .measured( "voltageL3",                       DsmrField.VOLTAGE_L3,                         DSMRTelegram::getVoltageL3)
+        .measured( "currentL1",                       DsmrField.CURRENT_L1,                         DSMRTelegram::getCurrentL1)
+        .measured( "currentL2",                       DsmrField.CURRENT_L2,                         DSMRTelegram::getCurrentL2)
+        .measured( "currentL3",                       DsmrField.CURRENT_L3,                         DSMRTelegram::getCurrentL3)
+        .measured( "powerReceivedL1",                 DsmrField.POWER_RECEIVED_L1,                  DSMRTelegram::getPowerReceivedL1)
+        .measured( "powerReceivedL2",                 DsmrField.POWER_RECEIVED_L2,                  DSMRTelegram::getPowerReceivedL2)
+        .measured( "powerReceivedL3",                 DsmrField.POWER_RECEIVED_L3,                  DSMRTelegram::getPowerReceivedL3)
+        .measured( "powerReturnedL1",                 DsmrField.POWER_RETURNED_L1,                  DSMRTelegram::getPowerReturnedL1)
+        .measured( "powerReturnedL2",                 DsmrField.POWER_RETURNED_L2,                  DSMRTelegram::getPowerReturnedL2)
+        .measured( "powerReturnedL3",                 DsmrField.POWER_RETURNED_L3,                  DSMRTelegram::getPowerReturnedL3)
+
+        .string(   "messageCodes",                    DsmrField.MESSAGE_CODES,                      DSMRTelegram::getMessageCodes)
+        .string(   "message",                         DsmrField.MESSAGE,                            DSMRTelegram::getMessage)
+
+        .integer(  "mBusEvents",                      null,                                         telegram -> telegram.getMBusEvents().size())
+
+        .string(   "gasEquipmentId",                  null,                                         DSMRTelegram::getGasEquipmentId)
+        .timestamp("gasTimestamp",                    null,                                         DSMRTelegram::getGasTimestamp)
+        .measured( "gasM3",                           null,                                         DSMRTelegram::getGasM3)
+
+        .string(   "slaveEMeterEquipmentId",          null,                                         DSMRTelegram::getSlaveEMeterEquipmentId)
+        .timestamp("slaveEMeterTimestamp",            null,                                         DSMRTelegram::getSlaveEMeterTimestamp)
+        .measured( "slaveEMeterkWh",                  null,                                         DSMRTelegram::getSlaveEMeterkWh)
+        .build();
+
+    /** The fields of a single entry in {@link DSMRTelegram#getPowerFailureEventLog()}. */
+    public static final List<Field<PowerFailureEvent, ?>> POWER_FAILURE_EVENT_FIELDS = new Builder<PowerFailureEvent>()
+        .timestamp("startTime",       null, PowerFailureEvent::getStartTime)
+        .timestamp("endTime",         null, PowerFailureEvent::getEndTime)
+        .number(   "durationSeconds", null, event -> event.getDuration() == null ? null : event.getDuration().getSeconds())
+        .build();
+
+    /** The fields of a single value in {@link DSMRTelegram#getMBusEvents()}. */
+    public static final List<Field<MBusEvent, ?>> MBUS_EVENT_FIELDS = new Builder<MBusEvent>()
+        .integer(  "deviceType",      null, MBusEvent::getDeviceType)
+        .string(   "equipmentId",     null, MBusEvent::getEquipmentId)
+        .timestamp("timestamp",       null, MBusEvent::getTimestamp)
+        .measured( "value",           null, MBusEvent::getValue)
+        .string(   "unit",            null, MBusEvent::getUnit)
+        .build();
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import lombok.Getter;
+
+/**
+ * The fields of a DSMR telegram that are identified by a single COSEM id (OBIS reference).
+ * The MBus devices (gas, slave e-meter, ...) are not in here because they use one COSEM id per channel.
+ */
+// CHECKSTYLE.OFF: LineLength
+// CHECKSTYLE.OFF: ParenPad
+@Getter
+public enum DsmrField {
+    P1_VERSION(                          "1-3:0.2.8",   Type.STRING,            null ), // P1 Version information
+    TIMESTAMP(                           "0-0:1.0.0",   Type.TIMESTAMP,         null ), // Timestamp
+    EQUIPMENT_ID(                        "0-0:96.1.1",  Type.STRING,            null ), // Equipment identifier
+
+    ELECTRICITY_TARIFF_INDICATOR(        "0-0:96.14.0", Type.LONG,              null ), // Tariff indicator electricity
+    ELECTRICITY_RECEIVED_LOW_TARIFF(     "1-0:1.8.1",   Type.DOUBLE,            "kWh"), // Meter Reading electricity delivered to client (low tariff) in 0,001 kWh
+    ELECTRICITY_RECEIVED_NORMAL_TARIFF(  "1-0:1.8.2",   Type.DOUBLE,            "kWh"), // Meter Reading electricity delivered to client (normal tariff) in 0,001 kWh
+    ELECTRICITY_RETURNED_LOW_TARIFF(     "1-0:2.8.1",   Type.DOUBLE,            "kWh"), // Meter Reading electricity delivered by client (low tariff) in 0,001 kWh
+    ELECTRICITY_RETURNED_NORMAL_TARIFF(  "1-0:2.8.2",   Type.DOUBLE,            "kWh"), // Meter Reading electricity delivered by client (normal tariff) in 0,001 kWh
+    ELECTRICITY_POWER_RECEIVED(          "1-0:1.7.0",   Type.DOUBLE,            "kW" ), // Actual electricity power delivered (+P) in 1 Watt resolution
+    ELECTRICITY_POWER_RETURNED(          "1-0:2.7.0",   Type.DOUBLE,            "kW" ), // Actual electricity power received (-P) in 1 Watt resolution
+
+    POWER_FAILURES(                      "0-0:96.7.21", Type.LONG,              null ), // Number of power failures in any phases
+    LONG_POWER_FAILURES(                 "0-0:96.7.9",  Type.LONG,              null ), // Number of long power failures in any phases
+    POWER_FAILURE_EVENT_LOG(             "1-0:99.97.0", Type.POWER_FAILURE_LOG, null ), // Power failure event log
+
+    VOLTAGE_SAGS_PHASE_L1(               "1-0:32.32.0", Type.LONG,              null ), // Number of voltage sags in phase L1
+    VOLTAGE_SAGS_PHASE_L2(               "1-0:52.32.0", Type.LONG,              null ), // Number of voltage sags in phase L2
+    VOLTAGE_SAGS_PHASE_L3(               "1-0:72.32.0", Type.LONG,              null ), // Number of voltage sags in phase L3
+    VOLTAGE_SWELLS_PHASE_L1(             "1-0:32.36.0", Type.LONG,              null ), // Number of voltage swells in phase L1
+    VOLTAGE_SWELLS_PHASE_L2(             "1-0:52.36.0", Type.LONG,              null ), // Number of voltage swells in phase L2
+    VOLTAGE_SWELLS_PHASE_L3(             "1-0:72.36.0", Type.LONG,              null ), // Number of voltage swells in phase L3
+    VOLTAGE_L1(                          "1-0:32.7.0",  Type.DOUBLE,            "V"  ), // Instantaneous voltage L1
+    VOLTAGE_L2(                          "1-0:52.7.0",  Type.DOUBLE,            "V"  ), // Instantaneous voltage L2
+    VOLTAGE_L3(                          "1-0:72.7.0",  Type.DOUBLE,            "V"  ), // Instantaneous voltage L3
+    CURRENT_L1(                          "1-0:31.7.0",  Type.DOUBLE,            "A"  ), // Instantaneous current L1
+    CURRENT_L2(                          "1-0:51.7.0",  Type.DOUBLE,            "A"  ), // Instantaneous current L2
+    CURRENT_L3(                          "1-0:71.7.0",  Type.DOUBLE,            "A"  ), // Instantaneous current L3
+    POWER_RECEIVED_L1(                   "1-0:21.7.0",  Type.DOUBLE,            "kW" ), // Instantaneous active power L1 (+P)
+    POWER_RECEIVED_L2(                   "1-0:41.7.0",  Type.DOUBLE,            "kW" ), // Instantaneous active power L2 (+P)
+    POWER_RECEIVED_L3(                   "1-0:61.7.0",  Type.DOUBLE,            "kW" ), // Instantaneous active power L3 (+P)
+    POWER_RETURNED_L1(                   "1-0:22.7.0",  Type.DOUBLE,            "kW" ), // Instantaneous active power L1 (-P)
+    POWER_RETURNED_L2(                   "1-0:42.7.0",  Type.DOUBLE,            "kW" ), // Instantaneous active power L2 (-P)
+    POWER_RETURNED_L3(                   "1-0:62.7.0",  Type.DOUBLE,            "kW" ), // Instantaneous active power L3 (-P)
+
+    MESSAGE_CODES(                       "0-0:96.13.1", Type.STRING,            null ), // Text message codes: numeric 8 digits.
+    MESSAGE(                             "0-0:96.13.0", Type.STRING,            null ); // Text message max 1024 characters.
+
+    public enum Type {
+        STRING,
+        TIMESTAMP,
+        LONG,
+        DOUBLE,
+        POWER_FAILURE_LOG
+    }
+
+    /** The COSEM id as it appears at the start of the line in the telegram. */
+    private final String cosemId;
+    private final Type   type;
+    /** The only allowed unit (only for the DOUBLE fields). */
+    private final String unit;
+
+    DsmrField(String cosemId, Type type, String unit) {
+        this.cosemId = cosemId;
+        this.type    = type;
+        this.unit    = unit;
+    }
+}
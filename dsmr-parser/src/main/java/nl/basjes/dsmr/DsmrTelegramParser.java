@@ -0,0 +1,31 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr;
+
+/**
+ * Turns the text of a single DSMR telegram into a {@link DSMRTelegram}.
+ * Implementations must be safe to use from many threads at the same time.
+ */
+public interface DsmrTelegramParser {
+    /**
+     * @param telegram The full text of the telegram
+     * @return The parsed telegram or null if the input was null or empty.
+     */
+    DSMRTelegram parse(String telegram);
+}
@@ -0,0 +1,76 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr;
+
+public final class DsmrTelegramParserFactory {
+
+    private DsmrTelegramParserFactory() {
+        // Utility class
+    }
+
+    public enum Engine {
+        /** The parser generated from the Dsmr.g4 grammar. */
+        ANTLR,
+        /** The hand written single pass scanner which is a lot faster. */
+        SINGLE_PASS
+    }
+
+    /**
+     * @return The default parser (which is the ANTLR based one).
+     */
+    public static DsmrTelegramParser create() {
+        return create(Engine.ANTLR);
+    }
+
+    public static DsmrTelegramParser create(Engine engine) {
+        switch (engine) {
+            case SINGLE_PASS:
+                return ScanDsmrTelegram::parse;
+            case ANTLR:
+            default:
+                return ParseDsmrTelegram::parse;
+        }
+    }
+
+    /**
+     * A parser that only converts the fields that are needed and skips everything else.
+     * @param options Which fields are needed.
+     * @return A parser that gives the same values as the {@link Engine#SINGLE_PASS} parser for the selected fields
+     * (all other fields are null).
+     */
+    public static DsmrTelegramParser create(ParseOptions options) {
+        final ThreadLocal<ProjectingParser> parser = ThreadLocal.withInitial(() -> new ProjectingParser(options));
+        return telegram -> parser.get().parse(telegram);
+    }
+
+    // The parser and the telegram it fills are reused by a single thread.
+    private static final class ProjectingParser {
+        private final PrimitiveDsmrTelegramParser parser;
+        private final PrimitiveDSMRTelegram       values = new PrimitiveDSMRTelegram();
+
+        ProjectingParser(ParseOptions options) {
+            parser = new PrimitiveDsmrTelegramParser(options);
+        }
+
+        DSMRTelegram parse(String telegram) {
+            parser.parse(telegram, values);
+            return values.toDSMRTelegram();
+        }
+    }
+}
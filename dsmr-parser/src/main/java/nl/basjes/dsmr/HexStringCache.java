@@ -0,0 +1,76 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import static nl.basjes.dsmr.ParseDsmrTelegram.hexStringToString;
+
+/**
+ * A small bounded cache from the hex encoded form of an identifier to the decoded and interned String.
+ * A meter sends the same equipment identifiers in every telegram so these only need to be decoded once
+ * and all telegrams (and everything downstream that uses them as a tag) share the same String instance.
+ * This is direct mapped on the hex text: a different identifier in the same slot simply replaces the old one.
+ * Thread safe: the entries are immutable and losing a race only means a value is decoded again.
+ */
+final class HexStringCache {
+
+    private static final int SIZE = 64; // Must be a power of 2
+
+    // Much longer values are not identifiers and are not worth caching.
+    private static final int MAX_HEX_LENGTH = 256;
+
+    private static final class Entry {
+        private final String hex;
+        private final String decoded;
+
+        Entry(String hex, String decoded) {
+            this.hex     = hex;
+            this.decoded = decoded;
+        }
+    }
+
+    private final Entry[] entries = new Entry[SIZE];
+    private final boolean trim;
+
+    /**
+     * @param trim Should the decoded value be trimmed.
+     */
+    HexStringCache(boolean trim) {
+        this.trim = trim;
+    }
+
+    String decode(String hex) {
+        if (hex.length() > MAX_HEX_LENGTH) {
+            return decodeUncached(hex);
+        }
+        int hash = hex.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        Entry entry = entries[slot];
+        if (entry != null && entry.hex.equals(hex)) {
+            return entry.decoded;
+        }
+        String decoded = decodeUncached(hex).intern();
+        entries[slot] = new Entry(hex, decoded);
+        return decoded;
+    }
+
+    private String decodeUncached(String hex) {
+        String decoded = hexStringToString(hex);
+        return trim ? decoded.trim() : decoded;
+    }
+
+}
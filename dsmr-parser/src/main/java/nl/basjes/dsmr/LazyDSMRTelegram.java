@@ -0,0 +1,185 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static nl.basjes.dsmr.DsmrField.CURRENT_L1;
+import static nl.basjes.dsmr.DsmrField.CURRENT_L2;
+import static nl.basjes.dsmr.DsmrField.CURRENT_L3;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_POWER_RECEIVED;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_POWER_RETURNED;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RECEIVED_LOW_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RECEIVED_NORMAL_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RETURNED_LOW_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RETURNED_NORMAL_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_TARIFF_INDICATOR;
+import static nl.basjes.dsmr.DsmrField.LONG_POWER_FAILURES;
+import static nl.basjes.dsmr.DsmrField.POWER_FAILURES;
+import static nl.basjes.dsmr.DsmrField.POWER_FAILURE_EVENT_LOG;
+import static nl.basjes.dsmr.DsmrField.POWER_RECEIVED_L1;
+import static nl.basjes.dsmr.DsmrField.POWER_RECEIVED_L2;
+import static nl.basjes.dsmr.DsmrField.POWER_RECEIVED_L3;
+import static nl.basjes.dsmr.DsmrField.POWER_RETURNED_L1;
+import static nl.basjes.dsmr.DsmrField.POWER_RETURNED_L2;
+import static nl.basjes.dsmr.DsmrField.POWER_RETURNED_L3;
+import static nl.basjes.dsmr.DsmrField.TIMESTAMP;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_L1;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_L2;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_L3;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SAGS_PHASE_L1;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SAGS_PHASE_L2;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SAGS_PHASE_L3;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SWELLS_PHASE_L1;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SWELLS_PHASE_L2;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SWELLS_PHASE_L3;
+
+/**
+ * A {@link DSMRTelegram} that only creates the objects of a field (boxed numbers, timestamps,
+ * the power failure events and the MBus events) when it is read for the first time.
+ * The telegram is validated and split by the {@link PrimitiveDsmrTelegramParser} (which keeps all values
+ * as primitives) so a consumer that only reads a few fields does not pay for all the others.
+ * All getters return exactly the same as those of the telegram from the {@link ScanDsmrTelegram}.
+ * <p>
+ * Parsing is thread safe, a single instance is not (the first read of a field changes it).
+ */
+// CHECKSTYLE.OFF: LineLength
+// CHECKSTYLE.OFF: LeftCurly
+// CHECKSTYLE.OFF: MethodParamPad
+public final class LazyDSMRTelegram extends DSMRTelegram {
+
+    private static final ThreadLocal<PrimitiveDsmrTelegramParser> PARSER = ThreadLocal.withInitial(PrimitiveDsmrTelegramParser::new);
+
+    /**
+     * Parse a single telegram.
+     * @param telegram The full text of the telegram
+     * @return The lazy telegram or null if the input was null or empty.
+     */
+    public static LazyDSMRTelegram parse(String telegram) {
+        PrimitiveDSMRTelegram values = new PrimitiveDSMRTelegram();
+        PARSER.get().parse(telegram, values);
+        return values.isEmpty() ? null : new LazyDSMRTelegram(values);
+    }
+
+    private final PrimitiveDSMRTelegram values;
+    private long                        decoded;     // A bit per DsmrField that has been put in the DSMRTelegram fields.
+    private boolean                     crcDecoded;
+    private boolean                     mBusDecoded;
+
+    private LazyDSMRTelegram(PrimitiveDSMRTelegram values) {
+        this.values = values;
+        isValid  = values.isValid;
+        validCRC = values.validCRC;
+        if (!values.hasIdent) {
+            return; // Unparsable
+        }
+        rawIdent          = values.rawIdent.get();
+        equipmentBrandTag = values.equipmentBrandTag.get();
+        ident             = values.ident.get();
+
+        // The texts have already been decoded by the parser.
+        for (DsmrField field : DsmrField.values()) {
+            if (field.getType() == DsmrField.Type.STRING) {
+                decode(field);
+            }
+        }
+    }
+
+    private void decode(DsmrField field) {
+        long bit = 1L << field.ordinal();
+        if ((decoded & bit) == 0) {
+            decoded |= bit;
+            if (values.has(field)) {
+                values.setField(this, field);
+            }
+        }
+    }
+
+    private void decodeMBus() {
+        if (!mBusDecoded) {
+            mBusDecoded = true;
+            values.setMBusEvents(this);
+        }
+    }
+
+    @Override
+    void decodeAll() {
+        for (DsmrField field : DsmrField.values()) {
+            decode(field);
+        }
+        getCrc();
+        decodeMBus();
+    }
+
+    @Override
+    public String getCrc() {
+        if (!crcDecoded) {
+            crcDecoded = true;
+            crc = values.getCrcString();
+        }
+        return crc;
+    }
+
+    @Override public ZonedDateTime           getTimestamp()                       { decode(TIMESTAMP);                          return timestamp;                       }
+
+    @Override public Long                    getElectricityTariffIndicator()      { decode(ELECTRICITY_TARIFF_INDICATOR);       return electricityTariffIndicator;      }
+    @Override public Double                  getElectricityReceivedLowTariff()    { decode(ELECTRICITY_RECEIVED_LOW_TARIFF);    return electricityReceivedLowTariff;    }
+    @Override public Double                  getElectricityReceivedNormalTariff() { decode(ELECTRICITY_RECEIVED_NORMAL_TARIFF); return electricityReceivedNormalTariff; }
+    @Override public Double                  getElectricityPowerReceived()        { decode(ELECTRICITY_POWER_RECEIVED);         return electricityPowerReceived;        }
+    @Override public Double                  getElectricityReturnedLowTariff()    { decode(ELECTRICITY_RETURNED_LOW_TARIFF);    return electricityReturnedLowTariff;    }
+    @Override public Double                  getElectricityReturnedNormalTariff() { decode(ELECTRICITY_RETURNED_NORMAL_TARIFF); return electricityReturnedNormalTariff; }
+    @Override public Double                  getElectricityPowerReturned()        { decode(ELECTRICITY_POWER_RETURNED);         return electricityPowerReturned;        }
+
+    @Override public Long                    getPowerFailures()                   { decode(POWER_FAILURES);                     return powerFailures;                   }
+    @Override public Long                    getLongPowerFailures()               { decode(LONG_POWER_FAILURES);                return longPowerFailures;               }
+    @Override public Long                    getPowerFailureEventLogSize()        { decode(POWER_FAILURE_EVENT_LOG);            return powerFailureEventLogSize;        }
+    @Override public List<PowerFailureEvent> getPowerFailureEventLog()            { decode(POWER_FAILURE_EVENT_LOG);            return powerFailureEventLog;            }
+
+    @Override public Long                    getVoltageSagsPhaseL1()              { decode(VOLTAGE_SAGS_PHASE_L1);              return voltageSagsPhaseL1;              }
+    @Override public Long                    getVoltageSagsPhaseL2()              { decode(VOLTAGE_SAGS_PHASE_L2);              return voltageSagsPhaseL2;              }
+    @Override public Long                    getVoltageSagsPhaseL3()              { decode(VOLTAGE_SAGS_PHASE_L3);              return voltageSagsPhaseL3;              }
+    @Override public Long                    getVoltageSwellsPhaseL1()            { decode(VOLTAGE_SWELLS_PHASE_L1);            return voltageSwellsPhaseL1;            }
+    @Override public Long                    getVoltageSwellsPhaseL2()            { decode(VOLTAGE_SWELLS_PHASE_L2);            return voltageSwellsPhaseL2;            }
+    @Override public Long                    getVoltageSwellsPhaseL3()            { decode(VOLTAGE_SWELLS_PHASE_L3);            return voltageSwellsPhaseL3;            }
+
+    @Override public Double                  getVoltageL1()                       { decode(VOLTAGE_L1);                         return voltageL1;                       }
+    @Override public Double                  getVoltageL2()                       { decode(VOLTAGE_L2);                         return voltageL2;                       }
+    @Override public Double                  getVoltageL3()                       { decode(VOLTAGE_L3);                         return voltageL3;                       }
+    @Override public Double                  getCurrentL1()                       { decode(CURRENT_L1);                         return currentL1;                       }
+    @Override public Double                  getCurrentL2()                       { decode(CURRENT_L2);                         return currentL2;                       }
+    @Override public Double                  getCurrentL3()                       { decode(CURRENT_L3);                         return currentL3;                       }
+    @Override public Double                  getPowerReceivedL1()                 { decode(POWER_RECEIVED_L1);                  return powerReceivedL1;                 }
+    @Override public Double                  getPowerReceivedL2()                 { decode(POWER_RECEIVED_L2);                  return powerReceivedL2;                 }
+    @Override public Double                  getPowerReceivedL3()                 { decode(POWER_RECEIVED_L3);                  return powerReceivedL3;                 }
+    @Override public Double                  getPowerReturnedL1()                 { decode(POWER_RETURNED_L1);                  return powerReturnedL1;                 }
+    @Override public Double                  getPowerReturnedL2()                 { decode(POWER_RETURNED_L2);                  return powerReturnedL2;                 }
+    @Override public Double                  getPowerReturnedL3()                 { decode(POWER_RETURNED_L3);                  return powerReturnedL3;                 }
+
+    @Override public Map<Integer, MBusEvent> getMBusEvents()                      { decodeMBus();                               return mBusEvents;                      }
+    @Override public String                  getGasEquipmentId()                  { decodeMBus();                               return gasEquipmentId;                  }
+    @Override public ZonedDateTime           getGasTimestamp()                    { decodeMBus();                               return gasTimestamp;                    }
+    @Override public Double                  getGasM3()                           { decodeMBus();                               return gasM3;                           }
+    @Override public String                  getSlaveEMeterEquipmentId()          { decodeMBus();                               return slaveEMeterEquipmentId;          }
+    @Override public ZonedDateTime           getSlaveEMeterTimestamp()            { decodeMBus();                               return slaveEMeterTimestamp;            }
+    @Override public Double                  getSlaveEMeterkWh()                  { decodeMBus();                               return slaveEMeterkWh;                  }
+
+}
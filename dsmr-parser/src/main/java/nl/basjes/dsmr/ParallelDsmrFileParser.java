@@ -0,0 +1,238 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.parse.ReadUTF8RecordStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Parses a (large) file with recorded telegrams (i.e. a capture of the P1 port) using all available cores.
+ * The file is cut into chunks, the start of each chunk is moved forward to the next line that looks like
+ * the ident line of a telegram ("/XXX5") and each chunk is split and parsed as a separate task.
+ * The telegrams are returned in the same order as they are in the file.
+ * For files that are too large to keep all telegrams in memory use the variant with a consumer: it only has a
+ * limited number of chunks in flight and hands over the telegrams (in order) as soon as their chunk is done.
+ * Note that anything between the end of a telegram and the next ident line (normally nothing) that is at the
+ * end of a chunk is parsed as a separate (invalid) telegram instead of as the start of the next one.
+ */
+public final class ParallelDsmrFileParser {
+
+    private ParallelDsmrFileParser() {
+        // Utility class
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024; // 4 MiB
+
+    // A chunk is read into a single byte[] so it can never be larger than this.
+    public static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final String DSMR_RECORD_END = "\r\n![0-9A-F]{4}\r\n";
+
+    // How much is read at a time while searching for the start of a telegram.
+    private static final int SEARCH_BLOCK_SIZE = 4096;
+
+    public static List<DSMRTelegram> parse(Path file) throws IOException {
+        return parse(file, DsmrTelegramParserFactory.create(), ForkJoinPool.commonPool());
+    }
+
+    public static List<DSMRTelegram> parse(Path file, DsmrTelegramParser parser, ForkJoinPool pool) throws IOException {
+        return parse(file, parser, pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param file The file with the recorded telegrams.
+     * @param parser The parser that is used for each telegram (must be thread safe).
+     * @param pool The pool in which the chunks are split and parsed.
+     * @param chunkSize The approximate size (in bytes) of the part of the file that is handled by a single task.
+     * @return All telegrams in the same order as they are in the file.
+     * @throws IOException If the file could not be read or a chunk contained a record that was too large.
+     */
+    public static List<DSMRTelegram> parse(Path file, DsmrTelegramParser parser, ForkJoinPool pool, int chunkSize)
+        throws IOException {
+        List<DSMRTelegram> telegrams = new ArrayList<>();
+        parse(file, parser, pool, chunkSize, defaultChunksInFlight(pool), telegrams::add);
+        return telegrams;
+    }
+
+    public static void parse(Path file, Consumer<? super DSMRTelegram> consumer) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        parse(file, DsmrTelegramParserFactory.create(), pool, DEFAULT_CHUNK_SIZE, defaultChunksInFlight(pool), consumer);
+    }
+
+    private static int defaultChunksInFlight(ForkJoinPool pool) {
+        // Keep all threads busy while the consumer handles the oldest chunk.
+        return 2 * pool.getParallelism();
+    }
+
+    /**
+     * Parses the file with at most maxChunksInFlight chunks submitted to the pool (or waiting for the consumer)
+     * at any time, so the memory that is needed does not depend on the size of the file.
+     * @param file The file with the recorded telegrams.
+     * @param parser The parser that is used for each telegram (must be thread safe).
+     * @param pool The pool in which the chunks are split and parsed.
+     * @param chunkSize The approximate size (in bytes) of the part of the file that is handled by a single task.
+     * @param maxChunksInFlight The maximum number of chunks that are being parsed or waiting to be consumed.
+     * @param consumer Receives all telegrams in the same order as they are in the file (in the calling thread).
+     * @throws IOException If the file could not be read, a chunk contained a record that was too large or
+     *                     there was no ident line within {@link #MAX_CHUNK_SIZE} bytes.
+     */
+    public static void parse(Path file, DsmrTelegramParser parser, ForkJoinPool pool, int chunkSize, int maxChunksInFlight,
+                             Consumer<? super DSMRTelegram> consumer) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be positive (was " + chunkSize + ")");
+        }
+        if (maxChunksInFlight <= 0) {
+            throw new IllegalArgumentException("The number of chunks in flight must be positive (was " + maxChunksInFlight + ")");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Long> chunkStarts = findChunkStarts(file, channel, chunkSize);
+
+            Deque<ForkJoinTask<List<DSMRTelegram>>> inFlight = new ArrayDeque<>(maxChunksInFlight);
+            try {
+                for (int chunk = 0; chunk < chunkStarts.size(); chunk++) {
+                    if (inFlight.size() >= maxChunksInFlight) {
+                        consume(inFlight.removeFirst(), consumer);
+                    }
+                    final long start = chunkStarts.get(chunk);
+                    final long end   = chunk + 1 < chunkStarts.size() ? chunkStarts.get(chunk + 1) : channel.size();
+                    inFlight.addLast(pool.submit(() -> parseChunk(channel, start, end, parser)));
+                }
+                while (!inFlight.isEmpty()) {
+                    consume(inFlight.removeFirst(), consumer);
+                }
+            } finally {
+                // Only if something failed: the results are no longer needed.
+                inFlight.forEach(task -> task.cancel(false));
+            }
+        }
+    }
+
+    private static void consume(ForkJoinTask<List<DSMRTelegram>> task, Consumer<? super DSMRTelegram> consumer)
+        throws IOException {
+        try {
+            task.join().forEach(consumer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<Long> findChunkStarts(Path file, FileChannel channel, int chunkSize) throws IOException {
+        List<Long> chunkStarts = new ArrayList<>();
+        long fileSize = channel.size();
+        long chunkStart = 0;
+        chunkStarts.add(chunkStart);
+        while (true) {
+            long searchFrom = chunkStart + Math.min(chunkSize, MAX_CHUNK_SIZE);
+            if (searchFrom >= fileSize) {
+                break;
+            }
+            long telegramStart = findTelegramStart(channel, searchFrom, chunkStart + MAX_CHUNK_SIZE);
+            if (telegramStart == -1) {
+                if (fileSize - chunkStart > MAX_CHUNK_SIZE) {
+                    throw new IOException("No telegram starts within " + MAX_CHUNK_SIZE + " bytes after offset " +
+                        chunkStart + " in " + file);
+                }
+                break;
+            }
+            chunkStarts.add(telegramStart);
+            chunkStart = telegramStart;
+        }
+        return chunkStarts;
+    }
+
+    /**
+     * Find the first line that starts at or after the position and looks like "/XXX5" (the ident line).
+     * @return The offset in the file of the '/' or -1 if there is none at or before the limit.
+     */
+    private static long findTelegramStart(FileChannel channel, long position, long limit) throws IOException {
+        // The ident line must fit in the file and can extend a few bytes beyond the limit.
+        long searchEnd = Math.min(channel.size(), limit + 5);
+        // The '/' must be at the start of a line so we need to see the character before it.
+        long blockStart = Math.max(position - 1, 0);
+        ByteBuffer block = ByteBuffer.allocate(SEARCH_BLOCK_SIZE);
+        while (blockStart < searchEnd) {
+            block.clear();
+            readFully(channel, block, blockStart, searchEnd);
+            int length = block.position();
+            // The last 4 bytes of this block are checked again at the start of the next block.
+            for (int i = 0; i + 5 < length; i++) {
+                if (block.get(i) == '\n' && block.get(i + 1) == '/' && block.get(i + 5) == '5') {
+                    long telegramStart = blockStart + i + 1;
+                    return telegramStart <= limit ? telegramStart : -1;
+                }
+            }
+            if (blockStart + length >= searchEnd) {
+                return -1;
+            }
+            blockStart += length - 5;
+        }
+        return -1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, long end) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining() && offset < end) {
+            int read = channel.read(buffer, offset);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at offset " + offset);
+            }
+            offset += read;
+        }
+    }
+
+    private static List<DSMRTelegram> parseChunk(FileChannel channel, long start, long end, DsmrTelegramParser parser) {
+        try {
+            ByteBuffer chunk = ByteBuffer.allocate(Math.toIntExact(end - start)); // At most MAX_CHUNK_SIZE
+            readFully(channel, chunk, start, end);
+
+            // Large enough to never fail on a record that the sequential reader could handle.
+            ReadUTF8RecordStream reader = new ReadUTF8RecordStream(
+                new ByteArrayInputStream(chunk.array(), 0, chunk.position()),
+                DSMR_RECORD_END,
+                ReadUTF8RecordStream.MAX_MAX_RECORD_SIZE);
+
+            List<DSMRTelegram> telegrams = new ArrayList<>();
+            String record;
+            while ((record = reader.read()) != null) {
+                DSMRTelegram telegram = parser.parse(record);
+                if (telegram != null) {
+                    telegrams.add(telegram);
+                }
+            }
+            return telegrams;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
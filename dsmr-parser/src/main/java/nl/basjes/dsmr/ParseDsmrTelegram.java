@@ -88,7 +88,6 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -122,13 +121,22 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
         // Ignore this type of problem
     }
 
-    public static synchronized DSMRTelegram parse(String telegram) {
+    /**
+     * Parse a single telegram.
+     * This is safe to call from many threads at the same time: all parse state lives in a fresh instance per call
+     * and the only thing that is shared are the (internally synchronized) DFA caches of the generated ANTLR parser.
+     * @param telegram The full text of the telegram
+     * @return The parsed telegram or null if the input was null or empty.
+     */
+    public static DSMRTelegram parse(String telegram) {
         return new ParseDsmrTelegram(telegram).parse();
     }
 
+    // Shared so all telegrams use the same cache of recently seen minutes.
+    private static final TimestampParser TIMESTAMP_PARSER = new TimestampParser();
+
     private final String          telegramString;
     private final DSMRTelegram    dsmrTelegram;
-    private final TimestampParser timestampParser = new TimestampParser();
 
     private ParseDsmrTelegram(String telegram) {
         telegramString = telegram;
@@ -163,41 +171,80 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
 
         this.visitTelegram(telegramContext);
 
-        // Final step cross map the MBus events into usable attributes.
-        fillMBusDataToAttributes(dsmrTelegram);
+        finishTelegram(dsmrTelegram, hasSyntaxError);
+        return dsmrTelegram;
+    }
+
+    /**
+     * The final steps that are the same for all parser engines.
+     * @param telegram The telegram of which all fields have been filled.
+     * @param hasSyntaxError Was there a syntax error while parsing the telegram.
+     */
+    static void finishTelegram(DSMRTelegram telegram, boolean hasSyntaxError) {
+        // Cross map the MBus events into usable attributes.
+        boolean unitsAreValid = fillMBusDataToAttributes(telegram);
 
         // Really old records do not have a P1 version AND do not have a CRC.
         // which makes these records valid.
-        if (hasSyntaxError) {
-            dsmrTelegram.isValid = false;
+        if (hasSyntaxError || !unitsAreValid) {
+            telegram.isValid = false;
         } else {
-            if ((dsmrTelegram.crc == null || dsmrTelegram.crc.isEmpty()) &&
-                (dsmrTelegram.p1Version == null || dsmrTelegram.p1Version.isEmpty())) {
-                dsmrTelegram.isValid = true;
+            if ((telegram.crc == null || telegram.crc.isEmpty()) &&
+                (telegram.p1Version == null || telegram.p1Version.isEmpty())) {
+                telegram.isValid = true;
             } else {
-                dsmrTelegram.isValid = dsmrTelegram.validCRC;
+                telegram.isValid = telegram.validCRC;
             }
         }
 
         // Sanitize the p1Version
-        if (dsmrTelegram.p1Version == null || dsmrTelegram.p1Version.isEmpty()) {
-            dsmrTelegram.p1Version = "2.2";
+        if (telegram.p1Version == null || telegram.p1Version.isEmpty()) {
+            telegram.p1Version = "2.2";
         } else {
-            dsmrTelegram.p1Version = dsmrTelegram.p1Version.replaceAll("([0-9])([0-9]+)", "$1.$2");
+            telegram.p1Version = normalizeP1Version(telegram.p1Version);
         }
-
-        return dsmrTelegram;
     }
 
-    private void mustHaveUnit(MBusEvent mBusEvent, String unit) {
-        if (mBusEvent.unit != null && !mBusEvent.unit.isEmpty() && !unit.equals(mBusEvent.unit)) {
-            hasSyntaxError = true;
+    private static final Pattern P1_VERSION_PATTERN = Pattern.compile("([0-9])([0-9]+)");
+
+    /**
+     * Turns the P1 version as it is in the telegram ("50") into the actual version number ("5.0").
+     * The known versions come from a table, anything else gets a '.' after the first digit.
+     */
+    static String normalizeP1Version(String p1Version) {
+        switch (p1Version) {
+            case "22": return "2.2";
+            case "30": return "3.0";
+            case "40": return "4.0";
+            case "42": return "4.2";
+            case "50": return "5.0";
+            default:
+                break;
+        }
+        for (int i = 0; i < p1Version.length(); i++) {
+            if (!isDigit(p1Version.charAt(i))) {
+                // Not what the parsers allow so we do exactly what was always done.
+                return P1_VERSION_PATTERN.matcher(p1Version).replaceAll("$1.$2");
+            }
+        }
+        if (p1Version.length() < 2) {
+            return p1Version;
         }
+        return p1Version.charAt(0) + "." + p1Version.substring(1);
     }
 
-    private void fillMBusDataToAttributes(DSMRTelegram telegram) {
+    private static boolean hasUnit(MBusEvent mBusEvent, String unit) {
+        return mBusEvent.unit == null || mBusEvent.unit.isEmpty() || unit.equals(mBusEvent.unit);
+    }
+
+    // Returns false if a mapped MBus event has the wrong unit.
+    private static boolean fillMBusDataToAttributes(DSMRTelegram telegram) {
+        boolean unitsAreValid = true;
         for (Map.Entry<Integer, MBusEvent> mBusEventEntry: telegram.mBusEvents.entrySet()) {
             MBusEvent mBusEvent = mBusEventEntry.getValue();
+            if (mBusEvent.deviceType == null) {
+                continue; // Without a device type we cannot map it
+            }
 
             // This mapping is based on the documentation found on http://www.m-bus.com/
             switch (mBusEvent.deviceType) {
@@ -208,7 +255,7 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
                         telegram.slaveEMeterEquipmentId         = mBusEvent.equipmentId;
                         telegram.slaveEMeterTimestamp           = mBusEvent.timestamp;
                         telegram.slaveEMeterkWh                 = mBusEvent.value;
-                        mustHaveUnit(mBusEvent, "kWh");
+                        unitsAreValid &= hasUnit(mBusEvent, "kWh");
                     }
                     break;
 
@@ -217,7 +264,7 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
                         telegram.gasEquipmentId                 = mBusEvent.equipmentId;
                         telegram.gasTimestamp                   = mBusEvent.timestamp;
                         telegram.gasM3                          = mBusEvent.value;
-                        mustHaveUnit(mBusEvent, "m3");
+                        unitsAreValid &= hasUnit(mBusEvent, "m3");
                     }
                     break;
 
@@ -243,10 +290,11 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
                 default: // We simply do not map the ones we do not understand
             }
         }
+        return unitsAreValid;
     }
 
     // https://stackoverflow.com/questions/50712987/hex-string-to-byte-array-conversion-java
-    private byte[] hexStringToByteArray(String s) {
+    private static byte[] hexStringToByteArray(String s) {
         byte[] data = new byte[s.length()/2];
         for (int i = 0; i < data.length; i++) {
             data[i] = (byte) ((Character.digit(s.charAt(i*2), 16) << 4)
@@ -255,33 +303,81 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
         return data;
     }
 
-    private String hexStringToString(String hexString) {
+    static String hexStringToString(String hexString) {
         return new String(hexStringToByteArray(hexString), UTF_8);
     }
 
-    private static final Pattern IDENT_PATTERN = Pattern.compile("^/([a-zA-Z0-9][a-zA-Z0-9][a-zA-Z0-9])5(.*)$");
+    // The equipment identifiers are the same in every telegram of a meter.
+    static final HexStringCache EQUIPMENT_IDS      = new HexStringCache(true);
+    static final HexStringCache MBUS_EQUIPMENT_IDS = new HexStringCache(false);
 
-    @Override
-    public Void visitTelegram(TelegramContext ctx) {
-        dsmrTelegram.rawIdent = ctx.ident.getText();
-        Matcher identMatcher = IDENT_PATTERN.matcher(dsmrTelegram.rawIdent);
-        if (identMatcher.find()) {
-            dsmrTelegram.equipmentBrandTag = identMatcher.group(1).toUpperCase(Locale.ROOT);
-            dsmrTelegram.ident = identMatcher.group(2);
-
-            // Some brands have a very unclean identification string.
-            if (dsmrTelegram.ident.startsWith("\\2")) {
-                dsmrTelegram.ident = dsmrTelegram.ident.substring(2);
-            } else {
-                if (dsmrTelegram.ident.startsWith("\\")) {
-                    dsmrTelegram.ident = dsmrTelegram.ident.substring(1);
-                }
-            }
-            dsmrTelegram.ident = dsmrTelegram.ident.trim();
-        } else {
+    // The ident is the same in all telegrams of a meter so the split version is kept (direct mapped on the raw ident).
+    // Thread safe: the entries are immutable and losing a race only means an ident is split again.
+    private static final int     IDENT_CACHE_SIZE = 16; // Must be a power of 2
+    private static final Ident[] IDENT_CACHE      = new Ident[IDENT_CACHE_SIZE];
+
+    private static final class Ident {
+        private final String rawIdent;
+        private final String equipmentBrandTag;
+        private final String ident;
+
+        Ident(String rawIdent, String equipmentBrandTag, String ident) {
+            this.rawIdent          = rawIdent;
+            this.equipmentBrandTag = equipmentBrandTag;
+            this.ident             = ident;
+        }
+    }
+
+    static void setIdent(DSMRTelegram telegram, String rawIdent) {
+        int hash = rawIdent.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (IDENT_CACHE_SIZE - 1);
+        Ident cached = IDENT_CACHE[slot];
+        if (cached == null || !cached.rawIdent.equals(rawIdent)) {
+            cached = splitIdent(rawIdent);
+            IDENT_CACHE[slot] = cached;
+        }
+        telegram.rawIdent          = cached.rawIdent;
+        telegram.equipmentBrandTag = cached.equipmentBrandTag;
+        telegram.ident             = cached.ident;
+    }
+
+    private static boolean isAsciiAlphaNumeric(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Format: "/" 3 letter brand tag "5" ident   (i.e. "/ISK5\2M550T-1012")
+    // Both parsers only allow idents without line breaks.
+    private static Ident splitIdent(String rawIdent) {
+        if (rawIdent.length() < 5 ||
+            rawIdent.charAt(0) != '/' ||
+            !isAsciiAlphaNumeric(rawIdent.charAt(1)) ||
+            !isAsciiAlphaNumeric(rawIdent.charAt(2)) ||
+            !isAsciiAlphaNumeric(rawIdent.charAt(3)) ||
+            rawIdent.charAt(4) != '5') {
             // If it does not match the expected pattern just use the entire thing.
-            dsmrTelegram.ident = dsmrTelegram.rawIdent;
+            return new Ident(rawIdent, null, rawIdent);
+        }
+
+        String equipmentBrandTag = rawIdent.substring(1, 4).toUpperCase(Locale.ROOT);
+        String ident = rawIdent.substring(5);
+        // Some brands have a very unclean identification string.
+        if (ident.startsWith("\\2")) {
+            ident = ident.substring(2);
+        } else {
+            if (ident.startsWith("\\")) {
+                ident = ident.substring(1);
+            }
         }
+        return new Ident(rawIdent, equipmentBrandTag, ident.trim());
+    }
+
+    @Override
+    public Void visitTelegram(TelegramContext ctx) {
+        setIdent(dsmrTelegram, ctx.ident.getText());
         if (ctx.crc == null || ctx.crc.getText().isEmpty()) {
             dsmrTelegram.crc = null;
         } else {
@@ -298,13 +394,13 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
 
     @Override
     public Void visitTimestamp   (TimestampContext   ctx) {
-        dsmrTelegram.timestamp   = timestampParser.parse(ctx.timestamp.getText());
+        dsmrTelegram.timestamp   = TIMESTAMP_PARSER.parse(ctx.timestamp.getText());
         return null;
     }
 
     @Override
     public Void visitEquipmentId (EquipmentIdContext ctx) {
-        dsmrTelegram.equipmentId = hexStringToString(ctx.id.getText()).trim();
+        dsmrTelegram.equipmentId = EQUIPMENT_IDS.decode(ctx.id.getText());
         return null;
     }
 
@@ -335,7 +431,7 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
         PowerFailureEvent powerFailureEvent = new PowerFailureEvent();
 
         // The provided timestamp is the end of the failure
-        powerFailureEvent.endTime = timestampParser.parse(ctx.eventTime.getText());
+        powerFailureEvent.endTime = TIMESTAMP_PARSER.parse(ctx.eventTime.getText());
 
         // The parser ONLY allows a eventDurationUnit of seconds because the specification explicitly states that.
         powerFailureEvent.duration =  Duration.ofSeconds(Long.parseLong(ctx.eventDuration.getText()));
@@ -393,7 +489,7 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
 
     private void setMBusEquipmentId(int index, String equipmentId) {
         MBusEvent mBusEvent = getMBusEvent(index);
-        mBusEvent.equipmentId = hexStringToString(equipmentId);
+        mBusEvent.equipmentId = MBUS_EQUIPMENT_IDS.decode(equipmentId);
     }
 
     @Override public Void visitMBus1EquipmentId(MBus1EquipmentIdContext ctx) { setMBusEquipmentId(1, ctx.id.getText()); return null; }
@@ -403,7 +499,7 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
 
     private void setMBusUsage(int index, Token timestamp, Token value, Token unit) {
         MBusEvent mBusEvent = getMBusEvent(index);
-        mBusEvent.timestamp = timestamp == null ? null : timestampParser.parse(timestamp.getText());
+        mBusEvent.timestamp = timestamp == null ? null : TIMESTAMP_PARSER.parse(timestamp.getText());
         mBusEvent.value     = value     == null ? null : Double.valueOf(value.getText());
         mBusEvent.unit      = unit      == null ? ""   : unit.getText();
     }
@@ -0,0 +1,145 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Which parts of a telegram are needed.
+ * A parser created with {@link DsmrTelegramParserFactory#create(ParseOptions)} only converts the selected
+ * fields and skips over all the others (including the message text and the power failure event log)
+ * without looking at their values. As a consequence a syntax error in a skipped field does NOT make
+ * the telegram invalid (the CRC is still checked over the entire telegram).
+ * <p>
+ * The P1 version is always included because it determines how the telegram is validated.
+ */
+public final class ParseOptions {
+
+    /** The name used in {@link #parse(String)} to include the MBus devices (gas, slave e-meter, ...). */
+    public static final String MBUS = "MBUS";
+    /** An alias for {@link #MBUS} as the gas meter is by far the most common MBus device. */
+    public static final String GAS  = "GAS";
+
+    private static final ParseOptions ALL = new ParseOptions(EnumSet.allOf(DsmrField.class), true);
+
+    private final Set<DsmrField> fields;
+    private final long           selected; // A bit per DsmrField ordinal
+    private final boolean        mBus;
+
+    private ParseOptions(Set<DsmrField> fields, boolean mBus) {
+        fields.add(DsmrField.P1_VERSION);
+        this.fields = Collections.unmodifiableSet(fields);
+        long bits = 0;
+        for (DsmrField field : fields) {
+            bits |= 1L << field.ordinal();
+        }
+        this.selected = bits;
+        this.mBus     = mBus;
+    }
+
+    /**
+     * @return Everything in the telegram is parsed and validated.
+     */
+    public static ParseOptions all() {
+        return ALL;
+    }
+
+    /**
+     * @param fields The fields that are needed.
+     * @return Only these fields are parsed (no MBus devices, use {@link #withMBus()} for those).
+     */
+    public static ParseOptions fields(DsmrField... fields) {
+        Set<DsmrField> set = EnumSet.noneOf(DsmrField.class);
+        Collections.addAll(set, fields);
+        return new ParseOptions(set, false);
+    }
+
+    /**
+     * @return The same fields and also the MBus devices (gas, slave e-meter, ...).
+     */
+    public ParseOptions withMBus() {
+        if (mBus) {
+            return this;
+        }
+        return new ParseOptions(EnumSet.copyOf(fields), true);
+    }
+
+    /**
+     * Parse a (comma separated) list of the names of the {@link DsmrField}s
+     * and {@link #MBUS} (or {@link #GAS}) for the MBus devices.
+     * @param fieldNames For example "TIMESTAMP, ELECTRICITY_POWER_RECEIVED, GAS"
+     * @return The options, an empty (or null) list means everything.
+     * @throws IllegalArgumentException if one of the names is unknown.
+     */
+    public static ParseOptions parse(String fieldNames) {
+        if (fieldNames == null || fieldNames.trim().isEmpty()) {
+            return ALL;
+        }
+        Set<DsmrField> set = EnumSet.noneOf(DsmrField.class);
+        boolean withMBus = false;
+        for (String name : fieldNames.split(",")) {
+            String fieldName = name.trim().toUpperCase(Locale.ROOT);
+            if (fieldName.isEmpty()) {
+                continue;
+            }
+            if (fieldName.equals(MBUS) || fieldName.equals(GAS)) {
+                withMBus = true;
+            } else {
+                set.add(DsmrField.valueOf(fieldName));
+            }
+        }
+        return new ParseOptions(set, withMBus);
+    }
+
+    /**
+     * @return True if everything is parsed.
+     */
+    public boolean isAll() {
+        return mBus && fields.size() == DsmrField.values().length;
+    }
+
+    public boolean isSelected(DsmrField field) {
+        return (selected & (1L << field.ordinal())) != 0;
+    }
+
+    public boolean includesMBus() {
+        return mBus;
+    }
+
+    /**
+     * @return All the selected fields (always including the P1 version).
+     */
+    public Set<DsmrField> getFields() {
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (DsmrField field : fields) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(field.name());
+        }
+        if (mBus) {
+            sb.append(", ").append(MBUS);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+import static nl.basjes.dsmr.DsmrField.TIMESTAMP;
+import static nl.basjes.dsmr.TimestampParser.zoneOf;
+
+/**
+ * A mutable DSMR telegram that is meant to be reused for many telegrams.
+ * All values are kept in primitive fields (with a bit per field to indicate if it was present)
+ * so filling it with the {@link PrimitiveDsmrTelegramParser} creates (almost) no objects.
+ * The texts (ident, equipment ids, messages) are only decoded again if they differ from the previous telegram.
+ * Use {@link #toDSMRTelegram()} to get the normal {@link DSMRTelegram}.
+ * <p>
+ * An instance is NOT thread safe.
+ */
+public final class PrimitiveDSMRTelegram {
+
+    /** The MBus channels are numbered 1 up to and including this one. */
+    public static final int MBUS_CHANNELS = 4;
+
+    private static final int FIELDS = DsmrField.values().length;
+
+    boolean empty = true;
+    boolean isValid;
+    boolean validCRC;
+    int     crc = -1; // -1 == No CRC
+
+    // The values of the DsmrFields: one bit per present field and the value in the array of its type.
+    long           present;
+    final long[]   longs   = new long[FIELDS];   // LONG and the epoch second of the TIMESTAMP
+    final double[] doubles = new double[FIELDS]; // DOUBLE
+    final String[] strings = new String[FIELDS]; // STRING
+    char           timestampDst;                 // The 'S' or 'W' of the TIMESTAMP (' ' if none)
+
+    boolean hasIdent;
+    final DecodedText rawIdent          = new DecodedText();
+    final DecodedText equipmentBrandTag = new DecodedText();
+    final DecodedText ident             = new DecodedText();
+    final DecodedText p1Version         = new DecodedText();
+    final DecodedText equipmentId       = new DecodedText();
+    final DecodedText messageCodes      = new DecodedText();
+    final DecodedText message           = new DecodedText();
+
+    long   powerFailureEventLogSize;
+    int    powerFailureEvents;
+    long[] powerFailureEndEpochSecond = new long[4];
+    char[] powerFailureEndDst         = new char[4];
+    long[] powerFailureDurationSecond = new long[4];
+
+    // The MBus values are indexed by the channel number (so index 0 is not used).
+    static final int MBUS_EVENT = 1;
+    static final int MBUS_TYPE  = 2;
+    static final int MBUS_USAGE = 4;
+    final int[]         mBusFlags         = new int[MBUS_CHANNELS + 1];
+    final int[]         mBusDeviceType    = new int[MBUS_CHANNELS + 1];
+    final String[]      mBusEquipmentId   = new String[MBUS_CHANNELS + 1];
+    final DecodedText[] mBusEquipmentText = new DecodedText[MBUS_CHANNELS + 1];
+    final double[]      mBusValue         = new double[MBUS_CHANNELS + 1];
+    final String[]      mBusUnit          = new String[MBUS_CHANNELS + 1];
+    final long[]        mBusEpochSecond   = new long[MBUS_CHANNELS + 1];
+    final char[]        mBusDst           = new char[MBUS_CHANNELS + 1];
+
+    // The channels that are mapped to the gas and slave e-meter values (0 == none).
+    int gasChannel;
+    int slaveEMeterChannel;
+
+    public PrimitiveDSMRTelegram() {
+        for (int channel = 1; channel <= MBUS_CHANNELS; channel++) {
+            mBusEquipmentText[channel] = new DecodedText();
+        }
+    }
+
+    // Forget everything from the previous telegram (the decoded texts are retained for reuse).
+    void clear() {
+        empty                    = false;
+        isValid                  = false;
+        validCRC                 = false;
+        crc                      = -1;
+        present                  = 0;
+        hasIdent                 = false;
+        powerFailureEventLogSize = 0;
+        powerFailureEvents       = 0;
+        Arrays.fill(mBusFlags, 0);
+        Arrays.fill(mBusEquipmentId, null);
+        gasChannel               = 0;
+        slaveEMeterChannel       = 0;
+    }
+
+    // ------------------------------------------
+
+    /**
+     * Keeps the last decoded value of a text so the same text in the next telegram needs no decoding (and no new String).
+     */
+    static final class DecodedText {
+        private String source;
+        private String value;
+
+        String decode(String text, int start, int end, UnaryOperator<String> decoder) {
+            int length = end - start;
+            if (source == null || source.length() != length || !source.regionMatches(0, text, start, length)) {
+                source = text.substring(start, end);
+                value  = decoder.apply(source);
+            }
+            return value;
+        }
+
+        String set(String newValue) {
+            source = null;
+            value = newValue;
+            return value;
+        }
+
+        String get() {
+            return value;
+        }
+    }
+
+    // ------------------------------------------
+
+    /** @return True if the last parse was called with a null or empty telegram. */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /** @return Is this record classified as a valid record. I.e. do we think you can use this data. */
+    public boolean isValid() {
+        return isValid;
+    }
+
+    /** @return Is the CRC correct. */
+    public boolean isValidCRC() {
+        return validCRC;
+    }
+
+    /** @return The CRC as found at the end of the telegram or -1 if it did not have one. */
+    public int getCrc() {
+        return crc;
+    }
+
+    public String getRawIdent() {
+        return hasIdent ? rawIdent.get() : null;
+    }
+
+    public String getEquipmentBrandTag() {
+        return hasIdent ? equipmentBrandTag.get() : null;
+    }
+
+    public String getIdent() {
+        return hasIdent ? ident.get() : null;
+    }
+
+    public boolean has(DsmrField field) {
+        return (present & (1L << field.ordinal())) != 0;
+    }
+
+    void setPresent(DsmrField field) {
+        present |= 1L << field.ordinal();
+    }
+
+    private void checkType(DsmrField field, DsmrField.Type type) {
+        if (field.getType() != type) {
+            throw new IllegalArgumentException("The field " + field + " is a " + field.getType() + " and not a " + type);
+        }
+    }
+
+    /**
+     * @return The value of a DOUBLE field or NaN if it is not present.
+     */
+    public double getDouble(DsmrField field) {
+        checkType(field, DsmrField.Type.DOUBLE);
+        return has(field) ? doubles[field.ordinal()] : Double.NaN;
+    }
+
+    /**
+     * @return The value of a LONG field (check with {@link #has(DsmrField)} if it was present).
+     */
+    public long getLong(DsmrField field) {
+        checkType(field, DsmrField.Type.LONG);
+        return has(field) ? longs[field.ordinal()] : 0;
+    }
+
+    /**
+     * @return The value of a STRING field or null if it is not present.
+     */
+    public String getString(DsmrField field) {
+        checkType(field, DsmrField.Type.STRING);
+        return has(field) ? strings[field.ordinal()] : null;
+    }
+
+    /**
+     * @return The timestamp of the telegram as seconds since the epoch (check with {@link #has(DsmrField)} if it was present).
+     */
+    public long getEpochSecond() {
+        return has(TIMESTAMP) ? longs[TIMESTAMP.ordinal()] : 0;
+    }
+
+    /**
+     * @return The timestamp of the telegram or null if it is not present. This creates a new object.
+     */
+    public ZonedDateTime getTimestamp() {
+        return has(TIMESTAMP) ? toZonedDateTime(longs[TIMESTAMP.ordinal()], timestampDst) : null;
+    }
+
+    private static ZonedDateTime toZonedDateTime(long epochSecond, char dst) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), zoneOf(dst));
+    }
+
+    // ------------------------------------------
+
+    /** @return The power failure event log size (as indicated in the telegram). */
+    public long getPowerFailureEventLogSize() {
+        return powerFailureEventLogSize;
+    }
+
+    /** @return The number of power failure events that are actually present. */
+    public int getPowerFailureEvents() {
+        return powerFailureEvents;
+    }
+
+    /** @return When the power failure ended (seconds since the epoch). */
+    public long getPowerFailureEndEpochSecond(int event) {
+        return powerFailureEndEpochSecond[checkEvent(event)];
+    }
+
+    /** @return How long the power failure lasted (in seconds). */
+    public long getPowerFailureDurationSeconds(int event) {
+        return powerFailureDurationSecond[checkEvent(event)];
+    }
+
+    private int checkEvent(int event) {
+        if (event < 0 || event >= powerFailureEvents) {
+            throw new IndexOutOfBoundsException("Power failure event " + event + " of " + powerFailureEvents);
+        }
+        return event;
+    }
+
+    void addPowerFailureEvent(long endEpochSecond, char endDst, long durationSeconds) {
+        if (powerFailureEvents == powerFailureEndEpochSecond.length) {
+            int newSize = powerFailureEvents * 2;
+            powerFailureEndEpochSecond = Arrays.copyOf(powerFailureEndEpochSecond, newSize);
+            powerFailureEndDst         = Arrays.copyOf(powerFailureEndDst,         newSize);
+            powerFailureDurationSecond = Arrays.copyOf(powerFailureDurationSecond, newSize);
+        }
+        powerFailureEndEpochSecond[powerFailureEvents] = endEpochSecond;
+        powerFailureEndDst[powerFailureEvents]         = endDst;
+        powerFailureDurationSecond[powerFailureEvents] = durationSeconds;
+        powerFailureEvents++;
+    }
+
+    // ------------------------------------------
+
+    private static int checkChannel(int channel) {
+        if (channel < 1 || channel > MBUS_CHANNELS) {
+            throw new IndexOutOfBoundsException("MBus channel " + channel + " is not in the range 1-" + MBUS_CHANNELS);
+        }
+        return channel;
+    }
+
+    /** @return True if anything of this MBus channel was present. */
+    public boolean hasMBus(int channel) {
+        return mBusFlags[checkChannel(channel)] != 0;
+    }
+
+    /** @return The device type of the MBus channel or -1 if not present. */
+    public int getMBusDeviceType(int channel) {
+        return (mBusFlags[checkChannel(channel)] & MBUS_TYPE) != 0 ? mBusDeviceType[channel] : -1;
+    }
+
+    /** @return The equipment id of the MBus channel or null if not present. */
+    public String getMBusEquipmentId(int channel) {
+        return mBusEquipmentId[checkChannel(channel)];
+    }
+
+    /** @return True if the MBus channel has a value (with a unit and a timestamp). */
+    public boolean hasMBusValue(int channel) {
+        return (mBusFlags[checkChannel(channel)] & MBUS_USAGE) != 0;
+    }
+
+    /** @return The last value of the MBus channel or NaN if not present. */
+    public double getMBusValue(int channel) {
+        return hasMBusValue(channel) ? mBusValue[channel] : Double.NaN;
+    }
+
+    /** @return The unit of the last value of the MBus channel ("" if there was none) or null if not present. */
+    public String getMBusUnit(int channel) {
+        return hasMBusValue(channel) ? mBusUnit[channel] : null;
+    }
+
+    /** @return The timestamp of the last value of the MBus channel (seconds since the epoch). */
+    public long getMBusEpochSecond(int channel) {
+        return hasMBusValue(channel) ? mBusEpochSecond[channel] : 0;
+    }
+
+    /** @return The MBus channel of the gas meter or 0 if there is none. */
+    public int getGasChannel() {
+        return gasChannel;
+    }
+
+    /** @return The MBus channel of the slave e-meter or 0 if there is none. */
+    public int getSlaveEMeterChannel() {
+        return slaveEMeterChannel;
+    }
+
+    // ------------------------------------------
+
+    /**
+     * Creates a {@link DSMRTelegram} with exactly the same content as the
+     * {@link ParseDsmrTelegram} produces from the same (well-formed) text.
+     * @return The telegram or null if the last parsed telegram was null or empty.
+     */
+    public DSMRTelegram toDSMRTelegram() {
+        if (empty) {
+            return null;
+        }
+        DSMRTelegram telegram = new DSMRTelegram();
+        telegram.isValid  = isValid;
+        telegram.validCRC = validCRC;
+        if (!hasIdent) {
+            return telegram; // Unparsable
+        }
+        telegram.rawIdent          = rawIdent.get();
+        telegram.equipmentBrandTag = equipmentBrandTag.get();
+        telegram.ident             = ident.get();
+        telegram.crc               = getCrcString();
+
+        for (DsmrField field : DsmrField.values()) {
+            if (has(field)) {
+                setField(telegram, field);
+            }
+        }
+        setMBusEvents(telegram);
+        return telegram;
+    }
+
+    // The CRC as it is in the DSMRTelegram
+    String getCrcString() {
+        return crc == -1 ? null : String.format("%04X", crc);
+    }
+
+    // Puts the MBus events and the gas and slave e-meter values in the telegram.
+    void setMBusEvents(DSMRTelegram telegram) {
+        for (int channel = 1; channel <= MBUS_CHANNELS; channel++) {
+            int flags = mBusFlags[channel];
+            if (flags == 0) {
+                continue;
+            }
+            MBusEvent mBusEvent = new MBusEvent();
+            if ((flags & MBUS_TYPE) != 0) {
+                mBusEvent.deviceType = mBusDeviceType[channel];
+            }
+            mBusEvent.equipmentId = mBusEquipmentId[channel];
+            if ((flags & MBUS_USAGE) != 0) {
+                mBusEvent.timestamp = toZonedDateTime(mBusEpochSecond[channel], mBusDst[channel]);
+                mBusEvent.value     = mBusValue[channel];
+                mBusEvent.unit      = mBusUnit[channel];
+            }
+            telegram.mBusEvents.put(channel, mBusEvent);
+        }
+
+        if (gasChannel != 0) {
+            MBusEvent gas = telegram.mBusEvents.get(gasChannel);
+            telegram.gasEquipmentId = gas.equipmentId;
+            telegram.gasTimestamp   = gas.timestamp;
+            telegram.gasM3          = gas.value;
+        }
+        if (slaveEMeterChannel != 0) {
+            MBusEvent slave = telegram.mBusEvents.get(slaveEMeterChannel);
+            telegram.slaveEMeterEquipmentId = slave.equipmentId;
+            telegram.slaveEMeterTimestamp   = slave.timestamp;
+            telegram.slaveEMeterkWh         = slave.value;
+        }
+    }
+
+    // Puts the value of a present field in the telegram.
+    // CHECKSTYLE.OFF: LineLength
+    void setField(DSMRTelegram t, DsmrField field) {
+        final int i = field.ordinal();
+        switch (field) {
+            case P1_VERSION:                         t.p1Version                       = strings[i]; break;
+            case TIMESTAMP:                          t.timestamp                       = getTimestamp(); break;
+            case EQUIPMENT_ID:                       t.equipmentId                     = strings[i]; break;
+
+            case ELECTRICITY_TARIFF_INDICATOR:       t.electricityTariffIndicator      = longs[i]; break;
+            case ELECTRICITY_RECEIVED_LOW_TARIFF:    t.electricityReceivedLowTariff    = doubles[i]; break;
+            case ELECTRICITY_RECEIVED_NORMAL_TARIFF: t.electricityReceivedNormalTariff = doubles[i]; break;
+            case ELECTRICITY_RETURNED_LOW_TARIFF:    t.electricityReturnedLowTariff    = doubles[i]; break;
+            case ELECTRICITY_RETURNED_NORMAL_TARIFF: t.electricityReturnedNormalTariff = doubles[i]; break;
+            case ELECTRICITY_POWER_RECEIVED:         t.electricityPowerReceived        = doubles[i]; break;
+            case ELECTRICITY_POWER_RETURNED:         t.electricityPowerReturned        = doubles[i]; break;
+
+            case POWER_FAILURES:                     t.powerFailures                   = longs[i]; break;
+            case LONG_POWER_FAILURES:                t.longPowerFailures               = longs[i]; break;
+            case POWER_FAILURE_EVENT_LOG:            setPowerFailureEventLog(t); break;
+
+            case VOLTAGE_SAGS_PHASE_L1:              t.voltageSagsPhaseL1              = longs[i]; break;
+            case VOLTAGE_SAGS_PHASE_L2:              t.voltageSagsPhaseL2              = longs[i]; break;
+            case VOLTAGE_SAGS_PHASE_L3:              t.voltageSagsPhaseL3              = longs[i]; break;
+            case VOLTAGE_SWELLS_PHASE_L1:            t.voltageSwellsPhaseL1            = longs[i]; break;
+            case VOLTAGE_SWELLS_PHASE_L2:            t.voltageSwellsPhaseL2            = longs[i]; break;
+            case VOLTAGE_SWELLS_PHASE_L3:            t.voltageSwellsPhaseL3            = longs[i]; break;
+            case VOLTAGE_L1:                         t.voltageL1                       = doubles[i]; break;
+            case VOLTAGE_L2:                         t.voltageL2                       = doubles[i]; break;
+            case VOLTAGE_L3:                         t.voltageL3                       = doubles[i]; break;
+            case CURRENT_L1:                         t.currentL1                       = doubles[i]; break;
+            case CURRENT_L2:                         t.currentL2                       = doubles[i]; break;
+            case CURRENT_L3:                         t.currentL3                       = doubles[i]; break;
+            case POWER_RECEIVED_L1:                  t.powerReceivedL1                 = doubles[i]; break;
+            case POWER_RECEIVED_L2:                  t.powerReceivedL2                 = doubles[i]; break;
+            case POWER_RECEIVED_L3:                  t.powerReceivedL3                 = doubles[i]; break;
+            case POWER_RETURNED_L1:                  t.powerReturnedL1                 = doubles[i]; break;
+            case POWER_RETURNED_L2:                  t.powerReturnedL2                 = doubles[i]; break;
+            case POWER_RETURNED_L3:                  t.powerReturnedL3                 = doubles[i]; break;
+
+            case MESSAGE_CODES:                      t.messageCodes                    = strings[i]; break;
+            case MESSAGE:                            t.message                         = strings[i]; break;
+            default:
+        }
+    }
+    // CHECKSTYLE.ON: LineLength
+
+    private void setPowerFailureEventLog(DSMRTelegram t) {
+        t.powerFailureEventLogSize = powerFailureEventLogSize;
+        for (int event = 0; event < powerFailureEvents; event++) {
+            PowerFailureEvent powerFailureEvent = new PowerFailureEvent();
+            powerFailureEvent.endTime   = toZonedDateTime(powerFailureEndEpochSecond[event], powerFailureEndDst[event]);
+            powerFailureEvent.duration  = Duration.ofSeconds(powerFailureDurationSecond[event]);
+            powerFailureEvent.startTime = powerFailureEvent.endTime.minus(powerFailureEvent.duration);
+            t.powerFailureEventLog.add(powerFailureEvent);
+        }
+    }
+
+}
@@ -0,0 +1,904 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+import static nl.basjes.dsmr.ParseDsmrTelegram.setIdent;
+import static nl.basjes.dsmr.PrimitiveDSMRTelegram.MBUS_EVENT;
+import static nl.basjes.dsmr.PrimitiveDSMRTelegram.MBUS_TYPE;
+import static nl.basjes.dsmr.PrimitiveDSMRTelegram.MBUS_USAGE;
+
+/**
+ * A hand written single pass parser for DSMR telegrams that fills a reusable {@link PrimitiveDSMRTelegram} in place.
+ * It scans the "COSEMID(value*unit)" lines without building a token stream or parse tree and it accepts
+ * exactly the same fields as the Dsmr.g4 grammar: for all well-formed telegrams
+ * {@link PrimitiveDSMRTelegram#toDSMRTelegram()} is identical to the result of {@link ParseDsmrTelegram};
+ * malformed telegrams are marked as invalid by both.
+ * All values are handled as positions in the original text so (after the first few telegrams)
+ * parsing a telegram does not create any objects.
+ * <p>
+ * With {@link ParseOptions} only the selected fields are converted, everything else is skipped.
+ * <p>
+ * An instance is NOT thread safe: use one per thread and reuse it.
+ */
+// CHECKSTYLE.OFF: LineLength
+public final class PrimitiveDsmrTelegramParser {
+
+    private String                telegramString;
+    private int                   length;
+    private PrimitiveDSMRTelegram telegram;
+    private int                   pos;
+    private boolean               hasSyntaxError;
+    private final TimestampParser timestampParser = new TimestampParser();
+    private final ParseOptions    options;
+    private final boolean         validateAll;
+
+    // The '(' ... ')' groups that follow the COSEMID (trimmed): value i is telegramString[valueStart[i], valueEnd[i][
+    private int[]                 valueStart = new int[16];
+    private int[]                 valueEnd   = new int[16];
+    private int                   values;
+
+    // The number part of the last successful numberWithUnit
+    private int                   numberStart;
+    private int                   numberEnd;
+
+    public PrimitiveDsmrTelegramParser() {
+        this(ParseOptions.all());
+    }
+
+    /**
+     * @param options Which fields must be parsed, all others are skipped without being validated.
+     */
+    public PrimitiveDsmrTelegramParser(ParseOptions options) {
+        this.options     = options;
+        this.validateAll = options.isAll();
+    }
+
+    /**
+     * Parse a single telegram into the provided (reused) telegram.
+     * @param telegramText The full text of the telegram
+     * @param into The telegram that receives the values. Everything from a previous telegram is removed first.
+     * @return True if the result is valid.
+     */
+    public boolean parse(String telegramText, PrimitiveDSMRTelegram into) {
+        telegramString = telegramText;
+        length         = telegramText == null ? 0 : telegramText.length();
+        telegram       = into;
+        pos            = 0;
+        hasSyntaxError = false;
+        try {
+            return parse();
+        } finally {
+            telegramString = null;
+            telegram       = null;
+        }
+    }
+
+    private boolean parse() {
+        telegram.clear();
+        if (length == 0) {
+            telegram.empty = true;
+            return false;
+        }
+        telegram.validCRC = CheckCRC.crcIsValid(telegramString);
+        telegram.isValid  = telegram.validCRC;
+
+        skipSpaces();
+        if (!readIdent()) {
+            telegram.isValid = false;
+            return false; // Unparsable
+        }
+
+        int fields = 0;
+        boolean foundEnd = false;
+        while (true) {
+            skipSpaces();
+            if (pos >= length) {
+                break;
+            }
+            if (telegramString.charAt(pos) == '!') {
+                foundEnd = readEnd();
+                break;
+            }
+
+            int fieldStart = pos;
+            int cosemIdStart = pos;
+            int cosemIdEnd = readCosemId();
+            int action = lookup(cosemIdStart, cosemIdEnd);
+            if (!validateAll && !isWanted(action)) {
+                // Only the structure of a skipped field is checked (a garbage line is still a syntax error).
+                boolean validCosemId = action != UNKNOWN || isCosemId(telegramString, cosemIdStart, cosemIdEnd);
+                if (!validCosemId || !skipValues()) {
+                    syntaxError(fieldStart);
+                    continue;
+                }
+                fields++;
+                continue;
+            }
+            if (!readValues()) {
+                syntaxError(fieldStart);
+                continue;
+            }
+            if (!handleField(action, cosemIdStart, cosemIdEnd)) {
+                syntaxError(fieldStart);
+                continue;
+            }
+            fields++;
+        }
+
+        if (fields == 0 || !foundEnd) {
+            hasSyntaxError = true;
+        }
+
+        finish();
+        return telegram.isValid;
+    }
+
+    // The same as ParseDsmrTelegram.finishTelegram
+    private void finish() {
+        final PrimitiveDSMRTelegram t = telegram;
+        boolean unitsAreValid = fillMBusDataToAttributes();
+
+        boolean hasP1Version = t.has(DsmrField.P1_VERSION);
+        if (hasSyntaxError || !unitsAreValid) {
+            t.isValid = false;
+        } else {
+            if (t.crc == -1 && !hasP1Version) {
+                t.isValid = true;
+            } else {
+                t.isValid = t.validCRC;
+            }
+        }
+
+        if (!hasP1Version) {
+            t.strings[DsmrField.P1_VERSION.ordinal()] = t.p1Version.set("2.2");
+            t.setPresent(DsmrField.P1_VERSION);
+        }
+    }
+
+    private static boolean hasUnit(PrimitiveDSMRTelegram t, int channel, String unit) {
+        return (t.mBusFlags[channel] & MBUS_USAGE) == 0 || t.mBusUnit[channel].isEmpty() || unit.equals(t.mBusUnit[channel]);
+    }
+
+    // The same as in ParseDsmrTelegram: the first device with an equipment id of each type wins.
+    private boolean fillMBusDataToAttributes() {
+        final PrimitiveDSMRTelegram t = telegram;
+        boolean unitsAreValid = true;
+        for (int channel = 1; channel <= PrimitiveDSMRTelegram.MBUS_CHANNELS; channel++) {
+            if ((t.mBusFlags[channel] & MBUS_TYPE) == 0) {
+                continue; // Without a device type we cannot map it
+            }
+            switch (t.mBusDeviceType[channel]) {
+                case 0x02: // Electricity via a slave
+                    if (t.slaveEMeterChannel == 0 || t.mBusEquipmentId[t.slaveEMeterChannel] == null) {
+                        t.slaveEMeterChannel = channel;
+                        unitsAreValid &= hasUnit(t, channel, "kWh");
+                    }
+                    break;
+
+                case 0x03: // Gas
+                    if (t.gasChannel == 0 || t.mBusEquipmentId[t.gasChannel] == null) {
+                        t.gasChannel = channel;
+                        unitsAreValid &= hasUnit(t, channel, "m3");
+                    }
+                    break;
+
+                default: // We simply do not map the ones we do not understand
+            }
+        }
+        return unitsAreValid;
+    }
+
+    // ------------------------------------------
+
+    private void syntaxError(int fieldStart) {
+        hasSyntaxError = true;
+        // Resume at the next line
+        int endOfLine = telegramString.indexOf('\n', fieldStart);
+        pos = endOfLine == -1 ? length : endOfLine + 1;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private void skipSpaces() {
+        while (pos < length && isSpace(telegramString.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isAlphaNumeric(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isIdentChar(char c) {
+        return isAlphaNumeric(c) || c == ' ' || c == '\\' || c == '_' || c == '.' || c == '-';
+    }
+
+    // ------------------------------------------
+    // The lexer rules of the Dsmr.g4 grammar, on a part (start inclusive, end exclusive) of the text.
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isUpperHex(char c) {
+        return isDigit(c) || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isHexChar(char c) {
+        return isUpperHex(c) || (c >= 'a' && c <= 'f');
+    }
+
+    private static boolean isDigits(CharSequence value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // INT : DIGIT1_10 ;
+    private static boolean isInt(CharSequence value, int start, int end) {
+        int len = end - start;
+        return len >= 1 && len <= 10 && isDigits(value, start, end);
+    }
+
+    // FLOAT : DIGIT1_6 '.' DIGIT1_3 ;
+    private static boolean isFloat(CharSequence value, int start, int end) {
+        int dot = indexOf(value, '.', start, end);
+        if (dot == -1) {
+            return false;
+        }
+        int integerDigits  = dot - start;
+        int fractionDigits = end - dot - 1;
+        return integerDigits >= 1 && integerDigits <= 6 &&
+            fractionDigits >= 1 && fractionDigits <= 3 &&
+            isDigits(value, start, dot) && isDigits(value, dot + 1, end);
+    }
+
+    private static boolean isNumber(CharSequence value, int start, int end) {
+        return isFloat(value, start, end) || isInt(value, start, end);
+    }
+
+    private static int indexOf(CharSequence value, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isInRange(char c, char from, char to) {
+        return c >= from && c <= to;
+    }
+
+    // TIMESTAMP : [0-9][0-9] [01][0-9] [0-3][0-9] [0-2][0-9] [0-5][0-9] [0-5][0-9]  ('S'|'W')? ;
+    private static boolean isTimestamp(CharSequence value, int start, int end) {
+        int len = end - start;
+        if (len == 13) {
+            char dst = value.charAt(start + 12);
+            if (dst != 'S' && dst != 'W') {
+                return false;
+            }
+        } else if (len != 12) {
+            return false;
+        }
+        return isDigits(value, start, start + 12) &&
+            isInRange(value.charAt(start + 2), '0', '1') &&
+            isInRange(value.charAt(start + 4), '0', '3') &&
+            isInRange(value.charAt(start + 6), '0', '2') &&
+            isInRange(value.charAt(start + 8), '0', '5') &&
+            isInRange(value.charAt(start + 10), '0', '5');
+    }
+
+    // HEXSTRING : HEXDIGIT HEXDIGIT HEXDIGIT HEXDIGIT HEXDIGIT HEXDIGIT+ ;  (HEXDIGIT is 2 characters)
+    private static boolean isHexString(CharSequence value, int start, int end) {
+        int len = end - start;
+        if (len < 12 || len % 2 != 0) {
+            return false;
+        }
+        // The lexer prefers a TIMESTAMP over a HEXSTRING of the same length.
+        if (isTimestamp(value, start, end)) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isHexChar(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigits1To2(CharSequence value, int start, int end) {
+        int len = end - start;
+        return len >= 1 && len <= 2 && isDigits(value, start, end);
+    }
+
+    // COSEMID : [01] '-' [0-9] ':' [0-9][0-9]? '.' [0-9][0-9]? '.' [0-9][0-9]? ;
+    private static boolean isCosemId(CharSequence value, int start, int end) {
+        int len = end - start;
+        if (len < 9 ||
+            (value.charAt(start) != '0' && value.charAt(start) != '1') ||
+            value.charAt(start + 1) != '-' ||
+            !isDigit(value.charAt(start + 2)) ||
+            value.charAt(start + 3) != ':') {
+            return false;
+        }
+        int dot1 = indexOf(value, '.', start + 4, end);
+        int dot2 = dot1 == -1 ? -1 : indexOf(value, '.', dot1 + 1, end);
+        return dot2 != -1 &&
+            isDigits1To2(value, start + 4, dot1) &&
+            isDigits1To2(value, dot1 + 1, dot2) &&
+            isDigits1To2(value, dot2 + 1, end);
+    }
+
+    // ------------------------------------------
+
+    // IDENT : '/' [a-zA-Z0-9][a-zA-Z0-9][a-zA-Z0-9] '5' [ \\a-zA-Z0-9_.-]+ ;
+    private boolean readIdent() {
+        int start = pos;
+        if (start + 6 > length ||
+            telegramString.charAt(start) != '/' ||
+            !isAlphaNumeric(telegramString.charAt(start + 1)) ||
+            !isAlphaNumeric(telegramString.charAt(start + 2)) ||
+            !isAlphaNumeric(telegramString.charAt(start + 3)) ||
+            telegramString.charAt(start + 4) != '5' ||
+            !isIdentChar(telegramString.charAt(start + 5))) {
+            return false;
+        }
+        pos = start + 6;
+        while (pos < length && isIdentChar(telegramString.charAt(pos))) {
+            pos++;
+        }
+
+        final PrimitiveDSMRTelegram t = telegram;
+        String previous = t.rawIdent.get();
+        String rawIdent = t.rawIdent.decode(telegramString, start, pos, s -> s);
+        // Only when the ident changed it needs to be split again.
+        if (rawIdent != previous) { // The same instance means the same text.
+            DSMRTelegram identOnly = new DSMRTelegram();
+            setIdent(identOnly, rawIdent);
+            t.equipmentBrandTag.set(identOnly.equipmentBrandTag);
+            t.ident.set(identOnly.ident);
+        }
+        t.hasIdent = true;
+        return true;
+    }
+
+    // CRC : '!' [0-9A-F][0-9A-F][0-9A-F][0-9A-F] ;  or the literal '!\r\n'
+    private boolean readEnd() {
+        if (pos + 5 <= length &&
+            isUpperHex(telegramString.charAt(pos + 1)) &&
+            isUpperHex(telegramString.charAt(pos + 2)) &&
+            isUpperHex(telegramString.charAt(pos + 3)) &&
+            isUpperHex(telegramString.charAt(pos + 4))) {
+            int crc = 0;
+            for (int i = pos + 1; i < pos + 5; i++) {
+                crc = (crc << 4) + Character.digit(telegramString.charAt(i), 16);
+            }
+            telegram.crc = crc;
+            return true;
+        }
+        telegram.crc = -1;
+        return telegramString.startsWith("!\r\n", pos);
+    }
+
+    // Returns the end of the cosemId
+    private int readCosemId() {
+        while (pos < length) {
+            char c = telegramString.charAt(pos);
+            if ((c >= '0' && c <= '9') || c == '-' || c == ':' || c == '.') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private int trimStart(int start, int end) {
+        int result = start;
+        while (result < end && telegramString.charAt(result) <= ' ') {
+            result++;
+        }
+        return result;
+    }
+
+    private int trimEnd(int start, int end) {
+        int result = end;
+        while (result > start && telegramString.charAt(result - 1) <= ' ') {
+            result--;
+        }
+        return result;
+    }
+
+    // Reads all '(' ... ')' groups that follow the COSEMID.
+    private boolean readValues() {
+        values = 0;
+        while (true) {
+            skipSpaces();
+            if (pos >= length || telegramString.charAt(pos) != '(') {
+                return true;
+            }
+            int start = ++pos;
+            while (pos < length) {
+                char c = telegramString.charAt(pos);
+                if (c == ')') {
+                    break;
+                }
+                if (c == '(') {
+                    return false;
+                }
+                pos++;
+            }
+            if (pos >= length) {
+                return false;
+            }
+            if (values == valueStart.length) {
+                valueStart = Arrays.copyOf(valueStart, values * 2);
+                valueEnd   = Arrays.copyOf(valueEnd,   values * 2);
+            }
+            int trimmedStart = trimStart(start, pos);
+            valueStart[values] = trimmedStart;
+            valueEnd[values]   = trimEnd(trimmedStart, pos);
+            values++;
+            pos++; // Skip the ')'
+        }
+    }
+
+    // Skips all '(' ... ')' groups that follow the COSEMID without looking at what is inside.
+    private boolean skipValues() {
+        while (true) {
+            skipSpaces();
+            if (pos >= length || telegramString.charAt(pos) != '(') {
+                return true;
+            }
+            pos++;
+            while (pos < length) {
+                char c = telegramString.charAt(pos);
+                if (c == ')') {
+                    break;
+                }
+                if (c == '(') {
+                    return false;
+                }
+                pos++;
+            }
+            if (pos >= length) {
+                return false;
+            }
+            pos++; // Skip the ')'
+        }
+    }
+
+    // ------------------------------------------
+
+    private boolean isIntValue(int value) {
+        return isInt(telegramString, valueStart[value], valueEnd[value]);
+    }
+
+    private boolean isNumberValue(int value) {
+        return isNumber(telegramString, valueStart[value], valueEnd[value]);
+    }
+
+    private boolean isTimestampValue(int value) {
+        return isTimestamp(telegramString, valueStart[value], valueEnd[value]);
+    }
+
+    private boolean isHexStringValue(int value) {
+        return isHexString(telegramString, valueStart[value], valueEnd[value]);
+    }
+
+    private boolean valueEquals(int value, String expected) {
+        int start = valueStart[value];
+        int len   = valueEnd[value] - start;
+        return expected.length() == len && expected.regionMatches(0, telegramString, start, len);
+    }
+
+    private boolean singleInt() {
+        return values == 1 && isIntValue(0);
+    }
+
+    private boolean singleTimestamp() {
+        return values == 1 && isTimestampValue(0);
+    }
+
+    private boolean singleHex() {
+        return values == 1 && isHexStringValue(0);
+    }
+
+    // Returns the index of the matching unit (and sets numberStart/numberEnd) or -1 if not a number with one of these units.
+    private int numberWithUnit(int value, String[] units) {
+        int start = valueStart[value];
+        int end   = valueEnd[value];
+        int star = indexOf(telegramString, '*', start, end);
+        if (star == -1) {
+            return -1;
+        }
+        int nStart = trimStart(start, star);
+        int nEnd   = trimEnd(nStart, star);
+        if (!isNumber(telegramString, nStart, nEnd)) {
+            return -1;
+        }
+        int unitStart = trimStart(star + 1, end);
+        int unitEnd   = trimEnd(unitStart, end);
+        int unitLength = unitEnd - unitStart;
+        for (int i = 0; i < units.length; i++) {
+            if (units[i].length() == unitLength && units[i].regionMatches(0, telegramString, unitStart, unitLength)) {
+                numberStart = nStart;
+                numberEnd   = nEnd;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long parseLong(int start, int end) {
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            result = result * 10 + (telegramString.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    private static final double[] POWERS_OF_TEN = {1, 10, 100, 1000};
+
+    // Only for a valid INT or FLOAT (which has at most 3 decimals) so the mantissa is exact
+    // and a single division gives the same (correctly rounded) result as Double.valueOf.
+    private double parseDouble(int start, int end) {
+        long mantissa = 0;
+        int decimals = 0;
+        boolean afterDot = false;
+        for (int i = start; i < end; i++) {
+            char c = telegramString.charAt(i);
+            if (isDigit(c)) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (afterDot) {
+                    decimals++;
+                }
+            } else {
+                afterDot = true;
+            }
+        }
+        return decimals == 0 ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+    }
+
+    // ------------------------------------------
+
+    // What to do with a COSEM id (the low byte is the DsmrField ordinal or the MBus channel)
+    private static final int UNKNOWN       = -1;
+    private static final int FIELD         = 0x000;
+    private static final int IGNORED_INT   = 0x100; // Valid if the value is an INT but it is not retained.
+    private static final int THRESHOLD     = 0x200;
+    private static final int MBUS_DEVICE   = 0x300;
+    private static final int MBUS_ID       = 0x400;
+    private static final int MBUS_READING  = 0x500;
+    private static final int MBUS_PROFILE  = 0x600;
+    private static final int NOT_ALLOWED   = 0x700;
+
+    // An open addressing hash table from COSEM id to what to do with it that can be searched without creating a String.
+    private static final int      TABLE_SIZE    = 128;
+    private static final String[] TABLE_KEYS    = new String[TABLE_SIZE];
+    private static final int[]    TABLE_ACTIONS = new int[TABLE_SIZE];
+
+    static {
+        for (DsmrField field : DsmrField.values()) {
+            register(field.getCosemId(), FIELD | field.ordinal());
+        }
+        register("0-0:96.3.10", IGNORED_INT); // Actual switch position Electricity (in/out/enabled).
+        register("0-0:17.0.0",  THRESHOLD);   // The actual threshold Electricity in kW or Ampere
+        register("0-0:96.7.19", NOT_ALLOWED); // Only allowed inside the power failure event log.
+        for (int channel = 1; channel <= PrimitiveDSMRTelegram.MBUS_CHANNELS; channel++) {
+            register("0-" + channel + ":24.1.0", MBUS_DEVICE  | channel); // Device type.
+            register("0-" + channel + ":96.1.0", MBUS_ID      | channel); // Equipment Identifier.
+            register("0-" + channel + ":24.2.1", MBUS_READING | channel); // Last 5 minute reading.
+            register("0-" + channel + ":24.3.0", MBUS_PROFILE | channel); // Profile generic (DSMR 2.2 and 3.0)
+            register("0-" + channel + ":24.4.0", IGNORED_INT);            // Valve position gas (on/off/released).
+        }
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return (hash ^ (hash >>> 7)) & (TABLE_SIZE - 1);
+    }
+
+    private static void register(String cosemId, int action) {
+        int slot = hash(cosemId, 0, cosemId.length());
+        while (TABLE_KEYS[slot] != null) {
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        TABLE_KEYS[slot]    = cosemId;
+        TABLE_ACTIONS[slot] = action;
+    }
+
+    private int lookup(int start, int end) {
+        int len = end - start;
+        int slot = hash(telegramString, start, end);
+        String key;
+        while ((key = TABLE_KEYS[slot]) != null) {
+            if (key.length() == len && key.regionMatches(0, telegramString, start, len)) {
+                return TABLE_ACTIONS[slot];
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        return UNKNOWN;
+    }
+
+    // Only called when not everything is parsed: the lines that are only validated are skipped.
+    private boolean isWanted(int action) {
+        switch (action & ~0xFF) {
+            case FIELD:        return options.isSelected(FIELDS[action & 0xFF]);
+            case MBUS_DEVICE:  return options.includesMBus();
+            case MBUS_ID:      return options.includesMBus();
+            case MBUS_READING: return options.includesMBus();
+            case MBUS_PROFILE: return options.includesMBus();
+            default:           return false;
+        }
+    }
+
+    // Returns false if the field does not match the grammar.
+    private boolean handleField(int action, int cosemIdStart, int cosemIdEnd) {
+        if (action == UNKNOWN) {
+            return unknownCosemId(cosemIdStart, cosemIdEnd);
+        }
+        int argument = action & 0xFF;
+        switch (action & ~0xFF) {
+            case FIELD:        return field(FIELDS[argument]);
+            case IGNORED_INT:  return singleInt();
+            case THRESHOLD:    return values == 1 && numberWithUnit(0, THRESHOLD_UNITS) != -1;
+            case MBUS_DEVICE:  return mBusType(argument);
+            case MBUS_ID:      return mBusEquipmentId(argument);
+            case MBUS_READING: return mBusUsage(argument);
+            case MBUS_PROFILE: return mBusProfileGeneric(argument);
+            case NOT_ALLOWED:  return false;
+            default:           return false;
+        }
+    }
+
+    private static final DsmrField[] FIELDS          = DsmrField.values();
+    private static final String[][]  FIELD_UNITS     = new String[FIELDS.length][];
+    private static final String[]    THRESHOLD_UNITS = {"kW", "A"};
+    private static final String[]    SECONDS         = {"s"};
+
+    private static final UnaryOperator<String> DECODE_EQUIPMENT_ID      = ParseDsmrTelegram.EQUIPMENT_IDS::decode;
+    private static final UnaryOperator<String> DECODE_MBUS_EQUIPMENT_ID = ParseDsmrTelegram.MBUS_EQUIPMENT_IDS::decode;
+
+    static {
+        for (DsmrField field : FIELDS) {
+            FIELD_UNITS[field.ordinal()] = new String[]{field.getUnit()};
+        }
+    }
+
+    private boolean field(DsmrField field) {
+        final PrimitiveDSMRTelegram t = telegram;
+        final int i = field.ordinal();
+        switch (field) {
+            case P1_VERSION:
+                if (!singleInt()) {
+                    return false;
+                }
+                t.strings[i] = t.p1Version.decode(telegramString, valueStart[0], valueEnd[0], ParseDsmrTelegram::normalizeP1Version);
+                break;
+            case TIMESTAMP:
+                if (!singleTimestamp()) {
+                    return false;
+                }
+                t.longs[i] = timestampParser.parseEpochSecond(telegramString, valueStart[0], valueEnd[0]);
+                t.timestampDst = dst(0);
+                break;
+            case EQUIPMENT_ID:
+                if (!singleHex()) {
+                    return false;
+                }
+                t.strings[i] = t.equipmentId.decode(telegramString, valueStart[0], valueEnd[0], DECODE_EQUIPMENT_ID);
+                break;
+            case MESSAGE_CODES:
+                return optionalHexValue(field, t.messageCodes);
+            case MESSAGE:
+                return optionalHexValue(field, t.message);
+            case POWER_FAILURE_EVENT_LOG:
+                return powerFailureEventLog();
+            default:
+                if (field.getType() == DsmrField.Type.LONG) {
+                    if (!singleInt()) {
+                        return false;
+                    }
+                    t.longs[i] = parseLong(valueStart[0], valueEnd[0]);
+                } else {
+                    if (values != 1 || numberWithUnit(0, FIELD_UNITS[i]) == -1) {
+                        return false;
+                    }
+                    t.doubles[i] = parseDouble(numberStart, numberEnd);
+                }
+        }
+        t.setPresent(field);
+        return true;
+    }
+
+    private char dst(int value) {
+        return valueEnd[value] - valueStart[value] > 12 ? telegramString.charAt(valueStart[value] + 12) : ' ';
+    }
+
+    private boolean optionalHexValue(DsmrField field, PrimitiveDSMRTelegram.DecodedText text) {
+        if (values != 1) {
+            return false;
+        }
+        final PrimitiveDSMRTelegram t = telegram;
+        if (valueStart[0] == valueEnd[0]) {
+            t.strings[field.ordinal()] = "";
+        } else if (isHexStringValue(0)) {
+            t.strings[field.ordinal()] = text.decode(telegramString, valueStart[0], valueEnd[0], ParseDsmrTelegram::hexStringToString);
+        } else {
+            return false;
+        }
+        t.setPresent(field);
+        return true;
+    }
+
+    // '1-0:99.97.0' '(' count=INT ')' '(' eventTypeId='0-0:96.7.19' ')' ( '(' TIMESTAMP ')' '(' INT '*' 's' ')' )*
+    private boolean powerFailureEventLog() {
+        if (values < 2 || values % 2 != 0 ||
+            !isIntValue(0) ||
+            !valueEquals(1, "0-0:96.7.19")) {
+            return false;
+        }
+        for (int i = 2; i < values; i += 2) {
+            if (!isTimestampValue(i) ||
+                numberWithUnit(i + 1, SECONDS) == -1 ||
+                !isInt(telegramString, numberStart, numberEnd)) {
+                return false;
+            }
+        }
+
+        final PrimitiveDSMRTelegram t = telegram;
+        t.powerFailureEventLogSize = parseLong(valueStart[0], valueEnd[0]);
+        t.powerFailureEvents = 0;
+        for (int i = 2; i < values; i += 2) {
+            numberWithUnit(i + 1, SECONDS);
+            // The provided timestamp is the end of the failure
+            t.addPowerFailureEvent(
+                timestampParser.parseEpochSecond(telegramString, valueStart[i], valueEnd[i]), dst(i),
+                parseLong(numberStart, numberEnd));
+        }
+        t.setPresent(DsmrField.POWER_FAILURE_EVENT_LOG);
+        return true;
+    }
+
+    // COSEMID ('(' (FLOAT|INT|TIMESTAMP|HEXSTRING) ')')*
+    private boolean unknownCosemId(int start, int end) {
+        if (!isCosemId(telegramString, start, end)) {
+            return false;
+        }
+        for (int i = 0; i < values; i++) {
+            if (!(isNumberValue(i) || isTimestampValue(i) || isHexStringValue(i))) {
+                return false;
+            }
+        }
+        return true; // Ignore
+    }
+
+    // ------------------------------------------
+
+    private boolean mBusType(int channel) {
+        if (!singleInt()) {
+            return false;
+        }
+        final PrimitiveDSMRTelegram t = telegram;
+        t.mBusDeviceType[channel] = (int) parseLong(valueStart[0], valueEnd[0]);
+        t.mBusFlags[channel] |= MBUS_EVENT | MBUS_TYPE;
+        return true;
+    }
+
+    private boolean mBusEquipmentId(int channel) {
+        if (!singleHex()) {
+            return false;
+        }
+        final PrimitiveDSMRTelegram t = telegram;
+        t.mBusEquipmentId[channel] = t.mBusEquipmentText[channel].decode(telegramString, valueStart[0], valueEnd[0], DECODE_MBUS_EQUIPMENT_ID);
+        t.mBusFlags[channel] |= MBUS_EVENT;
+        return true;
+    }
+
+    private static final String[] MBUS_UNITS = {"m3", "GJ", "kWh"};
+
+    // '(' timestamp=TIMESTAMP ')' '(' value=(FLOAT|INT) ('*' unit=('m3'|'GJ'|'kWh'))? ')'
+    private boolean mBusUsage(int channel) {
+        if (values != 2 || !isTimestampValue(0)) {
+            return false;
+        }
+        String unit;
+        if (isNumberValue(1)) {
+            numberStart = valueStart[1];
+            numberEnd   = valueEnd[1];
+            unit        = "";
+        } else {
+            int unitIndex = numberWithUnit(1, MBUS_UNITS);
+            if (unitIndex == -1) {
+                return false;
+            }
+            unit = MBUS_UNITS[unitIndex];
+        }
+        setMBusUsage(channel, 0, unit);
+        return true;
+    }
+
+    // '(' timestamp=TIMESTAMP ')' '(' profileStatus=INT ')' '(' recordingPeriod=INT ')' '(' numberMeasurementValues=INT ')'
+    // '(0-1:24.2.' INT ')' '(' unit=('m3'|'GJ'|'kWh') ')' ( '(' value=(FLOAT|INT) ')' )+
+    private boolean mBusProfileGeneric(int channel) {
+        if (values < 7 ||
+            !isTimestampValue(0) ||
+            !isIntValue(1) ||
+            !isIntValue(2) ||
+            !isIntValue(3)) {
+            return false;
+        }
+
+        // The captured object must be "0-<channel>:24.2.<INT>"
+        int captured = valueStart[4];
+        int capturedEnd = valueEnd[4];
+        if (capturedEnd - captured < 9 ||
+            !telegramString.startsWith("0-", captured) ||
+            telegramString.charAt(captured + 2) != (char) ('0' + channel) ||
+            !telegramString.startsWith(":24.2.", captured + 3) ||
+            !isInt(telegramString, trimStart(captured + 9, capturedEnd), capturedEnd)) {
+            return false;
+        }
+
+        String unit = null;
+        for (String allowedUnit : MBUS_UNITS) {
+            if (valueEquals(5, allowedUnit)) {
+                unit = allowedUnit;
+            }
+        }
+        if (unit == null) {
+            return false;
+        }
+
+        for (int i = 6; i < values; i++) {
+            if (!isNumberValue(i)) {
+                return false;
+            }
+        }
+
+        // Only the last value is retained
+        numberStart = valueStart[values - 1];
+        numberEnd   = valueEnd[values - 1];
+        setMBusUsage(channel, 0, unit);
+        return true;
+    }
+
+    // The value is in numberStart/numberEnd
+    private void setMBusUsage(int channel, int timestampValue, String unit) {
+        final PrimitiveDSMRTelegram t = telegram;
+        t.mBusEpochSecond[channel] = timestampParser.parseEpochSecond(telegramString, valueStart[timestampValue], valueEnd[timestampValue]);
+        t.mBusDst[channel]         = dst(timestampValue);
+        t.mBusValue[channel]       = parseDouble(numberStart, numberEnd);
+        t.mBusUnit[channel]        = unit;
+        t.mBusFlags[channel]      |= MBUS_EVENT | MBUS_USAGE;
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.parse.ReadUTF8RecordStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Splits a stream (i.e. the tty of the P1 port) into telegrams exactly like a {@link ReadUTF8RecordStream}
+ * with the "\r\n![0-9A-F]{4}\r\n" record end would do.
+ * While the bytes come in the CRC is calculated so as soon as the end of a telegram has been read
+ * it is known if the CRC is valid (with the same outcome as {@link CheckCRC#crcIsValid(String)})
+ * without going over the telegram a second time.
+ */
+public class ReadDsmrTelegramStream {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadDsmrTelegramStream.class);
+
+    private final InputStream inputStream;
+    private final long        maxRecordSize;
+
+    private final byte[]      readBuffer = new byte[4096];
+    private int               readBufferLength = 0;
+    private int               readBufferPosition = 0;
+    private boolean           endOfStream = false;
+
+    private byte[]            record = new byte[4096];
+    private int               recordLength = 0;
+
+    // The CRC state of the record that is being read.
+    private enum CrcState {
+        SEARCHING_START,  // Looking for a '/' at the start of a line
+        IN_TELEGRAM,      // Calculating the CRC until the first '!'
+        READING_CRC,      // Reading the 4 hex digits after the '!'
+        DONE,             // The outcome is known
+    }
+
+    private CrcState          crcState;
+    private final Crc16       crc16 = new Crc16();
+    private boolean           atLineStart;
+    private boolean           telegramIsOnlyTheSlash;
+    private int               expectedCrc;
+    private int               crcDigits;
+    private boolean           crcIsValid;
+
+    private boolean           lastCrcIsValid = false;
+
+    public ReadDsmrTelegramStream(InputStream input) {
+        this(input, ReadUTF8RecordStream.MIN_MAX_RECORD_SIZE);
+    }
+
+    public ReadDsmrTelegramStream(InputStream input, long newMaxRecordSize) {
+        inputStream = input;
+        long size = Math.max(newMaxRecordSize, ReadUTF8RecordStream.MIN_MAX_RECORD_SIZE);
+        maxRecordSize = Math.min(size, ReadUTF8RecordStream.MAX_MAX_RECORD_SIZE);
+        startRecord();
+    }
+
+    private void startRecord() {
+        recordLength = 0;
+        crcState     = CrcState.SEARCHING_START;
+        atLineStart  = true;
+        crcIsValid   = false;
+    }
+
+    /**
+     * @return If the CRC of the last record returned by {@link #read()} is valid.
+     */
+    public boolean lastCrcIsValid() {
+        return lastCrcIsValid;
+    }
+
+    /**
+     * Read the next telegram.
+     * @return The next telegram or null if end of stream. At the end of the stream the remaining data is returned
+     * as the last record (even if it is empty), just like {@link ReadUTF8RecordStream#read()}.
+     * @throws IOException If the underlying stream fails or if the end of a telegram is not found in time.
+     */
+    public String read() throws IOException {
+        if (record == null) {
+            return null;
+        }
+
+        while (true) {
+            if (readBufferPosition == readBufferLength) {
+                if (endOfStream) {
+                    return finishLastRecord();
+                }
+                readBufferLength = inputStream.read(readBuffer);
+                readBufferPosition = 0;
+                if (readBufferLength == -1) {
+                    readBufferLength = 0;
+                    endOfStream = true;
+                    continue;
+                }
+            }
+
+            byte b = readBuffer[readBufferPosition++];
+            append(b);
+            updateCrcState(b);
+
+            if (b == '\n' && isEndOfTelegram()) {
+                String result = new String(record, 0, recordLength, UTF_8);
+                lastCrcIsValid = crcIsValid;
+                startRecord();
+                return result;
+            }
+
+            if (recordLength > maxRecordSize) {
+                LOG.error("After {} bytes the end of the telegram has not been found.", recordLength);
+                record = null;
+                throw new IOException("After " + recordLength + " bytes the end of the telegram has not been found yet.");
+            }
+        }
+    }
+
+    private String finishLastRecord() {
+        String result = new String(record, 0, recordLength, UTF_8);
+        lastCrcIsValid = crcIsValid;
+        record = null; // Next call will return null immediately
+        return result;
+    }
+
+    private void append(byte b) {
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, record.length * 2);
+        }
+        record[recordLength++] = b;
+    }
+
+    // The record ends with "\r\n![0-9A-F]{4}\r\n"
+    private boolean isEndOfTelegram() {
+        if (recordLength < 9) {
+            return false;
+        }
+        int end = recordLength - 9;
+        return record[end]     == '\r' &&
+               record[end + 1] == '\n' &&
+               record[end + 2] == '!'  &&
+               isUpperHex(record[end + 3]) &&
+               isUpperHex(record[end + 4]) &&
+               isUpperHex(record[end + 5]) &&
+               isUpperHex(record[end + 6]) &&
+               record[end + 7] == '\r';
+    }
+
+    private static boolean isUpperHex(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'F');
+    }
+
+    // Follows the same rules as CheckCRC: the telegram starts at the first '/' at the start of a line
+    // which is followed by a '!' with 4 hex digits. Only that first candidate is checked.
+    private void updateCrcState(byte b) {
+        switch (crcState) {
+            case SEARCHING_START:
+                if (b == '/' && atLineStart) {
+                    crc16.reset();
+                    crc16.update(b);
+                    telegramIsOnlyTheSlash = true;
+                    crcState = CrcState.IN_TELEGRAM;
+                }
+                break;
+
+            case IN_TELEGRAM:
+                if (b == '!' && telegramIsOnlyTheSlash) {
+                    // "/!" is not a telegram
+                    crcState = CrcState.SEARCHING_START;
+                    break;
+                }
+                telegramIsOnlyTheSlash = false;
+                crc16.update(b);
+                if (b == '!') {
+                    expectedCrc = 0;
+                    crcDigits = 0;
+                    crcState = CrcState.READING_CRC;
+                }
+                break;
+
+            case READING_CRC:
+                int digit = CheckCRC.hexValue(b);
+                if (digit == -1) {
+                    // Not a CRC: look for the next telegram start (this byte may be the start of a line).
+                    crcState = CrcState.SEARCHING_START;
+                    break;
+                }
+                expectedCrc = (expectedCrc << 4) | digit;
+                if (++crcDigits == 4) {
+                    crcIsValid = expectedCrc == crc16.getValue();
+                    crcState = CrcState.DONE;
+                }
+                break;
+
+            case DONE:
+            default:
+                break;
+        }
+        atLineStart = b == '\n' || b == '\r';
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr;
+
+/**
+ * Parses a telegram into a {@link DSMRTelegram} in a single pass: this is the {@link PrimitiveDsmrTelegramParser}
+ * (one reused instance per thread) followed by {@link PrimitiveDSMRTelegram#toDSMRTelegram()}.
+ * For all well-formed telegrams the result is identical to that of {@link ParseDsmrTelegram};
+ * malformed telegrams are marked as invalid by both.
+ */
+public final class ScanDsmrTelegram {
+    private ScanDsmrTelegram() {
+    }
+
+    private static final ThreadLocal<PrimitiveDsmrTelegramParser> PARSER   = ThreadLocal.withInitial(PrimitiveDsmrTelegramParser::new);
+    private static final ThreadLocal<PrimitiveDSMRTelegram>       TELEGRAM = ThreadLocal.withInitial(PrimitiveDSMRTelegram::new);
+
+    /**
+     * Parse a single telegram. This is safe to call from many threads at the same time.
+     * @param telegram The full text of the telegram
+     * @return The parsed telegram or null if the input was null or empty.
+     */
+    public static DSMRTelegram parse(String telegram) {
+        PrimitiveDSMRTelegram primitive = TELEGRAM.get();
+        PARSER.get().parse(telegram, primitive);
+        return primitive.toDSMRTelegram();
+    }
+
+}
@@ -0,0 +1,556 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Many (valid) telegrams stored column wise: one primitive array per field with a bitmap that tells
+ * in which rows the field was present. The aggregations (min, max, sum, mean, percentile) are simple
+ * loops over these arrays which is a lot faster than calling getters on many DSMRTelegram instances.
+ * <p>
+ * An instance is NOT thread safe.
+ */
+public final class TelegramBatch {
+
+    private static final DsmrField[] FIELDS = DsmrField.values();
+
+    private int capacity;
+    private int size = 0;
+
+    // Indexed by the DsmrField ordinal (null if the field is not a number)
+    private final DoubleColumn[] doubleColumns = new DoubleColumn[FIELDS.length];
+    private final LongColumn[]   longColumns   = new LongColumn[FIELDS.length];
+
+    private final DoubleColumn gasM3;
+    private final LongColumn   gasEpochSeconds;
+    private final DoubleColumn slaveEMeterKWh;
+    private final LongColumn   slaveEMeterEpochSeconds;
+
+    private final List<Column> columns = new ArrayList<>();
+
+    // Only used by add(String)
+    private PrimitiveDsmrTelegramParser parser;
+    private PrimitiveDSMRTelegram       parsed;
+
+    public TelegramBatch() {
+        this(1024);
+    }
+
+    public TelegramBatch(int initialCapacity) {
+        capacity = Math.max(64, initialCapacity);
+        for (DsmrField field : FIELDS) {
+            switch (field.getType()) {
+                case DOUBLE:
+                    doubleColumns[field.ordinal()] = column(new DoubleColumn(capacity));
+                    break;
+                case LONG:
+                case TIMESTAMP:
+                    longColumns[field.ordinal()] = column(new LongColumn(capacity));
+                    break;
+                default:
+            }
+        }
+        gasM3                   = column(new DoubleColumn(capacity));
+        gasEpochSeconds         = column(new LongColumn(capacity));
+        slaveEMeterKWh          = column(new DoubleColumn(capacity));
+        slaveEMeterEpochSeconds = column(new LongColumn(capacity));
+    }
+
+    private <C extends Column> C column(C column) {
+        columns.add(column);
+        return column;
+    }
+
+    /** @return The number of telegrams in this batch. */
+    public int size() {
+        return size;
+    }
+
+    /** Remove all telegrams (the memory is retained for reuse). */
+    public void clear() {
+        size = 0;
+        for (Column column : columns) {
+            column.clear();
+        }
+    }
+
+    /**
+     * Parse the telegram and add it if it is valid.
+     * @param telegram The full text of the telegram
+     * @return True if the telegram was valid (and thus added).
+     */
+    public boolean add(String telegram) {
+        if (parser == null) {
+            parser = new PrimitiveDsmrTelegramParser();
+            parsed = new PrimitiveDSMRTelegram();
+        }
+        return parser.parse(telegram, parsed) && add(parsed);
+    }
+
+    /**
+     * Add the values of the telegram if it is valid.
+     * @param telegram The telegram (which can be reused by the caller after this call)
+     * @return True if the telegram was valid (and thus added).
+     */
+    public boolean add(PrimitiveDSMRTelegram telegram) {
+        if (!telegram.isValid()) {
+            return false;
+        }
+        if (size == capacity) {
+            capacity *= 2;
+            for (Column column : columns) {
+                column.grow(capacity);
+            }
+        }
+
+        final int row = size;
+        for (DsmrField field : FIELDS) {
+            final int i = field.ordinal();
+            boolean present = telegram.has(field);
+            if (doubleColumns[i] != null) {
+                doubleColumns[i].set(row, present, telegram.doubles[i]);
+            } else if (longColumns[i] != null) {
+                longColumns[i].set(row, present, telegram.longs[i]);
+            }
+        }
+
+        int gas = telegram.getGasChannel();
+        boolean hasGas = gas != 0 && telegram.hasMBusValue(gas);
+        gasM3          .set(row, hasGas, hasGas ? telegram.getMBusValue(gas)       : Double.NaN);
+        gasEpochSeconds.set(row, hasGas, hasGas ? telegram.getMBusEpochSecond(gas) : 0);
+
+        int slave = telegram.getSlaveEMeterChannel();
+        boolean hasSlave = slave != 0 && telegram.hasMBusValue(slave);
+        slaveEMeterKWh         .set(row, hasSlave, hasSlave ? telegram.getMBusValue(slave)       : Double.NaN);
+        slaveEMeterEpochSeconds.set(row, hasSlave, hasSlave ? telegram.getMBusEpochSecond(slave) : 0);
+
+        size++;
+        return true;
+    }
+
+    // ------------------------------------------
+
+    /**
+     * @param field A field of type DOUBLE
+     * @return The column with the values of this field.
+     */
+    public DoubleColumn getDoubles(DsmrField field) {
+        DoubleColumn column = doubleColumns[field.ordinal()];
+        if (column == null) {
+            throw new IllegalArgumentException("The field " + field + " is a " + field.getType() + " and not a DOUBLE");
+        }
+        return column;
+    }
+
+    /**
+     * @param field A field of type LONG or the TIMESTAMP (as seconds since the epoch)
+     * @return The column with the values of this field.
+     */
+    public LongColumn getLongs(DsmrField field) {
+        LongColumn column = longColumns[field.ordinal()];
+        if (column == null) {
+            throw new IllegalArgumentException("The field " + field + " is a " + field.getType() + " and not a LONG or TIMESTAMP");
+        }
+        return column;
+    }
+
+    /** @return The TIMESTAMP of the telegrams as seconds since the epoch. */
+    public LongColumn getEpochSeconds() {
+        return getLongs(DsmrField.TIMESTAMP);
+    }
+
+    public DoubleColumn getGasM3() {
+        return gasM3;
+    }
+
+    public LongColumn getGasEpochSeconds() {
+        return gasEpochSeconds;
+    }
+
+    public DoubleColumn getSlaveEMeterKWh() {
+        return slaveEMeterKWh;
+    }
+
+    public LongColumn getSlaveEMeterEpochSeconds() {
+        return slaveEMeterEpochSeconds;
+    }
+
+    // ------------------------------------------
+
+    /**
+     * The values of one field for all telegrams in the batch and a bitmap (one bit per row) of the rows that have a value.
+     */
+    public abstract static class Column {
+        long[] validity;
+        int    size;
+        int    count;
+
+        Column(int capacity) {
+            validity = new long[words(capacity)];
+        }
+
+        static int words(int rows) {
+            return (rows + 63) >>> 6;
+        }
+
+        void grow(int capacity) {
+            validity = Arrays.copyOf(validity, words(capacity));
+        }
+
+        void clear() {
+            Arrays.fill(validity, 0, words(size), 0L);
+            size  = 0;
+            count = 0;
+        }
+
+        void setPresent(int row, boolean present) {
+            if (present) {
+                validity[row >>> 6] |= 1L << row;
+                count++;
+            }
+            size = row + 1;
+        }
+
+        /** @return The number of rows (the same as the size of the batch). */
+        public int size() {
+            return size;
+        }
+
+        /** @return The number of rows that have a value. */
+        public int count() {
+            return count;
+        }
+
+        /** @return True if the row has a value. */
+        public boolean isPresent(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+            }
+            return (validity[row >>> 6] & (1L << row)) != 0;
+        }
+
+        /**
+         * The bitmap of rows that have a value: row r is present if (validity[r / 64] & (1L &lt;&lt; r)) != 0.
+         * Note that the array can be longer than needed and that it changes if more telegrams are added.
+         */
+        public long[] getValidity() {
+            return validity;
+        }
+
+        boolean allPresent() {
+            return count == size;
+        }
+
+        static void checkPercentile(double percentile) {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("The percentile must be in the range 0-100 (was " + percentile + ")");
+            }
+        }
+
+        // Nearest rank: the smallest value of which at least the requested percentage of the values is less or equal.
+        static int rank(double percentile, int count) {
+            return Math.max(0, (int) Math.ceil(percentile / 100.0 * count) - 1);
+        }
+    }
+
+    /**
+     * A column of double values. Rows without a value contain NaN and are skipped by all aggregations.
+     */
+    public static final class DoubleColumn extends Column {
+        double[] values;
+
+        DoubleColumn(int capacity) {
+            super(capacity);
+            values = new double[capacity];
+        }
+
+        @Override
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        void set(int row, boolean present, double value) {
+            values[row] = present ? value : Double.NaN;
+            setPresent(row, present);
+        }
+
+        /** @return The value in the row (NaN if it has none). */
+        public double get(int row) {
+            return isPresent(row) ? values[row] : Double.NaN;
+        }
+
+        /** @return The values of all rows (only the first size() are used). */
+        public double[] getValues() {
+            return values;
+        }
+
+        /** @return The present values (in row order) in a new array. */
+        public double[] presentValues() {
+            if (allPresent()) {
+                return Arrays.copyOf(values, size);
+            }
+            double[] result = new double[count];
+            int next = 0;
+            for (int word = 0; word < words(size); word++) {
+                long bits = validity[word];
+                while (bits != 0) {
+                    result[next++] = values[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                    bits &= bits - 1;
+                }
+            }
+            return result;
+        }
+
+        /** @return The sum of all present values (0 if none). */
+        public double sum() {
+            double sum = 0;
+            if (allPresent()) {
+                for (int row = 0; row < size; row++) {
+                    sum += values[row];
+                }
+                return sum;
+            }
+            for (int word = 0; word < words(size); word++) {
+                long bits = validity[word];
+                while (bits != 0) {
+                    sum += values[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                    bits &= bits - 1;
+                }
+            }
+            return sum;
+        }
+
+        /** @return The smallest present value (NaN if none). */
+        public double min() {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            double min = Double.POSITIVE_INFINITY;
+            if (allPresent()) {
+                for (int row = 0; row < size; row++) {
+                    min = Math.min(min, values[row]);
+                }
+                return min;
+            }
+            for (int word = 0; word < words(size); word++) {
+                long bits = validity[word];
+                while (bits != 0) {
+                    min = Math.min(min, values[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+                    bits &= bits - 1;
+                }
+            }
+            return min;
+        }
+
+        /** @return The largest present value (NaN if none). */
+        public double max() {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            double max = Double.NEGATIVE_INFINITY;
+            if (allPresent()) {
+                for (int row = 0; row < size; row++) {
+                    max = Math.max(max, values[row]);
+                }
+                return max;
+            }
+            for (int word = 0; word < words(size); word++) {
+                long bits = validity[word];
+                while (bits != 0) {
+                    max = Math.max(max, values[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+                    bits &= bits - 1;
+                }
+            }
+            return max;
+        }
+
+        /** @return The average of the present values (NaN if none). */
+        public double mean() {
+            return count == 0 ? Double.NaN : sum() / count;
+        }
+
+        /**
+         * @param percentile 0-100 (so 50 is the median)
+         * @return The nearest rank percentile of the present values (NaN if none).
+         */
+        public double percentile(double percentile) {
+            return percentiles(percentile)[0];
+        }
+
+        /**
+         * Several percentiles at once (the values are only sorted once).
+         * @param percentiles Each 0-100
+         * @return The nearest rank percentiles of the present values (NaN if none).
+         */
+        public double[] percentiles(double... percentiles) {
+            for (double percentile : percentiles) {
+                checkPercentile(percentile);
+            }
+            double[] result = new double[percentiles.length];
+            if (count == 0) {
+                Arrays.fill(result, Double.NaN);
+                return result;
+            }
+            double[] sorted = presentValues();
+            Arrays.sort(sorted);
+            for (int i = 0; i < percentiles.length; i++) {
+                result[i] = sorted[rank(percentiles[i], count)];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A column of long values. Rows without a value contain 0 and are skipped by all aggregations.
+     */
+    public static final class LongColumn extends Column {
+        long[] values;
+
+        LongColumn(int capacity) {
+            super(capacity);
+            values = new long[capacity];
+        }
+
+        @Override
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        void set(int row, boolean present, long value) {
+            values[row] = present ? value : 0;
+            setPresent(row, present);
+        }
+
+        /** @return The value in the row (0 if it has none, use isPresent to check). */
+        public long get(int row) {
+            return isPresent(row) ? values[row] : 0;
+        }
+
+        /** @return The values of all rows (only the first size() are used). */
+        public long[] getValues() {
+            return values;
+        }
+
+        /** @return The present values (in row order) in a new array. */
+        public long[] presentValues() {
+            if (allPresent()) {
+                return Arrays.copyOf(values, size);
+            }
+            long[] result = new long[count];
+            int next = 0;
+            for (int word = 0; word < words(size); word++) {
+                long bits = validity[word];
+                while (bits != 0) {
+                    result[next++] = values[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                    bits &= bits - 1;
+                }
+            }
+            return result;
+        }
+
+        /** @return The sum of all present values (0 if none). */
+        public long sum() {
+            // Rows without a value contain 0 so they can simply be included.
+            long sum = 0;
+            for (int row = 0; row < size; row++) {
+                sum += values[row];
+            }
+            return sum;
+        }
+
+        /** @return The smallest present value (Long.MAX_VALUE if none). */
+        public long min() {
+            long min = Long.MAX_VALUE;
+            if (allPresent()) {
+                for (int row = 0; row < size; row++) {
+                    min = Math.min(min, values[row]);
+                }
+                return min;
+            }
+            for (int word = 0; word < words(size); word++) {
+                long bits = validity[word];
+                while (bits != 0) {
+                    min = Math.min(min, values[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+                    bits &= bits - 1;
+                }
+            }
+            return min;
+        }
+
+        /** @return The largest present value (Long.MIN_VALUE if none). */
+        public long max() {
+            long max = Long.MIN_VALUE;
+            if (allPresent()) {
+                for (int row = 0; row < size; row++) {
+                    max = Math.max(max, values[row]);
+                }
+                return max;
+            }
+            for (int word = 0; word < words(size); word++) {
+                long bits = validity[word];
+                while (bits != 0) {
+                    max = Math.max(max, values[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+                    bits &= bits - 1;
+                }
+            }
+            return max;
+        }
+
+        /** @return The average of the present values (NaN if none). */
+        public double mean() {
+            return count == 0 ? Double.NaN : (double) sum() / count;
+        }
+
+        /**
+         * @param percentile 0-100 (so 50 is the median)
+         * @return The nearest rank percentile of the present values.
+         * @throws IllegalStateException if there are no values.
+         */
+        public long percentile(double percentile) {
+            return percentiles(percentile)[0];
+        }
+
+        /**
+         * Several percentiles at once (the values are only sorted once).
+         * @param percentiles Each 0-100
+         * @return The nearest rank percentiles of the present values.
+         * @throws IllegalStateException if there are no values.
+         */
+        public long[] percentiles(double... percentiles) {
+            for (double percentile : percentiles) {
+                checkPercentile(percentile);
+            }
+            if (count == 0) {
+                throw new IllegalStateException("There are no values");
+            }
+            long[] sorted = presentValues();
+            Arrays.sort(sorted);
+            long[] result = new long[percentiles.length];
+            for (int i = 0; i < percentiles.length; i++) {
+                result[i] = sorted[rank(percentiles[i], count)];
+            }
+            return result;
+        }
+    }
+
+}
@@ -15,16 +15,20 @@
  * limitations under the License.
  *
  */
-
 package nl.basjes.dsmr;
 
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Parses the DSMR timestamps without a regex.
+ * Consecutive telegrams only differ in the seconds so the start of each minute (including the
+ * timezone/DST handling) is cached and only the seconds are added.
+ * An instance is thread safe and should be shared to get the most out of the cache.
+ */
 public class TimestampParser {
     // YYMMDDhhmmssX ASCII presentation of Time stamp
     // Year, Month, Day, Hour, Minute, Second, and an indication whether
@@ -34,52 +38,191 @@ public class TimestampParser {
     // This is for the DSMR = Dutch Smart Meter Requirements.
     // Dutch ! means Netherlands which assumes timezone "Europe/Amsterdam"
 
-    // Format                                     Y    Y     M   M      D    D      h    h      m    m      s    s      S or W
-    private static final String TIME_FORMAT = "([0-9][0-9])([01][0-9])([0-3][0-9])([0-2][0-9])([0-5][0-9])([0-5][0-9])([SsWw]?)";
+    // Format   Y    Y     M   M      D    D      h    h      m    m      s    s      S or W
+    //      [0-9][0-9] [01][0-9] [0-3][0-9] [0-2][0-9] [0-5][0-9] [0-5][0-9]  [SsWw]?
+    private static final String MAX_DIGITS = "991939295959";
 
-    private static final Pattern DATE_TIME_PATTERN = Pattern.compile(TIME_FORMAT);
+    private static final int TIMESTAMP_LENGTH = 12;
 
+    /**
+     * @param dsmrTimestamp The timestamp (the first thing in here that looks like a timestamp is used).
+     * @return The timestamp or null if there is no timestamp in the input.
+     */
     public ZonedDateTime parse(String dsmrTimestamp) {
         if (dsmrTimestamp == null || dsmrTimestamp.isEmpty()) {
             return null;
         }
+        int start = find(dsmrTimestamp);
+        if (start == -1) {
+            return null;
+        }
+
+        Minute minute = minute(dsmrTimestamp, start);
+        ZonedDateTime minuteStart = minute.start;
+        if (minuteStart == null) {
+            minuteStart = ZonedDateTime.ofInstant(Instant.ofEpochSecond(minute.epochSecond), zoneOf(minute.dst));
+            minute.start = minuteStart;
+        }
+        int second = twoDigits(dsmrTimestamp, start + 10);
+        return second == 0 ? minuteStart : minuteStart.withSecond(second);
+    }
 
-        Matcher matcher = DATE_TIME_PATTERN.matcher(dsmrTimestamp);
+    /**
+     * @param dsmrTimestamp The timestamp (the first thing in here that looks like a timestamp is used).
+     * @return The timestamp as the number of seconds since the epoch.
+     * @throws IllegalArgumentException if there is no timestamp in the input.
+     */
+    public long parseEpochSecond(CharSequence dsmrTimestamp) {
+        int start = dsmrTimestamp == null ? -1 : find(dsmrTimestamp);
+        if (start == -1) {
+            throw new IllegalArgumentException("No DSMR timestamp found in \"" + dsmrTimestamp + "\"");
+        }
+        return minute(dsmrTimestamp, start).epochSecond + twoDigits(dsmrTimestamp, start + 10);
+    }
 
-        if (!matcher.find()) {
-            return null;
+    /**
+     * The same as parseEpochSecond but for a part of the text that is known to be a valid TIMESTAMP token
+     * (YYMMDDhhmmss with an optional S or W).
+     * @throws IllegalArgumentException if the token does not have the length of a timestamp.
+     */
+    long parseEpochSecond(CharSequence value, int start, int end) {
+        int length = end - start;
+        if (length != TIMESTAMP_LENGTH && length != TIMESTAMP_LENGTH + 1) {
+            throw new IllegalArgumentException("No DSMR timestamp: \"" + value.subSequence(start, end) + "\"");
         }
-        // CHECKSTYLE.OFF: ParenPad
-        Instant baseInstant = Instant.ofEpochSecond(0);
-        ZonedDateTime zonedDateTime = ZonedDateTime
-            .ofInstant(baseInstant, ZoneOffset.UTC)
-            .withYear(2000 +  Integer.parseInt(matcher.group(1)) )
-            .withMonth(       Integer.parseInt(matcher.group(2)) )
-            .withDayOfMonth(  Integer.parseInt(matcher.group(3)) )
-            .withHour(        Integer.parseInt(matcher.group(4)) )
-            .withMinute(      Integer.parseInt(matcher.group(5)) )
-            .withSecond(      Integer.parseInt(matcher.group(6)) );
-
-        ZoneId zoneId;
-
-        switch(matcher.group(7)) {
-            case "S": // Dutch Summertime
-            case "s":
-                zoneId = ZoneOffset.of("+02:00");
-                break;
-
-            case "W": // Dutch Wintertime
-            case "w":
-                zoneId = ZoneOffset.of("+01:00");
-                break;
+        return minute(value, start).epochSecond + twoDigits(value, start + 10);
+    }
+
+    // ------------------------------------------
 
+    // Where the first YYMMDDhhmmss is (or -1 if none)
+    private static int find(CharSequence value) {
+        for (int start = 0; start + TIMESTAMP_LENGTH <= value.length(); start++) {
+            if (matchesAt(value, start)) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesAt(CharSequence value, int start) {
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            char c = value.charAt(start + i);
+            if (c < '0' || c > MAX_DIGITS.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The S or W after the timestamp (' ' if none)
+    private static char dst(CharSequence value, int start) {
+        if (start + TIMESTAMP_LENGTH >= value.length()) {
+            return ' ';
+        }
+        switch (value.charAt(start + TIMESTAMP_LENGTH)) {
+            case 'S':
+            case 's':
+                return 'S';
+            case 'W':
+            case 'w':
+                return 'W';
             default:
-                zoneId = ZoneId.of("Europe/Amsterdam");
-                break;
+                return ' ';
         }
-        zonedDateTime = zonedDateTime.withZoneSameLocal(zoneId);
+    }
+
+    private static int twoDigits(CharSequence value, int start) {
+        return (value.charAt(start) - '0') * 10 + (value.charAt(start + 1) - '0');
+    }
+
+    // ------------------------------------------
 
-        return zonedDateTime;
+    // The start of a minute: immutable except for the lazily created ZonedDateTime (which is immutable itself).
+    private static final class Minute {
+        private final long    key;
+        private final long    epochSecond;
+        private final char    dst;
+        private ZonedDateTime start;
+
+        Minute(long key, long epochSecond, char dst) {
+            this.key         = key;
+            this.epochSecond = epochSecond;
+            this.dst         = dst;
+        }
+    }
+
+    // A direct mapped cache. Races between threads are harmless: at worst the same minute is calculated twice.
+    private static final int CACHE_SIZE = 256;
+    private final Minute[] cache = new Minute[CACHE_SIZE];
+
+    private Minute minute(CharSequence value, int start) {
+        char dst = dst(value, start);
+        // YYMMDDhhmm and the S/W as a single number
+        long key = 0;
+        for (int i = start; i < start + 10; i++) {
+            key = key * 10 + (value.charAt(i) - '0');
+        }
+        key = key * 4 + (dst == 'S' ? 1 : dst == 'W' ? 2 : 0);
+
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 56);
+        Minute minute = cache[slot];
+        if (minute == null || minute.key != key) {
+            minute = new Minute(key, minuteEpochSecond(
+                2000 + twoDigits(value, start),
+                twoDigits(value, start + 2),
+                twoDigits(value, start + 4),
+                twoDigits(value, start + 6),
+                twoDigits(value, start + 8),
+                dst), dst);
+            cache[slot] = minute;
+        }
+        return minute;
+    }
+
+    private static final int[] DAYS_BEFORE_MONTH = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 ? 29 : 28; // Good enough for 2000-2099
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    private static long minuteEpochSecond(int year, int month, int day, int hour, int minute, char dst) {
+        if (dst == ' ' || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour > 23) {
+            // For the DST changes of Europe/Amsterdam (and the exception for an impossible date) we use java.time
+            return LocalDateTime.of(year, month, day, hour, minute).atZone(zoneOf(dst)).toEpochSecond();
+        }
+        long days = 365L * (year - 1970) + (year - 1969) / 4 + DAYS_BEFORE_MONTH[month - 1] + day - 1;
+        if (month > 2 && year % 4 == 0) {
+            days++;
+        }
+        long localSecond = days * 86400 + hour * 3600 + minute * 60;
+        return localSecond - (dst == 'S' ? 7200 : 3600);
+    }
+
+    // ------------------------------------------
+
+    private static final ZoneId     AMSTERDAM   = ZoneId.of("Europe/Amsterdam");
+    private static final ZoneOffset SUMMER_TIME = ZoneOffset.of("+02:00");
+    private static final ZoneOffset WINTER_TIME = ZoneOffset.of("+01:00");
+
+    /**
+     * The zone that belongs to the S/W indicator at the end of a timestamp.
+     * @param dst The 'S' or 'W' at the end of the timestamp (anything else means there was none).
+     */
+    static ZoneId zoneOf(char dst) {
+        switch (dst) {
+            case 'S':
+            case 's':
+                return SUMMER_TIME; // Dutch Summertime
+            case 'W':
+            case 'w':
+                return WINTER_TIME; // Dutch Wintertime
+            default:
+                return AMSTERDAM;
+        }
     }
 
 }
@@ -0,0 +1,148 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.BulkDsmrTelegramParser;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseOptions;
+import nl.basjes.dsmr.ScanDsmrTelegram;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static nl.basjes.dsmr.DsmrField.TIMESTAMP;
+import static nl.basjes.dsmr.parse.Utils.recordedTelegrams;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestBulkDsmrTelegramParser {
+
+    private static ExecutorService executor;
+    private static List<String>    telegrams;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+
+        telegrams = recordedTelegrams();
+        // The result must stay aligned with the input.
+        telegrams.add(10, "");
+        telegrams.add(20, null);
+        telegrams.add(30, "Garbage");
+    }
+
+    @AfterAll
+    static void shutdown() {
+        executor.shutdown();
+    }
+
+    private static void assertSameAsScan(List<DSMRTelegram> result) {
+        assertEquals(telegrams.size(), result.size());
+        for (int i = 0; i < telegrams.size(); i++) {
+            DSMRTelegram expected = ScanDsmrTelegram.parse(telegrams.get(i));
+            if (expected == null) {
+                assertNull(result.get(i));
+            } else {
+                assertEquals(expected.toString(), result.get(i).toString(), "Telegram " + i);
+            }
+        }
+    }
+
+    @Test
+    void testSequential() {
+        assertSameAsScan(new BulkDsmrTelegramParser().parseAll(telegrams));
+        assertSameAsScan(new BulkDsmrTelegramParser(ParseOptions.all(), null, 7).parseAll(telegrams));
+    }
+
+    @Test
+    void testParallel() {
+        for (int sliceSize : new int[]{1, 7, 100, 100_000}) {
+            BulkDsmrTelegramParser parser = new BulkDsmrTelegramParser(ParseOptions.all(), executor, sliceSize);
+            assertSameAsScan(parser.parseAll(telegrams));
+            assertSameAsScan(parser.parseAll(telegrams.iterator()));
+        }
+    }
+
+    @Test
+    void testCharSequences() {
+        List<StringBuilder> builders = new ArrayList<>();
+        for (String telegram : telegrams) {
+            builders.add(telegram == null ? null : new StringBuilder(telegram));
+        }
+        assertSameAsScan(new BulkDsmrTelegramParser(ParseOptions.all(), executor, 13).parseAll(builders));
+    }
+
+    @Test
+    void testProjection() {
+        List<DSMRTelegram> result = new BulkDsmrTelegramParser(ParseOptions.fields(TIMESTAMP), executor, 50).parseAll(telegrams);
+        assertEquals(telegrams.size(), result.size());
+        int valid = 0;
+        for (int i = 0; i < telegrams.size(); i++) {
+            DSMRTelegram expected = ScanDsmrTelegram.parse(telegrams.get(i));
+            if (expected != null && expected.isValid()) {
+                assertEquals(expected.getTimestamp(), result.get(i).getTimestamp());
+                assertNull(result.get(i).getVoltageL1());
+                valid++;
+            }
+        }
+        assertTrue(valid > 500, "Only " + valid + " valid telegrams were found");
+    }
+
+    @Test
+    void testEmpty() {
+        BulkDsmrTelegramParser parser = new BulkDsmrTelegramParser(ParseOptions.all(), executor, 10);
+        assertTrue(parser.parseAll(Collections.<String>emptyList()).isEmpty());
+        assertTrue(parser.parseAll(Collections.<String>emptyIterator()).isEmpty());
+    }
+
+    @Test
+    void testFailingInput() {
+        // An exception while reading the input is thrown by parseAll
+        Iterator<String> failing = new Iterator<String>() {
+            private int count = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public String next() {
+                if (++count > 25) {
+                    throw new IllegalStateException("Input failed");
+                }
+                return telegrams.get(count);
+            }
+        };
+        BulkDsmrTelegramParser parser = new BulkDsmrTelegramParser(ParseOptions.all(), executor, 10);
+        assertThrows(IllegalStateException.class, () -> parser.parseAll(failing));
+        assertThrows(IllegalArgumentException.class, () -> new BulkDsmrTelegramParser(ParseOptions.all(), executor, 0));
+    }
+
+}
@@ -22,6 +22,11 @@ package nl.basjes.dsmr.parse;
 import nl.basjes.dsmr.CheckCRC;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static nl.basjes.dsmr.CheckCRC.calculatedCrc;
 import static nl.basjes.dsmr.CheckCRC.crcIsValid;
 import static nl.basjes.dsmr.CheckCRC.extractCrcFromTelegram;
@@ -106,7 +111,7 @@ class TestCRCValidator {
 
     @Test
     void testBadInputCrcIsValid(){
-        assertFalse(crcIsValid(null));
+        assertFalse(crcIsValid((String) null));
         assertFalse(crcIsValid(""));
         assertFalse(crcIsValid("Bla bla bla"));
     }
@@ -133,10 +138,95 @@ class TestCRCValidator {
         assertNull(calculatedCrc("Bla"));
         assertNull(extractCrcFromTelegram(null));
         assertNull(extractCrcFromTelegram("Bla"));
-        assertFalse(crcIsValid(null));
+        assertFalse(crcIsValid((String) null));
         assertFalse(crcIsValid("Bla"));
 
     }
 
+    @Test
+    void testCrcOnBytes() {
+        byte[] bytes = DSMR_TELEGRAM.getBytes(UTF_8);
+        assertTrue(crcIsValid(bytes));
+        assertTrue(crcIsValid(ByteBuffer.wrap(bytes)));
+
+        // A telegram somewhere in the middle of a larger buffer
+        byte[] buffer = ("Garbage\r\n" + DSMR_TELEGRAM + "More garbage").getBytes(UTF_8);
+        assertTrue(crcIsValid(buffer, 9, bytes.length));
+        assertTrue(crcIsValid(buffer));
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        byteBuffer.position(9);
+        assertTrue(crcIsValid(byteBuffer));
+        assertEquals(9, byteBuffer.position());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+        assertTrue(crcIsValid(direct));
+
+        // A direct buffer is checked in place: only the bytes in [position, limit[ are used.
+        ByteBuffer directInTheMiddle = ByteBuffer.allocateDirect(buffer.length);
+        directInTheMiddle.put(buffer);
+        directInTheMiddle.position(9).limit(9 + bytes.length);
+        assertTrue(crcIsValid(directInTheMiddle));
+        assertEquals(9, directInTheMiddle.position());
+        directInTheMiddle.limit(9 + bytes.length - 3); // The CRC is no longer complete
+        assertFalse(crcIsValid(directInTheMiddle));
+
+        byte[] broken = DSMR_TELEGRAM.replace("237.1*V", "237.2*V").getBytes(UTF_8);
+        ByteBuffer directBroken = ByteBuffer.allocateDirect(broken.length);
+        directBroken.put(broken);
+        directBroken.flip();
+        assertFalse(crcIsValid(directBroken));
+        assertFalse(crcIsValid(broken));
+        assertFalse(crcIsValid((byte[]) null));
+        assertFalse(crcIsValid((ByteBuffer) null));
+        assertFalse(crcIsValid(new byte[0]));
+        assertFalse(crcIsValid("Bla bla bla".getBytes(UTF_8)));
+    }
+
+    // The way the CRC was checked before: using a regex (and a bit by bit CRC16 calculation).
+    private static final Pattern EXTRACT_PATTERN = Pattern.compile("(^/[^!]+!)([0-9A-Fa-f]{4})", Pattern.MULTILINE);
+
+    private static boolean regexCrcIsValid(String input) {
+        Matcher matcher = EXTRACT_PATTERN.matcher(input);
+        if (!matcher.find()) {
+            return false;
+        }
+        int crc = 0;
+        for (byte b : matcher.group(1).getBytes(UTF_8)) {
+            crc ^= b & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) == 0 ? crc >>> 1 : (crc >>> 1) ^ 0xA001;
+            }
+        }
+        return matcher.group(2).equalsIgnoreCase(String.format("%04X", crc));
+    }
+
+    @Test
+    void testSameAsRegex() {
+        String[] inputs = {
+            DSMR_TELEGRAM,
+            DSMR_TELEGRAM.replace("!478B", "!478b"),
+            DSMR_TELEGRAM.replace("!478B", "!478"),
+            DSMR_TELEGRAM.replace("!478B", "!"),
+            DSMR_TELEGRAM.replace("237.1*V", "237.2*V"),
+            DSMR_TELEGRAM.replace("0-0:96.13.0()", "0-0:96.13.0(\u00e9\u20ac)"),
+            "Garbage/" + DSMR_TELEGRAM,
+            "Garbage\n" + DSMR_TELEGRAM,
+            "Garbage\r" + DSMR_TELEGRAM,
+            "/!1234\r\n" + DSMR_TELEGRAM,
+            "/Bad!12\r\n" + DSMR_TELEGRAM,
+            "/Bad\r\n/Bad!12\r\n" + DSMR_TELEGRAM,
+            fixCrc(DSMR_TELEGRAM.replace("0-0:96.13.0()", "0-0:96.13.0(\u00e9\u20ac)")),
+            "/",
+            "/!",
+            "/a!",
+            "/a!ABCD",
+        };
+        for (String input : inputs) {
+            assertEquals(regexCrcIsValid(input), crcIsValid(input), input);
+            assertEquals(regexCrcIsValid(input), crcIsValid(input.getBytes(UTF_8)), input);
+        }
+    }
 
 }
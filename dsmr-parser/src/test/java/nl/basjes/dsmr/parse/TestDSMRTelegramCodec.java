@@ -0,0 +1,144 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegramCodec;
+import nl.basjes.dsmr.DSMRTelegramKryoSerializer;
+import nl.basjes.dsmr.LazyDSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ScanDsmrTelegram;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static nl.basjes.dsmr.parse.Utils.recordedTelegrams;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestDSMRTelegramCodec {
+
+    @Test
+    void testRecordedTelegrams() throws IOException {
+        long textSize = 0;
+        long binarySize = 0;
+        for (String text : recordedTelegrams()) {
+            DSMRTelegram telegram = ParseDsmrTelegram.parse(text);
+            byte[] encoded = DSMRTelegramCodec.encode(telegram);
+            assertEquals(telegram.toString(), DSMRTelegramCodec.decode(encoded).toString());
+            textSize += text.length();
+            binarySize += encoded.length;
+        }
+        // Measured: 81504 bytes for 440348 characters of text (0.185).
+        assertTrue(binarySize * 5 < textSize, "Encoded " + binarySize + " bytes vs text " + textSize + " bytes");
+    }
+
+    @Test
+    void testStreamOfTelegrams() throws IOException {
+        List<String> texts = recordedTelegrams();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (String text : texts) {
+            DSMRTelegramCodec.write(ParseDsmrTelegram.parse(text), out);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (String text : texts) {
+            assertEquals(ParseDsmrTelegram.parse(text).toString(), DSMRTelegramCodec.read(in).toString());
+        }
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void testKryo() throws IOException {
+        Kryo kryo = new Kryo();
+        DSMRTelegramKryoSerializer.configureKryo(kryo);
+
+        List<DSMRTelegram> telegrams = new ArrayList<>();
+        for (String text : recordedTelegrams()) {
+            telegrams.add(ParseDsmrTelegram.parse(text));
+        }
+
+        Output output = new Output(1024, -1);
+        for (DSMRTelegram telegram : telegrams) {
+            kryo.writeObject(output, telegram);
+        }
+        Input input = new Input(output.toBytes());
+        for (DSMRTelegram telegram : telegrams) {
+            assertEquals(telegram.toString(), kryo.readObject(input, DSMRTelegram.class).toString());
+        }
+        assertTrue(input.end());
+
+        Input bad = new Input(new byte[]{99, 0, 0});
+        assertThrows(KryoException.class, () -> kryo.readObject(bad, DSMRTelegram.class));
+    }
+
+    @Test
+    void testKryoLazyTelegram() throws IOException {
+        Kryo kryo = new Kryo();
+        DSMRTelegramKryoSerializer.configureKryo(kryo);
+
+        List<String> texts = recordedTelegrams().subList(0, 50);
+        Output output = new Output(1024, -1);
+        for (String text : texts) {
+            // Nothing of the lazy telegram has been decoded yet.
+            kryo.writeObject(output, LazyDSMRTelegram.parse(text));
+            kryo.writeClassAndObject(output, LazyDSMRTelegram.parse(text));
+        }
+        Input input = new Input(output.toBytes());
+        for (String text : texts) {
+            String expected = ScanDsmrTelegram.parse(text).toString(); // The same as the lazy telegram
+            assertEquals(expected, kryo.readObject(input, DSMRTelegram.class).toString());
+            Object telegram = kryo.readClassAndObject(input);
+            assertTrue(telegram instanceof DSMRTelegram);
+            assertEquals(expected, telegram.toString());
+        }
+        assertTrue(input.end());
+    }
+
+    @Test
+    void testMeasurements() throws IOException {
+        for (double value : Arrays.asList(0.0, -0.0, 0.001, 123456.789, -1.5, 0.0001, 1.0 / 3, 1e20, -1e20,
+                                          Double.NaN, Double.POSITIVE_INFINITY, Double.MAX_VALUE, Double.MIN_VALUE)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DSMRTelegramCodec.writeMeasurement(new DataOutputStream(bytes), value);
+            double decoded = DSMRTelegramCodec.readMeasurement(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(decoded), "Value " + value);
+        }
+    }
+
+    @Test
+    void testBadInput() {
+        assertThrows(IOException.class, () -> DSMRTelegramCodec.decode(new byte[0]));
+        assertThrows(IOException.class, () -> DSMRTelegramCodec.decode(new byte[]{2, 0, 0}));
+        byte[] encoded = DSMRTelegramCodec.encode(ParseDsmrTelegram.parse("/ISK5\\2M550T-1012\r\n\r\n1-3:0.2.8(50)\r\n!1234\r\n"));
+        assertThrows(IOException.class, () -> DSMRTelegramCodec.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
+import nl.basjes.dsmr.DSMRTelegramSchema.Field;
+import nl.basjes.dsmr.DsmrField;
+import nl.basjes.dsmr.MBusEvent;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static nl.basjes.dsmr.DSMRTelegramSchema.MBUS_EVENT_FIELDS;
+import static nl.basjes.dsmr.DSMRTelegramSchema.POWER_FAILURE_EVENT_FIELDS;
+import static nl.basjes.dsmr.DSMRTelegramSchema.TELEGRAM_FIELDS;
+import static nl.basjes.dsmr.parse.Utils.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestDSMRTelegramSchema {
+
+    private static final String TELEGRAM = CheckCRC.fixCrc(
+        "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(190324150541W)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(003432.829*kWh)\r\n" +
+        "1-0:1.8.2(003224.632*kWh)\r\n" +
+        "1-0:2.8.1(000000.000*kWh)\r\n" +
+        "1-0:2.8.2(000000.000*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.433*kW)\r\n" +
+        "1-0:2.7.0(00.000*kW)\r\n" +
+        "0-0:96.7.21(00005)\r\n" +
+        "0-0:96.7.9(00003)\r\n" +
+        "1-0:99.97.0(1)(0-0:96.7.19)(180417201458S)(0000000236*s)\r\n" +
+        "1-0:32.32.0(00001)\r\n" +
+        "1-0:52.32.0(00002)\r\n" +
+        "1-0:72.32.0(00003)\r\n" +
+        "1-0:32.36.0(00004)\r\n" +
+        "1-0:52.36.0(00005)\r\n" +
+        "1-0:72.36.0(00006)\r\n" +
+        "0-0:96.13.1(3031203631203831)\r\n" +
+        "0-0:96.13.0(4D657373616765)\r\n" +
+        "1-0:32.7.0(236.7*V)\r\n" +
+        "1-0:52.7.0(234.5*V)\r\n" +
+        "1-0:72.7.0(236.0*V)\r\n" +
+        "1-0:31.7.0(000*A)\r\n" +
+        "1-0:51.7.0(001*A)\r\n" +
+        "1-0:71.7.0(002*A)\r\n" +
+        "1-0:21.7.0(00.010*kW)\r\n" +
+        "1-0:41.7.0(00.020*kW)\r\n" +
+        "1-0:61.7.0(00.030*kW)\r\n" +
+        "1-0:22.7.0(00.000*kW)\r\n" +
+        "1-0:42.7.0(00.000*kW)\r\n" +
+        "1-0:62.7.0(00.000*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(190324150500W)(01934.556*m3)\r\n" +
+        "0-2:24.1.0(002)\r\n" +
+        "0-2:96.1.0(4530303339303031363532303530323136)\r\n" +
+        "0-2:24.2.1(190324150500W)(00012.345*kWh)\r\n" +
+        "!0000\r\n");
+
+    // The name of the field for each getter of the class
+    private static Set<String> getterNames(Class<?> clazz) {
+        Set<String> names = new TreeSet<>();
+        for (Method method : clazz.getDeclaredMethods()) {
+            String name = method.getName();
+            if (method.getParameterCount() != 0) {
+                continue;
+            }
+            if (name.startsWith("get")) {
+                name = name.substring(3);
+            } else if (name.startsWith("is")) {
+                name = name.substring(2);
+            } else {
+                continue;
+            }
+            names.add(Character.toLowerCase(name.charAt(0)) + name.substring(1));
+        }
+        return names;
+    }
+
+    private static <S> Set<String> fieldNames(List<Field<S, ?>> fields) {
+        Set<String> names = new TreeSet<>();
+        for (int index = 0; index < fields.size(); index++) {
+            Field<S, ?> field = fields.get(index);
+            assertEquals(index, field.getIndex(), field.getName());
+            assertTrue(names.add(field.getName()), "Duplicate name " + field.getName());
+        }
+        return names;
+    }
+
+    @Test
+    void testAllGettersAreInTheSchema() {
+        Set<String> telegramGetters = getterNames(DSMRTelegram.class);
+        telegramGetters.remove("powerFailureEventLog"); // Only the size is a field, the events are in POWER_FAILURE_EVENT_FIELDS
+        assertEquals(telegramGetters, fieldNames(TELEGRAM_FIELDS));
+
+        Set<String> powerFailureGetters = getterNames(PowerFailureEvent.class);
+        powerFailureGetters.remove("duration");
+        powerFailureGetters.add("durationSeconds");
+        assertEquals(powerFailureGetters, fieldNames(POWER_FAILURE_EVENT_FIELDS));
+
+        assertEquals(getterNames(MBusEvent.class), fieldNames(MBUS_EVENT_FIELDS));
+    }
+
+    @Test
+    void testAllDsmrFieldsAreInTheSchema() {
+        Set<DsmrField> dsmrFields = EnumSet.noneOf(DsmrField.class);
+        for (Field<DSMRTelegram, ?> field : TELEGRAM_FIELDS) {
+            if (field.getDsmrField() != null) {
+                assertTrue(dsmrFields.add(field.getDsmrField()), "Duplicate " + field.getDsmrField());
+            }
+        }
+        assertEquals(EnumSet.allOf(DsmrField.class), dsmrFields);
+    }
+
+    private static Object invokeGetter(Object source, String name) throws ReflectiveOperationException {
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Method method;
+        try {
+            method = source.getClass().getMethod("get" + suffix);
+        } catch (NoSuchMethodException e) {
+            method = source.getClass().getMethod("is" + suffix);
+        }
+        return method.invoke(source);
+    }
+
+    @Test
+    void testSameAsGetters() throws ReflectiveOperationException {
+        DSMRTelegram telegram = parse(TELEGRAM);
+        assertTrue(telegram.isValid());
+
+        for (Field<DSMRTelegram, ?> field : TELEGRAM_FIELDS) {
+            Object value = field.get(telegram);
+            assertNotNull(value, field.getName());
+            if (field.getName().equals("mBusEvents")) {
+                assertEquals(2, value);
+            } else {
+                assertEquals(invokeGetter(telegram, field.getName()), value, field.getName());
+            }
+        }
+
+        PowerFailureEvent powerFailureEvent = telegram.getPowerFailureEventLog().get(0);
+        for (Field<PowerFailureEvent, ?> field : POWER_FAILURE_EVENT_FIELDS) {
+            assertNotNull(field.get(powerFailureEvent), field.getName());
+        }
+        assertEquals(236L, POWER_FAILURE_EVENT_FIELDS.get(2).get(powerFailureEvent));
+
+        for (MBusEvent mBusEvent : telegram.getMBusEvents().values()) {
+            for (Field<MBusEvent, ?> field : MBUS_EVENT_FIELDS) {
+                assertEquals(invokeGetter(mBusEvent, field.getName()), field.get(mBusEvent), field.getName());
+            }
+        }
+    }
+
+}
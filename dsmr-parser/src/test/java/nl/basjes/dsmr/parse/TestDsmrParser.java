@@ -20,7 +20,6 @@ package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
 import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +29,7 @@ import java.util.List;
 
 import static nl.basjes.dsmr.parse.Utils.assertPowerFailureEvent;
 import static nl.basjes.dsmr.parse.Utils.checkMbus;
+import static nl.basjes.dsmr.parse.Utils.parse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -101,7 +101,7 @@ class TestDsmrParser {
 
 
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = parse(testcase);
 
         // CHECKSTYLE.OFF: ParenPad
         assertEquals("/ISk5\\2MT382-1000", dsmrTelegram.getRawIdent());
@@ -182,7 +182,7 @@ class TestDsmrParser {
             "!BAD0\r\n" +
             "\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = parse(testcase);
 
         // CHECKSTYLE.OFF: ParenPad
         assertEquals("/ISk5\\2MT382-1000", dsmrTelegram.getRawIdent());
@@ -246,19 +246,19 @@ class TestDsmrParser {
 
     @Test
     void testNull(){
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(null);
+        DSMRTelegram dsmrTelegram = parse(null);
         assertNull(dsmrTelegram);
     }
 
     @Test
     void testEmpty(){
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse("");
+        DSMRTelegram dsmrTelegram = parse("");
         assertNull(dsmrTelegram);
     }
 
     @Test
     void testSyntaxNotEmpty(){
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(" ");
+        DSMRTelegram dsmrTelegram = parse(" ");
         assertNotNull(dsmrTelegram);
         assertFalse(dsmrTelegram.isValid());
     }
@@ -274,7 +274,7 @@ class TestDsmrParser {
             "!BAD0\r\n" +
             "\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = parse(testcase);
         assertNotNull(dsmrTelegram);
         assertFalse(dsmrTelegram.isValid());
     }
@@ -292,7 +292,7 @@ class TestDsmrParser {
 
 //        LOG.info("{}", CheckCRC.fixCrc(testcase));
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = parse(testcase);
         assertNotNull(dsmrTelegram);
         assertTrue(dsmrTelegram.isValid());
     }
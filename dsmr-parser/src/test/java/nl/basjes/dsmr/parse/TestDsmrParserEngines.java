@@ -0,0 +1,181 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ScanDsmrTelegram;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static nl.basjes.dsmr.parse.Utils.parse;
+import static nl.basjes.dsmr.parse.Utils.recordedTelegrams;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The Utils.parse runs both the ANTLR and the single pass parser and checks they agree.
+class TestDsmrParserEngines {
+
+    @Test
+    void testRecordedTelegrams() throws IOException {
+        int valid = 0;
+        for (String telegram : recordedTelegrams()) {
+            DSMRTelegram dsmrTelegram = parse(telegram);
+            if (dsmrTelegram != null && dsmrTelegram.isValid()) {
+                valid++;
+            }
+        }
+        assertTrue(valid > 500, "Only " + valid + " valid telegrams were found");
+    }
+
+    private static final String TELEGRAM = CheckCRC.fixCrc(
+        "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(190324150504W)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(003432.829*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.520*kW)\r\n" +
+        "1-0:99.97.0(1)(0-0:96.7.19)(180417201458S)(0000000236*s)\r\n" +
+        "0-0:96.13.0()\r\n" +
+        "1-0:32.7.0(236.7*V)\r\n" +
+        "0-0:17.0.0(999.9*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303538353330303031313633323137)\r\n" +
+        "0-1:24.2.1(171105201000W)(00016.713*m3)\r\n" +
+        "0-2:24.3.0(090212160000)(00)(60)(1)(0-2:24.2.1)(m3)(00000.000)(00001.000)\r\n" +
+        "1-0:0.0.0(1234)(181105201000S)\r\n" +
+        "!0000\r\n");
+
+    @Test
+    void testTruncatedTelegrams() {
+        assertTrue(parse(TELEGRAM).isValid());
+        // Cut off after each line
+        int endOfLine = TELEGRAM.indexOf('\n');
+        while (endOfLine != -1 && endOfLine < TELEGRAM.length() - 1) {
+            String truncated = TELEGRAM.substring(0, endOfLine + 1);
+            assertFalse(parse(truncated).isValid(), truncated);
+            endOfLine = TELEGRAM.indexOf('\n', endOfLine + 1);
+        }
+    }
+
+    @Test
+    void testDamagedTelegrams() {
+        String[][] damages = {
+            {"(50)",               "(50"},
+            {"(50)",               "((50)"},
+            {"(50)",               "(5O)"},
+            {"*kWh)",              "*kw)"},
+            {"*kWh)",              ")"},
+            {"00.520*kW",          "00.5200*kW"},
+            {"(0-0:96.7.19)",      "(0-0:96.7.18)"},
+            {"(0000000236*s)",     "(0000000236*m)"},
+            {"(003)",              "(A03)"},
+            {"(m3)",               "(m4)"},
+            {"(0-2:24.2.1)",       "(0-1:24.2.1)"},
+            {"(171105201000W)",    "(171105201000X)"},
+            {"(181105201000S)",    "(181105201000S)(*)"},
+            {"1-0:0.0.0",          "1-0:0.0.000"},
+            {"1-0:0.0.0",          "0-0:96.7.19"},
+            {"0-0:96.13.0()",      "0-0:96.13.0(ABC)"},
+        };
+
+        for (String[] damage : damages) {
+            assertTrue(TELEGRAM.contains(damage[0]), damage[0]);
+            // Both with the original (now incorrect) and with a corrected CRC
+            String damaged = TELEGRAM.replace(damage[0], damage[1]);
+            assertFalse(parse(damaged).isValid(), damaged);
+            assertFalse(parse(CheckCRC.fixCrc(damaged)).isValid(), damaged);
+        }
+    }
+
+    @Test
+    void testEquipmentIdsAreShared() {
+        // Decoded only once: all telegrams (from both engines) get the same String instances.
+        DSMRTelegram first  = ParseDsmrTelegram.parse(TELEGRAM);
+        DSMRTelegram second = ScanDsmrTelegram.parse(TELEGRAM);
+        DSMRTelegram third  = ScanDsmrTelegram.parse(TELEGRAM.replace("(003432.829*kWh)", "(003432.830*kWh)"));
+
+        assertEquals("E0044007131650618", first.getEquipmentId());
+        assertEquals("G0058530001163217", first.getGasEquipmentId());
+        assertSame(first.getEquipmentId(),     second.getEquipmentId());
+        assertSame(first.getEquipmentId(),     third.getEquipmentId());
+        assertSame(first.getGasEquipmentId(),  second.getGasEquipmentId());
+        assertSame(first.getGasEquipmentId(),  third.getGasEquipmentId());
+        assertSame("E0044007131650618".intern(), first.getEquipmentId());
+    }
+
+    // The way the ident and P1 version were handled before: using a regex
+    private static final Pattern IDENT_PATTERN = Pattern.compile("^/([a-zA-Z0-9][a-zA-Z0-9][a-zA-Z0-9])5(.*)$");
+
+    private static String[] regexIdent(String rawIdent) {
+        Matcher identMatcher = IDENT_PATTERN.matcher(rawIdent);
+        if (!identMatcher.find()) {
+            return new String[]{null, rawIdent};
+        }
+        String ident = identMatcher.group(2);
+        if (ident.startsWith("\\2")) {
+            ident = ident.substring(2);
+        } else if (ident.startsWith("\\")) {
+            ident = ident.substring(1);
+        }
+        return new String[]{identMatcher.group(1).toUpperCase(Locale.ROOT), ident.trim()};
+    }
+
+    @Test
+    void testIdentAndP1VersionSameAsRegex() {
+        String[] rawIdents = {
+            "/ISK5\\2M550T-1012",
+            "/ISk5\\2MT382-1003",
+            "/Ene5\\SAGEMCOM CX2000-",
+            "/KFM5KAIFA-METER",
+            "/XMX5LGBBFFB231237741",
+            "/ABC5 \\2 spaces ",
+            "/abc5\\\\2x",
+            "/ab_5\\2M550T-1012",
+        };
+        String[] p1Versions = {"22", "30", "40", "42", "50", "51", "5", "123", "0"};
+
+        int checked = 0;
+        for (String rawIdent : rawIdents) {
+            for (String p1Version : p1Versions) {
+                DSMRTelegram telegram = parse(CheckCRC.fixCrc(rawIdent + "\r\n\r\n1-3:0.2.8(" + p1Version + ")\r\n!0000\r\n"));
+                if (telegram.getRawIdent() == null) {
+                    continue; // Not accepted by the parsers at all
+                }
+                String[] expected = regexIdent(rawIdent);
+                assertEquals(rawIdent,    telegram.getRawIdent());
+                assertEquals(expected[0], telegram.getEquipmentBrandTag(), rawIdent);
+                assertEquals(expected[1], telegram.getIdent(),             rawIdent);
+                assertEquals(p1Version.replaceAll("([0-9])([0-9]+)", "$1.$2"), telegram.getP1Version());
+                checked++;
+            }
+        }
+        assertTrue(checked >= 7 * p1Versions.length, "Only " + checked + " were checked");
+    }
+
+}
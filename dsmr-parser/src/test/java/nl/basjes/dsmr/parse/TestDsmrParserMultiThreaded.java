@@ -0,0 +1,133 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestDsmrParserMultiThreaded {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestDsmrParserMultiThreaded.class);
+
+    private static final int TELEGRAMS           = 100;
+    private static final int PARSES_PER_THREAD   = 2000;
+
+    private static String createTelegram(int second, double power) {
+        return CheckCRC.fixCrc(
+            "/ISK5\\2M550T-1012\r\n" +
+            "\r\n" +
+            "1-3:0.2.8(50)\r\n" +
+            "0-0:1.0.0(1903241505" + String.format("%02d", second % 60) + "W)\r\n" +
+            "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+            "1-0:1.8.1(003432.829*kWh)\r\n" +
+            "1-0:1.8.2(003224.632*kWh)\r\n" +
+            "1-0:2.8.1(000000.000*kWh)\r\n" +
+            "1-0:2.8.2(000000.000*kWh)\r\n" +
+            "0-0:96.14.0(0001)\r\n" +
+            "1-0:1.7.0(" + String.format("%06.3f", power) + "*kW)\r\n" +
+            "1-0:2.7.0(00.000*kW)\r\n" +
+            "0-0:96.7.21(00005)\r\n" +
+            "0-0:96.7.9(00003)\r\n" +
+            "1-0:99.97.0(1)(0-0:96.7.19)(180417201458S)(0000000236*s)\r\n" +
+            "1-0:32.32.0(00001)\r\n" +
+            "1-0:52.32.0(00001)\r\n" +
+            "1-0:72.32.0(00001)\r\n" +
+            "1-0:32.36.0(00001)\r\n" +
+            "1-0:52.36.0(00001)\r\n" +
+            "1-0:72.36.0(00001)\r\n" +
+            "0-0:96.13.0()\r\n" +
+            "1-0:32.7.0(236.7*V)\r\n" +
+            "1-0:52.7.0(234.5*V)\r\n" +
+            "1-0:72.7.0(236.0*V)\r\n" +
+            "1-0:31.7.0(000*A)\r\n" +
+            "1-0:51.7.0(000*A)\r\n" +
+            "1-0:71.7.0(002*A)\r\n" +
+            "1-0:21.7.0(00.045*kW)\r\n" +
+            "1-0:41.7.0(00.010*kW)\r\n" +
+            "1-0:61.7.0(00.379*kW)\r\n" +
+            "1-0:22.7.0(00.000*kW)\r\n" +
+            "1-0:42.7.0(00.000*kW)\r\n" +
+            "1-0:62.7.0(00.000*kW)\r\n" +
+            "0-1:24.1.0(003)\r\n" +
+            "0-1:96.1.0(4730303538353330303031313633323137)\r\n" +
+            "0-1:24.2.1(171105201000W)(00016.713*m3)\r\n" +
+            "!0000\r\n");
+    }
+
+    @Test
+    void testParallelParsing() throws Exception {
+        List<String> telegrams = new ArrayList<>(TELEGRAMS);
+        List<String> expected  = new ArrayList<>(TELEGRAMS);
+        for (int i = 0; i < TELEGRAMS; i++) {
+            String telegram = createTelegram(i, i / 10.0);
+            telegrams.add(telegram);
+            DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(telegram);
+            assertTrue(dsmrTelegram.isValid());
+            expected.add(dsmrTelegram.toString());
+        }
+
+        int maxThreads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Integer>> futures = new ArrayList<>(threads);
+                long start = System.nanoTime();
+                for (int thread = 0; thread < threads; thread++) {
+                    final int offset = thread;
+                    futures.add(executorService.submit(() -> {
+                        int checked = 0;
+                        for (int i = 0; i < PARSES_PER_THREAD; i++) {
+                            int index = (i + offset) % TELEGRAMS;
+                            DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(telegrams.get(index));
+                            assertEquals(expected.get(index), dsmrTelegram.toString());
+                            checked++;
+                        }
+                        return checked;
+                    }));
+                }
+                int total = 0;
+                for (Future<Integer> future : futures) {
+                    total += future.get();
+                }
+                long durationNs = System.nanoTime() - start;
+                assertEquals(threads * PARSES_PER_THREAD, total);
+
+                LOG.info("Threads: {} --> Parsed {} telegrams in {} ms ({} telegrams/second)",
+                    threads, total, durationNs / 1_000_000, (total * 1_000_000_000L) / durationNs);
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+    }
+
+}
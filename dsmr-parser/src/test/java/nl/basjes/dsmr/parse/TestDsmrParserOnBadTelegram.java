@@ -19,11 +19,11 @@
 package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static nl.basjes.dsmr.parse.Utils.parse;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
 class TestDsmrParserOnBadTelegram {
@@ -86,7 +86,7 @@ class TestDsmrParserOnBadTelegram {
             "!34B6\r\n" +
             "\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = parse(testcase);
 
         assertFalse(dsmrTelegram.isValid());
         assertFalse(dsmrTelegram.isValidCRC());
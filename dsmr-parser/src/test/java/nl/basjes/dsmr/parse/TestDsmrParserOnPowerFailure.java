@@ -19,12 +19,12 @@
 package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
 
 import static nl.basjes.dsmr.parse.Utils.assertPowerFailureEvent;
+import static nl.basjes.dsmr.parse.Utils.parse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -69,7 +69,7 @@ class TestDsmrParserOnPowerFailure {
             "!46B4\r\n" +
             "\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = parse(testcase);
 
         assertTrue(dsmrTelegram.isValid());
         assertTrue(dsmrTelegram.isValidCRC());
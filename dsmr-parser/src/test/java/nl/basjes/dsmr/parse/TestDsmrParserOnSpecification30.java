@@ -19,13 +19,13 @@
 package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.ZonedDateTime;
 
+import static nl.basjes.dsmr.parse.Utils.parse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -63,7 +63,7 @@ class TestDsmrParserOnSpecification30 {
             "0-1:24.4.0(1)\r\n" +
             "!\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = parse(testcase);
 
 //        LOG.info("{}", dsmrTelegram);
 
@@ -20,7 +20,6 @@ package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
 import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +28,7 @@ import java.time.ZonedDateTime;
 import java.util.List;
 
 import static nl.basjes.dsmr.parse.Utils.assertPowerFailureEvent;
+import static nl.basjes.dsmr.parse.Utils.parse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
@@ -102,7 +102,7 @@ class TestDsmrParserOnSpecification42 {
             "0-1:24.2.1(101209110000W)(12785.123*m3)\r\n" +
             "!CE7C\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = parse(testcase);
 
 //        LOG.info("{}", dsmrTelegram);
 
@@ -0,0 +1,96 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegramCodec;
+import nl.basjes.dsmr.LazyDSMRTelegram;
+import nl.basjes.dsmr.ScanDsmrTelegram;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The equivalence with the other parsers is checked for all test telegrams in Utils.parse
+class TestLazyDSMRTelegram {
+
+    private static final String TELEGRAM = CheckCRC.fixCrc(
+        "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(190324150504W)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(003432.829*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.520*kW)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(101208152415W)(0000000240*s)\r\n" +
+        "0-0:96.13.0(48656C6C6F20776F726C64)\r\n" +
+        "1-0:32.7.0(236.7*V)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303538353330303031313633323137)\r\n" +
+        "0-1:24.2.1(171105201000W)(00016.713*m3)\r\n" +
+        "!0000\r\n");
+
+    @Test
+    void testOnlyWhatIsRead() {
+        LazyDSMRTelegram telegram = LazyDSMRTelegram.parse(TELEGRAM);
+        assertTrue(telegram.isValid());
+        assertEquals("2019-03-24T15:05:04+01:00",   telegram.getTimestamp().toString());
+        assertEquals(0.52,                          telegram.getElectricityPowerReceived(), 0.0001);
+        assertEquals(16.713,                        telegram.getGasM3(), 0.0001);
+        assertEquals("2017-11-05T20:10+01:00",      telegram.getGasTimestamp().toString());
+        assertEquals("Hello world",                 telegram.getMessage());
+
+        // Decoded once: reading again gives the same objects
+        assertSame(telegram.getTimestamp(),                telegram.getTimestamp());
+        assertSame(telegram.getElectricityPowerReceived(), telegram.getElectricityPowerReceived());
+        assertSame(telegram.getPowerFailureEventLog(),     telegram.getPowerFailureEventLog());
+        assertSame(telegram.getMBusEvents(),               telegram.getMBusEvents());
+        assertSame(telegram.getGasTimestamp(),             telegram.getMBusEvents().get(1).getTimestamp());
+
+        // Not present
+        assertNull(telegram.getVoltageL2());
+        assertNull(telegram.getSlaveEMeterkWh());
+        assertNull(telegram.getPowerFailures());
+
+        // Reading the rest afterwards still gives the full telegram
+        assertEquals(ScanDsmrTelegram.parse(TELEGRAM).toString(), telegram.toString());
+    }
+
+    @Test
+    void testEncodeUnreadTelegram() throws IOException {
+        // The codec reads the fields directly so it must decode everything first.
+        DSMRTelegram expected = ScanDsmrTelegram.parse(TELEGRAM);
+        assertEquals(expected.toString(), DSMRTelegramCodec.decode(DSMRTelegramCodec.encode(LazyDSMRTelegram.parse(TELEGRAM))).toString());
+        assertEquals(2L, LazyDSMRTelegram.parse(TELEGRAM).getPowerFailureEventLogSize());
+        assertEquals("9999", LazyDSMRTelegram.parse(TELEGRAM.replaceAll("![0-9A-F]{4}", "!9999")).getCrc());
+    }
+
+    @Test
+    void testEmpty() {
+        assertNull(LazyDSMRTelegram.parse(null));
+        assertNull(LazyDSMRTelegram.parse(""));
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DsmrTelegramParser;
+import nl.basjes.dsmr.DsmrTelegramParserFactory;
+import nl.basjes.dsmr.ParallelDsmrFileParser;
+import nl.basjes.parse.ReadUTF8RecordStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.DsmrTelegramParserFactory.Engine.SINGLE_PASS;
+import static nl.basjes.dsmr.parse.Utils.recording;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestParallelDsmrFileParser {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> sequential(String input, DsmrTelegramParser parser) throws IOException {
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(
+            new ByteArrayInputStream(input.getBytes(UTF_8)), "\\r\\n![0-9A-F]{4}\\r\\n");
+        List<String> telegrams = new ArrayList<>();
+        String record;
+        while ((record = reader.read()) != null) {
+            DSMRTelegram telegram = parser.parse(record);
+            if (telegram != null) {
+                telegrams.add(telegram.toString());
+            }
+        }
+        return telegrams;
+    }
+
+    private static List<String> parallel(Path file, DsmrTelegramParser parser, ForkJoinPool pool, int chunkSize)
+        throws IOException {
+        List<String> telegrams = new ArrayList<>();
+        for (DSMRTelegram telegram : ParallelDsmrFileParser.parse(file, parser, pool, chunkSize)) {
+            telegrams.add(telegram.toString());
+        }
+        return telegrams;
+    }
+
+    @Test
+    void testSameAsSequential() throws IOException {
+        String recording = recording();
+        Path file = tempDir.resolve("recording.txt");
+        Files.write(file, recording.getBytes(UTF_8));
+
+        DsmrTelegramParser parser = DsmrTelegramParserFactory.create(SINGLE_PASS);
+        List<String> expected = sequential(recording, parser);
+        assertTrue(expected.size() > 100);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // From one chunk per telegram to everything in a single chunk.
+            for (int chunkSize : new int[]{1, 1000, 4095, 4096, 4097, 100_000, Integer.MAX_VALUE}) {
+                assertEquals(expected, parallel(file, parser, pool, chunkSize), "Chunk size " + chunkSize);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(expected.size(), ParallelDsmrFileParser.parse(file).size());
+    }
+
+    @Test
+    void testStreamingSameAsSequential() throws IOException {
+        String recording = recording();
+        Path file = tempDir.resolve("recording.txt");
+        Files.write(file, recording.getBytes(UTF_8));
+
+        DsmrTelegramParser parser = DsmrTelegramParserFactory.create(SINGLE_PASS);
+        List<String> expected = sequential(recording, parser);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunksInFlight : new int[]{1, 2, 3, 100}) {
+                List<String> telegrams = new ArrayList<>();
+                ParallelDsmrFileParser.parse(file, parser, pool, 1000, chunksInFlight, telegram -> telegrams.add(telegram.toString()));
+                assertEquals(expected, telegrams, "Chunks in flight " + chunksInFlight);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        ParallelDsmrFileParser.parse(file, telegram -> count.incrementAndGet());
+        assertEquals(expected.size(), count.get());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> ParallelDsmrFileParser.parse(file, parser, ForkJoinPool.commonPool(), 1000, 0, telegram -> { }));
+    }
+
+    @Test
+    void testNoIdentLineForTooLong() throws IOException {
+        // A (sparse) file without any ident line that is larger than the largest possible chunk.
+        Path file = tempDir.resolve("huge.txt");
+        try (RandomAccessFile huge = new RandomAccessFile(file.toFile(), "rw")) {
+            huge.setLength(ParallelDsmrFileParser.MAX_CHUNK_SIZE + 1024L);
+        }
+        IOException e = assertThrows(IOException.class,
+            () -> ParallelDsmrFileParser.parse(file, DsmrTelegramParserFactory.create(), ForkJoinPool.commonPool(), Integer.MAX_VALUE));
+        assertTrue(e.getMessage().startsWith("No telegram starts within"), e.getMessage());
+    }
+
+    @Test
+    void testSpecialFiles() throws IOException {
+        Path empty = tempDir.resolve("empty.txt");
+        Files.write(empty, new byte[0]);
+        assertEquals(0, ParallelDsmrFileParser.parse(empty).size());
+
+        Path noIdent = tempDir.resolve("noident.txt");
+        Files.write(noIdent, "Just some text\r\nwithout any telegrams\r\n".getBytes(UTF_8));
+        assertEquals(1, ParallelDsmrFileParser.parse(noIdent, DsmrTelegramParserFactory.create(), ForkJoinPool.commonPool(), 1).size());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> ParallelDsmrFileParser.parse(empty, DsmrTelegramParserFactory.create(), ForkJoinPool.commonPool(), 0));
+        assertThrows(IOException.class, () -> ParallelDsmrFileParser.parse(tempDir.resolve("missing.txt")));
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DsmrField;
+import nl.basjes.dsmr.DsmrTelegramParser;
+import nl.basjes.dsmr.DsmrTelegramParserFactory;
+import nl.basjes.dsmr.ParseOptions;
+import nl.basjes.dsmr.PrimitiveDSMRTelegram;
+import nl.basjes.dsmr.PrimitiveDsmrTelegramParser;
+import nl.basjes.dsmr.ScanDsmrTelegram;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_POWER_RECEIVED;
+import static nl.basjes.dsmr.DsmrField.MESSAGE;
+import static nl.basjes.dsmr.DsmrField.P1_VERSION;
+import static nl.basjes.dsmr.DsmrField.POWER_FAILURE_EVENT_LOG;
+import static nl.basjes.dsmr.DsmrField.TIMESTAMP;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_L1;
+import static nl.basjes.dsmr.parse.Utils.recordedTelegrams;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// CHECKSTYLE.OFF: LineLength
+
+class TestParseOptions {
+
+    private static final String TELEGRAM = CheckCRC.fixCrc(
+        "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(190324150504W)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(003432.829*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.520*kW)\r\n" +
+        "1-0:99.97.0(1)(0-0:96.7.19)(180417201458S)(0000000236*s)\r\n" +
+        "0-0:96.13.0(48656C6C6F20776F726C64)\r\n" +
+        "1-0:32.7.0(236.7*V)\r\n" +
+        "0-0:17.0.0(999.9*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303538353330303031313633323137)\r\n" +
+        "0-1:24.2.1(171105201000W)(00016.713*m3)\r\n" +
+        "0-2:24.3.0(090212160000)(00)(60)(1)(0-2:24.2.1)(m3)\r\n" +
+        "(00001.000)\r\n" +
+        "1-0:0.0.0(1234)(181105201000S)\r\n" +
+        "!0000\r\n");
+
+    private static final ParseOptions[] PROJECTIONS = {
+        ParseOptions.fields(),
+        ParseOptions.fields(TIMESTAMP),
+        ParseOptions.fields(TIMESTAMP, ELECTRICITY_POWER_RECEIVED).withMBus(),
+        ParseOptions.fields(MESSAGE, POWER_FAILURE_EVENT_LOG, VOLTAGE_L1),
+        ParseOptions.fields(DsmrField.values()),
+        ParseOptions.all(),
+    };
+
+    // Everything that is selected must be exactly the same as when parsing everything, the rest is absent.
+    private static void assertProjection(String telegram, ParseOptions options) {
+        PrimitiveDSMRTelegram full = new PrimitiveDSMRTelegram();
+        PrimitiveDSMRTelegram projected = new PrimitiveDSMRTelegram();
+        boolean valid = new PrimitiveDsmrTelegramParser().parse(telegram, full);
+        assertEquals(valid, new PrimitiveDsmrTelegramParser(options).parse(telegram, projected), options.toString());
+
+        for (DsmrField field : DsmrField.values()) {
+            if (!options.isSelected(field)) {
+                assertFalse(projected.has(field), field.name());
+                continue;
+            }
+            assertEquals(full.has(field), projected.has(field), field.name());
+            switch (field.getType()) {
+                case STRING:            assertEquals(full.getString(field),             projected.getString(field),             field.name()); break;
+                case TIMESTAMP:         assertEquals(full.getTimestamp(),               projected.getTimestamp(),               field.name()); break;
+                case LONG:              assertEquals(full.getLong(field),               projected.getLong(field),               field.name()); break;
+                case DOUBLE:            assertEquals(full.getDouble(field),             projected.getDouble(field),             field.name()); break;
+                case POWER_FAILURE_LOG: assertEquals(full.getPowerFailureEventLogSize(), projected.getPowerFailureEventLogSize(), field.name()); break;
+                default:
+            }
+        }
+
+        for (int channel = 1; channel <= PrimitiveDSMRTelegram.MBUS_CHANNELS; channel++) {
+            if (options.includesMBus()) {
+                assertEquals(full.hasMBus(channel),          projected.hasMBus(channel));
+                assertEquals(full.getMBusEquipmentId(channel), projected.getMBusEquipmentId(channel));
+                assertEquals(full.getMBusValue(channel),     projected.getMBusValue(channel));
+            } else {
+                assertFalse(projected.hasMBus(channel));
+            }
+        }
+        assertEquals(options.includesMBus() ? full.getGasChannel() : 0, projected.getGasChannel());
+    }
+
+    @Test
+    void testProjections() {
+        assertTrue(ScanDsmrTelegram.parse(TELEGRAM).isValid());
+        for (ParseOptions options : PROJECTIONS) {
+            assertProjection(TELEGRAM, options);
+        }
+    }
+
+    @Test
+    void testRecordedTelegrams() throws IOException {
+        List<String> telegrams = recordedTelegrams();
+        for (ParseOptions options : PROJECTIONS) {
+            for (String telegram : telegrams) {
+                assertProjection(telegram, options);
+            }
+        }
+    }
+
+    @Test
+    void testSkippedFieldsAreNotValidated() {
+        String damaged = CheckCRC.fixCrc(TELEGRAM.replace("(48656C6C6F20776F726C64)", "(Hello world)"));
+        assertFalse(ScanDsmrTelegram.parse(damaged).isValid());
+        assertFalse(DsmrTelegramParserFactory.create(ParseOptions.fields(MESSAGE)).parse(damaged).isValid());
+
+        DSMRTelegram telegram = DsmrTelegramParserFactory.create(ParseOptions.fields(TIMESTAMP)).parse(damaged);
+        assertTrue(telegram.isValid());
+        assertEquals("2019-03-24T15:05:04+01:00", telegram.getTimestamp().toString());
+        assertNull(telegram.getMessage());
+
+        // The CRC is always checked
+        assertFalse(DsmrTelegramParserFactory.create(ParseOptions.fields(TIMESTAMP)).parse(TELEGRAM.replace("(1234)", "(1235)")).isValid());
+    }
+
+    @Test
+    void testBrokenStructureIsAlwaysAnError() {
+        DsmrTelegramParser parser = DsmrTelegramParserFactory.create(ParseOptions.fields(TIMESTAMP));
+        String[][] damages = {
+            {"1-0:32.7.0(236.7*V)",  "Garbage"},
+            {"1-0:32.7.0(236.7*V)",  "1-0:32.7.0(236.7*V"},
+            {"1-0:32.7.0(236.7*V)",  "1-0:32.7.0((236.7*V)"},
+        };
+        for (String[] damage : damages) {
+            String damaged = CheckCRC.fixCrc(TELEGRAM.replace(damage[0], damage[1]));
+            assertFalse(parser.parse(damaged).isValid(), damaged);
+        }
+    }
+
+    @Test
+    void testParser() {
+        DsmrTelegramParser parser = DsmrTelegramParserFactory.create(ParseOptions.fields(TIMESTAMP, ELECTRICITY_POWER_RECEIVED).withMBus());
+        DSMRTelegram telegram = parser.parse(TELEGRAM);
+        assertTrue(telegram.isValid());
+        assertEquals("5.0",                       telegram.getP1Version());
+        assertEquals("2019-03-24T15:05:04+01:00", telegram.getTimestamp().toString());
+        assertEquals(0.52,                        telegram.getElectricityPowerReceived(), 0.0001);
+        assertEquals(16.713,                      telegram.getGasM3(), 0.0001);
+        assertNull(telegram.getEquipmentId());
+        assertNull(telegram.getVoltageL1());
+        assertNull(telegram.getMessage());
+        assertTrue(telegram.getPowerFailureEventLog().isEmpty());
+
+        assertEquals(ScanDsmrTelegram.parse(TELEGRAM).toString(),
+            DsmrTelegramParserFactory.create(ParseOptions.all()).parse(TELEGRAM).toString());
+        assertNull(parser.parse(""));
+    }
+
+    @Test
+    void testParseNames() {
+        ParseOptions options = ParseOptions.parse(" timestamp, Electricity_Power_Received ,GAS,");
+        assertTrue(options.isSelected(TIMESTAMP));
+        assertTrue(options.isSelected(ELECTRICITY_POWER_RECEIVED));
+        assertTrue(options.isSelected(P1_VERSION)); // Always
+        assertFalse(options.isSelected(MESSAGE));
+        assertTrue(options.includesMBus());
+        assertFalse(options.isAll());
+        assertEquals("P1_VERSION, TIMESTAMP, ELECTRICITY_POWER_RECEIVED, MBUS", options.toString());
+
+        assertFalse(ParseOptions.parse("TIMESTAMP").includesMBus());
+        assertTrue(ParseOptions.parse("MBUS").includesMBus());
+        assertSame(ParseOptions.all(), ParseOptions.parse(null));
+        assertSame(ParseOptions.all(), ParseOptions.parse(" "));
+        assertTrue(ParseOptions.fields(DsmrField.values()).withMBus().isAll());
+        assertThrows(IllegalArgumentException.class, () -> ParseOptions.parse("TIMESTAMP, NO_SUCH_FIELD"));
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.PrimitiveDSMRTelegram;
+import nl.basjes.dsmr.PrimitiveDsmrTelegramParser;
+import nl.basjes.dsmr.TimestampParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static nl.basjes.dsmr.DsmrField.CURRENT_L1;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RECEIVED_LOW_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_TARIFF_INDICATOR;
+import static nl.basjes.dsmr.DsmrField.EQUIPMENT_ID;
+import static nl.basjes.dsmr.DsmrField.MESSAGE;
+import static nl.basjes.dsmr.DsmrField.P1_VERSION;
+import static nl.basjes.dsmr.DsmrField.POWER_FAILURE_EVENT_LOG;
+import static nl.basjes.dsmr.DsmrField.TIMESTAMP;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_L1;
+import static nl.basjes.dsmr.parse.Utils.recordedTelegrams;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// The equivalence with the other parsers is checked for all test telegrams in Utils.parse
+class TestPrimitiveDSMRTelegram {
+
+    private static final String TELEGRAM = CheckCRC.fixCrc(
+        "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(190324150504W)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(003432.829*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(101208152415W)(0000000240*s)\r\n" +
+        "0-0:96.13.0()\r\n" +
+        "1-0:32.7.0(236.7*V)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303538353330303031313633323137)\r\n" +
+        "0-1:24.2.1(171105201000W)(00016.713*m3)\r\n" +
+        "!0000\r\n");
+
+    @Test
+    void testValues() {
+        PrimitiveDsmrTelegramParser parser = new PrimitiveDsmrTelegramParser();
+        PrimitiveDSMRTelegram telegram = new PrimitiveDSMRTelegram();
+        assertTrue(telegram.isEmpty());
+
+        assertTrue(parser.parse(TELEGRAM, telegram));
+        assertFalse(telegram.isEmpty());
+        assertTrue(telegram.isValidCRC());
+        assertEquals(Integer.parseInt(CheckCRC.extractCrcFromTelegram(TELEGRAM), 16), telegram.getCrc());
+        assertEquals("ISK",                 telegram.getEquipmentBrandTag());
+        assertEquals("M550T-1012",          telegram.getIdent());
+        assertEquals("5.0",                 telegram.getString(P1_VERSION));
+        assertEquals("E0044007131650618",   telegram.getString(EQUIPMENT_ID));
+        assertEquals("",                    telegram.getString(MESSAGE));
+        assertEquals(1L,                    telegram.getLong(ELECTRICITY_TARIFF_INDICATOR));
+        assertEquals(3432.829,              telegram.getDouble(ELECTRICITY_RECEIVED_LOW_TARIFF));
+        assertEquals(236.7,                 telegram.getDouble(VOLTAGE_L1));
+        assertTrue(telegram.has(TIMESTAMP));
+        assertEquals("2019-03-24T15:05:04+01:00", telegram.getTimestamp().toString());
+        assertEquals(telegram.getTimestamp().toEpochSecond(), telegram.getEpochSecond());
+
+        assertFalse(telegram.has(CURRENT_L1));
+        assertTrue(Double.isNaN(telegram.getDouble(CURRENT_L1)));
+        assertThrows(IllegalArgumentException.class, () -> telegram.getLong(CURRENT_L1));
+
+        assertTrue(telegram.has(POWER_FAILURE_EVENT_LOG));
+        assertEquals(2, telegram.getPowerFailureEventLogSize());
+        assertEquals(2, telegram.getPowerFailureEvents());
+        assertEquals(236, telegram.getPowerFailureDurationSeconds(0));
+        assertEquals(new TimestampParser().parse("101208152415W").toEpochSecond(), telegram.getPowerFailureEndEpochSecond(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> telegram.getPowerFailureEndEpochSecond(2));
+
+        assertEquals(1, telegram.getGasChannel());
+        assertEquals(0, telegram.getSlaveEMeterChannel());
+        assertTrue(telegram.hasMBus(1));
+        assertFalse(telegram.hasMBus(2));
+        assertEquals(3,                   telegram.getMBusDeviceType(1));
+        assertEquals("G0058530001163217", telegram.getMBusEquipmentId(1));
+        assertEquals(16.713,              telegram.getMBusValue(1));
+        assertEquals("m3",                telegram.getMBusUnit(1));
+        assertEquals(new TimestampParser().parse("171105201000W").toEpochSecond(), telegram.getMBusEpochSecond(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> telegram.hasMBus(5));
+    }
+
+    @Test
+    void testReuse() {
+        PrimitiveDsmrTelegramParser parser = new PrimitiveDsmrTelegramParser();
+        PrimitiveDSMRTelegram telegram = new PrimitiveDSMRTelegram();
+
+        assertTrue(parser.parse(TELEGRAM, telegram));
+        String ident       = telegram.getIdent();
+        String equipmentId = telegram.getString(EQUIPMENT_ID);
+        String gasId       = telegram.getMBusEquipmentId(1);
+
+        // Unchanged texts are not decoded again
+        String next = CheckCRC.fixCrc(TELEGRAM.replace("003432.829", "003432.830"));
+        assertTrue(parser.parse(next, telegram));
+        assertEquals(3432.830, telegram.getDouble(ELECTRICITY_RECEIVED_LOW_TARIFF));
+        assertSame(ident,       telegram.getIdent());
+        assertSame(equipmentId, telegram.getString(EQUIPMENT_ID));
+        assertSame(gasId,       telegram.getMBusEquipmentId(1));
+
+        // Nothing of the previous telegram remains
+        String minimal = "/ISK5\\2M550T-1012\r\n\r\n0-0:96.14.0(0002)\r\n!\r\n";
+        assertTrue(parser.parse(minimal, telegram));
+        assertEquals(2L, telegram.getLong(ELECTRICITY_TARIFF_INDICATOR));
+        assertEquals("2.2", telegram.getString(P1_VERSION));
+        assertFalse(telegram.has(EQUIPMENT_ID));
+        assertFalse(telegram.has(TIMESTAMP));
+        assertFalse(telegram.has(POWER_FAILURE_EVENT_LOG));
+        assertEquals(0, telegram.getPowerFailureEvents());
+        assertFalse(telegram.hasMBus(1));
+        assertEquals(-1, telegram.getCrc());
+        assertEquals(0, telegram.getGasChannel());
+
+        assertFalse(parser.parse(null, telegram));
+        assertTrue(telegram.isEmpty());
+        assertNull(telegram.toDSMRTelegram());
+    }
+
+    @Test
+    void testEpochSeconds() {
+        PrimitiveDsmrTelegramParser parser = new PrimitiveDsmrTelegramParser();
+        PrimitiveDSMRTelegram telegram = new PrimitiveDSMRTelegram();
+        TimestampParser timestampParser = new TimestampParser();
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("yyMMddHHmmss");
+
+        // Every 37 minutes for a few years (including all DST changes) in all 3 forms.
+        LocalDateTime time = LocalDateTime.of(2018, 12, 31, 0, 0, 13);
+        while (time.getYear() < 2022) {
+            for (String dst : new String[]{"", "S", "W"}) {
+                String timestamp = time.format(format) + dst;
+                assertTrue(parser.parse("/ISK5\\2M550T-1012\r\n\r\n0-0:1.0.0(" + timestamp + ")\r\n!\r\n", telegram));
+                assertEquals(timestampParser.parse(timestamp).toEpochSecond(), telegram.getEpochSecond(), timestamp);
+                assertEquals(timestampParser.parse(timestamp),                 telegram.getTimestamp(),   timestamp);
+            }
+            time = time.plusMinutes(37);
+        }
+    }
+
+    @Test
+    void testAllocationFree() throws IOException {
+        // Only works on JVMs that can tell how much memory a thread allocated.
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+        List<String> telegrams = recordedTelegrams();
+
+        PrimitiveDsmrTelegramParser parser = new PrimitiveDsmrTelegramParser();
+        PrimitiveDSMRTelegram telegram = new PrimitiveDSMRTelegram();
+        for (String text : telegrams) {
+            parser.parse(text, telegram);
+        }
+
+        // The recording comes from a single meter: only the timestamps and measurements change.
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        int valid = 0;
+        for (String text : telegrams) {
+            if (parser.parse(text, telegram)) {
+                valid++;
+            }
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(valid > 500, "Only " + valid + " valid telegrams were found");
+        // Allow for a few objects (the measurement itself and the occasional changed text).
+        assertTrue(allocated < telegrams.size() * 64L,
+            "Allocated " + allocated + " bytes for " + telegrams.size() + " telegrams");
+    }
+
+}
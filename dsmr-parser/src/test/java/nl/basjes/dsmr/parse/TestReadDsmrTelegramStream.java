@@ -0,0 +1,135 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.ReadDsmrTelegramStream;
+import nl.basjes.parse.ReadUTF8RecordStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.CheckCRC.crcIsValid;
+import static nl.basjes.dsmr.parse.Utils.recording;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestReadDsmrTelegramStream {
+
+    private static final String DSMR_RECORD_END = "\r\n![0-9A-F]{4}\r\n";
+
+    private static final String TELEGRAM = CheckCRC.fixCrc(
+        "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(190324151445W)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(003432.921*kWh)\r\n" +
+        "!0000\r\n");
+
+    // Only returns a single byte per read call
+    private static final class SlowInputStream extends FilterInputStream {
+        SlowInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    private static int assertSameAsRecordStream(byte[] input, boolean slow) throws IOException {
+        ReadUTF8RecordStream   expectedReader = new ReadUTF8RecordStream(new ByteArrayInputStream(input), DSMR_RECORD_END);
+        InputStream            inputStream    = new ByteArrayInputStream(input);
+        ReadDsmrTelegramStream reader         = new ReadDsmrTelegramStream(slow ? new SlowInputStream(inputStream) : inputStream);
+
+        int validRecords = 0;
+        String expected;
+        while ((expected = expectedReader.read()) != null) {
+            assertEquals(expected, reader.read());
+            assertEquals(crcIsValid(expected), reader.lastCrcIsValid(), expected);
+            if (reader.lastCrcIsValid()) {
+                validRecords++;
+            }
+        }
+        assertNull(reader.read());
+        assertNull(reader.read());
+        return validRecords;
+    }
+
+    @Test
+    void testRecordedTelegrams() throws IOException {
+        byte[] recording = recording().getBytes(UTF_8);
+
+        assertTrue(assertSameAsRecordStream(recording, false) > 500);
+        assertTrue(assertSameAsRecordStream(recording, true) > 500);
+    }
+
+    @Test
+    void testDifficultTelegrams() throws IOException {
+        String[] inputs = {
+            "",
+            TELEGRAM,
+            TELEGRAM + TELEGRAM + "Partial",
+            "Garbage" + TELEGRAM,
+            "Garbage\r\n" + TELEGRAM,
+            "/!\r\n" + TELEGRAM,
+            "/Old style without CRC\r\n!\r\n" + TELEGRAM,
+            "/Old style without CRC\r\n!\r\n/Another!\r\n" + TELEGRAM,
+            TELEGRAM.replace("003432.921", "003432.922"),
+            TELEGRAM.replace("003432.921", "€3432.921"),
+            CheckCRC.fixCrc(TELEGRAM.replace("003432.921", "€3432.921")),
+        };
+        for (String input : inputs) {
+            assertSameAsRecordStream(input.getBytes(UTF_8), false);
+            assertSameAsRecordStream(input.getBytes(UTF_8), true);
+        }
+    }
+
+    @Test
+    void testValidity() throws IOException {
+        ReadDsmrTelegramStream reader = new ReadDsmrTelegramStream(new ByteArrayInputStream(
+            (TELEGRAM + TELEGRAM.replace("003432.921", "003432.922")).getBytes(UTF_8)));
+        assertEquals(TELEGRAM, reader.read());
+        assertTrue(reader.lastCrcIsValid());
+        reader.read();
+        assertFalse(reader.lastCrcIsValid());
+        assertEquals("", reader.read());
+        assertFalse(reader.lastCrcIsValid());
+        assertNull(reader.read());
+    }
+
+    @Test
+    void testNoEndFound() {
+        byte[] input = new byte[(int) ReadUTF8RecordStream.MIN_MAX_RECORD_SIZE * 2];
+        Arrays.fill(input, (byte) 'x');
+        ReadDsmrTelegramStream reader = new ReadDsmrTelegramStream(new ByteArrayInputStream(input));
+        assertThrows(IOException.class, reader::read);
+    }
+
+}
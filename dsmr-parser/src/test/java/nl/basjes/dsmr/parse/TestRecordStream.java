@@ -19,7 +19,6 @@
 package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import nl.basjes.parse.ReadUTF8RecordStream;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -30,6 +29,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 
 import static nl.basjes.dsmr.CheckCRC.crcIsValid;
+import static nl.basjes.dsmr.parse.Utils.parse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TestRecordStream {
@@ -66,7 +66,7 @@ class TestRecordStream {
                 continue;
             }
 
-            DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(value);
+            DSMRTelegram dsmrTelegram = parse(value);
 
             count++;
             boolean valid = crcIsValid(value);
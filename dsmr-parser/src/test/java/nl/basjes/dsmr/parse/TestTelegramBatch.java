@@ -0,0 +1,193 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ScanDsmrTelegram;
+import nl.basjes.dsmr.TelegramBatch;
+import nl.basjes.dsmr.TelegramBatch.DoubleColumn;
+import nl.basjes.dsmr.TelegramBatch.LongColumn;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import static nl.basjes.dsmr.DsmrField.CURRENT_L1;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_POWER_RECEIVED;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RECEIVED_NORMAL_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_TARIFF_INDICATOR;
+import static nl.basjes.dsmr.DsmrField.MESSAGE;
+import static nl.basjes.dsmr.DsmrField.POWER_FAILURES;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_L1;
+import static nl.basjes.dsmr.parse.Utils.recordedTelegrams;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestTelegramBatch {
+
+    // The straightforward way: all values of a field from a list of telegrams.
+    private static <T> List<T> values(List<DSMRTelegram> telegrams, Function<DSMRTelegram, T> getter) {
+        List<T> values = new ArrayList<>();
+        for (DSMRTelegram telegram : telegrams) {
+            T value = getter.apply(telegram);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private static void assertSame(List<Double> expected, DoubleColumn column) {
+        assertEquals(expected.size(), column.count());
+        double sum = 0;
+        for (Double value : expected) {
+            sum += value;
+        }
+        List<Double> sorted = new ArrayList<>(expected);
+        Collections.sort(sorted);
+        assertEquals(sorted.get(0),                       column.min());
+        assertEquals(sorted.get(sorted.size() - 1),       column.max());
+        assertEquals(sum,                                 column.sum(), 0.000001);
+        assertEquals(sum / expected.size(),               column.mean(), 0.000001);
+        assertEquals(sorted.get((sorted.size() - 1) / 2), column.percentile(50));
+        assertEquals(sorted.get(0),                       column.percentile(0));
+        assertEquals(sorted.get(sorted.size() - 1),       column.percentile(100));
+    }
+
+    private static void assertSame(List<Long> expected, LongColumn column) {
+        assertEquals(expected.size(), column.count());
+        long sum = 0;
+        for (Long value : expected) {
+            sum += value;
+        }
+        List<Long> sorted = new ArrayList<>(expected);
+        Collections.sort(sorted);
+        assertEquals(sorted.get(0),                       column.min());
+        assertEquals(sorted.get(sorted.size() - 1),       column.max());
+        assertEquals(sum,                                 column.sum());
+        assertEquals((double) sum / expected.size(),      column.mean(), 0.000001);
+        assertEquals(sorted.get((sorted.size() - 1) / 2), column.percentile(50));
+    }
+
+    @Test
+    void testRecordedTelegrams() throws IOException {
+        List<DSMRTelegram> parsed = new ArrayList<>();
+        TelegramBatch batch = new TelegramBatch(10); // Will need to grow
+        for (String telegram : recordedTelegrams()) {
+            DSMRTelegram dsmrTelegram = ScanDsmrTelegram.parse(telegram);
+            boolean added = batch.add(telegram);
+            assertEquals(dsmrTelegram != null && dsmrTelegram.isValid(), added);
+            if (added) {
+                parsed.add(dsmrTelegram);
+            }
+        }
+        assertEquals(parsed.size(), batch.size());
+        assertTrue(batch.size() > 500);
+
+        assertSame(values(parsed, DSMRTelegram::getElectricityPowerReceived),         batch.getDoubles(ELECTRICITY_POWER_RECEIVED));
+        assertSame(values(parsed, DSMRTelegram::getElectricityReceivedNormalTariff),  batch.getDoubles(ELECTRICITY_RECEIVED_NORMAL_TARIFF));
+        assertSame(values(parsed, DSMRTelegram::getElectricityTariffIndicator),       batch.getLongs(ELECTRICITY_TARIFF_INDICATOR));
+        assertSame(values(parsed, t -> t.getTimestamp().toEpochSecond()),             batch.getEpochSeconds());
+        // This meter has no gas meter attached
+        assertEquals(0, batch.getGasM3().count());
+        assertEquals(0, batch.getGasEpochSeconds().count());
+
+        assertEquals(parsed.get(7).getElectricityPowerReceived(), batch.getDoubles(ELECTRICITY_POWER_RECEIVED).get(7));
+
+        assertThrows(IllegalArgumentException.class, () -> batch.getDoubles(POWER_FAILURES));
+        assertThrows(IllegalArgumentException.class, () -> batch.getLongs(CURRENT_L1));
+        assertThrows(IllegalArgumentException.class, () -> batch.getLongs(MESSAGE));
+        assertThrows(IllegalArgumentException.class, () -> batch.getDoubles(VOLTAGE_L1).percentile(101));
+    }
+
+    private static String telegram(int i) {
+        // The voltage is only present in every third telegram and the gas in every other telegram
+        return CheckCRC.fixCrc(
+            "/ISK5\\2M550T-1012\r\n" +
+            "\r\n" +
+            "1-3:0.2.8(50)\r\n" +
+            String.format("0-0:1.0.0(190324%02d%02d%02dW)\r\n", 10 + i / 3600, i / 60 % 60, i % 60) +
+            String.format("1-0:1.7.0(%02d.%03d*kW)\r\n", i / 1000, i % 1000) +
+            (i % 3 == 0 ? String.format("1-0:32.7.0(%03d.0*V)\r\n", 200 + i % 50) : "") +
+            (i % 2 == 0 ? String.format("0-1:24.1.0(003)\r\n0-1:24.2.1(190324100000W)(%05d.%03d*m3)\r\n", 100 + i, i) : "") +
+            "!0000\r\n");
+    }
+
+    @Test
+    void testMissingValues() {
+        TelegramBatch batch = new TelegramBatch();
+        List<Double> power   = new ArrayList<>();
+        List<Double> voltage = new ArrayList<>();
+        List<Double> gas     = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            assertTrue(batch.add(telegram(i)));
+            power.add(i / 1000.0);
+            if (i % 3 == 0) {
+                voltage.add(200.0 + i % 50);
+            }
+            if (i % 2 == 0) {
+                gas.add(100 + i + i / 1000.0);
+            }
+        }
+        assertFalse(batch.add(telegram(1).replace("!", "x")));
+        assertEquals(300, batch.size());
+
+        assertSame(power,   batch.getDoubles(ELECTRICITY_POWER_RECEIVED));
+        assertSame(voltage, batch.getDoubles(VOLTAGE_L1));
+        assertSame(gas,     batch.getGasM3());
+        assertEquals(150,   batch.getGasEpochSeconds().count());
+        assertEquals(0,     batch.getSlaveEMeterKWh().count());
+
+        DoubleColumn voltageColumn = batch.getDoubles(VOLTAGE_L1);
+        assertEquals(300, voltageColumn.size());
+        assertTrue(voltageColumn.isPresent(3));
+        assertFalse(voltageColumn.isPresent(4));
+        assertTrue(Double.isNaN(voltageColumn.get(4)));
+        assertEquals(100, voltageColumn.presentValues().length);
+
+        double[] percentiles = voltageColumn.percentiles(10, 50, 90);
+        assertEquals(voltageColumn.percentile(10), percentiles[0]);
+        assertEquals(voltageColumn.percentile(50), percentiles[1]);
+        assertEquals(voltageColumn.percentile(90), percentiles[2]);
+
+        // Columns without any value
+        DoubleColumn current = batch.getDoubles(CURRENT_L1);
+        assertEquals(0, current.count());
+        assertEquals(0.0, current.sum());
+        assertTrue(Double.isNaN(current.mean()));
+        assertTrue(Double.isNaN(current.min()));
+        assertTrue(Double.isNaN(current.percentile(50)));
+        assertThrows(IllegalStateException.class, () -> batch.getLongs(POWER_FAILURES).percentile(50));
+
+        batch.clear();
+        assertEquals(0, batch.size());
+        assertEquals(0, batch.getDoubles(VOLTAGE_L1).count());
+        assertTrue(batch.add(telegram(1)));
+        assertEquals(0, batch.getDoubles(VOLTAGE_L1).count());
+        assertEquals(1, batch.getDoubles(ELECTRICITY_POWER_RECEIVED).count());
+        assertEquals(0.001, batch.getDoubles(ELECTRICITY_POWER_RECEIVED).max());
+    }
+
+}
@@ -21,9 +21,19 @@ package nl.basjes.dsmr.parse;
 import nl.basjes.dsmr.TimestampParser;
 import org.junit.jupiter.api.Test;
 
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class TestTimestampParser {
 
@@ -74,4 +84,101 @@ class TestTimestampParser {
         assertNull(timestampParser.parse("Not a date string at all"));
     }
 
+    @Test
+    void testEpochSecond() {
+        TimestampParser timestampParser = new TimestampParser();
+        assertEquals(1553436884L, timestampParser.parseEpochSecond("190324151444W"));
+        assertEquals(1553436884L, timestampParser.parseEpochSecond("190324151444w"));
+        assertEquals(1523988898L, timestampParser.parseEpochSecond("180417201458S"));
+        assertEquals(1523988898L, timestampParser.parseEpochSecond("(180417201458s)"));
+        assertEquals(1553436884L, timestampParser.parseEpochSecond(new StringBuilder("190324151444")));
+
+        assertThrows(IllegalArgumentException.class, () -> timestampParser.parseEpochSecond(null));
+        assertThrows(IllegalArgumentException.class, () -> timestampParser.parseEpochSecond(""));
+        assertThrows(IllegalArgumentException.class, () -> timestampParser.parseEpochSecond("Not a date string at all"));
+        assertThrows(DateTimeException.class,        () -> timestampParser.parseEpochSecond("190230151444W"));
+    }
+
+    @Test
+    void testImpossibleDates() {
+        TimestampParser timestampParser = new TimestampParser();
+        assertThrows(DateTimeException.class, () -> timestampParser.parse("190230151444W"));
+        assertThrows(DateTimeException.class, () -> timestampParser.parse("190431151444S"));
+        assertThrows(DateTimeException.class, () -> timestampParser.parse("190001151444"));
+        assertThrows(DateTimeException.class, () -> timestampParser.parse("191324151444"));
+        assertThrows(DateTimeException.class, () -> timestampParser.parse("190324251444W"));
+    }
+
+    // The way the timestamps were parsed before: using a regex
+    private static final Pattern DATE_TIME_PATTERN =
+        Pattern.compile("([0-9][0-9])([01][0-9])([0-3][0-9])([0-2][0-9])([0-5][0-9])([0-5][0-9])([SsWw]?)");
+
+    private static ZonedDateTime regexParse(String dsmrTimestamp) {
+        Matcher matcher = DATE_TIME_PATTERN.matcher(dsmrTimestamp);
+        if (!matcher.find()) {
+            return null;
+        }
+        ZonedDateTime zonedDateTime = ZonedDateTime
+            .ofInstant(Instant.ofEpochSecond(0), ZoneOffset.UTC)
+            .withYear(2000 + Integer.parseInt(matcher.group(1)))
+            .withMonth(Integer.parseInt(matcher.group(2)))
+            .withDayOfMonth(Integer.parseInt(matcher.group(3)))
+            .withHour(Integer.parseInt(matcher.group(4)))
+            .withMinute(Integer.parseInt(matcher.group(5)))
+            .withSecond(Integer.parseInt(matcher.group(6)));
+        switch (matcher.group(7).toUpperCase()) {
+            case "S":
+                return zonedDateTime.withZoneSameLocal(ZoneOffset.of("+02:00"));
+            case "W":
+                return zonedDateTime.withZoneSameLocal(ZoneOffset.of("+01:00"));
+            default:
+                return zonedDateTime.withZoneSameLocal(ZoneId.of("Europe/Amsterdam"));
+        }
+    }
+
+    private static void assertSameAsRegex(TimestampParser timestampParser, String input) {
+        ZonedDateTime expected = regexParse(input);
+        ZonedDateTime actual   = timestampParser.parse(input);
+        assertEquals(expected, actual, input);
+        if (expected != null) {
+            assertEquals(expected.toEpochSecond(), timestampParser.parseEpochSecond(input), input);
+        }
+    }
+
+    @Test
+    void testSameAsRegex() {
+        TimestampParser timestampParser = new TimestampParser();
+        String[] inputs = {
+            "Not a date", "1903241514", "19032415144", "190324151444", "190324151444S", "190324151444W",
+            "xx190324151444Wxx", "1990324151444W", "(190324151444s)(190324151444S)", "9190324151444",
+            "19032415144419032415144W", "190324156044W", "190324151460W",
+            // Around the DST changes in Europe/Amsterdam (with and without the S/W)
+            "190331015959", "190331020000", "190331023030", "190331030000",
+            "191027015959", "191027020000", "191027023030", "191027030000",
+            "191027023030S", "191027023030W", "190331023030S", "190331023030W",
+        };
+        for (String input : inputs) {
+            // Twice to go through the cache
+            assertSameAsRegex(timestampParser, input);
+            assertSameAsRegex(timestampParser, input);
+        }
+
+        // Every second of a few hours (including a DST change) and every 7 minutes of a few years.
+        String[] dsts = {"", "S", "W", "s", "w"};
+        LocalDateTime start = LocalDateTime.of(2019, 10, 27, 0, 0, 0);
+        for (int second = 0; second < 4 * 3600; second += 1) {
+            String timestamp = String.format("%1$ty%1$tm%1$td%1$tH%1$tM%1$tS", start.plusSeconds(second));
+            for (String dst : dsts) {
+                assertSameAsRegex(timestampParser, timestamp + dst);
+            }
+        }
+        start = LocalDateTime.of(2018, 1, 1, 0, 0, 13);
+        for (int minute = 0; minute < 3 * 366 * 24 * 60; minute += 7) {
+            String timestamp = String.format("%1$ty%1$tm%1$td%1$tH%1$tM%1$tS", start.plusMinutes(minute));
+            for (String dst : dsts) {
+                assertSameAsRegex(timestampParser, timestamp + dst);
+            }
+        }
+    }
+
 }
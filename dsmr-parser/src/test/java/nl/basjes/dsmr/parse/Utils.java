@@ -19,12 +19,29 @@
 package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegramCodec;
+import nl.basjes.dsmr.LazyDSMRTelegram;
 import nl.basjes.dsmr.MBusEvent;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.PrimitiveDSMRTelegram;
+import nl.basjes.dsmr.PrimitiveDsmrTelegramParser;
+import nl.basjes.dsmr.ScanDsmrTelegram;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 final class Utils {
@@ -33,6 +50,68 @@ final class Utils {
         // Utility class
     }
 
+    // Deliberately the same instances for all telegrams in all tests to see that nothing leaks from one telegram to the next.
+    private static final PrimitiveDsmrTelegramParser PRIMITIVE_PARSER   = new PrimitiveDsmrTelegramParser();
+    private static final PrimitiveDSMRTelegram       PRIMITIVE_TELEGRAM = new PrimitiveDSMRTelegram();
+
+    /**
+     * Parses the telegram with both the ANTLR based and the single pass parser and
+     * checks that they agree: identical results for valid telegrams, both invalid otherwise.
+     * The primitive parser (via the conversion to a DSMRTelegram) and the lazy telegram must always give the same as the single pass parser.
+     * Also checks that the result survives the binary encoding unchanged.
+     * @param telegram The telegram to parse
+     * @return The telegram as parsed by the ANTLR based parser
+     */
+    public static DSMRTelegram parse(String telegram) {
+        DSMRTelegram antlr = ParseDsmrTelegram.parse(telegram);
+        DSMRTelegram scan  = ScanDsmrTelegram.parse(telegram);
+        boolean primitiveIsValid = PRIMITIVE_PARSER.parse(telegram, PRIMITIVE_TELEGRAM);
+        DSMRTelegram primitive = PRIMITIVE_TELEGRAM.toDSMRTelegram();
+        DSMRTelegram lazy = LazyDSMRTelegram.parse(telegram);
+        if (antlr == null) {
+            assertNull(scan);
+            assertTrue(PRIMITIVE_TELEGRAM.isEmpty());
+            assertNull(primitive);
+            assertNull(lazy);
+            return null;
+        }
+        assertNotNull(scan);
+        assertNotNull(primitive);
+        assertNotNull(lazy);
+        assertEquals(scan.isValid(), primitiveIsValid);
+        assertEquals(scan.toString(), primitive.toString());
+        assertEquals(scan.toString(), lazy.toString());
+        if (antlr.isValid()) {
+            assertEquals(antlr.toString(), scan.toString());
+        } else {
+            assertFalse(scan.isValid());
+            assertEquals(antlr.isValidCRC(), scan.isValidCRC());
+        }
+        try {
+            assertEquals(antlr.toString(), DSMRTelegramCodec.decode(DSMRTelegramCodec.encode(antlr)).toString());
+        } catch (IOException e) {
+            fail("Unable to decode the encoded telegram: " + e);
+        }
+        return antlr;
+    }
+
+    /**
+     * @return The recorded P1 stream in ../testfiles/ttyUSB0-raw.txt with the '\r\n' line separators restored.
+     */
+    public static String recording() throws IOException {
+        // The recorded file only has '\n' as line separator so the CRCs only match after restoring the '\r\n'.
+        return new String(Files.readAllBytes(Paths.get("../testfiles/ttyUSB0-raw.txt")), UTF_8)
+            .replace("\r\n", "\n")
+            .replace("\n", "\r\n");
+    }
+
+    /**
+     * @return The {@link #recording()} split into the separate telegrams (a new modifiable list).
+     */
+    public static List<String> recordedTelegrams() throws IOException {
+        return new ArrayList<>(Arrays.asList(recording().split("(?<=\r\n![0-9A-F]{4}\r\n)")));
+    }
+
     public static void assertPowerFailureEvent(DSMRTelegram.PowerFailureEvent powerFailureEvent, String startTime, String endTime, String duration) {
         String actualStartTime  = powerFailureEvent.getStartTime().toString();
         String actualEndTime    = powerFailureEvent.getEndTime().toString();
@@ -19,8 +19,13 @@
 package nl.basjes.dsmr.influxdb;
 
 import nl.basjes.dsmr.DSMRTelegram;
-import nl.basjes.dsmr.ParseDsmrTelegram;
-import nl.basjes.parse.ReadUTF8RecordStream;
+import nl.basjes.dsmr.DSMRTelegramSchema.Field;
+import nl.basjes.dsmr.DSMRTelegramSchema.Type;
+import nl.basjes.dsmr.DsmrField;
+import nl.basjes.dsmr.DsmrTelegramParser;
+import nl.basjes.dsmr.DsmrTelegramParserFactory;
+import nl.basjes.dsmr.ParseOptions;
+import nl.basjes.dsmr.ReadDsmrTelegramStream;
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBFactory;
 import org.influxdb.dto.Point;
@@ -33,9 +38,43 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
-import static nl.basjes.dsmr.CheckCRC.crcIsValid;
+import static nl.basjes.dsmr.DSMRTelegramSchema.TELEGRAM_FIELDS;
+import static nl.basjes.dsmr.DsmrField.CURRENT_L1;
+import static nl.basjes.dsmr.DsmrField.CURRENT_L2;
+import static nl.basjes.dsmr.DsmrField.CURRENT_L3;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_POWER_RECEIVED;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_POWER_RETURNED;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RECEIVED_LOW_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RECEIVED_NORMAL_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RETURNED_LOW_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_RETURNED_NORMAL_TARIFF;
+import static nl.basjes.dsmr.DsmrField.ELECTRICITY_TARIFF_INDICATOR;
+import static nl.basjes.dsmr.DsmrField.EQUIPMENT_ID;
+import static nl.basjes.dsmr.DsmrField.LONG_POWER_FAILURES;
+import static nl.basjes.dsmr.DsmrField.POWER_FAILURES;
+import static nl.basjes.dsmr.DsmrField.POWER_FAILURE_EVENT_LOG;
+import static nl.basjes.dsmr.DsmrField.POWER_RECEIVED_L1;
+import static nl.basjes.dsmr.DsmrField.POWER_RECEIVED_L2;
+import static nl.basjes.dsmr.DsmrField.POWER_RECEIVED_L3;
+import static nl.basjes.dsmr.DsmrField.POWER_RETURNED_L1;
+import static nl.basjes.dsmr.DsmrField.POWER_RETURNED_L2;
+import static nl.basjes.dsmr.DsmrField.POWER_RETURNED_L3;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_L1;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_L2;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_L3;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SAGS_PHASE_L1;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SAGS_PHASE_L2;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SAGS_PHASE_L3;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SWELLS_PHASE_L1;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SWELLS_PHASE_L2;
+import static nl.basjes.dsmr.DsmrField.VOLTAGE_SWELLS_PHASE_L3;
 
 public final class FeedToInfluxDB {
 
@@ -46,6 +85,20 @@ public final class FeedToInfluxDB {
 
     private static volatile boolean running = true;
 
+    // Only what is written to the database is parsed (no message, power failure log or MBus devices).
+    private static final ParseOptions DEFAULT_FIELDS = ParseOptions.fields(
+        EQUIPMENT_ID,
+        ELECTRICITY_RECEIVED_LOW_TARIFF,    ELECTRICITY_RECEIVED_NORMAL_TARIFF,
+        ELECTRICITY_RETURNED_LOW_TARIFF,    ELECTRICITY_RETURNED_NORMAL_TARIFF,
+        ELECTRICITY_TARIFF_INDICATOR,       ELECTRICITY_POWER_RECEIVED,     ELECTRICITY_POWER_RETURNED,
+        POWER_FAILURES,                     LONG_POWER_FAILURES,
+        VOLTAGE_SAGS_PHASE_L1,              VOLTAGE_SAGS_PHASE_L2,          VOLTAGE_SAGS_PHASE_L3,
+        VOLTAGE_SWELLS_PHASE_L1,            VOLTAGE_SWELLS_PHASE_L2,        VOLTAGE_SWELLS_PHASE_L3,
+        VOLTAGE_L1,                         VOLTAGE_L2,                     VOLTAGE_L3,
+        CURRENT_L1,                         CURRENT_L2,                     CURRENT_L3,
+        POWER_RECEIVED_L1,                  POWER_RECEIVED_L2,              POWER_RECEIVED_L3,
+        POWER_RETURNED_L1,                  POWER_RETURNED_L2,              POWER_RETURNED_L3);
+
     public static void main(String...  args) throws IOException {
         final CommandOptions commandlineOptions = new CommandOptions();
         final CmdLineParser  parser             = new CmdLineParser(commandlineOptions);
@@ -60,9 +113,22 @@ public final class FeedToInfluxDB {
             return;
         }
 
+        final ParseOptions parseOptions;
+        try {
+            parseOptions = commandlineOptions.fields == null ? DEFAULT_FIELDS : ParseOptions.parse(commandlineOptions.fields);
+        } catch (IllegalArgumentException iae) {
+            LOG.error("Errors: {}", iae.getMessage());
+            return;
+        }
+        LOG.info("Parsing the fields {}", parseOptions);
+        final DsmrTelegramParser telegramParser = DsmrTelegramParserFactory.create(parseOptions);
+        final List<Field<DSMRTelegram, ?>> pointFields = pointFields(parseOptions);
+
         LOG.info("Opening stream {}", commandlineOptions.tty);
 
         InfluxDB influxDB = null;
+        InfluxDBWriter writer = null;
+        Spool spool = null;
 
         try(FileInputStream inputStream = new FileInputStream(commandlineOptions.tty)) {
 
@@ -80,6 +146,7 @@ public final class FeedToInfluxDB {
                         commandlineOptions.databasePassword);
                 }
                 influxDB.setDatabase(commandlineOptions.databaseName);
+                // The batching is done by the InfluxDBWriter
                 influxDB.disableBatch();
 
                 Pong response = influxDB.ping();
@@ -87,9 +154,23 @@ public final class FeedToInfluxDB {
                     LOG.error("Error pinging server.");
                     return;
                 }
+
+                if (commandlineOptions.spoolDirectory != null) {
+                    LOG.info("Using spool directory {} when the database is unavailable", commandlineOptions.spoolDirectory);
+                    spool = new Spool(Paths.get(commandlineOptions.spoolDirectory));
+                }
+
+                // Writing happens in a separate thread so a slow database never blocks reading the tty.
+                writer = new InfluxDBWriter(
+                    influxDB::write,
+                    spool,
+                    commandlineOptions.queueSize,
+                    commandlineOptions.batchSize,
+                    commandlineOptions.batchAgeMs);
             }
 
-            ReadUTF8RecordStream reader = new ReadUTF8RecordStream(inputStream, "\r\n![0-9A-F]{4}\r\n");
+            // Validates the CRC while reading so invalid telegrams are dropped without looking at them again.
+            ReadDsmrTelegramStream reader = new ReadDsmrTelegramStream(inputStream);
 
             LOG.info("Starting read loop");
 
@@ -101,14 +182,14 @@ public final class FeedToInfluxDB {
                     break;
                 }
 
-                if (!crcIsValid(telegram)) {
+                if (!reader.lastCrcIsValid()) {
                     LOG.error("DROPPING INVALID Telegram:\nvvvvvvvvvv\n{}\n^^^^^^^^^^\n", telegram);
                     continue;
                 }
 
                 DSMRTelegram dsmrTelegram = null;
                 try {
-                    dsmrTelegram = ParseDsmrTelegram.parse(telegram);
+                    dsmrTelegram = telegramParser.parse(telegram);
                 } catch (Exception e) {
                     System.err.println("Exception: " + e);
                     e.printStackTrace();
@@ -116,60 +197,81 @@ public final class FeedToInfluxDB {
                 }
 
                 if (dsmrTelegram != null && dsmrTelegram.isValid()) {
-                    Point point = Point
+                    Point.Builder pointBuilder = Point
                         .measurement("electricity")
 
 //                        .time(dsmrTelegram.getTimestamp().toInstant().toEpochMilli(), TimeUnit.MILLISECONDS)
                         .time((System.currentTimeMillis()/1000)*1000, TimeUnit.MILLISECONDS)
 
-                        .tag("equipmentId", dsmrTelegram.getEquipmentId())
-                        .tag("p1Version", dsmrTelegram.getP1Version())
-
-                        .addField("electricityReceivedLowTariff",    dsmrTelegram.getElectricityReceivedLowTariff())
-                        .addField("electricityReceivedNormalTariff", dsmrTelegram.getElectricityReceivedNormalTariff())
-                        .addField("electricityReturnedLowTariff",    dsmrTelegram.getElectricityReturnedLowTariff())
-                        .addField("electricityReturnedNormalTariff", dsmrTelegram.getElectricityReturnedNormalTariff())
-                        // DONOTCOMMIT: The cast to float is because  of my OWN influxDB ONLY !
-                        .addField("electricityTariffIndicator",      (float)dsmrTelegram.getElectricityTariffIndicator())
-                        .addField("electricityPowerReceived",        dsmrTelegram.getElectricityPowerReceived())
-                        .addField("electricityPowerReturned",        dsmrTelegram.getElectricityPowerReturned())
-                        .addField("powerFailures",                   dsmrTelegram.getPowerFailures())
-                        .addField("longPowerFailures",               dsmrTelegram.getLongPowerFailures())
-                        .addField("voltageSagsPhaseL1",              dsmrTelegram.getVoltageSagsPhaseL1())
-                        .addField("voltageSagsPhaseL2",              dsmrTelegram.getVoltageSagsPhaseL2())
-                        .addField("voltageSagsPhaseL3",              dsmrTelegram.getVoltageSagsPhaseL3())
-                        .addField("voltageSwellsPhaseL1",            dsmrTelegram.getVoltageSwellsPhaseL1())
-                        .addField("voltageSwellsPhaseL2",            dsmrTelegram.getVoltageSwellsPhaseL2())
-                        .addField("voltageSwellsPhaseL3",            dsmrTelegram.getVoltageSwellsPhaseL3())
-                        .addField("voltageL1",                       dsmrTelegram.getVoltageL1())
-                        .addField("voltageL2",                       dsmrTelegram.getVoltageL2())
-                        .addField("voltageL3",                       dsmrTelegram.getVoltageL3())
-                        .addField("currentL1",                       dsmrTelegram.getCurrentL1())
-                        .addField("currentL2",                       dsmrTelegram.getCurrentL2())
-                        .addField("currentL3",                       dsmrTelegram.getCurrentL3())
-                        .addField("powerReceivedL1",                 dsmrTelegram.getPowerReceivedL1())
-                        .addField("powerReceivedL2",                 dsmrTelegram.getPowerReceivedL2())
-                        .addField("powerReceivedL3",                 dsmrTelegram.getPowerReceivedL3())
-                        .addField("powerReturnedL1",                 dsmrTelegram.getPowerReturnedL1())
-                        .addField("powerReturnedL2",                 dsmrTelegram.getPowerReturnedL2())
-                        .addField("powerReturnedL3",                 dsmrTelegram.getPowerReturnedL3())
-
-                        .build();
-
-                    if (influxDB == null) {
+                        .tag(tags(dsmrTelegram));
+
+                    for (Field<DSMRTelegram, ?> field : pointFields) {
+                        addField(pointBuilder, field, dsmrTelegram);
+                    }
+                    Point point = pointBuilder.build();
+
+                    if (writer == null) {
                         LOG.info("{}", point.lineProtocol());
                     } else {
-                        influxDB.write(point);
+                        writer.write(point.lineProtocol());
                     }
                 }
             }
         } finally {
+            if (writer != null) {
+                writer.close();
+                LOG.info("Wrote {} points, spooled {} points, dropped {} points.",
+                    writer.getWrittenPoints(), writer.getSpooledPoints(), writer.getDroppedPoints());
+            }
+            if (spool != null) {
+                spool.close();
+            }
             if (influxDB != null) {
                 influxDB.close();
             }
         }
     }
 
+    // The fields that were not parsed are null: a null field is not written, a null tag is not allowed.
+    private static Map<String, String> tags(DSMRTelegram dsmrTelegram) {
+        Map<String, String> tags = new TreeMap<>();
+        if (dsmrTelegram.getEquipmentId() != null) {
+            tags.put("equipmentId", dsmrTelegram.getEquipmentId());
+        }
+        if (dsmrTelegram.getP1Version() != null) {
+            tags.put("p1Version", dsmrTelegram.getP1Version());
+        }
+        return tags;
+    }
+
+    // All numerical values that come directly from the telegram and have been parsed.
+    private static List<Field<DSMRTelegram, ?>> pointFields(ParseOptions parseOptions) {
+        List<Field<DSMRTelegram, ?>> pointFields = new ArrayList<>();
+        for (Field<DSMRTelegram, ?> field : TELEGRAM_FIELDS) {
+            DsmrField dsmrField = field.getDsmrField();
+            if (dsmrField == null || dsmrField == POWER_FAILURE_EVENT_LOG || !parseOptions.isSelected(dsmrField)) {
+                continue;
+            }
+            if (field.getType() == Type.LONG || field.getType() == Type.DOUBLE) {
+                pointFields.add(field);
+            }
+        }
+        return pointFields;
+    }
+
+    private static void addField(Point.Builder pointBuilder, Field<DSMRTelegram, ?> field, DSMRTelegram dsmrTelegram) {
+        Object value = field.get(dsmrTelegram);
+        if (value == null) {
+            return;
+        }
+        if (field.getDsmrField() == ELECTRICITY_TARIFF_INDICATOR) {
+            // DONOTCOMMIT: The cast to float is because  of my OWN influxDB ONLY !
+            pointBuilder.addField(field.getName(), ((Long) value).floatValue());
+        } else {
+            pointBuilder.addField(field.getName(), (Number) value);
+        }
+    }
+
     private static final class CommandOptions {
         @Option(name = "-tty", usage = "The tty device from which to read")
         private String tty = "/dev/ttyUSB0";
@@ -185,6 +287,22 @@ public final class FeedToInfluxDB {
 
         @Option(name = "-databasePassword", usage = "The PASSWORD of the InfluxDB database")
         private String databasePassword = null;
+
+        @Option(name = "-queueSize", usage = "The maximum number of points waiting to be written (more are dropped)")
+        private int queueSize = InfluxDBWriter.DEFAULT_QUEUE_SIZE;
+
+        @Option(name = "-batchSize", usage = "The maximum number of points written in a single request")
+        private int batchSize = InfluxDBWriter.DEFAULT_BATCH_SIZE;
+
+        @Option(name = "-batchAgeMs", usage = "The maximum time (in milliseconds) a point waits before it is written")
+        private long batchAgeMs = InfluxDBWriter.DEFAULT_BATCH_AGE_MS;
+
+        @Option(name = "-fields", usage = "The comma separated list of fields that are parsed (like TIMESTAMP, VOLTAGE_L1), " +
+            "the default is all fields that are written to the database")
+        private String fields = null;
+
+        @Option(name = "-spoolDirectory", usage = "The directory where points are kept while the database is unavailable")
+        private String spoolDirectory = null;
     }
 
 }
@@ -0,0 +1,362 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.influxdb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Writes the points (in line protocol) to the database from a separate thread so the thread
+ * that reads the tty never has to wait for the network.
+ * The points are put in a bounded queue and written in batches (when the batch is full or old enough).
+ * A failing write is retried (with an increasing delay) until it succeeds or the writer is closed.
+ * If the queue is full (i.e. the database is unreachable for a long time) new points are dropped.
+ * <p>
+ * With a {@link Spool} a failing batch is not retried but written to the spool (as is everything that comes
+ * in while the database is down and whatever does not fit in the queue). Once the database can be reached again
+ * the spool is replayed as fast as possible, in between the batches of new points.
+ * Only the writer thread touches the spool: what does not fit in the queue goes into a second bounded (overflow)
+ * queue that the writer thread moves to the spool. Only if that is full as well new points are dropped.
+ */
+public class InfluxDBWriter implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InfluxDBWriter.class);
+
+    public static final int  DEFAULT_QUEUE_SIZE    = 100_000;
+    public static final int  DEFAULT_BATCH_SIZE    = 100;
+    public static final long DEFAULT_BATCH_AGE_MS  = 5_000;
+
+    private static final long MIN_RETRY_DELAY_MS   = 1_000;
+    private static final long MAX_RETRY_DELAY_MS   = 60_000;
+    // How long an idle writer thread waits before it checks again if the writer has been closed.
+    private static final long IDLE_POLL_MS         = 100;
+
+    private final Consumer<List<String>> database;
+    private final Spool                  spool;
+    private final BlockingQueue<String>  queue;
+    private final BlockingQueue<String>  overflow; // Only used if there is a spool.
+    private final int                    batchSize;
+    private final long                   maxBatchAgeMs;
+    private final long                   minRetryDelayMs;
+    private final long                   maxRetryDelayMs;
+    private final Thread                 writerThread;
+
+    private volatile boolean             running = true;
+    // Wakes up a writer thread that is waiting to retry; it is never interrupted so a write in progress always completes.
+    private final CountDownLatch         closing = new CountDownLatch(1);
+
+    private final AtomicLong             written  = new AtomicLong();
+    private final AtomicLong             dropped  = new AtomicLong();
+    private final AtomicLong             failures = new AtomicLong();
+    private final AtomicLong             spooled  = new AtomicLong();
+
+    // Only used by the writer thread when there is a spool.
+    private boolean                      databaseDown = false;
+    private long                         retryDelayMs;
+    private long                         nextAttemptNanos;
+
+    /**
+     * @param database Writes a batch of points (in line protocol) to the database; throws an exception if this failed.
+     */
+    public InfluxDBWriter(Consumer<List<String>> database) {
+        this(database, DEFAULT_QUEUE_SIZE, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_AGE_MS);
+    }
+
+    public InfluxDBWriter(Consumer<List<String>> database, int queueSize, int batchSize, long maxBatchAgeMs) {
+        this(database, null, queueSize, batchSize, maxBatchAgeMs);
+    }
+
+    /**
+     * @param database Writes a batch of points (in line protocol) to the database; throws an exception if this failed.
+     * @param spool Where the points go when the database is down (may be null).
+     */
+    public InfluxDBWriter(Consumer<List<String>> database, Spool spool, int queueSize, int batchSize, long maxBatchAgeMs) {
+        this(database, spool, queueSize, batchSize, maxBatchAgeMs, MIN_RETRY_DELAY_MS, MAX_RETRY_DELAY_MS);
+    }
+
+    InfluxDBWriter(Consumer<List<String>> database, Spool spool, int queueSize, int batchSize, long maxBatchAgeMs,
+                   long minRetryDelayMs, long maxRetryDelayMs) {
+        if (queueSize <= 0 || batchSize <= 0 || maxBatchAgeMs < 0) {
+            throw new IllegalArgumentException("Queue size and batch size must be positive and batch age may not be negative.");
+        }
+        this.database        = database;
+        this.spool           = spool;
+        this.queue           = new ArrayBlockingQueue<>(queueSize);
+        this.overflow        = spool == null ? null : new ArrayBlockingQueue<>(queueSize);
+        this.batchSize       = batchSize;
+        this.maxBatchAgeMs   = maxBatchAgeMs;
+        this.minRetryDelayMs = minRetryDelayMs;
+        this.maxRetryDelayMs = maxRetryDelayMs;
+        this.retryDelayMs    = minRetryDelayMs;
+
+        writerThread = new Thread(this::writeLoop, "InfluxDBWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Add a point to the queue. This never blocks on the network or the disk.
+     * @param lineProtocol The point in the InfluxDB line protocol.
+     * @return false if the point was dropped because the queue (and the overflow to the spool) is full or the writer has been closed.
+     */
+    public boolean write(String lineProtocol) {
+        if (running && queue.offer(lineProtocol)) {
+            return true;
+        }
+        if (running && overflow != null && overflow.offer(lineProtocol)) {
+            return true;
+        }
+        long droppedPoints = dropped.incrementAndGet();
+        if (droppedPoints == 1 || droppedPoints % 1000 == 0) {
+            LOG.error("The write queue is full: {} points have been dropped so far.", droppedPoints);
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of points waiting to be written.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return The number of points that have been written to the database.
+     */
+    public long getWrittenPoints() {
+        return written.get();
+    }
+
+    /**
+     * @return The number of points that were dropped because the queue (and the overflow to the spool) was full.
+     */
+    public long getDroppedPoints() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of failed attempts to write a batch.
+     */
+    public long getFailedWrites() {
+        return failures.get();
+    }
+
+    /**
+     * @return The number of points that were written to the spool.
+     */
+    public long getSpooledPoints() {
+        return spooled.get();
+    }
+
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            if (spool != null) {
+                spoolOverflow();
+            }
+            try {
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                // Not expected: nobody interrupts this thread (close does not). Write what we have.
+                LOG.warn("The writer thread was interrupted.");
+            }
+            if (!batch.isEmpty()) {
+                if (spool == null) {
+                    writeWithRetry(batch);
+                } else {
+                    writeOrSpool(batch);
+                }
+                batch.clear();
+            }
+            if (spool != null && running) {
+                replaySpool();
+            }
+        }
+        if (spool != null) {
+            spoolOverflow();
+        }
+    }
+
+    // Waits for the first point and then until the batch is full or the first point is too old.
+    // After closing nothing is waited for anymore (an idle writer notices the close within IDLE_POLL_MS).
+    private void fillBatch(List<String> batch) throws InterruptedException {
+        String first;
+        if (!running) {
+            first = queue.poll();
+        } else if (spool == null || spool.isEmpty()) {
+            first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+        } else {
+            // Do not wait forever: the spool must be replayed.
+            first = queue.poll(Math.max(maxBatchAgeMs, 1), TimeUnit.MILLISECONDS);
+        }
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchAgeMs);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            String next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void writeWithRetry(List<String> batch) {
+        long delayMs = minRetryDelayMs;
+        boolean retried = false;
+        while (true) {
+            try {
+                database.accept(batch);
+                written.addAndGet(batch.size());
+                if (retried) {
+                    LOG.info("Writing works again: wrote {} points (queue depth {}).", batch.size(), queue.size());
+                } else {
+                    LOG.debug("Wrote {} points (queue depth {}).", batch.size(), queue.size());
+                }
+                return;
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                if (!running) {
+                    LOG.error("Dropping {} points because writing failed while closing: {}", batch.size(), e.getMessage());
+                    dropped.addAndGet(batch.size());
+                    return;
+                }
+                LOG.warn("Writing {} points failed (queue depth {}), retrying in {} ms: {}",
+                    batch.size(), queue.size(), delayMs, e.getMessage());
+                try {
+                    // Closing ends the wait: one last attempt.
+                    closing.await(delayMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ie) {
+                    LOG.warn("The writer thread was interrupted.");
+                }
+                delayMs = Math.min(delayMs * 2, maxRetryDelayMs);
+                retried = true;
+            }
+        }
+    }
+
+    private boolean spoolPoints(List<String> points) {
+        try {
+            spool.append(points);
+            spooled.addAndGet(points.size());
+            return true;
+        } catch (IOException e) {
+            LOG.error("Unable to write {} points to the spool: {}", points.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    // Moves the points that did not fit in the queue to the spool.
+    private void spoolOverflow() {
+        List<String> points = new ArrayList<>();
+        overflow.drainTo(points);
+        if (!points.isEmpty() && !spoolPoints(points)) {
+            dropped.addAndGet(points.size());
+        }
+    }
+
+    private boolean mayAttemptWrite() {
+        return !databaseDown || System.nanoTime() - nextAttemptNanos >= 0;
+    }
+
+    // A single attempt; if it fails the next attempt will only be made after the retry delay.
+    private boolean tryWrite(List<String> batch) {
+        try {
+            database.accept(batch);
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            if (databaseDown) {
+                retryDelayMs = Math.min(retryDelayMs * 2, maxRetryDelayMs);
+            } else {
+                databaseDown = true;
+                retryDelayMs = minRetryDelayMs;
+            }
+            nextAttemptNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMs);
+            LOG.warn("Writing {} points failed (queue depth {}), spooling until the next attempt in {} ms: {}",
+                batch.size(), queue.size(), retryDelayMs, e.getMessage());
+            return false;
+        }
+        written.addAndGet(batch.size());
+        if (databaseDown) {
+            databaseDown = false;
+            LOG.info("Writing works again: wrote {} points (queue depth {}).", batch.size(), queue.size());
+        } else {
+            LOG.debug("Wrote {} points (queue depth {}).", batch.size(), queue.size());
+        }
+        return true;
+    }
+
+    private void writeOrSpool(List<String> batch) {
+        if (mayAttemptWrite() && tryWrite(batch)) {
+            return;
+        }
+        if (!spoolPoints(batch)) {
+            dropped.addAndGet(batch.size());
+        }
+    }
+
+    // Replays the spool until it is empty, the database fails again or there is a full batch of new points.
+    private void replaySpool() {
+        try {
+            while (running && mayAttemptWrite() && queue.size() < batchSize) {
+                List<String> points = spool.peek(batchSize);
+                if (points.isEmpty() || !tryWrite(points)) {
+                    return;
+                }
+                spool.commit();
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to read the spool: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stops accepting new points and writes what is still in the queue (one attempt per batch).
+     * With a spool everything that could not be written is left in the spool (which is not closed here).
+     * A write that is in progress is never interrupted, so this waits until it has completed.
+     */
+    @Override
+    public void close() {
+        running = false;
+        closing.countDown();
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.influxdb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An append only spool on local disk for the points that could not be written to the database (yet).
+ * The points are stored in segment files (each point as a 4 byte length followed by the UTF-8 bytes)
+ * and are read back in the same order. A segment is deleted as soon as everything in it has been committed.
+ * To limit the cost the file is not synced to disk for every point but after a number of points or some time.
+ * After a restart everything that is still in the spool is read again (which may give some duplicates,
+ * but writing the same point to InfluxDB twice does not change anything).
+ */
+public class Spool implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Spool.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE     = 16 * 1024 * 1024L; // 16 MiB
+    public static final int  DEFAULT_SYNC_EVERY       = 100;               // points
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 1_000;
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path        directory;
+    private final long        maxSegmentSize;
+    private final int         syncEvery;
+    private final long        syncIntervalNanos;
+
+    // All segments that still have data, oldest first. The last one is the one that is written to.
+    private final List<Long>  segments = new ArrayList<>();
+
+    private FileOutputStream  activeFile;
+    private DataOutputStream  active;
+    private long              activeSize;
+
+    private int               unsynced = 0;
+    private long              lastSync = System.nanoTime();
+
+    // The read position (in the oldest segment) and where it will be after a commit.
+    private long              readOffset = 0;
+    private long              peekedSegment = -1;
+    private long              peekedOffset = 0;
+
+    public Spool(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_EVERY, DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    public Spool(Path directory, long maxSegmentSize, int syncEvery, long syncIntervalMs) throws IOException {
+        this.directory         = directory;
+        this.maxSegmentSize    = maxSegmentSize;
+        this.syncEvery         = syncEvery;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMs);
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(segments);
+        if (!segments.isEmpty()) {
+            LOG.info("Found {} spool segments in {}", segments.size(), directory);
+        }
+        // Never append to an existing segment: it may end with a partially written point.
+        openSegment(segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1);
+    }
+
+    private Path segmentFile(long segment) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private void openSegment(long segment) throws IOException {
+        activeFile = new FileOutputStream(segmentFile(segment).toFile());
+        active     = new DataOutputStream(new BufferedOutputStream(activeFile));
+        activeSize = 0;
+        segments.add(segment);
+    }
+
+    private long activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Append a point (in line protocol) at the end of the spool.
+     */
+    public synchronized void append(String lineProtocol) throws IOException {
+        byte[] bytes = lineProtocol.getBytes(UTF_8);
+        active.writeInt(bytes.length);
+        active.write(bytes);
+        activeSize += 4 + bytes.length;
+        unsynced++;
+        if (activeSize >= maxSegmentSize) {
+            sync();
+            active.close();
+            openSegment(activeSegment() + 1);
+        } else if (unsynced >= syncEvery || System.nanoTime() - lastSync >= syncIntervalNanos) {
+            sync();
+        }
+    }
+
+    public synchronized void append(List<String> lineProtocols) throws IOException {
+        for (String lineProtocol : lineProtocols) {
+            append(lineProtocol);
+        }
+    }
+
+    private void sync() throws IOException {
+        active.flush();
+        activeFile.getFD().sync();
+        unsynced = 0;
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * @return true if there is nothing (left) in the spool.
+     */
+    public synchronized boolean isEmpty() {
+        return segments.size() == 1 && readOffset >= activeSize;
+    }
+
+    /**
+     * Read the oldest points from the spool without removing them.
+     * @param max The maximum number of points.
+     * @return The points (an empty list if the spool is empty).
+     */
+    public synchronized List<String> peek(int max) throws IOException {
+        List<String> points = new ArrayList<>();
+        while (points.isEmpty() && !isEmpty()) {
+            long segment = segments.get(0);
+            boolean isActive = segments.size() == 1;
+            if (isActive) {
+                active.flush();
+            }
+            long offset = readSegment(segment, readOffset, max, points);
+            if (points.isEmpty()) {
+                if (isActive) {
+                    break;
+                }
+                // Everything in this (old) segment has been read.
+                removeOldestSegment();
+                continue;
+            }
+            peekedSegment = segment;
+            peekedOffset  = offset;
+        }
+        return points;
+    }
+
+    // Returns the offset directly after the last complete point that was read.
+    private long readSegment(long segment, long from, int max, List<String> points) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile(segment), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long offset = from;
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            while (points.size() < max && offset + 4 <= size) {
+                lengthBuffer.clear();
+                readFully(channel, lengthBuffer, offset);
+                int length = lengthBuffer.getInt(0);
+                if (length < 0 || offset + 4 + length > size) {
+                    LOG.warn("Ignoring the incomplete point at the end of {}", segmentFile(segment));
+                    break;
+                }
+                ByteBuffer point = ByteBuffer.allocate(length);
+                readFully(channel, point, offset + 4);
+                points.add(new String(point.array(), UTF_8));
+                offset += 4 + length;
+            }
+            return offset;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read == -1) {
+                throw new IOException("Unexpected end of spool segment");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Remove the points that were returned by the last peek (i.e. because they have been written to the database).
+     */
+    public synchronized void commit() throws IOException {
+        if (peekedSegment == -1 || segments.isEmpty() || segments.get(0) != peekedSegment) {
+            return;
+        }
+        readOffset = peekedOffset;
+        peekedSegment = -1;
+        if (segments.size() == 1 && readOffset >= activeSize && activeSize > 0) {
+            // Everything has been read: start with a new (empty) segment to free the disk space.
+            active.close();
+            openSegment(activeSegment() + 1);
+            removeOldestSegment();
+        }
+    }
+
+    private void removeOldestSegment() throws IOException {
+        Files.deleteIfExists(segmentFile(segments.remove(0)));
+        readOffset = 0;
+        peekedSegment = -1;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        active.close();
+    }
+
+}
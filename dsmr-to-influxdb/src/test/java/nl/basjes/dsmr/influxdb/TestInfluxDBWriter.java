@@ -0,0 +1,252 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.influxdb;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestInfluxDBWriter {
+
+    @Test
+    void testBatchesBySize() {
+        List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        try (InfluxDBWriter writer = new InfluxDBWriter(batch -> batches.add(new ArrayList<>(batch)), 1000, 10, 60_000)) {
+            for (int i = 0; i < 95; i++) {
+                assertTrue(writer.write("point" + i));
+            }
+        }
+        // Closing flushes the last partial batch.
+        List<String> all = new ArrayList<>();
+        for (List<String> batch : batches) {
+            assertTrue(batch.size() <= 10);
+            all.addAll(batch);
+        }
+        assertEquals(95, all.size());
+        for (int i = 0; i < 95; i++) {
+            assertEquals("point" + i, all.get(i));
+        }
+    }
+
+    @Test
+    void testBatchesByAge() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        try (InfluxDBWriter writer = new InfluxDBWriter(batch -> written.countDown(), 1000, 1000, 50)) {
+            writer.write("point");
+            // The batch is far from full but must be written anyway.
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testRetryAfterFailure() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch written = new CountDownLatch(1);
+        Consumer<List<String>> flakyDatabase = batch -> {
+            if (attempts.incrementAndGet() <= 3) {
+                throw new IllegalStateException("Database is down");
+            }
+            written.countDown();
+        };
+        InfluxDBWriter writer = new InfluxDBWriter(flakyDatabase, null, 1000, 10, 10, 1, 10);
+        writer.write("point");
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        writer.close();
+        assertEquals(3, writer.getFailedWrites());
+        assertEquals(1, writer.getWrittenPoints());
+        assertEquals(0, writer.getDroppedPoints());
+    }
+
+    @Test
+    void testNeverBlocksWhenDatabaseHangs() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Consumer<List<String>> hangingDatabase = batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("Interrupted", e);
+            }
+        };
+        InfluxDBWriter writer = new InfluxDBWriter(hangingDatabase, null, 10, 1, 0, 1, 10);
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (writer.write("point" + i)) {
+                accepted++;
+            }
+        }
+        // One point is in the hanging write, the queue holds 10 more and the rest is dropped.
+        assertTrue(accepted <= 11, "Accepted " + accepted);
+        assertEquals(100 - accepted, writer.getDroppedPoints());
+        assertTrue(writer.getQueueDepth() <= 10);
+        release.countDown();
+        writer.close();
+        // Everything that was accepted has been written.
+        assertEquals(accepted, writer.getWrittenPoints());
+        assertEquals(100 - accepted, writer.getDroppedPoints());
+        assertFalse(writer.write("too late"));
+    }
+
+    @Test
+    void testCloseWhileWriting() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        List<String> database = Collections.synchronizedList(new ArrayList<>());
+        Consumer<List<String>> slowDatabase = batch -> {
+            writing.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("Interrupted", e);
+            }
+            database.addAll(batch);
+        };
+        InfluxDBWriter writer = new InfluxDBWriter(slowDatabase, null, 10, 1, 0, 1, 10);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(writer.write("point" + i));
+        }
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        // The write in progress and everything still in the queue must be written.
+        writer.close();
+        assertEquals(0, writer.getDroppedPoints());
+        assertEquals(0, writer.getFailedWrites());
+        assertEquals(5, writer.getWrittenPoints());
+        assertEquals(5, database.size());
+    }
+
+    @Test
+    void testSpoolWhileDatabaseIsDown(@TempDir Path spoolDirectory) throws IOException, InterruptedException {
+        AtomicBoolean databaseUp = new AtomicBoolean(false);
+        List<String> database = Collections.synchronizedList(new ArrayList<>());
+        Consumer<List<String>> unreliableDatabase = batch -> {
+            if (!databaseUp.get()) {
+                throw new IllegalStateException("Database is down");
+            }
+            database.addAll(batch);
+        };
+
+        try (Spool spool = new Spool(spoolDirectory)) {
+            InfluxDBWriter writer = new InfluxDBWriter(unreliableDatabase, spool, 10, 5, 10, 1, 10);
+            // Far more points than fit in the queue (at the pace the spool can take them).
+            long deadline = System.currentTimeMillis() + 10_000;
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(writer.write("point" + i));
+                if (i % 10 == 9) {
+                    while (writer.getSpooledPoints() < i + 1 && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(1);
+                    }
+                }
+            }
+            assertEquals(0, writer.getWrittenPoints());
+            assertFalse(spool.isEmpty());
+
+            databaseUp.set(true);
+            while (database.size() < 1000 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            writer.close();
+
+            assertEquals(0, writer.getDroppedPoints());
+            assertTrue(spool.isEmpty());
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                expected.add("point" + i);
+            }
+            List<String> actual = new ArrayList<>(database);
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+        }
+    }
+
+    // Records which threads append to the spool.
+    private static final class RecordingSpool extends Spool {
+        private final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingSpool(Path directory) throws IOException {
+            super(directory);
+        }
+
+        @Override
+        public synchronized void append(String lineProtocol) throws IOException {
+            threads.add(Thread.currentThread().getName());
+            super.append(lineProtocol);
+        }
+    }
+
+    @Test
+    void testOnlyTheWriterSpools(@TempDir Path spoolDirectory) throws IOException, InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Consumer<List<String>> hangingDatabase = batch -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("Interrupted", e);
+            }
+            throw new IllegalStateException("Database is down");
+        };
+
+        try (RecordingSpool spool = new RecordingSpool(spoolDirectory)) {
+            InfluxDBWriter writer = new InfluxDBWriter(hangingDatabase, spool, 10, 1, 0, 1, 10);
+            assertTrue(writer.write("point"));
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+            // The writer thread hangs: one point is being written, 10 are in the queue and 10 in the overflow.
+            int accepted = 1;
+            for (int i = 0; i < 100; i++) {
+                if (writer.write("point" + i)) {
+                    accepted++;
+                }
+            }
+            assertEquals(21, accepted);
+            assertEquals(100 + 1 - accepted, writer.getDroppedPoints());
+            assertTrue(spool.threads.isEmpty());
+
+            release.countDown();
+            writer.close();
+            assertEquals(accepted, writer.getSpooledPoints());
+            assertEquals(100 + 1 - accepted, writer.getDroppedPoints());
+            assertFalse(spool.threads.isEmpty());
+            for (String thread : spool.threads) {
+                assertEquals("InfluxDBWriter", thread);
+            }
+        }
+    }
+
+    @Test
+    void testBadSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new InfluxDBWriter(batch -> { }, 0, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> new InfluxDBWriter(batch -> { }, 10, 0, 10));
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.influxdb;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestSpool {
+
+    @TempDir
+    Path spoolDirectory;
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            return files.count();
+        }
+    }
+
+    private static List<String> drain(Spool spool, int batchSize) throws IOException {
+        List<String> all = new ArrayList<>();
+        while (!spool.isEmpty()) {
+            List<String> points = spool.peek(batchSize);
+            assertTrue(points.size() <= batchSize);
+            all.addAll(points);
+            spool.commit();
+        }
+        assertEquals(0, spool.peek(batchSize).size());
+        return all;
+    }
+
+    @Test
+    void testAppendPeekCommit() throws IOException {
+        try (Spool spool = new Spool(spoolDirectory)) {
+            assertTrue(spool.isEmpty());
+            spool.append(Arrays.asList("one", "two", "three €"));
+            assertFalse(spool.isEmpty());
+
+            // Without a commit the same points are returned again.
+            assertEquals(Arrays.asList("one", "two"), spool.peek(2));
+            assertEquals(Arrays.asList("one", "two"), spool.peek(2));
+            spool.commit();
+            assertEquals(Arrays.asList("three €"), spool.peek(2));
+            spool.commit();
+            assertTrue(spool.isEmpty());
+
+            spool.append("four");
+            assertEquals(Arrays.asList("four"), spool.peek(10));
+            spool.commit();
+            assertTrue(spool.isEmpty());
+        }
+        // Only the (empty) active segment is left.
+        assertEquals(1, segmentFiles());
+    }
+
+    @Test
+    void testSegmentsAreRolledAndDeleted() throws IOException {
+        List<String> expected = new ArrayList<>();
+        try (Spool spool = new Spool(spoolDirectory, 1000, 10, 1000)) {
+            for (int i = 0; i < 1000; i++) {
+                String point = "electricity,equipmentId=E0044007131650618 powerReceived=" + i;
+                expected.add(point);
+                spool.append(point);
+            }
+            assertTrue(segmentFiles() > 10);
+            assertEquals(expected, drain(spool, 7));
+            assertEquals(1, segmentFiles());
+        }
+    }
+
+    @Test
+    void testSurvivesRestart() throws IOException {
+        List<String> expected = new ArrayList<>();
+        try (Spool spool = new Spool(spoolDirectory, 1000, 10, 1000)) {
+            for (int i = 0; i < 100; i++) {
+                expected.add("point " + i);
+                spool.append("point " + i);
+            }
+            // Half of it was written to the database
+            for (int i = 0; i < 5; i++) {
+                spool.peek(10);
+                spool.commit();
+            }
+        }
+        try (Spool spool = new Spool(spoolDirectory, 1000, 10, 1000)) {
+            spool.append("point 100");
+            expected.add("point 100");
+            List<String> replayed = drain(spool, 10);
+            // Everything that was not committed is still there (a few committed points may be returned again).
+            assertTrue(replayed.size() >= 51);
+            assertEquals(expected.subList(expected.size() - replayed.size(), expected.size()), replayed);
+        }
+    }
+
+    @Test
+    void testIncompletePointAtTheEnd() throws IOException {
+        try (Spool spool = new Spool(spoolDirectory)) {
+            spool.append(Arrays.asList("one", "two"));
+        }
+        // A crash while writing the third point.
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            Path segment = files.sorted().findFirst().orElseThrow(IllegalStateException::new);
+            Files.write(segment, new byte[]{0, 0, 0, 100, 'x'}, StandardOpenOption.APPEND);
+        }
+        try (Spool spool = new Spool(spoolDirectory)) {
+            assertEquals(Arrays.asList("one", "two"), drain(spool, 10));
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.parse;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static nl.basjes.parse.ReadUTF8RecordStream.MAX_MAX_RECORD_SIZE;
+import static nl.basjes.parse.ReadUTF8RecordStream.MIN_MAX_RECORD_SIZE;
+
+/**
+ * Reads the records from a (large) file such as an archived capture of a P1 port.
+ * The file is memory mapped and the records are handed out as read only slices of the mapping
+ * so no bytes are copied and no Strings are created unless the caller decides to do so.
+ * Only the record ends that can be found without a real regex are supported:
+ * line endings ("\\r?\\n"), the DSMR telegram end ("\\r\\n![0-9A-F]{4}\\r\\n") and literal strings.
+ */
+public class MappedRecordReader implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedRecordReader.class);
+
+    // The part of the file that is mapped at the same time (files larger than this are mapped piece by piece).
+    static final long DEFAULT_WINDOW_SIZE = 1024 * 1024 * 1024L; // 1 GiB
+
+    private final FileChannel             channel;
+    private final long                    fileSize;
+    private final String                  recordEndRegex;
+    private final RecordEndFinder.OnBytes recordEndFinder;
+    private final long                    maxRecordSize;
+    private final long                    windowSize;
+
+    private MappedByteBuffer              window;
+    private long                          windowStart = 0;
+    private int                           position = 0; // Within the window
+    private boolean                       done = false;
+
+    public MappedRecordReader(Path file, String recordEndRegex) throws IOException {
+        this(file, recordEndRegex, MIN_MAX_RECORD_SIZE);
+    }
+
+    public MappedRecordReader(Path file, String recordEndRegex, long newMaxRecordSize) throws IOException {
+        this(file, recordEndRegex, newMaxRecordSize, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedRecordReader(Path file, String recordEndRegex, long newMaxRecordSize, long windowSize) throws IOException {
+        this.recordEndRegex = recordEndRegex;
+        RecordEndFinder finder = RecordEndFinder.create(recordEndRegex);
+        if (!(finder instanceof RecordEndFinder.OnBytes)) {
+            throw new IllegalArgumentException("The end-of-record regex >>>" + StringEscapeUtils.escapeJava(recordEndRegex) +
+                "<<< cannot be used on a memory mapped file (only line endings, the DSMR telegram end and literal text).");
+        }
+        recordEndFinder = (RecordEndFinder.OnBytes) finder;
+        long size = Math.max(newMaxRecordSize, MIN_MAX_RECORD_SIZE);
+        maxRecordSize = Math.min(size, MAX_MAX_RECORD_SIZE);
+        // A window must always be able to hold a complete record.
+        this.windowSize = Math.max(windowSize, 2 * maxRecordSize);
+
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        fileSize = channel.size();
+        mapWindow(0);
+    }
+
+    private void mapWindow(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, fileSize - start));
+        position = 0;
+    }
+
+    /**
+     * Returns the next record as a read only slice of the mapped file (position 0, limit is the length of the record).
+     * At the end of the file the remaining data (if any) is returned as the last record.
+     * @return The next record or null if there are no more records.
+     * @throws IOException If the file could not be mapped or the end of a record has not been found in time.
+     */
+    public ByteBuffer next() throws IOException {
+        if (done) {
+            return null;
+        }
+
+        while (true) {
+            int limit = window.limit();
+            int end = recordEndFinder.find(window, position, limit);
+            if (end != -1) {
+                return slice(end);
+            }
+
+            boolean lastWindow = windowStart + limit >= fileSize;
+            if (lastWindow) {
+                done = true;
+                if (position == limit) {
+                    return null;
+                }
+                return slice(limit);
+            }
+
+            if (limit - position > maxRecordSize) {
+                LOG.error("After {} bytes the end-of-record pattern  >>>{}<<<  has not been found.",
+                    limit - position, StringEscapeUtils.escapeJava(recordEndRegex));
+                done = true;
+                throw new IOException("After " + (limit - position) + " bytes the end-of-record pattern has not been found yet.");
+            }
+
+            // The record continues in the next window: map again starting at this record.
+            mapWindow(windowStart + position);
+        }
+    }
+
+    private ByteBuffer slice(int end) throws IOException {
+        if (end - position > maxRecordSize) {
+            done = true;
+            throw new IOException("After " + (end - position) + " bytes the end-of-record pattern has not been found yet.");
+        }
+        ByteBuffer record = window.duplicate();
+        record.position(position);
+        record.limit(end);
+        position = end;
+        return record.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The offset in the file where the next record starts.
+     */
+    public long getFileOffset() {
+        return windowStart + position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        done = true;
+        channel.close();
+    }
+
+}
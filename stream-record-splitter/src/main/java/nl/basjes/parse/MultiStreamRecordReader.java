@@ -0,0 +1,228 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.parse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the records from many streams (i.e. all P1 ports of a machine) at the same time.
+ * Each stream gets its own (daemon) thread with its own {@link ReadUTF8RecordStream} which puts every record,
+ * tagged with the name of its source, into a single bounded queue. Reading from that queue never blocks
+ * unless asked for; when the queue is full the reading threads wait until there is room again.
+ * At the end of a stream the remaining data is only returned if it is not empty.
+ * A source that fails (i.e. a record that is too large or a device that was unplugged) is reported in
+ * {@link #getFailures()} and can be started again with {@link #reopen(String, InputStream)}.
+ */
+public class MultiStreamRecordReader implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultiStreamRecordReader.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    /** A single record and the name of the stream it was read from. */
+    public static final class Record {
+        private final String source;
+        private final String content;
+
+        Record(String source, String content) {
+            this.source  = source;
+            this.content = content;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        @Override
+        public String toString() {
+            return source + ": " + content;
+        }
+    }
+
+    private final Map<String, InputStream>  inputs;
+    private final String                    recordEndRegex;
+    private final long                      maxRecordSize;
+    private final BlockingQueue<Record>     queue;
+    private final List<Thread>              readers   = new ArrayList<>();
+    private final AtomicInteger             running   = new AtomicInteger();
+    private final Map<String, IOException>  failures  = new ConcurrentHashMap<>();
+    private volatile boolean                closed    = false;
+
+    /**
+     * Starts reading all the inputs.
+     * @param inputs The name of each source and the stream to read from it.
+     * @param recordEndRegex The end of a record (the same for all inputs).
+     * @param maxRecordSize The maximum size of a single record, see {@link ReadUTF8RecordStream}.
+     * @param queueSize The maximum number of records that have been read and not yet retrieved.
+     */
+    public MultiStreamRecordReader(Map<String, InputStream> inputs, String recordEndRegex, long maxRecordSize, int queueSize) {
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("The queue size must be positive (was " + queueSize + ")");
+        }
+        // The set of sources never changes, only the stream of a source is replaced by reopen.
+        this.inputs         = new LinkedHashMap<>(inputs);
+        this.recordEndRegex = recordEndRegex;
+        this.maxRecordSize  = maxRecordSize;
+        queue = new ArrayBlockingQueue<>(queueSize);
+
+        running.set(this.inputs.size());
+        for (Map.Entry<String, InputStream> input : this.inputs.entrySet()) {
+            readers.add(reader(input.getKey(), input.getValue()));
+        }
+        readers.forEach(Thread::start);
+    }
+
+    private Thread reader(String source, InputStream input) {
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(input, recordEndRegex, maxRecordSize);
+        Thread thread = new Thread(() -> readAll(source, reader), "Read records from " + source);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void readAll(String source, ReadUTF8RecordStream reader) {
+        try {
+            String content;
+            while (!closed && (content = reader.read()) != null) {
+                if (!content.isEmpty()) {
+                    queue.put(new Record(source, content));
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                LOG.error("Stopped reading from {}: {}", source, e.getMessage());
+                failures.put(source, e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Anything unexpected must also be visible as a failure of this source.
+            if (!closed) {
+                LOG.error("Stopped reading from {}", source, e);
+                failures.put(source, new IOException("Unexpected error while reading from " + source + ": " + e, e));
+            }
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    /** @return The names of all sources. */
+    public Collection<String> getSources() {
+        return Collections.unmodifiableSet(inputs.keySet());
+    }
+
+    /** @return The next record or null if there is nothing available right now. */
+    public Record poll() {
+        return queue.poll();
+    }
+
+    /** @return The next record or null if there was nothing available within the timeout. */
+    public Record poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Moves all available records (at most maxRecords) into the provided collection without waiting.
+     * @return The number of records that were added.
+     */
+    public int drainTo(Collection<? super Record> records, int maxRecords) {
+        return queue.drainTo(records, maxRecords);
+    }
+
+    /** @return The number of sources that are still being read. */
+    public int getRunningSources() {
+        return running.get();
+    }
+
+    /** @return True if all sources have ended and all records have been retrieved. */
+    public boolean isFinished() {
+        return running.get() == 0 && queue.isEmpty();
+    }
+
+    /** @return The sources that were stopped because of an error (i.e. a record that is too large). */
+    public Map<String, IOException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Starts reading a source that has failed again, now from a new stream (i.e. the reopened device).
+     * Data that was in the old stream and not yet returned is lost.
+     * @param source The name of a source that is in {@link #getFailures()}.
+     * @param input The new stream of this source.
+     * @throws IllegalStateException If the source has not failed or this reader has been closed.
+     */
+    public synchronized void reopen(String source, InputStream input) {
+        if (closed) {
+            throw new IllegalStateException("The reader has been closed");
+        }
+        if (!failures.containsKey(source)) {
+            throw new IllegalStateException("The source " + source + " has not failed");
+        }
+        InputStream failed = inputs.put(source, input);
+        try {
+            failed.close();
+        } catch (IOException e) {
+            // Ignore: this stream was already unusable.
+        }
+        failures.remove(source);
+        Thread thread = reader(source, input);
+        readers.add(thread);
+        running.incrementAndGet();
+        thread.start();
+    }
+
+    /** Stops all reading threads and closes all inputs; records that were not yet retrieved are lost. */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        IOException exception = null;
+        for (InputStream input : inputs.values()) {
+            try {
+                input.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        readers.forEach(Thread::interrupt);
+        queue.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+}
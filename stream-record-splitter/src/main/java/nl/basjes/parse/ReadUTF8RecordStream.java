@@ -24,12 +24,23 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * Splits a stream of UTF-8 text into records that end with something matching the provided regex.
+ * The data is kept in a single buffer which is only compacted when most of it has been handed out
+ * and the regex is only applied to the part that has not been scanned before so the total
+ * amount of work is linear in the size of the input (also for very large records).
+ * Line endings ("\\r?\\n"), the DSMR telegram end ("\\r\\n![0-9A-F]{4}\\r\\n") and regexes that are
+ * simply a literal string are found without using a regex at all.
+ * The exception is a regex that can match an unbounded amount of text (like "[^x]*x"): that
+ * is rescanned from the start of the record after every read.
+ */
 public class ReadUTF8RecordStream {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReadUTF8RecordStream.class);
@@ -37,9 +48,25 @@ public class ReadUTF8RecordStream {
     public static final long MIN_MAX_RECORD_SIZE =         10 * 1024L; //  10 KiB
     public static final long MAX_MAX_RECORD_SIZE = 100 * 1024 * 1024L; // 100 MiB
 
-    private final InputStream inputStream;
-    private final Pattern     endMatcher;
-    private       long        maxRecordSize;
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final InputStream    inputStream;
+    private final String         recordEndRegex;
+    private final RecordEndFinder recordEndFinder;
+    private       long           maxRecordSize;
+
+    private final byte[]         readBuffer  = new byte[READ_BUFFER_SIZE];
+    private final ByteBuffer     undecoded   = ByteBuffer.allocate(READ_BUFFER_SIZE + 8);
+    private final CharBuffer     decoded     = CharBuffer.allocate(READ_BUFFER_SIZE + 8);
+    private final CharsetDecoder utf8Decoder = UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // All data that has been read but not yet returned is in buffer[recordStart, buffer.length()[
+    // Everything before scanFrom is known not to contain (the start of) the end of the record.
+    private StringBuilder        buffer = new StringBuilder(READ_BUFFER_SIZE * 2);
+    private int                  recordStart = 0;
+    private int                  scanFrom = 0;
 
     public ReadUTF8RecordStream(InputStream input, String recordEndRegex) {
         this(input, recordEndRegex, MIN_MAX_RECORD_SIZE);
@@ -47,17 +74,15 @@ public class ReadUTF8RecordStream {
 
     public ReadUTF8RecordStream(InputStream input, String recordEndRegex, long newMaxRecordSize) {
         inputStream = input;
-        endMatcher = Pattern.compile("(" + recordEndRegex + ")");
+        this.recordEndRegex = recordEndRegex;
+        recordEndFinder = RecordEndFinder.create(recordEndRegex);
         maxRecordSize = Math.max(newMaxRecordSize, MIN_MAX_RECORD_SIZE);
         maxRecordSize = Math.min(maxRecordSize,    MAX_MAX_RECORD_SIZE);
     }
 
-    private StringBuilder previousLastRecord = new StringBuilder();
-
     // Returns null if end of stream
     public String read() throws IOException {
-        byte[] readBuffer = new byte[4096];
-        if (previousLastRecord == null) {
+        if (buffer == null) {
             return null;
         }
 
@@ -71,39 +96,73 @@ public class ReadUTF8RecordStream {
         while (true) {
             int bytesRead = inputStream.read(readBuffer);
             if (bytesRead == -1) { // -1 == End of stream
-                String returnValue = previousLastRecord.toString();
-                previousLastRecord = null; // Next call will return null immediately
+                decode(readBuffer, 0, true);
+                String returnValue = buffer.substring(recordStart);
+                buffer = null; // Next call will return null immediately
                 return returnValue;
             }
 
-            previousLastRecord.append(new String(readBuffer, 0, bytesRead, UTF_8));
+            decode(readBuffer, bytesRead, false);
 
             record = extractRecordFromBuffer();
             if (record != null) {
                 return record;
             }
 
-            final int length = previousLastRecord.length();
+            final int length = buffer.length() - recordStart;
             if (length > maxRecordSize) {
                 LOG.error("After {} bytes the end-of-record pattern  >>>{}<<<  has not been found.",
-                    length, StringEscapeUtils.escapeJava(endMatcher.pattern()));
-                previousLastRecord = null;
+                    length, StringEscapeUtils.escapeJava(recordEndRegex));
+                buffer = null;
                 throw new IOException("After "+ length +" bytes the end-of-record pattern has not been found yet.");
             }
         }
     }
 
+    // Appends the bytes to the buffer. A multi byte character that is split over two reads is kept until the next read.
+    private void decode(byte[] bytes, int length, boolean endOfInput) {
+        if (recordStart > buffer.length() / 2) {
+            // Compact: drop everything that has already been returned.
+            buffer.delete(0, recordStart);
+            scanFrom -= recordStart;
+            recordStart = 0;
+        }
+
+        undecoded.put(bytes, 0, length);
+        undecoded.flip();
+        utf8Decoder.decode(undecoded, decoded, endOfInput);
+        if (endOfInput) {
+            utf8Decoder.flush(decoded);
+        }
+        undecoded.compact();
+        decoded.flip();
+        buffer.append(decoded);
+        decoded.clear();
+    }
+
     private String extractRecordFromBuffer() {
+        final int end = buffer.length();
+        if (scanFrom >= end) {
+            return null;
+        }
+
         // In case we now have (one or more) records return the first one.
-        Matcher matcher = endMatcher.matcher(previousLastRecord);
-        if (matcher.find()) {
-            MatchResult matchResult = matcher.toMatchResult();
-            int endOfPartIndex = matchResult.end(1);
-            String result = previousLastRecord.substring(0, endOfPartIndex);
-            previousLastRecord = new StringBuilder(previousLastRecord.substring(endOfPartIndex));
+        int endOfPartIndex = recordEndFinder.find(buffer, recordStart, scanFrom, end);
+        if (endOfPartIndex != -1) {
+            String result = buffer.substring(recordStart, endOfPartIndex);
+            recordStart = endOfPartIndex;
+            scanFrom    = endOfPartIndex;
             return result;
         }
+
+        // No match yet: remember the first position where a match could still start once more data arrives.
+        scanFrom = recordEndFinder.resumeFrom(buffer, recordStart, scanFrom, end);
         return null;
     }
 
+    // For testing
+    Class<? extends RecordEndFinder> getRecordEndFinderType() {
+        return recordEndFinder.getClass();
+    }
+
 }
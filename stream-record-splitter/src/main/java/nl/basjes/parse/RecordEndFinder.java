@@ -0,0 +1,345 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.parse;
+
+import java.nio.ByteBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Finds the end of a record in the buffer of a {@link ReadUTF8RecordStream}.
+ * The commonly used end-of-record regexes (line endings and the DSMR telegram trailer) and plain literal
+ * strings are handled by simple scanners, only custom patterns go through java.util.regex.
+ */
+abstract class RecordEndFinder {
+
+    /**
+     * Find the first record end in the buffer that starts at or after the from position.
+     * @param buffer The buffer
+     * @param recordStart The start of the current record (from is never before this).
+     * @param from The first position where the record end can start.
+     * @param to The end of the data in the buffer.
+     * @return The position directly after the record end, or -1 if not found.
+     */
+    abstract int find(StringBuilder buffer, int recordStart, int from, int to);
+
+    /**
+     * Only called (with the same arguments) after find did not find anything.
+     * @return The first position where a record end could still start once more data arrives.
+     */
+    abstract int resumeFrom(StringBuilder buffer, int recordStart, int from, int to);
+
+    /**
+     * Implemented by the record ends that can also be found directly in the (UTF-8) bytes (i.e. not a real regex).
+     */
+    interface OnBytes {
+        /**
+         * Same as find but directly on the (UTF-8) bytes.
+         * @param buffer The buffer (only absolute reads are done)
+         * @param from The first position where the record end can start.
+         * @param to The end of the data in the buffer.
+         * @return The position directly after the record end, or -1 if not found.
+         */
+        int find(ByteBuffer buffer, int from, int to);
+    }
+
+    // The way the end of the DSMR telegram is usually specified.
+    static final String DSMR_TELEGRAM_END = "\\r\\n![0-9A-F]{4}\\r\\n";
+
+    static RecordEndFinder create(String recordEndRegex) {
+        switch (recordEndRegex) {
+            case "\\n":
+            case "\n":
+            case "\\r?\\n":
+            case "\r?\n":
+                return new NewLine();
+            case "\\r\\n":
+                return new Literal("\r\n");
+            case DSMR_TELEGRAM_END:
+            case "\r\n![0-9A-F]{4}\r\n":
+                return new DsmrTelegramEnd();
+            default:
+                if (isLiteral(recordEndRegex)) {
+                    return new Literal(recordEndRegex);
+                }
+                return new Regex(recordEndRegex);
+        }
+    }
+
+    private static boolean isLiteral(String regex) {
+        for (char c : regex.toCharArray()) {
+            if ("\\^$.|?*+()[]{}".indexOf(c) != -1) {
+                return false;
+            }
+        }
+        return !regex.isEmpty();
+    }
+
+    // ------------------------------------------
+
+    // Both "\n" and "\r?\n": the record always ends directly after the '\n'.
+    static final class NewLine extends RecordEndFinder implements OnBytes {
+        @Override
+        int find(StringBuilder buffer, int recordStart, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer.charAt(i) == '\n') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int resumeFrom(StringBuilder buffer, int recordStart, int from, int to) {
+            // A trailing '\r' may be the start of a "\r\n" but that ends at the same place.
+            return to;
+        }
+
+        @Override
+        public int find(ByteBuffer buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) == '\n') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // ------------------------------------------
+
+    static final class Literal extends RecordEndFinder implements OnBytes {
+        private final String literal;
+        private final byte[] literalBytes;
+
+        Literal(String literal) {
+            this.literal = literal;
+            this.literalBytes = literal.getBytes(UTF_8);
+        }
+
+        @Override
+        int find(StringBuilder buffer, int recordStart, int from, int to) {
+            int index = buffer.indexOf(literal, from);
+            if (index == -1 || index + literal.length() > to) {
+                return -1;
+            }
+            return index + literal.length();
+        }
+
+        @Override
+        int resumeFrom(StringBuilder buffer, int recordStart, int from, int to) {
+            // The first position from where the rest of the buffer is the start of the literal
+            for (int start = Math.max(from, to - literal.length() + 1); start < to; start++) {
+                if (isPrefix(buffer, start, to)) {
+                    return start;
+                }
+            }
+            return to;
+        }
+
+        private boolean isPrefix(StringBuilder buffer, int start, int to) {
+            for (int i = start; i < to; i++) {
+                if (buffer.charAt(i) != literal.charAt(i - start)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int find(ByteBuffer buffer, int from, int to) {
+            final byte first = literalBytes[0];
+            for (int start = from; start <= to - literalBytes.length; start++) {
+                if (buffer.get(start) == first && isAt(buffer, start)) {
+                    return start + literalBytes.length;
+                }
+            }
+            return -1;
+        }
+
+        private boolean isAt(ByteBuffer buffer, int start) {
+            for (int i = 1; i < literalBytes.length; i++) {
+                if (buffer.get(start + i) != literalBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // ------------------------------------------
+
+    // "\r\n![0-9A-F]{4}\r\n"
+    static final class DsmrTelegramEnd extends RecordEndFinder implements OnBytes {
+        private static final int LENGTH = 9;
+
+        private static boolean matches(int position, int c) {
+            switch (position) {
+                case 0:
+                case 7:
+                    return c == '\r';
+                case 1:
+                case 8:
+                    return c == '\n';
+                case 2:
+                    return c == '!';
+                default:
+                    return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F');
+            }
+        }
+
+        @Override
+        int find(StringBuilder buffer, int recordStart, int from, int to) {
+            // The last character of the end is a '\n' so we only need to look at those.
+            for (int i = from + LENGTH - 1; i < to; i++) {
+                if (buffer.charAt(i) == '\n' && matchesAt(buffer, i - LENGTH + 1, LENGTH)) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean matchesAt(StringBuilder buffer, int start, int length) {
+            for (int position = 0; position < length; position++) {
+                if (!matches(position, buffer.charAt(start + position))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int resumeFrom(StringBuilder buffer, int recordStart, int from, int to) {
+            for (int start = Math.max(from, to - LENGTH + 1); start < to; start++) {
+                if (matchesAt(buffer, start, to - start)) {
+                    return start;
+                }
+            }
+            return to;
+        }
+
+        @Override
+        public int find(ByteBuffer buffer, int from, int to) {
+            for (int i = from + LENGTH - 1; i < to; i++) {
+                if (buffer.get(i) == '\n' && matchesAt(buffer, i - LENGTH + 1)) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean matchesAt(ByteBuffer buffer, int start) {
+            for (int position = 0; position < LENGTH; position++) {
+                if (!matches(position, buffer.get(start + position))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // ------------------------------------------
+
+    // Any other regex.
+    // The regex only sees the current record (as if it were a separate String) so '^', '$' and lookbehind
+    // behave as they do on the record itself, while the search itself starts where the previous one stopped.
+    // Limitation: a regex that can match an unbounded amount of text (like "[^x]*x") can still be matching
+    // at the start of the record, so then every read rescans the entire record (quadratic for large records).
+    static final class Regex extends RecordEndFinder {
+        private final Matcher    matcher;
+        private final RecordView record = new RecordView();
+        private       boolean    hitEnd;
+
+        Regex(String recordEndRegex) {
+            matcher = Pattern.compile("(" + recordEndRegex + ")").matcher("");
+        }
+
+        private Matcher matcher(StringBuilder buffer, int recordStart, int from, int to) {
+            record.set(buffer, recordStart, to);
+            return matcher.reset(record)
+                .region(from - recordStart, to - recordStart)
+                .useTransparentBounds(true)
+                .useAnchoringBounds(false);
+        }
+
+        @Override
+        int find(StringBuilder buffer, int recordStart, int from, int to) {
+            if (matcher(buffer, recordStart, from, to).find()) {
+                return recordStart + matcher.end(1);
+            }
+            hitEnd = matcher.hitEnd();
+            return -1;
+        }
+
+        @Override
+        int resumeFrom(StringBuilder buffer, int recordStart, int from, int to) {
+            if (!hitEnd) {
+                // None of the attempts needed more data than there was so more data will not change anything.
+                return to;
+            }
+            // Normally this is only in the last few characters so the next scan only looks at new data.
+            int position = from;
+            while (position < to) {
+                matcher(buffer, recordStart, position, to);
+                if (matcher.lookingAt() || matcher.hitEnd()) {
+                    break;
+                }
+                position++;
+            }
+            return position;
+        }
+    }
+
+    // ------------------------------------------
+
+    // The part [start, end[ of the buffer without copying it.
+    static final class RecordView implements CharSequence {
+        private StringBuilder buffer;
+        private int           start;
+        private int           end;
+
+        void set(StringBuilder newBuffer, int newStart, int newEnd) {
+            buffer = newBuffer;
+            start  = newStart;
+            end    = newEnd;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return buffer.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return buffer.subSequence(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return buffer.substring(start, end);
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.parse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.parse.RecordEndFinder.DSMR_TELEGRAM_END;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestMappedRecordReader {
+
+    @TempDir
+    Path tempDir;
+
+    private Path write(String content) throws IOException {
+        Path file = Files.createTempFile(tempDir, "records", ".txt");
+        Files.write(file, content.getBytes(UTF_8));
+        return file;
+    }
+
+    private static List<String> readMapped(Path file, String endRegex, long windowSize) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (MappedRecordReader reader = new MappedRecordReader(file, endRegex, 0, windowSize)) {
+            ByteBuffer record;
+            while ((record = reader.next()) != null) {
+                assertTrue(record.isReadOnly());
+                byte[] bytes = new byte[record.remaining()];
+                record.get(bytes);
+                records.add(new String(bytes, UTF_8));
+            }
+            assertNull(reader.next());
+        }
+        return records;
+    }
+
+    private static List<String> readStream(String content, String endRegex) throws IOException {
+        List<String> records = new ArrayList<>();
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(new ByteArrayInputStream(content.getBytes(UTF_8)), endRegex);
+        String record;
+        while ((record = reader.read()) != null) {
+            records.add(record);
+        }
+        // The stream reader returns an empty last record if the input ends with a record end.
+        if (!records.isEmpty() && records.get(records.size() - 1).isEmpty()) {
+            records.remove(records.size() - 1);
+        }
+        return records;
+    }
+
+    private static String telegram(int index) {
+        return "/ISK5\\2M550T-1012\r\n" +
+            "\r\n" +
+            "1-3:0.2.8(50)\r\n" +
+            "0-0:96.13.0(Telegram " + index + " é€)\r\n" +
+            "1-0:1.8.1(" + index + ".921*kWh)\r\n" +
+            "!" + String.format("%04X", index & 0xFFFF) + "\r\n";
+    }
+
+    @Test
+    void testSameAsReadUTF8RecordStream() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append(telegram(i));
+        }
+        sb.append("Incomplete last record");
+        String content = sb.toString();
+        Path file = write(content);
+
+        for (String endRegex : new String[]{"\\n", "\\r\\n", DSMR_TELEGRAM_END, "kWh"}) {
+            List<String> expected = readStream(content, endRegex);
+            // Both with everything in one window and with a window far smaller than the file.
+            assertEquals(expected, readMapped(file, endRegex, MappedRecordReader.DEFAULT_WINDOW_SIZE), endRegex);
+            assertEquals(expected, readMapped(file, endRegex, 1), endRegex);
+        }
+    }
+
+    @Test
+    void testRandomRecordsOverManyWindows() throws IOException {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 500_000) {
+            int length = random.nextInt(200);
+            for (int i = 0; i < length; i++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            sb.append('\n');
+        }
+        String content = sb.toString();
+        Path file = write(content);
+        assertEquals(readStream(content, "\\n"), readMapped(file, "\\n", 1));
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        Path file = write("");
+        assertEquals(0, readMapped(file, "\\n", 1).size());
+    }
+
+    @Test
+    void testFileOffset() throws IOException {
+        Path file = write("one\ntwo\nthree\n");
+        try (MappedRecordReader reader = new MappedRecordReader(file, "\\n")) {
+            assertEquals(0, reader.getFileOffset());
+            reader.next();
+            assertEquals(4, reader.getFileOffset());
+            reader.next();
+            assertEquals(8, reader.getFileOffset());
+        }
+    }
+
+    @Test
+    void testTooLargeRecord() throws IOException {
+        StringBuilder sb = new StringBuilder("small\n");
+        for (int i = 0; i < 100_000; i++) {
+            sb.append('x');
+        }
+        sb.append("\nsmall\n");
+        Path file = write(sb.toString());
+
+        for (long windowSize : new long[]{MappedRecordReader.DEFAULT_WINDOW_SIZE, 1}) {
+            try (MappedRecordReader reader = new MappedRecordReader(file, "\\n", 0, windowSize)) {
+                assertEquals(6, reader.next().remaining());
+                assertThrows(IOException.class, reader::next);
+            }
+        }
+    }
+
+    @Test
+    void testRegexNotSupported() throws IOException {
+        Path file = write("one\ntwo\n");
+        assertThrows(IllegalArgumentException.class, () -> new MappedRecordReader(file, "\\n+"));
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.parse;
+
+import nl.basjes.parse.MultiStreamRecordReader.Record;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestMultiStreamRecordReader {
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(UTF_8));
+    }
+
+    // All records per source in the order they were read.
+    private static Map<String, List<String>> readAll(MultiStreamRecordReader reader) throws InterruptedException {
+        Map<String, List<String>> result = new HashMap<>();
+        while (!reader.isFinished()) {
+            Record record = reader.poll(10, TimeUnit.MILLISECONDS);
+            if (record != null) {
+                result.computeIfAbsent(record.getSource(), source -> new ArrayList<>()).add(record.getContent());
+            }
+        }
+        return result;
+    }
+
+    @Test
+    void testManySources() {
+        Map<String, InputStream> inputs = new LinkedHashMap<>();
+        Map<String, List<String>> expected = new HashMap<>();
+        for (int device = 0; device < 16; device++) {
+            StringBuilder content = new StringBuilder();
+            List<String> records = new ArrayList<>();
+            for (int line = 0; line < 1000; line++) {
+                String record = "Device " + device + " line " + line + "\n";
+                content.append(record);
+                records.add(record);
+            }
+            content.append("No newline at the end");
+            records.add("No newline at the end");
+            inputs.put("/dev/ttyUSB" + device, stream(content.toString()));
+            expected.put("/dev/ttyUSB" + device, records);
+        }
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            // A small queue so the reading threads have to wait for us.
+            try (MultiStreamRecordReader reader = new MultiStreamRecordReader(inputs, "\\r?\\n", 10240, 10)) {
+                assertEquals(inputs.keySet(), reader.getSources());
+                assertEquals(expected, readAll(reader));
+                assertEquals(0, reader.getRunningSources());
+                assertTrue(reader.getFailures().isEmpty());
+                assertNull(reader.poll());
+            }
+        });
+    }
+
+    @Test
+    void testDrainDoesNotBlock() throws IOException, InterruptedException {
+        PipedOutputStream device = new PipedOutputStream();
+        Map<String, InputStream> inputs = new HashMap<>();
+        inputs.put("device", new PipedInputStream(device));
+
+        try (MultiStreamRecordReader reader = new MultiStreamRecordReader(inputs, "\n", 10240, 100)) {
+            List<Record> records = new ArrayList<>();
+            assertEquals(0, reader.drainTo(records, 10));
+            assertNull(reader.poll());
+            assertFalse(reader.isFinished());
+
+            device.write("One\nTwo\nThr".getBytes(UTF_8));
+            device.flush();
+            Record record = reader.poll(10, TimeUnit.SECONDS);
+            assertNotNull(record);
+            assertEquals("device", record.getSource());
+            assertEquals("One\n",   record.getContent());
+            assertEquals("Two\n",   reader.poll(10, TimeUnit.SECONDS).getContent());
+            assertNull(reader.poll(100, TimeUnit.MILLISECONDS)); // "Thr" is not complete yet
+
+            device.write("ee\n".getBytes(UTF_8));
+            device.close();
+            assertEquals("Three\n", reader.poll(10, TimeUnit.SECONDS).getContent());
+            while (reader.getRunningSources() > 0) {
+                Thread.sleep(10);
+            }
+            assertTrue(reader.isFinished());
+        }
+    }
+
+    @Test
+    void testFailingSource() throws InterruptedException, IOException {
+        StringBuilder tooLarge = new StringBuilder();
+        while (tooLarge.length() < 20000) {
+            tooLarge.append("xxxxxxxxxx");
+        }
+        Map<String, InputStream> inputs = new LinkedHashMap<>();
+        inputs.put("good", stream("One\nTwo\n"));
+        inputs.put("bad",  stream(tooLarge.toString()));
+
+        try (MultiStreamRecordReader reader = new MultiStreamRecordReader(inputs, "\n", 10240, 100)) {
+            Map<String, List<String>> records = readAll(reader);
+            assertEquals(1, records.size());
+            assertEquals(2, records.get("good").size());
+            assertEquals(1, reader.getFailures().size());
+            assertTrue(reader.getFailures().containsKey("bad"));
+        }
+    }
+
+    // A device that fails in an unexpected way.
+    private static final class BrokenInputStream extends InputStream {
+        @Override
+        public int read() {
+            throw new IllegalStateException("Broken device");
+        }
+    }
+
+    @Test
+    void testUnexpectedFailureAndReopen() throws InterruptedException, IOException {
+        Map<String, InputStream> inputs = new LinkedHashMap<>();
+        inputs.put("good",   stream("One\nTwo\n"));
+        inputs.put("broken", new BrokenInputStream());
+
+        try (MultiStreamRecordReader reader = new MultiStreamRecordReader(inputs, "\n", 10240, 100)) {
+            Map<String, List<String>> records = readAll(reader);
+            assertEquals(2, records.get("good").size());
+            assertEquals(1, reader.getFailures().size());
+            assertTrue(reader.getFailures().get("broken").getMessage().contains("Broken device"));
+
+            assertThrows(IllegalStateException.class, () -> reader.reopen("good", stream("Three\n")));
+
+            // The device is back
+            reader.reopen("broken", stream("Four\nFive\n"));
+            assertTrue(reader.getFailures().isEmpty());
+            records = readAll(reader);
+            assertEquals(1, records.size());
+            assertEquals(2, records.get("broken").size());
+            assertEquals("Four\n", records.get("broken").get(0));
+            assertEquals(inputs.keySet(), reader.getSources());
+        }
+    }
+
+    @Test
+    void testBadQueueSize() {
+        assertThrows(IllegalArgumentException.class, () -> new MultiStreamRecordReader(new HashMap<>(), "\n", 10240, 0));
+    }
+
+}
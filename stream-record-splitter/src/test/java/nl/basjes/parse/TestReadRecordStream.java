@@ -20,7 +20,14 @@ package nl.basjes.parse;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 
@@ -28,6 +35,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TestReadRecordStream {
@@ -121,6 +129,154 @@ class TestReadRecordStream {
         assertTrue(exception.getMessage().matches("After [0-9]+ bytes the end-of-record pattern has not been found yet."));
     }
 
+    @Test
+    void testHugeRecordInLinearTime() {
+        // A single 20 MiB record that arrives in 4 KiB blocks.
+        byte[] input = new byte[20 * 1024 * 1024 + 5];
+        Arrays.fill(input, (byte) 'x');
+        System.arraycopy("====\n".getBytes(UTF_8), 0, input, input.length - 5, 5);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            ReadUTF8RecordStream reader =
+                new ReadUTF8RecordStream(new ByteArrayInputStream(input), "====\n", ReadUTF8RecordStream.MAX_MAX_RECORD_SIZE);
+            assertEquals(input.length, reader.read().length());
+            assertEquals("", reader.read());
+            assertNull(reader.read());
+        });
+    }
+
+    @Test
+    void testManySmallRecords() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 500_000; i++) {
+            input.append(i).append('\n');
+        }
+        byte[] bytes = input.toString().getBytes(UTF_8);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            ReadUTF8RecordStream reader = new ReadUTF8RecordStream(new ByteArrayInputStream(bytes), "\n");
+            for (int i = 0; i < 500_000; i++) {
+                assertEquals(i + "\n", reader.read());
+            }
+            assertEquals("", reader.read());
+            assertNull(reader.read());
+        });
+    }
+
+    // Only returns a single byte per read call
+    private static final class SlowInputStream extends FilterInputStream {
+        SlowInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    @Test
+    void testMultiByteCharactersSplitOverReads() throws IOException {
+        String input = "\u20ac uro\n\u00e9\u00e9n\n\uD83D\uDE00 smile\n";
+        ReadUTF8RecordStream reader =
+            new ReadUTF8RecordStream(new SlowInputStream(new ByteArrayInputStream(input.getBytes(UTF_8))), "\n");
+        assertEquals("\u20ac uro\n", reader.read());
+        assertEquals("\u00e9\u00e9n\n", reader.read());
+        assertEquals("\uD83D\uDE00 smile\n", reader.read());
+        assertEquals("", reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    void testEndPatternSplitOverReads() throws IOException {
+        String input = "one\r\n!1234\r\ntwo\r\n!ABCD\r\n";
+        ReadUTF8RecordStream reader =
+            new ReadUTF8RecordStream(new SlowInputStream(new ByteArrayInputStream(input.getBytes(UTF_8))), "\r\n![0-9A-F]{4}\r\n");
+        assertEquals("one\r\n!1234\r\n", reader.read());
+        assertEquals("two\r\n!ABCD\r\n", reader.read());
+        assertEquals("", reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    void testRecordEndFinderSelection() {
+        assertEquals(RecordEndFinder.NewLine.class,         new ReadUTF8RecordStream(null, "\\r?\\n").getRecordEndFinderType());
+        assertEquals(RecordEndFinder.NewLine.class,         new ReadUTF8RecordStream(null, "\n").getRecordEndFinderType());
+        assertEquals(RecordEndFinder.Literal.class,         new ReadUTF8RecordStream(null, "\\r\\n").getRecordEndFinderType());
+        assertEquals(RecordEndFinder.Literal.class,         new ReadUTF8RecordStream(null, "====\n").getRecordEndFinderType());
+        assertEquals(RecordEndFinder.DsmrTelegramEnd.class, new ReadUTF8RecordStream(null, "\\r\\n![0-9A-F]{4}\\r\\n").getRecordEndFinderType());
+        assertEquals(RecordEndFinder.DsmrTelegramEnd.class, new ReadUTF8RecordStream(null, "\r\n![0-9A-F]{4}\r\n").getRecordEndFinderType());
+        assertEquals(RecordEndFinder.Regex.class,           new ReadUTF8RecordStream(null, "x+\n").getRecordEndFinderType());
+    }
+
+    @Test
+    void testRegexOnlySeesTheRecord() throws IOException {
+        // The '^' only matches at the start of the record (no MULTILINE), also when the data arrives byte by byte.
+        String input = "xx\nyx\nx\nxxx\n";
+        ReadUTF8RecordStream reader =
+            new ReadUTF8RecordStream(new SlowInputStream(new ByteArrayInputStream(input.getBytes(UTF_8))), "^x+\n");
+        assertEquals(RecordEndFinder.Regex.class, reader.getRecordEndFinderType());
+        assertEquals("xx\n", reader.read());
+        assertEquals("yx\nx\nxxx\n", reader.read()); // The remainder at the end of the stream
+        assertNull(reader.read());
+
+        // A lookbehind cannot see the end of the previous record.
+        reader = new ReadUTF8RecordStream(new SlowInputStream(new ByteArrayInputStream("ab;;b;ab;".getBytes(UTF_8))), "(?<=a)b;");
+        assertEquals("ab;", reader.read());
+        assertEquals(";b;ab;", reader.read());
+        assertEquals("", reader.read());
+        assertNull(reader.read());
+    }
+
+    // Returns a random number (1-10) of bytes per read call
+    private static final class RandomChunkInputStream extends FilterInputStream {
+        private final Random random;
+
+        RandomChunkInputStream(InputStream in, long seed) {
+            super(in);
+            random = new Random(seed);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1 + random.nextInt(10)));
+        }
+    }
+
+    @Test
+    void testRecordEndFindersSameAsRegex() throws IOException {
+        // The (?:...) wrapping makes sure the regex is really used.
+        String[][] patterns = {
+            {"\\r?\\n",                      "(?:\\r?\\n)"},
+            {"\\n",                           "(?:\\n)"},
+            {"\\r\\n",                        "(?:\\r\\n)"},
+            {"==\r\n",                         "(?:==\r\n)"},
+            {"\\r\\n![0-9A-F]{4}\\r\\n",      "(?:\\r\\n![0-9A-F]{4}\\r\\n)"},
+        };
+        String alphabet = "\r\n!=A1x";
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            StringBuilder input = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                if (random.nextInt(50) == 0) {
+                    input.append("\r\n!1A2B\r\n");
+                }
+                input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            byte[] bytes = input.toString().getBytes(UTF_8);
+            for (String[] pattern : patterns) {
+                ReadUTF8RecordStream fast  = new ReadUTF8RecordStream(new RandomChunkInputStream(new ByteArrayInputStream(bytes), run), pattern[0]);
+                ReadUTF8RecordStream regex = new ReadUTF8RecordStream(new RandomChunkInputStream(new ByteArrayInputStream(bytes), -run), pattern[1]);
+                assertEquals(RecordEndFinder.Regex.class, regex.getRecordEndFinderType());
+                String expected;
+                do {
+                    expected = regex.read();
+                    assertEquals(expected, fast.read(), pattern[0]);
+                } while (expected != null);
+            }
+        }
+    }
+
     volatile boolean keepRunning = true;
 
     void testRecordReassemblyInBurstyStream(String[] recordFragments, String[] records, String endPattern)
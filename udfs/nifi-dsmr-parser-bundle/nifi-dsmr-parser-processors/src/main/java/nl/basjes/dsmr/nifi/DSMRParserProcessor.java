@@ -19,8 +19,13 @@ package nl.basjes.dsmr.nifi;
 
 import nl.basjes.dsmr.DSMRTelegram;
 import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
+import nl.basjes.dsmr.DSMRTelegramSchema.Field;
+import nl.basjes.dsmr.DSMRTelegramSchema.Type;
+import nl.basjes.dsmr.DsmrTelegramParser;
+import nl.basjes.dsmr.DsmrTelegramParserFactory;
 import nl.basjes.dsmr.MBusEvent;
 import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseOptions;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
 import org.apache.nifi.annotation.behavior.ReadsAttributes;
 import org.apache.nifi.annotation.behavior.SideEffectFree;
@@ -29,17 +34,22 @@ import org.apache.nifi.annotation.behavior.WritesAttributes;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.AbstractProcessor;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.ProcessorInitializationContext;
 import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.stream.io.StreamUtils;
 
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -49,6 +59,9 @@ import java.util.Set;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+import static nl.basjes.dsmr.DSMRTelegramSchema.MBUS_EVENT_FIELDS;
+import static nl.basjes.dsmr.DSMRTelegramSchema.POWER_FAILURE_EVENT_FIELDS;
+import static nl.basjes.dsmr.DSMRTelegramSchema.TELEGRAM_FIELDS;
 
 @Tags({"iot", "dsmr"})
 @CapabilityDescription("Parses a DSMR record into attributes. " +
@@ -59,6 +72,42 @@ import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
 @WritesAttributes({@WritesAttribute(attribute = "", description = "")})
 public class DSMRParserProcessor extends AbstractProcessor {
 
+    private static final Validator FIELDS_VALIDATOR = (subject, input, context) -> {
+        String explanation = null;
+        try {
+            ParseOptions.parse(input);
+        } catch (IllegalArgumentException e) {
+            explanation = e.getMessage();
+        }
+        return new ValidationResult.Builder()
+            .subject(subject)
+            .input(input)
+            .valid(explanation == null)
+            .explanation(explanation)
+            .build();
+    };
+
+    public static final PropertyDescriptor FIELDS = new PropertyDescriptor
+        .Builder()
+        .name("Fields")
+        .displayName("Fields")
+        .description("A comma separated list of the fields that are needed (like TIMESTAMP, ELECTRICITY_POWER_RECEIVED, GAS). " +
+            "Only these are parsed and put in the attributes, everything else is skipped without being validated. " +
+            "Use GAS (or MBUS) for all MBus devices. When empty the entire telegram is parsed.")
+        .required(false)
+        .addValidator(FIELDS_VALIDATOR)
+        .build();
+
+    public static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor
+        .Builder()
+        .name("Batch size")
+        .displayName("Batch size")
+        .description("The maximum number of flowfiles that are handled in a single session.")
+        .required(true)
+        .defaultValue("100")
+        .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+        .build();
+
     public static final Relationship VALID = new Relationship.Builder()
         .name("Valid")
         .description("Complete and valid records")
@@ -72,10 +121,17 @@ public class DSMRParserProcessor extends AbstractProcessor {
         .description("Incomplete records / Parsing failed")
         .build();
 
+    private List<PropertyDescriptor> descriptors;
+
     private Set<Relationship> relationships;
 
     @Override
     protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptorList = new ArrayList<>();
+        descriptorList.add(FIELDS);
+        descriptorList.add(BATCH_SIZE);
+        this.descriptors = Collections.unmodifiableList(descriptorList);
+
         final Set<Relationship> relationshipSet = new HashSet<>();
         relationshipSet.add(VALID);
         relationshipSet.add(INVALID_CRC);
@@ -90,174 +146,186 @@ public class DSMRParserProcessor extends AbstractProcessor {
 
     @Override
     public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
-        return Collections.emptyList();
+        return descriptors;
     }
 
-    private static final String ATTRIBUTE_PREFIX = "dsmr.";
+    // Telegrams are normally less than 1 KiB.
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_RECORD_SIZE     = 1024 * 1024;
+
+    private transient DsmrTelegramParser parser = ParseDsmrTelegram::parse;
+    private transient int                batchSize = 100;
 
-    private void put(Map<String, String> map, String name, String value) {
-        if (value != null) {
-            map.put(ATTRIBUTE_PREFIX + name, value);
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) {
+        batchSize = context.getProperty(BATCH_SIZE).asInteger();
+        ParseOptions options = ParseOptions.parse(context.getProperty(FIELDS).getValue());
+        if (options.isAll()) {
+            parser = ParseDsmrTelegram::parse;
+        } else {
+            parser = DsmrTelegramParserFactory.create(options);
         }
     }
 
-    private void put(Map<String, String> map, String name, Double value) {
-        if (value != null) {
-            map.put(ATTRIBUTE_PREFIX + name, Double.toString(value));
+    private static final String ATTRIBUTE_PREFIX = "dsmr.";
+
+    /** The attribute names of all fields in a table of the {@link DSMRTelegramSchema}, created only once. */
+    private static final class AttributeNames {
+        private final String[] names;
+        private final String[] epochSecondNames;
+
+        /**
+         * @param prefix The prefix of all attribute names
+         * @param fields The table of fields
+         * @param skippedFields The names of the fields that must not become an attribute (their name stays null)
+         */
+        AttributeNames(String prefix, List<? extends Field<?, ?>> fields, String... skippedFields) {
+            names            = new String[fields.size()];
+            epochSecondNames = new String[fields.size()];
+            List<String> skipped = Arrays.asList(skippedFields);
+            for (Field<?, ?> field : fields) {
+                if (skipped.contains(field.getName())) {
+                    continue;
+                }
+                names[field.getIndex()] = prefix + field.getName();
+                if (field.getType() == Type.TIMESTAMP) {
+                    // In DSMR the are no times more accurate than a second.
+                    // If you need milli/micro or even nano seconds just append some zeros.
+                    epochSecondNames[field.getIndex()] = prefix + field.getName() + ".epochSecond";
+                }
+            }
         }
     }
 
-    private void put(Map<String, String> map, String name, Boolean value) {
-        if (value != null) {
-            map.put(ATTRIBUTE_PREFIX + name, value.toString());
+    // The log size is only written (with a different name) together with the log itself.
+    private static final AttributeNames TELEGRAM_ATTRIBUTES =
+        new AttributeNames(ATTRIBUTE_PREFIX, TELEGRAM_FIELDS, "powerFailureEventLogSize");
+
+    private static final String POWER_FAILURE_EVENT_LOG_SIZE = ATTRIBUTE_PREFIX + "powerFailureEventLog.size";
+
+    // The names for the first few entries of the power failure log and for the normal 4 MBus channels are ready for use.
+    private static final AttributeNames[] POWER_FAILURE_EVENT_ATTRIBUTES = new AttributeNames[10];
+    private static final AttributeNames[] MBUS_ATTRIBUTES                = new AttributeNames[5];
+
+    static {
+        for (int logEntry = 0; logEntry < POWER_FAILURE_EVENT_ATTRIBUTES.length; logEntry++) {
+            POWER_FAILURE_EVENT_ATTRIBUTES[logEntry] = powerFailureEventAttributes(logEntry);
+        }
+        for (int channel = 1; channel < MBUS_ATTRIBUTES.length; channel++) {
+            MBUS_ATTRIBUTES[channel] = mBusAttributes(channel);
         }
     }
 
-    private void put(Map<String, String> map, String name, Long value) {
-        if (value != null) {
-            map.put(ATTRIBUTE_PREFIX + name, Long.toString(value));
+    private static AttributeNames powerFailureEventAttributes(int logEntry) {
+        if (logEntry < POWER_FAILURE_EVENT_ATTRIBUTES.length && POWER_FAILURE_EVENT_ATTRIBUTES[logEntry] != null) {
+            return POWER_FAILURE_EVENT_ATTRIBUTES[logEntry];
         }
+        return new AttributeNames(ATTRIBUTE_PREFIX + "powerFailureEventLog." + logEntry + ".", POWER_FAILURE_EVENT_FIELDS);
     }
 
-    private void put(Map<String, String> map, String name, Integer value) {
-        if (value != null) {
-            map.put(ATTRIBUTE_PREFIX + name, Integer.toString(value));
+    private static AttributeNames mBusAttributes(int channel) {
+        if (channel > 0 && channel < MBUS_ATTRIBUTES.length && MBUS_ATTRIBUTES[channel] != null) {
+            return MBUS_ATTRIBUTES[channel];
         }
+        return new AttributeNames(ATTRIBUTE_PREFIX + "mbus." + channel + ".", MBUS_EVENT_FIELDS);
     }
 
-    private void put(Map<String, String> map, String name, ZonedDateTime value) {
-        if (value != null) {
-            map.put(ATTRIBUTE_PREFIX + name, ISO_OFFSET_DATE_TIME.format(value));
-
-            // In DSMR the are no times more accurate than a second.
-            // If you need milli/micro or even nano seconds just append some zeros.
-            map.put(ATTRIBUTE_PREFIX + name + ".epochSecond", String.valueOf(value.toEpochSecond()));
+    private static <S> void putAll(Map<String, String> map, S source, List<Field<S, ?>> fields, AttributeNames attributeNames) {
+        for (Field<S, ?> field : fields) {
+            String name = attributeNames.names[field.getIndex()];
+            if (name == null) {
+                continue;
+            }
+            Object value = field.get(source);
+            if (value == null) {
+                continue;
+            }
+            if (field.getType() == Type.TIMESTAMP) {
+                ZonedDateTime timestamp = (ZonedDateTime) value;
+                map.put(name, ISO_OFFSET_DATE_TIME.format(timestamp));
+                map.put(attributeNames.epochSecondNames[field.getIndex()], String.valueOf(timestamp.toEpochSecond()));
+            } else {
+                map.put(name, value.toString());
+            }
         }
     }
 
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) {
-        FlowFile flowFile = session.get();
-        if (flowFile == null) {
+        List<FlowFile> flowFiles = session.get(batchSize);
+        if (flowFiles.isEmpty()) {
             return;
         }
 
-        long size = flowFile.getSize();
-        if (size < 5 || size > 1024 * 1024) {
-            getLogger().info("Received a flowfile with an invalid content size (it was {} bytes)", new Object[]{size});
-            session.transfer(flowFile, BAD_RECORDS);
-            return;
-        }
+        List<FlowFile> valid      = new ArrayList<>(flowFiles.size());
+        List<FlowFile> invalidCrc = new ArrayList<>();
+        List<FlowFile> bad        = new ArrayList<>();
+
+        // A single buffer for the entire batch (only replaced by a bigger one if needed).
+        byte[] byteBuffer = new byte[INITIAL_BUFFER_SIZE];
+        for (FlowFile flowFile : flowFiles) {
+            long size = flowFile.getSize();
+            if (size < 5 || size > MAX_RECORD_SIZE) {
+                getLogger().info("Received a flowfile with an invalid content size (it was {} bytes)", new Object[]{size});
+                bad.add(flowFile);
+                continue;
+            }
 
-        final byte[] byteBuffer = new byte[(int)size];
-        session.read(flowFile, in -> StreamUtils.fillBuffer(in, byteBuffer, false));
-        final long len = Math.min(byteBuffer.length, flowFile.getSize());
-        String contentString = new String(byteBuffer, 0, (int) len, UTF_8);
+            if (byteBuffer.length < size) {
+                byteBuffer = new byte[(int) size];
+            }
+            final byte[] readBuffer = byteBuffer;
+            final int[]  length     = new int[1];
+            session.read(flowFile, in -> length[0] = StreamUtils.fillBuffer(in, readBuffer, false));
+            String contentString = new String(readBuffer, 0, Math.min(length[0], (int) size), UTF_8);
+
+            // This ONLY returns null iff the content is either null or empty.
+            // At this point this can no longer be the case because of the size check earlier.
+            DSMRTelegram record = parser.parse(contentString);
+
+            if (record.getRawIdent() == null) {
+                bad.add(flowFile); // Garbage
+                continue;
+            }
 
-        // This ONLY returns null iff the content is either null or empty.
-        // At this point this can no longer be the case because of the size check earlier.
-        DSMRTelegram record = ParseDsmrTelegram.parse(contentString);
+            FlowFile updated = session.putAllAttributes(flowFile, toAttributes(record));
+            session.getProvenanceReporter().modifyAttributes(updated);
 
-        if (record.getRawIdent() == null) {
-            session.transfer(flowFile, BAD_RECORDS);
-            return; // Garbage
+            if (record.isValidCRC()) {
+                valid.add(updated);
+            } else {
+                invalidCrc.add(updated);
+            }
         }
 
-        Map<String, String> parseResults = new HashMap<>();
-
-        // CHECKSTYLE.OFF: LineLength
-        put(parseResults, "validCRC",                         record.isValidCRC());
-
-        put(parseResults, "rawIdent",                         record.getRawIdent());
-        put(parseResults, "equipmentBrandTag",                record.getEquipmentBrandTag());
-        put(parseResults, "ident",                            record.getIdent());
-        put(parseResults, "crc",                              record.getCrc());
-
-        put(parseResults, "p1Version",                        record.getP1Version());                        // P1 Version information
-        put(parseResults, "timestamp",                        record.getTimestamp());                        // Timestamp
-        put(parseResults, "equipmentId",                      record.getEquipmentId());                      // Equipment identifier
+        session.transfer(valid,      VALID);
+        session.transfer(invalidCrc, INVALID_CRC);
+        session.transfer(bad,        BAD_RECORDS);
+    }
 
-        put(parseResults, "electricityReceivedLowTariff",     record.getElectricityReceivedLowTariff());     // Meter Reading electricity delivered to client (low tariff) in 0,001 kWh
-        put(parseResults, "electricityReceivedNormalTariff",  record.getElectricityReceivedNormalTariff());  // Meter Reading electricity delivered to client (normal tariff) in 0,001 kWh
-        put(parseResults, "electricityReturnedLowTariff",     record.getElectricityReturnedLowTariff());     // Meter Reading electricity delivered by client (low tariff) in 0,001 kWh
-        put(parseResults, "electricityReturnedNormalTariff",  record.getElectricityReturnedNormalTariff());  // Meter Reading electricity delivered by client (normal tariff) in 0,001 kWh
-        put(parseResults, "electricityTariffIndicator",       record.getElectricityTariffIndicator());       // Tariff indicator electricity
-        put(parseResults, "electricityPowerReceived",         record.getElectricityPowerReceived());         // Actual electricity power delivered (+P) in 1 Watt resolution
-        put(parseResults, "electricityPowerReturned",         record.getElectricityPowerReturned());         // Actual electricity power received (-P) in 1 Watt resolution
+    private Map<String, String> toAttributes(DSMRTelegram record) {
+        Map<String, String> parseResults = new HashMap<>();
 
-        put(parseResults, "powerFailures",                    record.getPowerFailures());                    // Number of power failures in any phases
-        put(parseResults, "longPowerFailures",                record.getLongPowerFailures());                // Number of long power failures in any phases
+        putAll(parseResults, record, TELEGRAM_FIELDS, TELEGRAM_ATTRIBUTES);
 
         Long powerFailureEventLogSize = record.getPowerFailureEventLogSize();
-
         if (powerFailureEventLogSize != null && powerFailureEventLogSize > 0) {
-            put(parseResults, "powerFailureEventLog.size",     powerFailureEventLogSize);                    // Number of long power failures in the log
+            parseResults.put(POWER_FAILURE_EVENT_LOG_SIZE, Long.toString(powerFailureEventLogSize));
 
             int logEntry = 0;
             for (PowerFailureEvent powerFailureEvent: record.getPowerFailureEventLog()) {
-                put(parseResults, "powerFailureEventLog." + logEntry + ".startTime",       powerFailureEvent.getStartTime().toString());             // When the power failure started
-                put(parseResults, "powerFailureEventLog." + logEntry + ".endTime",         powerFailureEvent.getEndTime().toString());               // When the power failure ended
-                put(parseResults, "powerFailureEventLog." + logEntry + ".durationSeconds", powerFailureEvent.getDuration().get(ChronoUnit.SECONDS)); // How many seconds it lasted
+                putAll(parseResults, powerFailureEvent, POWER_FAILURE_EVENT_FIELDS, powerFailureEventAttributes(logEntry));
                 logEntry++;
             }
         }
 
-        put(parseResults, "voltageSagsPhaseL1",               record.getVoltageSagsPhaseL1());               // Number of voltage sags in phase L1
-        put(parseResults, "voltageSagsPhaseL2",               record.getVoltageSagsPhaseL2());               // Number of voltage sags in phase L2
-        put(parseResults, "voltageSagsPhaseL3",               record.getVoltageSagsPhaseL3());               // Number of voltage sags in phase L3
-        put(parseResults, "voltageSwellsPhaseL1",             record.getVoltageSwellsPhaseL1());             // Number of voltage swells in phase L1
-        put(parseResults, "voltageSwellsPhaseL2",             record.getVoltageSwellsPhaseL2());             // Number of voltage swells in phase L2
-        put(parseResults, "voltageSwellsPhaseL3",             record.getVoltageSwellsPhaseL3());             // Number of voltage swells in phase L3
-
-        put(parseResults, "voltageL1",                        record.getVoltageL1());                        // Instantaneous voltage L1
-        put(parseResults, "voltageL2",                        record.getVoltageL2());                        // Instantaneous voltage L2
-        put(parseResults, "voltageL3",                        record.getVoltageL3());                        // Instantaneous voltage L3
-        put(parseResults, "currentL1",                        record.getCurrentL1());                        // Instantaneous current L1
-        put(parseResults, "currentL2",                        record.getCurrentL2());                        // Instantaneous current L2
-        put(parseResults, "currentL3",                        record.getCurrentL3());                        // Instantaneous current L3
-        put(parseResults, "powerReceivedL1",                  record.getPowerReceivedL1());                  // Instantaneous active power L1 (+P)
-        put(parseResults, "powerReceivedL2",                  record.getPowerReceivedL2());                  // Instantaneous active power L2 (+P)
-        put(parseResults, "powerReceivedL3",                  record.getPowerReceivedL3());                  // Instantaneous active power L3 (+P)
-        put(parseResults, "powerReturnedL1",                  record.getPowerReturnedL1());                  // Instantaneous active power L1 (-P)
-        put(parseResults, "powerReturnedL2",                  record.getPowerReturnedL2());                  // Instantaneous active power L2 (-P)
-        put(parseResults, "powerReturnedL3",                  record.getPowerReturnedL3());                  // Instantaneous active power L3 (-P)
-        put(parseResults, "messageCodes",                     record.getMessageCodes());                     // Text message codes: numeric 8 digits.
-        put(parseResults, "message",                          record.getMessage());                          // Text message max 1024 characters.
-
-        put(parseResults, "mBusEvents",                       record.getMBusEvents().size());                // The number of available MBus entries
-
-        for(Map.Entry<Integer, MBusEvent> mBusEventEntry: record.getMBusEvents().entrySet()) {
+        for (Map.Entry<Integer, MBusEvent> mBusEventEntry: record.getMBusEvents().entrySet()) {
             MBusEvent mBusEvent = mBusEventEntry.getValue();
             if (mBusEvent != null) {
-                put(parseResults, "mbus."+mBusEventEntry.getKey()+".deviceType",  mBusEvent.getDeviceType());
-                put(parseResults, "mbus."+mBusEventEntry.getKey()+".equipmentId", mBusEvent.getEquipmentId());
-                put(parseResults, "mbus."+mBusEventEntry.getKey()+".timestamp",   mBusEvent.getTimestamp());
-                put(parseResults, "mbus."+mBusEventEntry.getKey()+".value",       mBusEvent.getValue());
-                put(parseResults, "mbus."+mBusEventEntry.getKey()+".unit",        mBusEvent.getUnit());
+                putAll(parseResults, mBusEvent, MBUS_EVENT_FIELDS, mBusAttributes(mBusEventEntry.getKey()));
             }
         }
 
-        // NOTE: This assumes only AT MOST ONE attached thing per type of meter.
-        // Doing two 'gas meters' will only map the first one (i.e. with the lowest MBus id)!!!
-
-        // Gas
-        put(parseResults, "gasEquipmentId",                   record.getGasEquipmentId());                   // Gas measuring equipment id
-        put(parseResults, "gasTimestamp",                     record.getGasTimestamp());                     // Gas measurement timestamp
-        put(parseResults, "gasM3",                            record.getGasM3());                            // Measured Gas quantity in M3
-
-        // Electricity via a slave
-        put(parseResults, "slaveEMeterEquipmentId",           record.getSlaveEMeterEquipmentId());           // Slave e-meter equipment id
-        put(parseResults, "slaveEMeterTimestamp",             record.getSlaveEMeterTimestamp());             // Slave e-meter measurement timestamp
-        put(parseResults, "slaveEMeterkWh",                   record.getSlaveEMeterkWh());                   // Slave e-meter consumption in kWh
-
-        flowFile = session.putAllAttributes(flowFile, parseResults);
-
-        session.getProvenanceReporter().modifyAttributes(flowFile);
-
-        if (record.isValidCRC()) {
-            session.transfer(flowFile, VALID);
-        } else {
-            session.transfer(flowFile, INVALID_CRC);
-        }
+        return parseResults;
     }
 }
@@ -0,0 +1,239 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.nifi;
+
+import nl.basjes.dsmr.DSMRTelegramCodec;
+import nl.basjes.dsmr.ParseOptions;
+import nl.basjes.dsmr.PrimitiveDSMRTelegram;
+import nl.basjes.dsmr.PrimitiveDsmrTelegramParser;
+import nl.basjes.dsmr.ReadDsmrTelegramStream;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.SideEffectFree;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.AllowableValue;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+@Tags({"iot", "dsmr", "record"})
+@CapabilityDescription("Parses all DSMR telegrams in a flowfile (i.e. a recorded stream of telegrams) " +
+    "and writes them as typed records into a single new flowfile.")
+@SeeAlso({DSMRParserProcessor.class})
+@SideEffectFree
+@InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
+@WritesAttributes({
+    @WritesAttribute(attribute = "record.count",        description = "The number of records that were written."),
+    @WritesAttribute(attribute = "dsmr.invalid.count",  description = "The number of telegrams that were not valid (i.e. bad CRC)."),
+    @WritesAttribute(attribute = "dsmr.skipped.count",  description = "The number of pieces of input that were not a telegram at all."),
+    @WritesAttribute(attribute = "mime.type",           description = "The mime type of the written records.")
+})
+public class DSMRRecordProcessor extends AbstractProcessor {
+
+    public static final AllowableValue FORMAT_JSON = new AllowableValue(
+        "JSON", "JSON Lines",
+        "One JSON object per line. Numbers are written as JSON numbers, the timestamp as an ISO 8601 string.");
+
+    public static final AllowableValue FORMAT_BINARY = new AllowableValue(
+        "BINARY", "DSMR binary",
+        "The compact binary form of the DSMRTelegramCodec, one telegram after the other.");
+
+    public static final PropertyDescriptor RECORD_FORMAT = new PropertyDescriptor
+        .Builder()
+        .name("Record format")
+        .displayName("Record format")
+        .description("The format of the written records.")
+        .required(true)
+        .allowableValues(FORMAT_JSON, FORMAT_BINARY)
+        .defaultValue(FORMAT_JSON.getValue())
+        .build();
+
+    public static final PropertyDescriptor INCLUDE_INVALID = new PropertyDescriptor
+        .Builder()
+        .name("Include invalid telegrams")
+        .displayName("Include invalid telegrams")
+        .description("Also write the telegrams that are not valid (i.e. have a bad CRC). " +
+            "In JSON these can be recognized by the \"valid\" field.")
+        .required(true)
+        .allowableValues("true", "false")
+        .defaultValue("false")
+        .build();
+
+    public static final Relationship SUCCESS = new Relationship.Builder()
+        .name("success")
+        .description("The flowfile with the records")
+        .build();
+    public static final Relationship ORIGINAL = new Relationship.Builder()
+        .name("original")
+        .description("The original input flowfile")
+        .build();
+    public static final Relationship FAILURE = new Relationship.Builder()
+        .name("failure")
+        .description("The input could not be read as a stream of telegrams (i.e. a telegram was too large)")
+        .build();
+
+    static final String MIME_TYPE_JSON   = "application/x-ndjson";
+    static final String MIME_TYPE_BINARY = "application/octet-stream";
+
+    private List<PropertyDescriptor> descriptors;
+
+    private Set<Relationship> relationships;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptorList = new ArrayList<>();
+        descriptorList.add(RECORD_FORMAT);
+        descriptorList.add(DSMRParserProcessor.FIELDS);
+        descriptorList.add(INCLUDE_INVALID);
+        this.descriptors = Collections.unmodifiableList(descriptorList);
+
+        final Set<Relationship> relationshipSet = new HashSet<>();
+        relationshipSet.add(SUCCESS);
+        relationshipSet.add(ORIGINAL);
+        relationshipSet.add(FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationshipSet);
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return this.relationships;
+    }
+
+    @Override
+    public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return descriptors;
+    }
+
+    // The maximum size of a single telegram.
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private transient ParseOptions options        = ParseOptions.all();
+    private transient boolean      binary         = false;
+    private transient boolean      includeInvalid = false;
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) {
+        options        = ParseOptions.parse(context.getProperty(DSMRParserProcessor.FIELDS).getValue());
+        binary         = FORMAT_BINARY.getValue().equals(context.getProperty(RECORD_FORMAT).getValue());
+        includeInvalid = context.getProperty(INCLUDE_INVALID).asBoolean();
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) {
+        FlowFile original = session.get();
+        if (original == null) {
+            return;
+        }
+
+        // One parser and one telegram for all telegrams in the flowfile.
+        final PrimitiveDsmrTelegramParser parser   = new PrimitiveDsmrTelegramParser(options);
+        final PrimitiveDSMRTelegram       telegram = new PrimitiveDSMRTelegram();
+        final long[]                      counts   = new long[3]; // written, invalid, skipped
+
+        FlowFile records = session.create(original);
+        try (InputStream in = session.read(original)) {
+            final ReadDsmrTelegramStream reader = new ReadDsmrTelegramStream(in, MAX_RECORD_SIZE);
+            records = session.write(records, out -> {
+                if (binary) {
+                    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                    readAll(reader, parser, telegram, counts, t -> DSMRTelegramCodec.write(t.toDSMRTelegram(), data));
+                    data.flush();
+                } else {
+                    JsonTelegramWriter json   = new JsonTelegramWriter();
+                    Writer             writer = new OutputStreamWriter(new BufferedOutputStream(out), UTF_8);
+                    readAll(reader, parser, telegram, counts, t -> writer.append(json.write(t)));
+                    writer.flush();
+                }
+            });
+        } catch (ProcessException | IOException e) {
+            getLogger().error("Unable to read the telegrams from {}", new Object[]{original}, e);
+            session.remove(records);
+            session.transfer(original, FAILURE);
+            return;
+        }
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("record.count",       Long.toString(counts[0]));
+        attributes.put("dsmr.invalid.count", Long.toString(counts[1]));
+        attributes.put("dsmr.skipped.count", Long.toString(counts[2]));
+        attributes.put(CoreAttributes.MIME_TYPE.key(), binary ? MIME_TYPE_BINARY : MIME_TYPE_JSON);
+        records = session.putAllAttributes(records, attributes);
+
+        session.getProvenanceReporter().fork(original, Collections.singletonList(records));
+        session.transfer(records, SUCCESS);
+        session.transfer(original, ORIGINAL);
+    }
+
+    @FunctionalInterface
+    private interface TelegramOutput {
+        void write(PrimitiveDSMRTelegram telegram) throws IOException;
+    }
+
+    private void readAll(ReadDsmrTelegramStream reader,
+                         PrimitiveDsmrTelegramParser parser,
+                         PrimitiveDSMRTelegram telegram,
+                         long[] counts,
+                         TelegramOutput output) throws IOException {
+        String text;
+        while ((text = reader.read()) != null) {
+            if (text.trim().isEmpty()) {
+                continue; // Trailing newlines at the end of the input.
+            }
+            boolean valid = parser.parse(text, telegram);
+            if (telegram.getRawIdent() == null) {
+                counts[2]++; // Garbage
+                continue;
+            }
+            if (!valid) {
+                counts[1]++;
+                if (!includeInvalid) {
+                    continue;
+                }
+            }
+            output.write(telegram);
+            counts[0]++;
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.nifi;
+
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegramSchema.Field;
+import nl.basjes.dsmr.DsmrField;
+import nl.basjes.dsmr.PrimitiveDSMRTelegram;
+
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+import static nl.basjes.dsmr.DSMRTelegramSchema.TELEGRAM_FIELDS;
+
+/**
+ * Writes a telegram as a single line of JSON with typed values: numbers are JSON numbers,
+ * the timestamp is an ISO 8601 string and the other timestamps are seconds since the epoch.
+ * The names of the plain fields are those of the {@link nl.basjes.dsmr.DSMRTelegramSchema}; this is NOT the same
+ * layout as the attributes of the {@link DSMRParserProcessor}:
+ * <ul>
+ * <li>The power failures are a "powerFailureEventLogSize" and a "powerFailureEventLog" array of
+ *     {"endTimeEpochSecond", "durationSeconds"} (the start time is the end time minus the duration).</li>
+ * <li>The MBus events are a "mBus" array of {"channel", "deviceType", "equipmentId", "timestampEpochSecond", "value", "unit"}
+ *     and the gas and slave E meter are "gasEquipmentId", "gasTimestampEpochSecond", "gasM3" (and the same for "slaveEMeter").</li>
+ * <li>The CRC is not written (only "validCRC").</li>
+ * </ul>
+ * Fields that are not present are not written.
+ */
+final class JsonTelegramWriter {
+
+    private static final DsmrField[] FIELDS = DsmrField.values();
+    private static final String[]    NAMES  = new String[FIELDS.length];
+
+    static {
+        for (Field<DSMRTelegram, ?> field : TELEGRAM_FIELDS) {
+            if (field.getDsmrField() != null) {
+                NAMES[field.getDsmrField().ordinal()] = field.getName();
+            }
+        }
+    }
+
+    private final StringBuilder json = new StringBuilder(2048);
+
+    /**
+     * @param telegram The (valid or invalid) telegram.
+     * @return The JSON of this telegram followed by a newline. Only valid until the next call.
+     */
+    CharSequence write(PrimitiveDSMRTelegram telegram) {
+        json.setLength(0);
+        json.append('{');
+        appendBoolean("valid",    telegram.isValid());
+        appendBoolean("validCRC", telegram.isValidCRC());
+        appendString("rawIdent",          telegram.getRawIdent());
+        appendString("equipmentBrandTag", telegram.getEquipmentBrandTag());
+        appendString("ident",             telegram.getIdent());
+
+        for (DsmrField field : FIELDS) {
+            if (!telegram.has(field)) {
+                continue;
+            }
+            String name = NAMES[field.ordinal()];
+            switch (field.getType()) {
+                case STRING:
+                    appendString(name, telegram.getString(field));
+                    break;
+                case TIMESTAMP:
+                    appendString(name, ISO_OFFSET_DATE_TIME.format(telegram.getTimestamp()));
+                    break;
+                case LONG:
+                    appendName(name).append(telegram.getLong(field));
+                    break;
+                case DOUBLE:
+                    appendName(name).append(telegram.getDouble(field));
+                    break;
+                case POWER_FAILURE_LOG:
+                    appendPowerFailureEventLog(telegram);
+                    break;
+                default:
+            }
+        }
+
+        appendMBus(telegram);
+        json.append("}\n");
+        return json;
+    }
+
+    private void appendPowerFailureEventLog(PrimitiveDSMRTelegram telegram) {
+        appendName("powerFailureEventLogSize").append(telegram.getPowerFailureEventLogSize());
+        appendName("powerFailureEventLog").append('[');
+        for (int event = 0; event < telegram.getPowerFailureEvents(); event++) {
+            if (event > 0) {
+                json.append(',');
+            }
+            json.append("{\"endTimeEpochSecond\":").append(telegram.getPowerFailureEndEpochSecond(event))
+                .append(",\"durationSeconds\":").append(telegram.getPowerFailureDurationSeconds(event))
+                .append('}');
+        }
+        json.append(']');
+    }
+
+    private void appendMBus(PrimitiveDSMRTelegram telegram) {
+        boolean first = true;
+        for (int channel = 1; channel <= PrimitiveDSMRTelegram.MBUS_CHANNELS; channel++) {
+            if (!telegram.hasMBus(channel)) {
+                continue;
+            }
+            if (first) {
+                appendName("mBus").append("[{");
+                first = false;
+            } else {
+                json.append(",{");
+            }
+            json.append("\"channel\":").append(channel);
+            if (telegram.getMBusDeviceType(channel) != -1) {
+                appendName("deviceType").append(telegram.getMBusDeviceType(channel));
+            }
+            appendString("equipmentId", telegram.getMBusEquipmentId(channel));
+            if (telegram.hasMBusValue(channel)) {
+                appendName("timestampEpochSecond").append(telegram.getMBusEpochSecond(channel));
+                appendName("value").append(telegram.getMBusValue(channel));
+                appendString("unit", telegram.getMBusUnit(channel));
+            }
+            json.append('}');
+        }
+        if (!first) {
+            json.append(']');
+        }
+
+        appendMBusDevice("gas",         "gasM3",          telegram, telegram.getGasChannel());
+        appendMBusDevice("slaveEMeter", "slaveEMeterkWh", telegram, telegram.getSlaveEMeterChannel());
+    }
+
+    private void appendMBusDevice(String prefix, String valueName, PrimitiveDSMRTelegram telegram, int channel) {
+        if (channel == 0) {
+            return;
+        }
+        appendString(prefix + "EquipmentId", telegram.getMBusEquipmentId(channel));
+        if (telegram.hasMBusValue(channel)) {
+            appendName(prefix + "TimestampEpochSecond").append(telegram.getMBusEpochSecond(channel));
+            appendName(valueName).append(telegram.getMBusValue(channel));
+        }
+    }
+
+    private StringBuilder appendName(String name) {
+        if (json.charAt(json.length() - 1) != '{') {
+            json.append(',');
+        }
+        return json.append('"').append(name).append("\":");
+    }
+
+    private void appendBoolean(String name, boolean value) {
+        appendName(name).append(value);
+    }
+
+    private void appendString(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        appendName(name).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':  json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n");  break;
+                case '\r': json.append("\\r");  break;
+                case '\t': json.append("\\t");  break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+}
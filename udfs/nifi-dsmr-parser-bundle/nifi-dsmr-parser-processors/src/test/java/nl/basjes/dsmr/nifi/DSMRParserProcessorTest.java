@@ -17,6 +17,7 @@
  */
 package nl.basjes.dsmr.nifi;
 
+import nl.basjes.dsmr.CheckCRC;
 import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
@@ -28,9 +29,12 @@ import java.util.List;
 import java.util.Map;
 
 import static nl.basjes.dsmr.nifi.DSMRParserProcessor.BAD_RECORDS;
+import static nl.basjes.dsmr.nifi.DSMRParserProcessor.BATCH_SIZE;
+import static nl.basjes.dsmr.nifi.DSMRParserProcessor.FIELDS;
 import static nl.basjes.dsmr.nifi.DSMRParserProcessor.INVALID_CRC;
 import static nl.basjes.dsmr.nifi.DSMRParserProcessor.VALID;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 class DSMRParserProcessorTest {
 
@@ -453,6 +457,108 @@ class DSMRParserProcessorTest {
     }
 
 
+    @Test
+    void testOnlySelectedFields() {
+        String content = CheckCRC.fixCrc(
+            "/ISK5\\2M550T-1012\r\n" +
+            "\r\n" +
+            "1-3:0.2.8(50)\r\n" +
+            "0-0:1.0.0(190324150541W)\r\n" +
+            "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+            "1-0:1.8.1(003432.829*kWh)\r\n" +
+            "1-0:1.7.0(00.433*kW)\r\n" +
+            "1-0:99.97.0(1)(0-0:96.7.19)(180417201458S)(0000000236*s)\r\n" +
+            "0-0:96.13.0(Not a valid hex string)\r\n" + // Skipped so this is not a problem
+            "1-0:32.7.0(236.7*V)\r\n" +
+            "0-2:24.1.0(003)\r\n" +
+            "0-2:96.1.0(5f5f5f5f54574f5f5f5f5f)\r\n" +
+            "0-2:24.2.1(101209112200W)(12785.222*m3)\r\n" +
+            "!0000\r\n");
+
+        runner.setProperty(FIELDS, "TIMESTAMP, ELECTRICITY_POWER_RECEIVED, GAS");
+        runner.enqueue(content);
+        runner.run(1);
+        runner.assertQueueEmpty();
+
+        List<MockFlowFile> results = runner.getFlowFilesForRelationship(VALID);
+        assertEquals(1, results.size());
+        MockFlowFile result = results.get(0);
+
+        assertAttributeEquals(result, "dsmr.p1Version",                "5.0");
+        assertAttributeEquals(result, "dsmr.timestamp",                "2019-03-24T15:05:41+01:00");
+        assertAttributeEquals(result, "dsmr.electricityPowerReceived", "0.433");
+        assertAttributeEquals(result, "dsmr.gasM3",                    "12785.222");
+        assertAttributeEquals(result, "dsmr.gasEquipmentId",           "____TWO____");
+
+        assertNull(result.getAttribute("dsmr.equipmentId"));
+        assertNull(result.getAttribute("dsmr.electricityReceivedLowTariff"));
+        assertNull(result.getAttribute("dsmr.powerFailureEventLog.size"));
+        assertNull(result.getAttribute("dsmr.message"));
+        assertNull(result.getAttribute("dsmr.voltageL1"));
+    }
+
+    @Test
+    void testInvalidFields() {
+        runner.setProperty(FIELDS, "TIMESTAMP, NO_SUCH_FIELD");
+        runner.assertNotValid();
+        runner.setProperty(FIELDS, "timestamp, mbus");
+        runner.assertValid();
+    }
+
+    private static final String SMALL_TELEGRAM = CheckCRC.fixCrc(
+        "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(190324150541W)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.7.0(00.433*kW)\r\n" +
+        "!0000\r\n");
+
+    private void enqueueMixedRecords(int count) {
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+                case 0:  runner.enqueue(SMALL_TELEGRAM.replace("433", String.format("%03d", i))); break; // Invalid CRC
+                case 1:  runner.enqueue("Garbage record " + i); break;
+                case 2:  runner.enqueue("  "); break; // Too small
+                default: runner.enqueue(SMALL_TELEGRAM); break;
+            }
+        }
+    }
+
+    @Test
+    void testBatch() {
+        runner.setProperty(BATCH_SIZE, "50");
+        enqueueMixedRecords(40);
+        runner.run(1); // A single onTrigger
+        runner.assertQueueEmpty();
+
+        runner.assertTransferCount(VALID,       10);
+        runner.assertTransferCount(INVALID_CRC, 10);
+        runner.assertTransferCount(BAD_RECORDS, 20);
+
+        // The order within a relationship is retained and each has its own attributes.
+        List<MockFlowFile> invalidCRCresults = runner.getFlowFilesForRelationship(INVALID_CRC);
+        for (int i = 0; i < 10; i++) {
+            double expected = (i * 4) / 1000.0;
+            assertEquals(expected, Double.parseDouble(invalidCRCresults.get(i).getAttribute("dsmr.electricityPowerReceived")), 0.0001);
+        }
+        for (MockFlowFile result : runner.getFlowFilesForRelationship(VALID)) {
+            assertAttributeEquals(result, "dsmr.electricityPowerReceived", "0.433");
+            result.assertContentEquals(SMALL_TELEGRAM);
+        }
+    }
+
+    @Test
+    void testBatchSize() {
+        runner.setProperty(BATCH_SIZE, "6");
+        enqueueMixedRecords(40);
+        runner.run(1);
+        assertEquals(34, runner.getQueueSize().getObjectCount());
+
+        runner.setProperty(BATCH_SIZE, "0");
+        runner.assertNotValid();
+    }
+
     void assertAttributeEquals(MockFlowFile flowFile, String attributeName, String expectedValue) {
         assertEquals(expectedValue, flowFile.getAttribute(attributeName),
             "Attribute \"" + attributeName + "\" has the wrong value.");
@@ -0,0 +1,169 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.nifi;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegramCodec;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static nl.basjes.dsmr.nifi.DSMRRecordProcessor.FAILURE;
+import static nl.basjes.dsmr.nifi.DSMRRecordProcessor.FORMAT_BINARY;
+import static nl.basjes.dsmr.nifi.DSMRRecordProcessor.INCLUDE_INVALID;
+import static nl.basjes.dsmr.nifi.DSMRRecordProcessor.ORIGINAL;
+import static nl.basjes.dsmr.nifi.DSMRRecordProcessor.RECORD_FORMAT;
+import static nl.basjes.dsmr.nifi.DSMRRecordProcessor.SUCCESS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DSMRRecordProcessorTest {
+
+    private TestRunner runner;
+
+    @BeforeEach
+    void init() {
+        runner = TestRunners.newTestRunner(DSMRRecordProcessor.class);
+    }
+
+    private static final String TELEGRAM = CheckCRC.fixCrc(
+        "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(190324150541W)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(003432.829*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.433*kW)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(210321163842S)(0000001234*s)\r\n" +
+        "0-0:96.13.0(2251756F74656422)\r\n" + // "Quoted"
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(190324150500W)(01934.556*m3)\r\n" +
+        "!0000\r\n");
+
+    private static final String EXPECTED_JSON =
+        "{\"valid\":true,\"validCRC\":true," +
+        "\"rawIdent\":\"/ISK5\\\\2M550T-1012\",\"equipmentBrandTag\":\"ISK\",\"ident\":\"M550T-1012\"," +
+        "\"p1Version\":\"5.0\"," +
+        "\"timestamp\":\"2019-03-24T15:05:41+01:00\"," +
+        "\"equipmentId\":\"E0044007131650618\"," +
+        "\"electricityTariffIndicator\":1," +
+        "\"electricityReceivedLowTariff\":3432.829," +
+        "\"electricityPowerReceived\":0.433," +
+        "\"powerFailureEventLogSize\":2,\"powerFailureEventLog\":[" +
+            "{\"endTimeEpochSecond\":1523988898,\"durationSeconds\":236}," +
+            "{\"endTimeEpochSecond\":1616337522,\"durationSeconds\":1234}]," +
+        "\"message\":\"\\\"Quoted\\\"\"," +
+        "\"mBus\":[{\"channel\":1,\"deviceType\":3,\"equipmentId\":\"G0039001652050216\"," +
+            "\"timestampEpochSecond\":1553436300,\"value\":1934.556,\"unit\":\"m3\"}]," +
+        "\"gasEquipmentId\":\"G0039001652050216\",\"gasTimestampEpochSecond\":1553436300,\"gasM3\":1934.556}\n";
+
+    private static final String INVALID_TELEGRAM = TELEGRAM.replace("433", "434");
+
+    @Test
+    void testJsonRecords() {
+        runner.enqueue("\r\n" + TELEGRAM + INVALID_TELEGRAM + "Garbage\r\n!1234\r\n" + TELEGRAM + "\r\n");
+        runner.run();
+        runner.assertTransferCount(SUCCESS,  1);
+        runner.assertTransferCount(ORIGINAL, 1);
+        runner.assertTransferCount(FAILURE,  0);
+
+        MockFlowFile records = runner.getFlowFilesForRelationship(SUCCESS).get(0);
+        records.assertAttributeEquals("record.count",       "2");
+        records.assertAttributeEquals("dsmr.invalid.count", "1");
+        records.assertAttributeEquals("dsmr.skipped.count", "1");
+        records.assertAttributeEquals("mime.type",          DSMRRecordProcessor.MIME_TYPE_JSON);
+        records.assertContentEquals(EXPECTED_JSON + EXPECTED_JSON);
+    }
+
+    @Test
+    void testIncludeInvalid() {
+        runner.setProperty(INCLUDE_INVALID, "true");
+        runner.enqueue(TELEGRAM + INVALID_TELEGRAM);
+        runner.run();
+
+        MockFlowFile records = runner.getFlowFilesForRelationship(SUCCESS).get(0);
+        records.assertAttributeEquals("record.count",       "2");
+        records.assertAttributeEquals("dsmr.invalid.count", "1");
+        String[] lines = records.getContent().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"valid\":true,\"validCRC\":true,"),   lines[0]);
+        assertTrue(lines[1].startsWith("{\"valid\":false,\"validCRC\":false,"), lines[1]);
+        assertTrue(lines[1].contains("\"electricityPowerReceived\":0.434,"),    lines[1]);
+    }
+
+    @Test
+    void testOnlySelectedFields() {
+        runner.setProperty(DSMRParserProcessor.FIELDS, "TIMESTAMP, ELECTRICITY_POWER_RECEIVED");
+        runner.enqueue(TELEGRAM);
+        runner.run();
+
+        MockFlowFile records = runner.getFlowFilesForRelationship(SUCCESS).get(0);
+        records.assertContentEquals(
+            "{\"valid\":true,\"validCRC\":true," +
+            "\"rawIdent\":\"/ISK5\\\\2M550T-1012\",\"equipmentBrandTag\":\"ISK\",\"ident\":\"M550T-1012\"," +
+            "\"p1Version\":\"5.0\"," +
+            "\"timestamp\":\"2019-03-24T15:05:41+01:00\"," +
+            "\"electricityPowerReceived\":0.433}\n");
+    }
+
+    @Test
+    void testBinaryRecords() throws IOException {
+        runner.setProperty(RECORD_FORMAT, FORMAT_BINARY.getValue());
+        runner.enqueue(TELEGRAM + INVALID_TELEGRAM + TELEGRAM);
+        runner.run();
+
+        MockFlowFile records = runner.getFlowFilesForRelationship(SUCCESS).get(0);
+        records.assertAttributeEquals("record.count", "2");
+        records.assertAttributeEquals("mime.type",    DSMRRecordProcessor.MIME_TYPE_BINARY);
+
+        DSMRTelegram expected = ParseDsmrTelegram.parse(TELEGRAM);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(records.toByteArray()));
+        for (int i = 0; i < 2; i++) {
+            DSMRTelegram telegram = DSMRTelegramCodec.read(in);
+            assertEquals(expected.getTimestamp(),                        telegram.getTimestamp());
+            assertEquals(expected.getElectricityPowerReceived(),         telegram.getElectricityPowerReceived());
+            assertEquals(expected.getPowerFailureEventLog().toString(),  telegram.getPowerFailureEventLog().toString());
+            assertEquals(expected.getMBusEvents().toString(),            telegram.getMBusEvents().toString());
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void testTooLargeTelegram() {
+        StringBuilder huge = new StringBuilder("/ISK5\\2M550T-1012\r\n\r\n");
+        while (huge.length() < 2 * 1024 * 1024) {
+            huge.append("0-0:96.13.0(Some long message)\r\n");
+        }
+        runner.enqueue(TELEGRAM + huge);
+        runner.run();
+        runner.assertTransferCount(SUCCESS,  0);
+        runner.assertTransferCount(ORIGINAL, 0);
+        runner.assertTransferCount(FAILURE,  1);
+    }
+
+}
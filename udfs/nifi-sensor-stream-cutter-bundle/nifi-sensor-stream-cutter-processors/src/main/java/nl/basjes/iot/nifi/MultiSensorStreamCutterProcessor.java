@@ -0,0 +1,233 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.iot.nifi;
+
+import nl.basjes.parse.MultiStreamRecordReader;
+import nl.basjes.parse.MultiStreamRecordReader.Record;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.TriggerSerially;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.iot.nifi.SensorStreamCutterProcessor.END_OF_RECORD_REGEX;
+import static nl.basjes.iot.nifi.SensorStreamCutterProcessor.MAX_CHARACTERS_PER_RECORD;
+import static org.apache.nifi.annotation.behavior.InputRequirement.Requirement.INPUT_FORBIDDEN;
+
+@Tags({"iot", "dsmr"})
+@CapabilityDescription("Reads infinite UTF-8 text streams from many character devices (or files) at the same time and " +
+    "creates a flowfile each time the end of a record is seen. The end of a record is detected by the provided pattern. " +
+    "Each device is read by its own thread so a slow or silent device never holds up the others.")
+@SeeAlso({SensorStreamCutterProcessor.class})
+@TriggerSerially
+@InputRequirement(INPUT_FORBIDDEN) // ONLY read data from the configured character devices
+@WritesAttributes({
+    @WritesAttribute(attribute = "sensor.source", description = "The file name of the character device the record was read from.")
+})
+public class MultiSensorStreamCutterProcessor extends AbstractProcessor {
+
+    public static final String SOURCE_ATTRIBUTE = "sensor.source";
+
+    public static final PropertyDescriptor FILE_NAMES = new PropertyDescriptor
+        .Builder()
+        .name("Input filenames/character devices")
+        .displayName("Input filenames/character devices")
+        .description("The comma separated list of the local file names of the files or character devices from where the records can be read.")
+        .required(true)
+        .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+        .build();
+
+    public static final PropertyDescriptor QUEUE_SIZE = new PropertyDescriptor
+        .Builder()
+        .name("Queue size")
+        .displayName("Queue size")
+        .description("The maximum number of records that have been read and are waiting to be turned into a flowfile. " +
+            "When this is full the devices are not read until there is room again.")
+        .required(true)
+        .defaultValue(String.valueOf(MultiStreamRecordReader.DEFAULT_QUEUE_SIZE))
+        .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+        .build();
+
+    public static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor
+        .Builder()
+        .name("Batch size")
+        .displayName("Batch size")
+        .description("The maximum number of flowfiles that are created in a single session.")
+        .required(true)
+        .defaultValue("100")
+        .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+        .build();
+
+    public static final PropertyDescriptor REOPEN_FAILED_DEVICES = new PropertyDescriptor
+        .Builder()
+        .name("Reopen failed devices")
+        .displayName("Reopen failed devices")
+        .description("When reading a device fails (i.e. it was unplugged or a record was too large) it is opened again " +
+            "(retried on every trigger until it succeeds). Only use this for character devices: a normal file is then read again from the start. " +
+            "Each failure is always reported as an error.")
+        .required(true)
+        .allowableValues("true", "false")
+        .defaultValue("false")
+        .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+        .build();
+
+    public static final Relationship SUCCESS = new Relationship.Builder()
+        .name("success")
+        .description("Here we route all FlowFiles that have been successfully extracted from the streams.")
+        .build();
+
+    private List<PropertyDescriptor> descriptors;
+
+    private Set<Relationship> relationships;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptorList = new ArrayList<>();
+        descriptorList.add(FILE_NAMES);
+        descriptorList.add(END_OF_RECORD_REGEX);
+        descriptorList.add(MAX_CHARACTERS_PER_RECORD);
+        descriptorList.add(QUEUE_SIZE);
+        descriptorList.add(BATCH_SIZE);
+        descriptorList.add(REOPEN_FAILED_DEVICES);
+        this.descriptors = Collections.unmodifiableList(descriptorList);
+
+        final Set<Relationship> relationshipSet = new HashSet<>();
+        relationshipSet.add(SUCCESS);
+        this.relationships = Collections.unmodifiableSet(relationshipSet);
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return this.relationships;
+    }
+
+    @Override
+    public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return descriptors;
+    }
+
+    private transient MultiStreamRecordReader reader;
+    private transient int                     batchSize = 100;
+    private transient boolean                 reopenFailedDevices = false;
+    // The failed sources that have already been reported (each failure is reported only once).
+    private transient Set<String>             reportedFailures = new HashSet<>();
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) throws IOException {
+        String endOfRecordRegex = context.getProperty(END_OF_RECORD_REGEX).getValue();
+        Long maxCharactersPerRecord = context.getProperty(MAX_CHARACTERS_PER_RECORD).asLong();
+        int queueSize = context.getProperty(QUEUE_SIZE).asInteger();
+        batchSize = context.getProperty(BATCH_SIZE).asInteger();
+        reopenFailedDevices = context.getProperty(REOPEN_FAILED_DEVICES).asBoolean();
+        reportedFailures = new HashSet<>();
+
+        Map<String, InputStream> inputs = new LinkedHashMap<>();
+        try {
+            for (String fileName : context.getProperty(FILE_NAMES).getValue().split(",")) {
+                fileName = fileName.trim();
+                if (!fileName.isEmpty() && !inputs.containsKey(fileName)) {
+                    inputs.put(fileName, new FileInputStream(fileName));
+                }
+            }
+        } catch (FileNotFoundException e) {
+            for (InputStream input : inputs.values()) {
+                input.close();
+            }
+            throw e;
+        }
+
+        reader = new MultiStreamRecordReader(inputs, endOfRecordRegex, maxCharactersPerRecord, queueSize);
+    }
+
+    @OnStopped
+    public void onStopped() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    // A device that can no longer be read must not go unnoticed.
+    private void handleFailures() {
+        for (Map.Entry<String, IOException> failure : new ArrayList<>(reader.getFailures().entrySet())) {
+            String source = failure.getKey();
+            if (reportedFailures.add(source)) {
+                getLogger().error("Stopped reading from {}", new Object[]{source}, failure.getValue());
+            }
+            if (reopenFailedDevices) {
+                try {
+                    reader.reopen(source, new FileInputStream(source));
+                    reportedFailures.remove(source);
+                    getLogger().info("Reopened {}", new Object[]{source});
+                } catch (FileNotFoundException e) {
+                    // Still not there (i.e. unplugged): try again in the next trigger.
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        if (!reader.getFailures().isEmpty()) {
+            handleFailures();
+        }
+
+        List<Record> records = new ArrayList<>(batchSize);
+        if (reader.drainTo(records, batchSize) == 0) {
+            // Nothing to do, do not keep a thread spinning on an empty queue.
+            context.yield();
+            return;
+        }
+
+        List<FlowFile> flowFiles = new ArrayList<>(records.size());
+        for (Record record : records) {
+            FlowFile flowFile = session.create();
+            flowFile = session.write(flowFile, out -> out.write(record.getContent().getBytes(UTF_8)));
+            flowFile = session.putAttribute(flowFile, SOURCE_ATTRIBUTE, record.getSource());
+            session.getProvenanceReporter().create(flowFile, "Read from " + record.getSource());
+            flowFiles.add(flowFile);
+        }
+        session.transfer(flowFiles, SUCCESS);
+    }
+}
@@ -17,7 +17,8 @@
  */
 package nl.basjes.iot.nifi;
 
-import nl.basjes.parse.ReadUTF8RecordStream;
+import nl.basjes.parse.MultiStreamRecordReader;
+import nl.basjes.parse.MultiStreamRecordReader.Record;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.PrimaryNodeOnly;
 import org.apache.nifi.annotation.behavior.TriggerSerially;
@@ -25,6 +26,7 @@ import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.AbstractProcessor;
@@ -45,6 +47,8 @@ import java.util.List;
 import java.util.Set;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.iot.nifi.MultiSensorStreamCutterProcessor.BATCH_SIZE;
+import static nl.basjes.iot.nifi.MultiSensorStreamCutterProcessor.QUEUE_SIZE;
 import static nl.basjes.parse.ReadUTF8RecordStream.MAX_MAX_RECORD_SIZE;
 import static nl.basjes.parse.ReadUTF8RecordStream.MIN_MAX_RECORD_SIZE;
 import static org.apache.nifi.annotation.behavior.InputRequirement.Requirement.INPUT_FORBIDDEN;
@@ -53,7 +57,8 @@ import static org.apache.nifi.processor.util.StandardValidators.createRegexValid
 
 @Tags({"iot", "dsmr"})
 @CapabilityDescription("Reads an infinite UTF-8 text stream from a character device (or file) and " +
-    "creates a flowfile each time the end of a record is seen. The end of a record is detected by the provided pattern.")
+    "creates a flowfile each time the end of a record is seen. The end of a record is detected by the provided pattern. " +
+    "The device is read in the background so no NiFi thread waits for the (slow) device.")
 @SeeAlso({})
 @TriggerSerially
 @PrimaryNodeOnly // This may ONLY be read single threaded
@@ -77,7 +82,8 @@ public class SensorStreamCutterProcessor extends AbstractProcessor {
         .name("End-of-record regex")
         .displayName("End-of-record regex")
         .description("The regular expression that is the end of the record. NOTE: Grouping is NOT allowed! " +
-            "Examples: Normal line ending: \\r?\\n   Separating DSMR record:   \\r\\n![0-9A-F]{4}\\r\\n")
+            "Examples: Normal line ending: \\r?\\n   Separating DSMR record:   \\r\\n![0-9A-F]{4}\\r\\n  " +
+            "(these two and plain text without any regex characters are found without actually using a regex).")
         .required(true)
         .defaultValue("\\r?\\n")
 //        .allowableValues("\\r?\\n", "\\r\\n![0-9A-F]{4}\\r\\n") // Show these allowed values and still support a manual regex
@@ -112,6 +118,8 @@ public class SensorStreamCutterProcessor extends AbstractProcessor {
         descriptorList.add(FILE_NAME);
         descriptorList.add(END_OF_RECORD_REGEX);
         descriptorList.add(MAX_CHARACTERS_PER_RECORD);
+        descriptorList.add(QUEUE_SIZE);
+        descriptorList.add(BATCH_SIZE);
         this.descriptors = Collections.unmodifiableList(descriptorList);
 
         final Set<Relationship> relationshipSet = new HashSet<>();
@@ -129,38 +137,55 @@ public class SensorStreamCutterProcessor extends AbstractProcessor {
         return descriptors;
     }
 
-    private transient ReadUTF8RecordStream reader;
+    // The device is read by a background thread into a bounded queue so onTrigger never waits for the device.
+    private transient MultiStreamRecordReader reader;
+    private transient int                     batchSize = 100;
 
     @OnScheduled
     public void onScheduled(final ProcessContext context) throws FileNotFoundException {
         String fileName= context.getProperty(FILE_NAME).getValue();
         String endOfRecordRegex = context.getProperty(END_OF_RECORD_REGEX).getValue();
         Long maxCharactersPerRecord = context.getProperty(MAX_CHARACTERS_PER_RECORD).asLong();
+        int queueSize = context.getProperty(QUEUE_SIZE).asInteger();
+        batchSize = context.getProperty(BATCH_SIZE).asInteger();
 
         FileInputStream inputStream = new FileInputStream(fileName);
 
-        reader = new ReadUTF8RecordStream(inputStream, endOfRecordRegex, maxCharactersPerRecord);
+        reader = new MultiStreamRecordReader(
+            Collections.singletonMap(fileName, inputStream), endOfRecordRegex, maxCharactersPerRecord, queueSize);
+    }
+
+    @OnStopped
+    public void onStopped() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
     }
 
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
-        String content;
-        try {
-            content = reader.read();
-        } catch (IOException e) {
-            throw new ProcessException(e);
+        List<Record> records = new ArrayList<>(batchSize);
+        if (reader.drainTo(records, batchSize) == 0) {
+            if (!reader.getFailures().isEmpty()) {
+                // The device can no longer be read (i.e. the end of a record was not found in time).
+                throw new ProcessException(reader.getFailures().values().iterator().next());
+            }
+            // Nothing available (yet), do not keep a thread spinning on an empty queue.
+            context.yield();
+            return;
         }
 
-        FlowFile flowFile = session.create();
-        flowFile = session.write(flowFile, out -> {
-            if (content != null) {
-                out.write(content.getBytes(UTF_8));
-            }
-        });
+        List<FlowFile> flowFiles = new ArrayList<>(records.size());
+        for (Record record : records) {
+            FlowFile flowFile = session.create();
+            flowFile = session.write(flowFile, out -> out.write(record.getContent().getBytes(UTF_8)));
 
-//        flowFile = session.putAllAttributes(flowFile, generatedAttributes);
+//            flowFile = session.putAllAttributes(flowFile, generatedAttributes);
 
-        session.getProvenanceReporter().create(flowFile);
-        session.transfer(flowFile, SUCCESS);
+            session.getProvenanceReporter().create(flowFile);
+            flowFiles.add(flowFile);
+        }
+        session.transfer(flowFiles, SUCCESS);
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2021 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.iot.nifi;
+
+import org.apache.nifi.util.LogMessage;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static nl.basjes.iot.nifi.MultiSensorStreamCutterProcessor.BATCH_SIZE;
+import static nl.basjes.iot.nifi.MultiSensorStreamCutterProcessor.FILE_NAMES;
+import static nl.basjes.iot.nifi.MultiSensorStreamCutterProcessor.REOPEN_FAILED_DEVICES;
+import static nl.basjes.iot.nifi.MultiSensorStreamCutterProcessor.SOURCE_ATTRIBUTE;
+import static nl.basjes.iot.nifi.MultiSensorStreamCutterProcessor.SUCCESS;
+import static nl.basjes.iot.nifi.SensorStreamCutterProcessor.END_OF_RECORD_REGEX;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiSensorStreamCutterProcessorTest {
+
+    private static final String INPUT_1 = "src/test/data/testinput.txt";
+    private static final String INPUT_2 = "src/test/data/testinput2.txt";
+    private static final String TOO_LARGE = "src/test/data/TooLargeRecord.txt";
+
+    private TestRunner runner;
+
+    @BeforeEach
+    public void init() {
+        runner = TestRunners.newTestRunner(MultiSensorStreamCutterProcessor.class);
+        runner.setProperty(END_OF_RECORD_REGEX, "\\r?\\n");
+    }
+
+    // The devices are read in the background so we keep triggering until everything has arrived.
+    private List<MockFlowFile> runUntil(int expectedFlowFiles) throws InterruptedException {
+        runner.run(1, false, true);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (runner.getFlowFilesForRelationship(SUCCESS).size() < expectedFlowFiles && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            runner.run(1, false, false);
+        }
+        return runner.getFlowFilesForRelationship(SUCCESS);
+    }
+
+    private static List<String> contentFrom(List<MockFlowFile> flowFiles, String source) {
+        List<String> contents = new ArrayList<>();
+        for (MockFlowFile flowFile : flowFiles) {
+            if (source.equals(flowFile.getAttribute(SOURCE_ATTRIBUTE))) {
+                contents.add(flowFile.getContent());
+            }
+        }
+        return contents;
+    }
+
+    @Test
+    void testMultipleDevices() throws InterruptedException {
+        runner.setProperty(FILE_NAMES, INPUT_1 + ", " + INPUT_2);
+        runner.setProperty(BATCH_SIZE, "2");
+
+        List<MockFlowFile> results = runUntil(6);
+        assertEquals(6, results.size());
+
+        List<String> expected1 = new ArrayList<>();
+        expected1.add("One\n");
+        expected1.add("Two\n");
+        expected1.add("Three\n");
+        expected1.add("\n"); // We have an empty line !!
+        assertEquals(expected1, contentFrom(results, INPUT_1));
+
+        List<String> expected2 = new ArrayList<>();
+        expected2.add("Four\n");
+        expected2.add("Five"); // No newline at the end of the file
+        assertEquals(expected2, contentFrom(results, INPUT_2));
+
+        runner.stop();
+    }
+
+    @Test
+    void testEmptyQueueYields() throws InterruptedException {
+        runner.setProperty(FILE_NAMES, INPUT_1);
+        List<MockFlowFile> results = runUntil(4);
+        assertEquals(4, results.size());
+
+        // Nothing more is created once the input has been read.
+        runner.clearTransferState();
+        runner.run(5, false, false);
+        runner.assertTransferCount(SUCCESS, 0);
+        runner.stop();
+    }
+
+    @Test
+    void testFailingDeviceIsReportedOnce() throws InterruptedException {
+        runner.setProperty(FILE_NAMES, INPUT_1 + "," + TOO_LARGE);
+        runner.setProperty(END_OF_RECORD_REGEX, "\\r\\n![0-9A-F]{4}\\r\\n");
+
+        // The good device still delivers its data (the entire file is a single record).
+        assertEquals(1, runUntil(1).size());
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (runner.getLogger().getErrorMessages().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            runner.run(1, false, false);
+        }
+        runner.run(5, false, false);
+
+        List<LogMessage> errors = runner.getLogger().getErrorMessages();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMsg().contains(TOO_LARGE), errors.get(0).getMsg());
+        runner.stop();
+    }
+
+    @Test
+    void testReopenFailedDevice() throws InterruptedException {
+        runner.setProperty(FILE_NAMES, TOO_LARGE);
+        runner.setProperty(END_OF_RECORD_REGEX, "\\r\\n![0-9A-F]{4}\\r\\n");
+        runner.setProperty(REOPEN_FAILED_DEVICES, "true");
+
+        // A normal file fails again after every reopen so it is reported again.
+        runner.run(1, false, true);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (runner.getLogger().getErrorMessages().size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            runner.run(1, false, false);
+        }
+        runner.stop();
+        assertTrue(runner.getLogger().getErrorMessages().size() >= 2);
+        assertTrue(runner.getLogger().getInfoMessages().stream().anyMatch(message -> message.getMsg().contains("Reopened")));
+    }
+
+    @Test
+    void testMissingDevice() {
+        runner.setProperty(FILE_NAMES, INPUT_1 + ",src/test/data/DoesNotExist.txt");
+        assertThrows(AssertionError.class, () -> runner.run(1));
+    }
+}
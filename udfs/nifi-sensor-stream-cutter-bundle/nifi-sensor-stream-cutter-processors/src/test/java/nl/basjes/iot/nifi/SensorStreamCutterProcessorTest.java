@@ -25,12 +25,14 @@ import org.junit.jupiter.api.Test;
 
 import java.util.List;
 
+import static nl.basjes.iot.nifi.MultiSensorStreamCutterProcessor.BATCH_SIZE;
 import static nl.basjes.iot.nifi.SensorStreamCutterProcessor.END_OF_RECORD_REGEX;
 import static nl.basjes.iot.nifi.SensorStreamCutterProcessor.FILE_NAME;
 import static nl.basjes.iot.nifi.SensorStreamCutterProcessor.MAX_CHARACTERS_PER_RECORD;
 import static nl.basjes.iot.nifi.SensorStreamCutterProcessor.SUCCESS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SensorStreamCutterProcessorTest {
 
@@ -41,27 +43,66 @@ class SensorStreamCutterProcessorTest {
         runner = TestRunners.newTestRunner(SensorStreamCutterProcessor.class);
     }
 
+    // The device is read in the background so we keep triggering until everything has arrived.
+    private List<MockFlowFile> runUntil(int expectedFlowFiles) throws InterruptedException {
+        runner.run(1, false, true);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (runner.getFlowFilesForRelationship(SUCCESS).size() < expectedFlowFiles && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            runner.run(1, false, false);
+        }
+        return runner.getFlowFilesForRelationship(SUCCESS);
+    }
+
     @Test
-    void testProcessor() {
+    void testProcessor() throws InterruptedException {
 
         runner.setProperty(END_OF_RECORD_REGEX,       "\\r?\\n");
         runner.setProperty(FILE_NAME,                 "src/test/data/testinput.txt");
         runner.setProperty(MAX_CHARACTERS_PER_RECORD, "20000");
 
-        // Run the enqueued content, it also takes an int = number of contents queued
-        runner.run(5); // We have 4 lines in the file !!
+        List<MockFlowFile> results = runUntil(4); // We have 4 lines in the file !!
 
         // All results were processed with out failure
         runner.assertQueueEmpty();
 
         // If you need to read or do additional tests on results you can access the content
-        List<MockFlowFile> results = runner.getFlowFilesForRelationship(SUCCESS);
-        assertEquals(5, results.size(), "5 match");
+        assertEquals(4, results.size(), "4 match");
         results.get(0).assertContentEquals("One\n");
         results.get(1).assertContentEquals("Two\n");
         results.get(2).assertContentEquals("Three\n");
         results.get(3).assertContentEquals("\n"); // We have an empty line !!
-        results.get(4).assertContentEquals("");
+
+        // At the end of the stream nothing is created anymore (not even empty flowfiles).
+        runner.clearTransferState();
+        runner.run(5, false, false);
+        runner.assertTransferCount(SUCCESS, 0);
+        runner.stop();
+    }
+
+    @Test
+    void testBatch() throws InterruptedException {
+        runner.setProperty(END_OF_RECORD_REGEX,       "\\r?\\n");
+        runner.setProperty(FILE_NAME,                 "src/test/data/testinput.txt");
+        runner.setProperty(BATCH_SIZE,                "3");
+
+        // Each trigger only gets what the background thread has read so far, but never more than 3.
+        runner.run(1, false, true);
+        int previous = 0;
+        int current  = runner.getFlowFilesForRelationship(SUCCESS).size();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            assertTrue(current - previous <= 3, "At most 3 per trigger (got " + (current - previous) + ")");
+            if (current >= 4 || System.currentTimeMillis() > deadline) {
+                break;
+            }
+            Thread.sleep(10);
+            runner.run(1, false, false);
+            previous = current;
+            current  = runner.getFlowFilesForRelationship(SUCCESS).size();
+        }
+        runner.stop();
+        runner.assertTransferCount(SUCCESS, 4);
     }
 
     @Test
@@ -71,7 +112,8 @@ class SensorStreamCutterProcessorTest {
         runner.setProperty(FILE_NAME,                 "src/test/data/TooLargeRecord.txt");
         runner.setProperty(MAX_CHARACTERS_PER_RECORD, "10240"); // Slightly smaller than 20k
 
-        // Run the enqueued content, it also takes an int = number of contents queued
-        assertThrows(AssertionError.class, () -> runner.run(1));
+        // The failure is only seen once the background reader has given up.
+        assertThrows(AssertionError.class, () -> runUntil(1));
+        runner.stop();
     }
 }